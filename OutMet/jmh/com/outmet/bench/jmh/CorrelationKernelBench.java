@@ -0,0 +1,128 @@
+package com.outmet.bench.jmh;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.outmet.analysis.AlertTable;
+import com.outmet.analysis.CorrelationKernel;
+import com.outmet.analysis.Correlator;
+import com.outmet.data.Alert;
+
+/**
+ * JMH benchmarks of scoring one alert against every active meta-alert and
+ * picking the best, as the number of active meta-alerts grows: one pair at a
+ * time with getCorr(), and in one batch with a {@link CorrelationKernel}.
+ * Both pick the same winner, which the setup checks.
+ *
+ * @author riyanat
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrelationKernelBench {
+
+	private static final int PROBES = 64;
+
+	@Param({ "100", "1000", "10000", "50000" })
+	public int active;
+
+	private AlertTable table;
+	private ScalarCorrelator correlator;
+	private CorrelationKernel kernel;
+	private double threshold;
+	private int next;
+
+	/**
+	 * Exposes the pairwise scoring of the Correlator.
+	 */
+	private static class ScalarCorrelator extends Correlator {
+
+		int best(AlertTable table, int active, int row_k) {
+			int best = -1;
+			double max = getCorrelationThreshold();
+			for (int i = 0; i < active; i++) {
+				double corr = getCorr(table, i, row_k);
+				if (corr > max) {
+					best = i;
+					max = corr;
+				}
+			}
+			return best;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (int i = 0; i < active + PROBES; i++) {
+			Date date = new Date(i * 1000L);
+			alerts.add(new Alert(date, date, String.valueOf(i), "ICMP PING",
+					"misc", randomIp(random), "53", randomIp(random), "2093"));
+		}
+		table = AlertTable.of(alerts);
+		correlator = new ScalarCorrelator();
+		kernel = correlator.createKernel();
+		threshold = correlator.getCorrelationThreshold();
+
+		for (int k = active; k < table.size(); k++) {
+			if (correlator.best(table, active, k) != best(k)) {
+				throw new IllegalStateException("The winners differ");
+			}
+		}
+	}
+
+	@Benchmark
+	public int scalar() {
+		return correlator.best(table, active, active + next++ % PROBES);
+	}
+
+	@Benchmark
+	public int kernel() {
+		return best(active + next++ % PROBES);
+	}
+
+	private int best(int row_k) {
+		kernel.clear();
+		for (int i = 0; i < active; i++) {
+			kernel.add(table.getSourceIp(i), table.getDestIp(i),
+					table.getStartTime(i), table.getDestPortTerm(i));
+		}
+		kernel.score(table.getSourceIp(row_k), table.getDestIp(row_k),
+				table.getStartTime(row_k), table.getDestIpTerm(row_k),
+				table.getTerms());
+		int best = -1;
+		double max = threshold;
+		for (int i = 0; i < active; i++) {
+			if (kernel.getScore(i) > max) {
+				best = i;
+				max = kernel.getScore(i);
+			}
+		}
+		return best;
+	}
+
+	private static String randomIp(Random random) {
+		return "10." + random.nextInt(256) + "." + random.nextInt(256) + "."
+				+ random.nextInt(256);
+	}
+}
@@ -0,0 +1,124 @@
+package com.outmet.bench.jmh;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.analysis.MetaAlertListener;
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * JMH benchmarks of {@link Correlator#run(List)} over alert sets of
+ * increasing size shaped like the sample, and of
+ * {@link Correlator#offer(Alert)} of one alert as the number of active
+ * meta-alerts grows.
+ *
+ * @author riyanat
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CorrelatorBench {
+
+	/**
+	 * An alert set shaped like the sample.
+	 */
+	@State(Scope.Benchmark)
+	public static class Sample {
+
+		@Param({ "1000", "10000", "100000" })
+		public int alerts;
+
+		private List<Alert> list;
+
+		@Setup
+		public void setUp() throws IOException {
+			list = SampleAlerts.create(alerts);
+		}
+	}
+
+	/**
+	 * A correlator whose time window holds a fixed number of meta-alerts.
+	 * Addresses are drawn from all of 10.0.0.0/8 so that most alerts open a
+	 * new meta-alert.
+	 */
+	@State(Scope.Thread)
+	public static class Window {
+
+		private static final int TIME_THRESHOLD = 30;
+
+		@Param({ "100", "1000", "10000", "50000" })
+		public int active;
+
+		private Correlator correlator;
+		private Random random;
+		private long spacing;
+		private long time;
+		private int key;
+
+		@Setup
+		public void setUp() {
+			random = new Random(42);
+			spacing = Math.max(1, TIME_THRESHOLD * 60000L / active);
+			correlator = new Correlator();
+			correlator.setTimeThreshold(TIME_THRESHOLD);
+			correlator.setMetaAlertListener(new MetaAlertListener() {
+				@Override
+				public void metaAlertClosed(Graph<Alert> graph) {
+				}
+			});
+			// Fill the window.
+			for (int i = 0; i < active; i++) {
+				offer();
+			}
+		}
+
+		long offer() {
+			time += spacing;
+			Date date = new Date(time);
+			correlator.offer(new Alert(date, date, String.valueOf(key++),
+					"ICMP PING", "misc", randomIp(), "53", randomIp(), "2093"));
+			return time;
+		}
+
+		private String randomIp() {
+			return "10." + random.nextInt(256) + "." + random.nextInt(256)
+					+ "." + random.nextInt(256);
+		}
+	}
+
+	@Benchmark
+	public int correlate(Sample sample) {
+		Correlator correlator = new Correlator();
+		correlator.run(sample.list);
+		return correlator.getGraphs().size();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 3, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public long offer(Window window) {
+		return window.offer();
+	}
+}
@@ -0,0 +1,126 @@
+package com.outmet.bench.jmh;
+
+import ged.editpath.CostLimitExceededException;
+import ged.graph.DotParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.analysis.Distance;
+import com.outmet.analysis.IpSimilarity;
+import com.outmet.analysis.LabelGraph;
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.TermDictionary;
+
+/**
+ * JMH benchmarks of the distances of {@link Distance} on alerts shaped like
+ * the sample: the IP similarity of the address pairs of the alerts, also by
+ * the original implementation in {@link LegacyIpSimilarity} and from parsed
+ * addresses with {@link IpSimilarity}, and the edit distance of pairs of the
+ * meta-alerts they correlate into, both by the ged library and natively.
+ * Each invocation computes one distance, cycling through the pairs.
+ *
+ * @author riyanat
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBench {
+
+	@Param({ "10000" })
+	public int alerts;
+
+	private String[] sources;
+	private String[] dests;
+	// The addresses parsed as IPv4, or 0.
+	private int[] parsedSources;
+	private int[] parsedDests;
+	private List<Graph<Alert>> graphs;
+	private List<LabelGraph> labelGraphs;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		List<Alert> sample = SampleAlerts.create(alerts);
+		sources = new String[sample.size()];
+		dests = new String[sample.size()];
+		parsedSources = new int[sample.size()];
+		parsedDests = new int[sample.size()];
+		for (int i = 0; i < sample.size(); i++) {
+			sources[i] = sample.get(i).getSourceIP();
+			dests[i] = sample.get(i).getDestIP();
+			parsedSources[i] = parse(sources[i]);
+			parsedDests[i] = parse(dests[i]);
+		}
+
+		Correlator correlator = new Correlator();
+		correlator.run(sample);
+		graphs = correlator.getGraphs();
+		TermDictionary labels = new TermDictionary();
+		labelGraphs = new ArrayList<LabelGraph>();
+		for (Graph<Alert> graph : graphs) {
+			labelGraphs.add(LabelGraph.of(graph, labels));
+		}
+	}
+
+	@Benchmark
+	public double ipSimilarity() {
+		int a = next++ % sources.length;
+		return Distance.calculateIpSimilarity(sources[a], dests[(a * 7 + 1)
+				% dests.length]);
+	}
+
+	@Benchmark
+	public double ipSimilarityLegacy() {
+		int a = next++ % sources.length;
+		return LegacyIpSimilarity.calculateIpSimilarity(sources[a],
+				dests[(a * 7 + 1) % dests.length]);
+	}
+
+	@Benchmark
+	public double ipSimilarityParsed() {
+		int a = next++ % parsedSources.length;
+		return IpSimilarity.similarity(parsedSources[a], parsedDests[(a * 7 + 1)
+				% parsedDests.length]);
+	}
+
+	@Benchmark
+	public double gedNative() {
+		int i = next++ % labelGraphs.size();
+		return Distance.calculateGED(labelGraphs.get(i),
+				labelGraphs.get((i * 7 + 1) % labelGraphs.size()));
+	}
+
+	@Benchmark
+	public double gedLibrary() throws CostLimitExceededException,
+			DotParseException {
+		int i = next++ % graphs.size();
+		return Distance.calculateGED(graphs.get(i),
+				graphs.get((i * 7 + 1) % graphs.size()));
+	}
+
+	private static int parse(String ip) {
+		long address = IpSimilarity.parseIpv4(ip);
+		return address == IpSimilarity.NOT_IPV4 ? 0 : (int) address;
+	}
+}
@@ -0,0 +1,86 @@
+package com.outmet.bench.jmh;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.BitSet;
+
+/**
+ * The original InetAddress/BitSet/String implementation of
+ * Distance.calculateIpSimilarity, kept as a benchmark baseline.
+ * 
+ * @author riyanat
+ * 
+ */
+public class LegacyIpSimilarity {
+
+	public static double calculateIpSimilarity(String x, String y) {
+		String strThisIP = "";
+		String strOtherIP = "";
+
+		BitSet[] bitThisIP;
+		BitSet[] bitOtherIP;
+
+		try {
+			InetAddress thisIP = InetAddress.getByName(x);
+			InetAddress otherIP = InetAddress.getByName(y);
+
+			byte[] thisByte = thisIP.getAddress();
+			byte[] otherByte = otherIP.getAddress();
+
+			bitThisIP = new BitSet[thisByte.length];
+			bitOtherIP = new BitSet[otherByte.length];
+
+			int i = 0;
+			for (byte xB : thisByte) {
+				bitThisIP[i] = toBitSet(xB);
+				strThisIP += toString(bitThisIP[i]);
+				i++;
+			}
+
+			int j = 0;
+			for (byte yB : otherByte) {
+				bitOtherIP[j] = toBitSet(yB);
+				strOtherIP += toString(bitOtherIP[j]);
+				j++;
+
+			}
+
+			double countVal = 0.0d;
+			for (int n = 0; n < strThisIP.length(); n++) {
+				if (strThisIP.charAt(n) == strOtherIP.charAt(n)) {
+					countVal++;
+				} else {
+					break;
+				}
+			}
+
+			double val = countVal / 32.00;
+			return val;
+
+		} catch (UnknownHostException e) {
+			if (x.toLowerCase().equals(y.toLowerCase()))
+				return 1;
+			else
+				return 0;
+		}
+
+	}
+
+	public static String toString(BitSet bits) {
+		String out = "";
+		for (int n = 0; n < 8; n++) {
+			out += bits.get(n) ? "1" : "0";
+		}
+
+		return out;
+	}
+
+	public static BitSet toBitSet(byte b) {
+		BitSet bits = new BitSet(8);
+		for (int i = 0; i < 8; i++) {
+			bits.set(i, ((b & (1 << i)) != 0));
+
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,90 @@
+package com.outmet.bench.jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.outmet.analysis.DistanceMatrix;
+
+/**
+ * The original sort and map based implementation of
+ * Prioritiser.calculateOutMet, kept as a benchmark baseline.
+ * 
+ * @author riyanat
+ * 
+ */
+public class LegacyLof {
+
+	public static double[] calculateOutMet(DistanceMatrix distance, int k) {
+		int n = distance.size();
+		double[] lofs = new double[n];
+
+		double[] lrDensities = new double[n];
+		double[] kDistances = new double[n];
+
+		Map<Integer, Map<Integer, Double>> neighborReachabilityMatrix = new HashMap<Integer, Map<Integer, Double>>();
+
+		// Step 1: Derive the k-distances.
+		double[] orderedDistances = new double[n];
+		for (int i = 0; i < n; i++) {
+			distance.getRow(i, orderedDistances);
+
+			Arrays.sort(orderedDistances);
+			double kDistance = orderedDistances[k - 1];
+			kDistances[i] = kDistance;
+		}
+
+		// Step 2: Derive the reachability distances
+		for (int i = 0; i < n; i++) {
+
+			double kDistance = kDistances[i];
+			Map<Integer, Double> neighborReachabilityDistance = new HashMap<Integer, Double>();
+
+			for (int j = 0; j < n; j++) {
+				double d = distance.get(i, j);
+				double max = Math.max(kDistances[j], d);
+				if (d <= kDistance) {
+					neighborReachabilityDistance.put(j, max);
+				}
+			}
+
+			neighborReachabilityMatrix.put(i, neighborReachabilityDistance);
+
+		}
+
+		// Step 3: Calculate local reachability densities.
+		double lrd = 0.0;
+		for (int i = 0; i < n; i++) {
+			double sum = 0;
+
+			for (double d : neighborReachabilityMatrix.get(i).values()) {
+				sum += d;
+			}
+
+			lrd = 1 / (sum / (neighborReachabilityMatrix.get(i).size()));
+			lrDensities[i] = lrd;
+		}
+
+		// Step 4: Compute Local Outlier Factor.
+		for (int i = 0; i < lrDensities.length; i++) {
+			double lrdP = lrDensities[i];
+			double sum = 0;
+
+			// get lrd of NNs
+			List<Integer> NNs = new ArrayList<Integer>(
+					neighborReachabilityMatrix.get(i).keySet());
+
+			for (Integer j : NNs) {
+
+				double lrdo = lrDensities[j];
+
+				sum += lrdo / lrdP;
+			}
+
+			lofs[i] = sum / NNs.size();
+		}
+		return lofs;
+	}
+}
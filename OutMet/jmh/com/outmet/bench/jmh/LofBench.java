@@ -0,0 +1,103 @@
+package com.outmet.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.outmet.analysis.Neighborhoods;
+import com.outmet.analysis.Prioritiser;
+
+/**
+ * JMH benchmarks of LOF steps 1 to 4 on synthetic distance matrices (see
+ * {@link PointDistanceMatrix}): the quickselect and compressed-row
+ * implementation of the {@link Prioritiser} over a number of threads, and
+ * the original sort and map implementation in {@link LegacyLof}, only up to
+ * 10k meta-alerts as it holds every row in boxed maps.
+ *
+ * @author riyanat
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class LofBench {
+
+	private static final int K = 10;
+
+	/**
+	 * Exposes the lof steps of the Prioritiser.
+	 */
+	private static class LofPrioritiser extends Prioritiser {
+
+		LofPrioritiser(int parallelism) {
+			setK(K);
+			setParallelism(parallelism);
+		}
+
+		double lof(PointDistanceMatrix distance) {
+			calculateOutMet(Neighborhoods.of(distance, K, getParallelism()));
+			return getMaxLof();
+		}
+	}
+
+	/**
+	 * The matrices for the Prioritiser, and its threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class Primitive {
+
+		@Param({ "1000", "10000", "50000" })
+		public int n;
+
+		@Param({ "1", "4" })
+		public int parallelism;
+
+		private PointDistanceMatrix distance;
+		private LofPrioritiser prioritiser;
+
+		@Setup
+		public void setUp() {
+			distance = new PointDistanceMatrix(n, 42);
+			prioritiser = new LofPrioritiser(parallelism);
+		}
+	}
+
+	/**
+	 * The matrices small enough for {@link LegacyLof}.
+	 */
+	@State(Scope.Benchmark)
+	public static class Legacy {
+
+		@Param({ "1000", "5000", "10000" })
+		public int n;
+
+		private PointDistanceMatrix distance;
+
+		@Setup
+		public void setUp() {
+			distance = new PointDistanceMatrix(n, 42);
+		}
+	}
+
+	@Benchmark
+	public double lof(Primitive primitive) {
+		return primitive.prioritiser.lof(primitive.distance);
+	}
+
+	@Benchmark
+	public double lofLegacy(Legacy legacy) {
+		return LegacyLof.calculateOutMet(legacy.distance, K)[0];
+	}
+}
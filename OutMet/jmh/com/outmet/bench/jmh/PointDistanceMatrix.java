@@ -0,0 +1,47 @@
+package com.outmet.bench.jmh;
+
+import java.util.Random;
+
+import com.outmet.analysis.DistanceMatrix;
+
+/**
+ * A synthetic distance matrix of random points in the unit square, computed
+ * on demand so that large sizes fit in memory. Distances are scaled into
+ * [0.1, 1] like those between meta-alerts.
+ * 
+ * @author riyanat
+ * 
+ */
+public class PointDistanceMatrix extends DistanceMatrix {
+
+	private double[] x;
+	private double[] y;
+
+	public PointDistanceMatrix(int n, long seed) {
+		super(n);
+		Random random = new Random(seed);
+		x = new double[n];
+		y = new double[n];
+		for (int i = 0; i < n; i++) {
+			// A few clusters and some outliers.
+			double spread = i % 50 == 0 ? 0.5 : 0.05;
+			x[i] = (i % 7) / 7.0 + spread * random.nextGaussian();
+			y[i] = (i % 5) / 5.0 + spread * random.nextGaussian();
+		}
+	}
+
+	@Override
+	public double get(int i, int j) {
+		if (i == j) {
+			return 0;
+		}
+		double dx = x[i] - x[j];
+		double dy = y[i] - y[j];
+		return Math.min(1, 0.1 + Math.sqrt(dx * dx + dy * dy));
+	}
+
+	@Override
+	public void set(int i, int j, double distance) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,98 @@
+package com.outmet.bench.jmh;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.analysis.MetaAlertMetric;
+import com.outmet.analysis.Prioritiser;
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * JMH benchmarks of the distance matrix and the lofs of the
+ * {@link Prioritiser}, under either edit distance and on a number of worker
+ * threads, over the meta-alerts of alert sets of increasing size shaped like
+ * the sample. These are the quadratic paths; select a subset with e.g.
+ * -p alerts=1000. The library edit distance is computed on one thread
+ * whatever the parallelism.
+ *
+ * @author riyanat
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PrioritiserBench {
+
+	private static final int K = 10;
+
+	@Param({ "1000", "10000", "100000" })
+	public int alerts;
+
+	@Param({ "LIBRARY", "NATIVE" })
+	public MetaAlertMetric.EditDistance editDistance;
+
+	@Param({ "1", "2", "4" })
+	public int parallelism;
+
+	private StagedPrioritiser prioritiser;
+
+	/**
+	 * Exposes the stages of the Prioritiser.
+	 */
+	private static class StagedPrioritiser extends Prioritiser {
+
+		StagedPrioritiser(List<Graph<Alert>> graphs) {
+			super(K, graphs);
+		}
+
+		int distances() {
+			calculateDistanceMatrix();
+			return distance.size();
+		}
+
+		double lofs() {
+			calculateOutMet();
+			return getMaxLof();
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		Correlator correlator = new Correlator();
+		correlator.run(SampleAlerts.create(alerts));
+		prioritiser = new StagedPrioritiser(correlator.getGraphs());
+		prioritiser.setParallelism(parallelism);
+		prioritiser.setEditDistance(editDistance);
+		prioritiser.distances();
+	}
+
+	@Benchmark
+	public int distanceMatrix() {
+		// A fresh cache each time, as for a new list of meta-alerts.
+		prioritiser.setEditDistance(editDistance);
+		return prioritiser.distances();
+	}
+
+	@Benchmark
+	public double lof() {
+		return prioritiser.lofs();
+	}
+}
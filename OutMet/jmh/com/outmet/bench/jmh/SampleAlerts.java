@@ -0,0 +1,93 @@
+package com.outmet.bench.jmh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import com.outmet.data.Alert;
+import com.outmet.io.CsvAlertReader;
+
+/**
+ * Alert sets of any size shaped like data/sample_alerts.csv. The sample is
+ * repeated, each copy shifted by the time span of the sample and with its
+ * 10.x.0.0/16 networks moved to a network of their own, so that the names,
+ * the mix of addresses and the rate of the sample are kept while the number
+ * of hosts grows with the size.
+ *
+ * @author riyanat
+ *
+ */
+public class SampleAlerts {
+
+	public static final String SAMPLE = "data/sample_alerts.csv";
+
+	private SampleAlerts() {
+	}
+
+	/**
+	 * @return n alerts sorted by start time.
+	 */
+	public static List<Alert> create(int n) throws IOException {
+		return create(SAMPLE, n);
+	}
+
+	public static List<Alert> create(String sample, int n) throws IOException {
+		List<Alert> template = new ArrayList<Alert>();
+		CsvAlertReader reader = new CsvAlertReader(sample, ',');
+		try {
+			while (reader.hasNext()) {
+				template.add(reader.next());
+			}
+		} finally {
+			reader.close();
+		}
+		Collections.sort(template, new Comparator<Alert>() {
+			@Override
+			public int compare(Alert a, Alert b) {
+				return a.getStartTime().compareTo(b.getStartTime());
+			}
+		});
+
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for (Alert alert : template) {
+			first = Math.min(first, alert.getStartTime().getTime());
+			last = Math.max(last, alert.getStartTime().getTime());
+		}
+		long span = last - first + 1;
+
+		List<Alert> alerts = new ArrayList<Alert>(n);
+		for (int i = 0; i < n; i++) {
+			int copy = i / template.size();
+			Alert alert = template.get(i % template.size());
+			long shift = copy * span;
+			alerts.add(new Alert(
+					new Date(alert.getStartTime().getTime() + shift),
+					new Date(alert.getEndTime().getTime() + shift),
+					String.valueOf(i + 1), alert.getName(),
+					alert.getCategory(), move(alert.getSourceIP(), copy),
+					alert.getSourcePort(), move(alert.getDestIP(), copy),
+					alert.getDestPort()));
+		}
+		return alerts;
+	}
+
+	/**
+	 * Moves an address in 10.0.0.0/8 to the network of a copy.
+	 */
+	private static String move(String ip, int copy) {
+		String trimmed = ip.trim();
+		if (copy == 0 || !trimmed.startsWith("10.")) {
+			return ip;
+		}
+		int dot = trimmed.indexOf('.', 3);
+		if (dot < 0) {
+			return ip;
+		}
+		int network = Integer.parseInt(trimmed.substring(3, dot));
+		return "10." + ((network + copy) & 255) + trimmed.substring(dot);
+	}
+}
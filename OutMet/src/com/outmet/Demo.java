@@ -1,12 +1,7 @@
 package com.outmet;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,6 +9,11 @@ import java.util.logging.Logger;
 import com.outmet.analysis.Correlator;
 import com.outmet.analysis.Prioritiser;
 import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.io.AlertFileWriter;
+import com.outmet.io.CsvAlertReader;
+import com.outmet.io.CsvAlertWriter;
 
 /***
  * 
@@ -38,92 +38,90 @@ import com.outmet.data.Alert;
 /**
  * Demos how outmet works. (Uses default settings). The number of meta-alerts
  * and prioritised alerts are output at the end of the analysis This demo
- * assumes all input alerts in the csv are sorted by start time
+ * assumes all input alerts in the csv are sorted by start time. Alerts are
+ * streamed from the csv into the correlator, and written out meta-alert by
+ * meta-alert with their priorities.
  */
 public class Demo {
 	private static final Logger log = Logger.getLogger(Demo.class.getName());
 
-	private static List<Alert> readAlertsFromCSV(String filename,
-			String delimiter) {
-		List<Alert> alerts = new ArrayList<Alert>();
-		BufferedReader br = null;
-		String line = "";
+	private static void correlateAlertsFromCSV(Correlator correlator,
+			String filename, char delimiter) {
+		CsvAlertReader reader = null;
 
 		try {
-			br = new BufferedReader(new FileReader(filename));
-			line = br.readLine();
-			while (line != null) {
-				// Each alert is represented on a line.
-				String[] lineSplit = line.split(delimiter);
-
-				// Each line should have 9 features for each alert.
-				if (lineSplit.length == 9) {
-					Date startDate = new Date(Long.parseLong(lineSplit[0]));
-					Date endDate = new Date(Long.parseLong(lineSplit[1]));
-					Alert alert = new Alert(startDate, endDate, lineSplit[2],
-							lineSplit[3], lineSplit[4], lineSplit[5],
-							lineSplit[6], lineSplit[7], lineSplit[8]);
-					alerts.add(alert);
-				}
-				line = br.readLine();
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			reader = new CsvAlertReader(filename, delimiter);
+			correlator.run(reader);
 		} catch (IOException e) {
 			e.printStackTrace();
 		} finally {
 			try {
-				br.close();
+				if (reader != null) {
+					reader.close();
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
-		log.log(Level.INFO, "Read " + alerts.size() + " alerts from: "
-				+ filename);
-		return alerts;
 	}
 	
-	private static void writeAlertsToCSV(String filename, String delimiter, List<Alert> alerts) {
-		FileWriter writer;
+	private static void writeAlertsToCSV(String filename, char delimiter,
+			List<Graph<Alert>> graphs) {
+		CsvAlertWriter writer = null;
 		try {
-			writer = new FileWriter(filename);
-		for (Alert alert : alerts) {
-			writer.append(Long.toString(alert.getStartTime().getTime()));
-			writer.append(delimiter);
-			writer.append(Long.toString(alert.getEndTime().getTime()));
-			writer.append(delimiter);
-			writer.append(alert.getKey());
-			writer.append(delimiter);
-			writer.append(alert.getName());
-			writer.append(delimiter);
-			writer.append(alert.getCategory());
-			writer.append(delimiter);
-			writer.append(alert.getSourceIP());
-			writer.append(delimiter);
-			writer.append(alert.getSourcePort());
-			writer.append(delimiter);
-			writer.append(alert.getDestIP());
-			writer.append(delimiter);
-			writer.append(alert.getDestPort());
-			writer.append(delimiter);
-			writer.append(Double.toString(alert.getOutMetPriority()));
-			writer.append("\n");
-		}
-		log.log(Level.INFO, "writing newly prioritised alerts to " + filename);
-		} catch (Exception e) {
+			writer = new CsvAlertWriter(new File(filename), delimiter, true);
+			for (Graph<Alert> graph : graphs) {
+				for (Node<Alert> node : graph.getNodes()) {
+					writer.write(node.getElement());
+				}
+			}
+			log.log(Level.INFO, "writing newly prioritised alerts to " + filename);
+		} catch (IOException e) {
 			log.log(Level.WARNING, "Error in writing results to file");
+		} finally {
+			try {
+				if (writer != null) {
+					writer.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static void writeMetaAlerts(String filename,
+			List<Graph<Alert>> graphs) {
+		AlertFileWriter writer = null;
+		try {
+			writer = new AlertFileWriter(filename);
+			for (Graph<Alert> graph : graphs) {
+				writer.write(graph);
+			}
+			log.log(Level.INFO, "writing prioritised meta-alerts to " + filename);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Error in writing meta-alerts to file");
+		} finally {
+			try {
+				if (writer != null) {
+					writer.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		}
 	}
 
 	public static void main(String[] args) {
-		List<Alert> alerts = readAlertsFromCSV("data/sample_alerts.csv", ",");
 		Correlator correlator = new Correlator();
-		correlator.run(alerts);
+		correlateAlertsFromCSV(correlator, "data/sample_alerts.csv", ',');
 
 		int k = Math.round(correlator.getGraphs().size() * 0.1f);
 		Prioritiser prioritiser = new Prioritiser(k, correlator.getGraphs());
 		prioritiser.run();
 		
-		writeAlertsToCSV("data/prioritised_sample_alerts.csv", ",", alerts);
+		writeAlertsToCSV("data/prioritised_sample_alerts.csv", ',',
+				correlator.getGraphs());
+		writeMetaAlerts("data/prioritised_sample_meta_alerts.bin",
+				correlator.getGraphs());
 	}
 }
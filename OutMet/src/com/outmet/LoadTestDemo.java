@@ -0,0 +1,79 @@
+package com.outmet;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.analysis.MetaAlertListener;
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.io.AlertGenerator;
+import com.outmet.io.CsvAlertWriter;
+
+/**
+ * Generates a synthetic alert workload with {@link AlertGenerator}. If an
+ * output csv is given the alerts are written to it, otherwise they are
+ * streamed straight into a {@link Correlator} and the throughput and heap
+ * use are logged every million alerts.
+ *
+ * Arguments: number of alerts, alerts per second, output csv.
+ *
+ * @author riyanat
+ *
+ */
+public class LoadTestDemo {
+	private static final Logger log = Logger.getLogger(LoadTestDemo.class
+			.getName());
+
+	private static final int REPORT_INTERVAL = 1000000;
+
+	public static void main(String[] args) throws IOException {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(args.length > 0 ? Long.parseLong(args[0])
+				: 10000000);
+		if (args.length > 1) {
+			generator.setRate(Double.parseDouble(args[1]));
+		}
+
+		long start = System.currentTimeMillis();
+		if (args.length > 2) {
+			CsvAlertWriter writer = new CsvAlertWriter(args[2], ',');
+			try {
+				for (Alert alert : generator) {
+					writer.write(alert);
+				}
+			} finally {
+				writer.close();
+			}
+			log.log(Level.INFO, "Wrote " + writer.getAlertCount()
+					+ " alerts to " + args[2] + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+			return;
+		}
+
+		final long[] closed = new long[1];
+		Correlator correlator = new Correlator();
+		correlator.setMetaAlertListener(new MetaAlertListener() {
+			@Override
+			public void metaAlertClosed(Graph<Alert> graph) {
+				closed[0]++;
+			}
+		});
+		long alerts = 0;
+		for (Alert alert : generator) {
+			correlator.offer(alert);
+			if (++alerts % REPORT_INTERVAL == 0) {
+				Runtime runtime = Runtime.getRuntime();
+				log.log(Level.INFO, alerts + " alerts, " + closed[0]
+						+ " meta-alerts closed, heap "
+						+ (runtime.totalMemory() - runtime.freeMemory() >> 20)
+						+ " MB; " + correlator.getMetrics());
+			}
+		}
+		correlator.flush();
+		log.log(Level.INFO, "Correlated " + alerts + " alerts into "
+				+ closed[0] + " meta-alerts in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
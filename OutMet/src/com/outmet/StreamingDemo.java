@@ -0,0 +1,93 @@
+package com.outmet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.outmet.analysis.AlertAggregator;
+import com.outmet.analysis.MetaAlertListener;
+import com.outmet.analysis.PrioritisationEngine;
+import com.outmet.analysis.ReorderBuffer;
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.io.CsvAlertReader;
+import com.outmet.io.CsvAlertWriter;
+
+/**
+ * Demos outmet as a long-running pipeline. Alerts are read from a csv one at
+ * a time and prioritised over a sliding window of meta-alerts; each alert is
+ * written out with its final priority once its meta-alert leaves the window.
+ * This demo assumes all input alerts in the csv are sorted by start time,
+ * unless a maximum lateness is given, in which case they are put in order by
+ * a {@link ReorderBuffer}. If an aggregation window is given too, repeated
+ * alerts are merged by an {@link AlertAggregator} before they are
+ * prioritised.
+ *
+ * Arguments: input csv, output csv, k, window, rescore interval and maximum
+ * lateness in minutes, and aggregation window in seconds.
+ *
+ * @author riyanat
+ *
+ */
+public class StreamingDemo {
+	private static final Logger log = Logger.getLogger(StreamingDemo.class
+			.getName());
+
+	public static void main(String[] args) throws IOException {
+		String input = args.length > 0 ? args[0] : "data/sample_alerts.csv";
+		String output = args.length > 1 ? args[1]
+				: "data/prioritised_sample_alerts.csv";
+		int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		long window = args.length > 3 ? Long.parseLong(args[3]) : 24 * 60;
+		long rescore = args.length > 4 ? Long.parseLong(args[4]) : 10;
+
+		PrioritisationEngine engine = new PrioritisationEngine(k);
+		engine.setWindowMillis(window * 60000L);
+		engine.setRescoreMillis(rescore * 60000L);
+
+		final CsvAlertWriter writer = new CsvAlertWriter(new File(output), ',',
+				true);
+		CsvAlertReader reader = new CsvAlertReader(input, ',');
+		try {
+			engine.setMetaAlertListener(new MetaAlertListener() {
+				@Override
+				public void metaAlertClosed(Graph<Alert> graph) {
+					try {
+						for (Node<Alert> node : graph.getNodes()) {
+							writer.write(node.getElement());
+						}
+					} catch (IOException e) {
+						log.log(Level.WARNING, "Error in writing results to file",
+								e);
+					}
+				}
+			});
+			Iterator<Alert> alerts = reader;
+			if (args.length > 5) {
+				alerts = new ReorderBuffer(Long.parseLong(args[5]) * 60000L)
+						.reorder(reader);
+			}
+			if (args.length > 6) {
+				alerts = new AlertAggregator(Long.parseLong(args[6]) * 1000L)
+						.aggregate(alerts);
+			}
+			while (alerts.hasNext()) {
+				engine.offer(alerts.next());
+			}
+			engine.flush();
+			// Write out what is left in the window.
+			for (Graph<Alert> graph : engine.getPrioritiser().getGraphs()) {
+				for (Node<Alert> node : graph.getNodes()) {
+					writer.write(node.getElement());
+				}
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+		log.log(Level.INFO, "writing newly prioritised alerts to " + output);
+	}
+}
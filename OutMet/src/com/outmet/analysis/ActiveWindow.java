@@ -0,0 +1,584 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * The set of graphs with activity in the last {timeThreshold} minutes, i.e.
+ * the candidates a new alert may be correlated with.
+ *
+ * Each graph occupies a slot holding its last alert's table row and times.
+ * Slots are kept in a dense array for scanning, and in a ring of time buckets
+ * keyed by the end time of their last alert for expiry. Moving the cutoff
+ * forward drops whole buckets, so expiry is amortised O(1) per graph. A graph
+ * whose end time is before the cutoff but whose bucket has not been dropped
+ * yet is expired lazily: {@link #isExpired(int)} is true and it is not
+ * reported by {@link #contains(Graph)} or {@link #peek()}.
+ *
+ * Candidates for a new alert are enumerated with
+ * {@link #candidates(long, long, long)}. If a candidate filter is set, only
+ * graphs whose last alert started within the recent horizon, or whose
+ * addresses share a prefix with the new alert's addresses (through a
+ * {@link PrefixIndex}), are candidates. Otherwise every graph is.
+ *
+ * @author riyanat
+ *
+ */
+public class ActiveWindow {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The number of buckets per time threshold.
+	 */
+	private static final int BUCKETS_PER_THRESHOLD = 8;
+
+	// Slot storage.
+	private Graph<Alert>[] graphs;
+	private int[] rows;
+	private long[] startTimes;
+	private long[] endTimes;
+	private long[] sourceIps;
+	private long[] destIps;
+	private long[] sequences;
+	private int[] positions;
+	private int[] nextInBucket;
+	private int[] previousInBucket;
+	private int[] buckets;
+	private int freeSlot;
+
+	/**
+	 * The slots of all graphs in the window, positions[slot] is the index of a
+	 * slot in this array.
+	 */
+	private int[] active;
+	private int size;
+
+	// The ring of buckets; bucket b covers end times [b * width, (b + 1) *
+	// width) and is stored at bucketHeads[b & (bucketHeads.length - 1)].
+	private int[] bucketHeads;
+	private long bucketWidth;
+	private long oldestBucket;
+
+	/**
+	 * Graphs whose last alert ended before cutoff are expired.
+	 */
+	private long cutoff;
+
+	private long sequence;
+
+	/**
+	 * Indexes slots by address prefix, null if there is no candidate filter.
+	 */
+	private PrefixIndex index;
+
+	/**
+	 * Graphs whose last alert started less than this many millis before a new
+	 * alert are always candidates.
+	 */
+	private long recentHorizon;
+
+	// A FIFO of (slot, sequence, start time) for each update, in order of
+	// start time, used to find the recent graphs.
+	private int[] recentSlots;
+	private long[] recentSequences;
+	private long[] recentStartTimes;
+	private int recentHead;
+	private int recentSize;
+
+	// The result of candidates(), and the stamps used to list each slot once.
+	private int[] candidates;
+	private int[] visited;
+	private int stamp;
+
+	/**
+	 * @param timeThreshold
+	 *            the width of the window in millis.
+	 */
+	@SuppressWarnings("unchecked")
+	public ActiveWindow(long timeThreshold) {
+		graphs = (Graph<Alert>[]) new Graph<?>[INITIAL_CAPACITY];
+		rows = new int[INITIAL_CAPACITY];
+		startTimes = new long[INITIAL_CAPACITY];
+		endTimes = new long[INITIAL_CAPACITY];
+		sourceIps = new long[INITIAL_CAPACITY];
+		destIps = new long[INITIAL_CAPACITY];
+		sequences = new long[INITIAL_CAPACITY];
+		positions = new int[INITIAL_CAPACITY];
+		nextInBucket = new int[INITIAL_CAPACITY];
+		previousInBucket = new int[INITIAL_CAPACITY];
+		buckets = new int[INITIAL_CAPACITY];
+		active = new int[INITIAL_CAPACITY];
+		candidates = new int[INITIAL_CAPACITY];
+		visited = new int[INITIAL_CAPACITY];
+		initFreeSlots(0);
+
+		recentSlots = new int[INITIAL_CAPACITY];
+		recentSequences = new long[INITIAL_CAPACITY];
+		recentStartTimes = new long[INITIAL_CAPACITY];
+
+		bucketWidth = Math.max(1, timeThreshold / BUCKETS_PER_THRESHOLD);
+		bucketHeads = new int[2 * BUCKETS_PER_THRESHOLD];
+		Arrays.fill(bucketHeads, -1);
+		oldestBucket = Long.MIN_VALUE;
+		cutoff = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Adds a graph whose last alert is in {row} of the correlator's table, or
+	 * -1 if it is not in a table. Addresses are encoded as by
+	 * {@link AlertTable#encodeIp(String)}.
+	 *
+	 * @return the slot of the graph.
+	 */
+	public int add(Graph<Alert> graph, int row, long startTime, long endTime,
+			long sourceIp, long destIp) {
+		if (freeSlot < 0) {
+			grow();
+		}
+		int slot = freeSlot;
+		freeSlot = nextInBucket[slot];
+
+		graphs[slot] = graph;
+		positions[slot] = size;
+		active[size++] = slot;
+		set(slot, row, startTime, endTime, sourceIp, destIp);
+		return slot;
+	}
+
+	/**
+	 * Records a new last alert for the graph in {slot}.
+	 */
+	public void update(int slot, int row, long startTime, long endTime,
+			long sourceIp, long destIp) {
+		unlink(slot);
+		if (index != null) {
+			index.remove(slot);
+		}
+		set(slot, row, startTime, endTime, sourceIp, destIp);
+	}
+
+	/**
+	 * Removes the graph in {slot}.
+	 *
+	 * @return the removed graph.
+	 */
+	public Graph<Alert> remove(int slot) {
+		Graph<Alert> graph = graphs[slot];
+		unlink(slot);
+		if (index != null) {
+			index.remove(slot);
+		}
+
+		// Move the last active slot into the removed slot's position.
+		int position = positions[slot];
+		int last = active[--size];
+		active[position] = last;
+		positions[last] = position;
+
+		graphs[slot] = null;
+		nextInBucket[slot] = freeSlot;
+		freeSlot = slot;
+		return graph;
+	}
+
+	/**
+	 * Moves the cutoff forward and removes the graphs in every bucket that now
+	 * lies entirely before it. A cutoff earlier than the current one is
+	 * ignored.
+	 *
+	 * @param expired
+	 *            receives the removed graphs.
+	 */
+	public void expire(long newCutoff, List<Graph<Alert>> expired) {
+		if (newCutoff <= cutoff) {
+			return;
+		}
+		cutoff = newCutoff;
+
+		long cutoffBucket = floorDiv(cutoff, bucketWidth);
+		if (oldestBucket == Long.MIN_VALUE || size == 0) {
+			oldestBucket = cutoffBucket;
+			return;
+		}
+
+		// Only the buckets that hold slots need to be visited.
+		long last = Math.min(cutoffBucket, oldestBucket + bucketHeads.length);
+		while (oldestBucket < last) {
+			int index = (int) (oldestBucket & (bucketHeads.length - 1));
+			int slot = bucketHeads[index];
+			bucketHeads[index] = -1;
+			oldestBucket++;
+
+			while (slot >= 0) {
+				int next = nextInBucket[slot];
+				previousInBucket[slot] = -1;
+				nextInBucket[slot] = -1;
+				if (next >= 0) {
+					previousInBucket[next] = -1;
+				}
+
+				if (endTimes[slot] < cutoff) {
+					expired.add(remove(slot));
+				} else {
+					// Clamped into this bucket, re-file it.
+					link(slot);
+				}
+				slot = next;
+			}
+		}
+		oldestBucket = Math.max(oldestBucket, cutoffBucket);
+	}
+
+	/**
+	 * Restricts candidates to graphs whose last alert started less than
+	 * recentHorizon millis before the new alert, or whose addresses share a
+	 * prefix of prefixLength bits with it. A prefixLength of 0 removes the
+	 * filter.
+	 */
+	public void setCandidateFilter(int prefixLength, long recentHorizon) {
+		this.recentHorizon = recentHorizon;
+		recentHead = recentSize = 0;
+		if (prefixLength <= 0) {
+			index = null;
+			return;
+		}
+
+		index = new PrefixIndex(prefixLength, graphs.length);
+		for (int i = 0; i < size; i++) {
+			int slot = active[i];
+			index.add(slot, sourceIps[slot], destIps[slot]);
+			pushRecent(slot);
+		}
+	}
+
+	/**
+	 * Lists the graphs a new alert may be correlated with, see
+	 * {@link #setCandidateFilter(int, long)}. The slots are read with
+	 * {@link #candidateAt(int)} and stay valid while slots are removed.
+	 *
+	 * @return the number of candidates.
+	 */
+	public int candidates(long startTime, long sourceIp, long destIp) {
+		if (index == null) {
+			System.arraycopy(active, 0, candidates, 0, size);
+			return size;
+		}
+
+		if (++stamp == 0) {
+			Arrays.fill(visited, 0);
+			stamp = 1;
+		}
+		int count = 0;
+
+		// Graphs that are no longer recent leave the FIFO.
+		long recentSince = startTime - recentHorizon;
+		while (recentSize > 0 && recentStartTimes[recentHead] <= recentSince) {
+			recentHead = (recentHead + 1) % recentSlots.length;
+			recentSize--;
+		}
+		for (int i = 0; i < recentSize; i++) {
+			int entry = (recentHead + i) % recentSlots.length;
+			int slot = recentSlots[entry];
+			if (graphs[slot] != null
+					&& sequences[slot] == recentSequences[entry]) {
+				count = visit(slot, count);
+			}
+		}
+
+		// The source of alert_i is compared with both addresses of alert_k,
+		// the destination of alert_i with the source of alert_k.
+		for (int slot = index.first(PrefixIndex.SOURCE, sourceIp); slot >= 0; slot = index
+				.next(PrefixIndex.SOURCE, slot)) {
+			count = visit(slot, count);
+		}
+		for (int slot = index.first(PrefixIndex.SOURCE, destIp); slot >= 0; slot = index
+				.next(PrefixIndex.SOURCE, slot)) {
+			count = visit(slot, count);
+		}
+		for (int slot = index.first(PrefixIndex.DEST, sourceIp); slot >= 0; slot = index
+				.next(PrefixIndex.DEST, slot)) {
+			count = visit(slot, count);
+		}
+		for (int slot = index.first(PrefixIndex.UNINDEXED, 0); slot >= 0; slot = index
+				.next(PrefixIndex.UNINDEXED, slot)) {
+			count = visit(slot, count);
+		}
+		return count;
+	}
+
+	public int candidateAt(int i) {
+		return candidates[i];
+	}
+
+	private int visit(int slot, int count) {
+		if (visited[slot] != stamp) {
+			visited[slot] = stamp;
+			candidates[count++] = slot;
+		}
+		return count;
+	}
+
+	private void pushRecent(int slot) {
+		if (recentSize == recentSlots.length) {
+			int capacity = 2 * recentSlots.length;
+			int[] slots = new int[capacity];
+			long[] sequenceNumbers = new long[capacity];
+			long[] times = new long[capacity];
+			for (int i = 0; i < recentSize; i++) {
+				int entry = (recentHead + i) % recentSlots.length;
+				slots[i] = recentSlots[entry];
+				sequenceNumbers[i] = recentSequences[entry];
+				times[i] = recentStartTimes[entry];
+			}
+			recentSlots = slots;
+			recentSequences = sequenceNumbers;
+			recentStartTimes = times;
+			recentHead = 0;
+		}
+		int entry = (recentHead + recentSize) % recentSlots.length;
+		recentSlots[entry] = slot;
+		recentSequences[entry] = sequences[slot];
+		recentStartTimes[entry] = startTimes[slot];
+		recentSize++;
+	}
+
+	/**
+	 * @return true if the graph in {slot} ended before the cutoff but has not
+	 *         been removed yet.
+	 */
+	public boolean isExpired(int slot) {
+		return endTimes[slot] < cutoff;
+	}
+
+	/**
+	 * Returns the unexpired graph with the earliest activity. This scans the
+	 * window and is meant for inspection, not for the correlation loop.
+	 */
+	public Graph<Alert> peek() {
+		int earliest = -1;
+		for (int i = 0; i < size; i++) {
+			int slot = active[i];
+			if (!isExpired(slot)
+					&& (earliest < 0 || endTimes[slot] < endTimes[earliest])) {
+				earliest = slot;
+			}
+		}
+		return earliest < 0 ? null : graphs[earliest];
+	}
+
+	/**
+	 * Returns true if the graph is in the window and has not expired. This
+	 * scans the window and is meant for inspection, not for the correlation
+	 * loop.
+	 */
+	public boolean contains(Graph<Alert> graph) {
+		return slotOf(graph) >= 0;
+	}
+
+	/**
+	 * Returns the slot of an unexpired graph, or -1. Scans the window.
+	 */
+	public int slotOf(Graph<Alert> graph) {
+		for (int i = 0; i < size; i++) {
+			int slot = active[i];
+			if (graphs[slot] == graph && !isExpired(slot)) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the slots of all graphs ordered from the earliest to the most
+	 * recent activity.
+	 */
+	public int[] slotsByActivity() {
+		Integer[] ordered = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			ordered[i] = active[i];
+		}
+		Arrays.sort(ordered, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return isMoreRecent(a, b) ? 1 : isMoreRecent(b, a) ? -1 : 0;
+			}
+		});
+		int[] slots = new int[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = ordered[i];
+		}
+		return slots;
+	}
+
+	/**
+	 * @return true if the graph in slot a was active more recently than the
+	 *         graph in slot b: its last alert ended later or, at the same
+	 *         time, was added later.
+	 */
+	public boolean isMoreRecent(int a, int b) {
+		return endTimes[a] > endTimes[b]
+				|| (endTimes[a] == endTimes[b] && sequences[a] > sequences[b]);
+	}
+
+	// Slot accessors.
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the slot at {index} of the dense slot array, 0 <= index < size().
+	 *         Removing a slot moves the last slot into its index, so scans
+	 *         that remove should run from the last index down.
+	 */
+	public int slotAt(int index) {
+		return active[index];
+	}
+
+	public Graph<Alert> getGraph(int slot) {
+		return graphs[slot];
+	}
+
+	public int getRow(int slot) {
+		return rows[slot];
+	}
+
+	public void setRow(int slot, int row) {
+		rows[slot] = row;
+	}
+
+	/**
+	 * Re-encodes the addresses of {slot}, e.g. for a new dictionary. Only
+	 * addresses that are not IPv4 may change, as they are not in the prefix
+	 * index.
+	 */
+	public void setAddresses(int slot, long sourceIp, long destIp) {
+		sourceIps[slot] = sourceIp;
+		destIps[slot] = destIp;
+	}
+
+	public long getStartTime(int slot) {
+		return startTimes[slot];
+	}
+
+	public long getEndTime(int slot) {
+		return endTimes[slot];
+	}
+
+	public long getSourceIp(int slot) {
+		return sourceIps[slot];
+	}
+
+	public long getDestIp(int slot) {
+		return destIps[slot];
+	}
+
+	/**
+	 * Orders updates at the same end time, see
+	 * {@link #isMoreRecent(int, int)}.
+	 */
+	public long getSequence(int slot) {
+		return sequences[slot];
+	}
+
+	public long getCutoff() {
+		return cutoff;
+	}
+
+	private void set(int slot, int row, long startTime, long endTime,
+			long sourceIp, long destIp) {
+		rows[slot] = row;
+		startTimes[slot] = startTime;
+		endTimes[slot] = endTime;
+		sourceIps[slot] = sourceIp;
+		destIps[slot] = destIp;
+		sequences[slot] = sequence++;
+		link(slot);
+		if (index != null) {
+			index.add(slot, sourceIp, destIp);
+			pushRecent(slot);
+		}
+	}
+
+	/**
+	 * Files a slot in the bucket of its end time. End times before the oldest
+	 * bucket go in the oldest bucket and end times past the ring go in its
+	 * newest bucket; they are re-filed when that bucket is dropped.
+	 */
+	private void link(int slot) {
+		long bucket = floorDiv(endTimes[slot], bucketWidth);
+		if (oldestBucket == Long.MIN_VALUE) {
+			oldestBucket = bucket;
+		}
+		bucket = Math.max(bucket, oldestBucket);
+		bucket = Math.min(bucket, oldestBucket + bucketHeads.length - 1);
+		int index = (int) (bucket & (bucketHeads.length - 1));
+
+		buckets[slot] = index;
+		previousInBucket[slot] = -1;
+		nextInBucket[slot] = bucketHeads[index];
+		if (bucketHeads[index] >= 0) {
+			previousInBucket[bucketHeads[index]] = slot;
+		}
+		bucketHeads[index] = slot;
+	}
+
+	private static long floorDiv(long x, long y) {
+		long quotient = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			quotient--;
+		}
+		return quotient;
+	}
+
+	private void unlink(int slot) {
+		int previous = previousInBucket[slot];
+		int next = nextInBucket[slot];
+		if (previous >= 0) {
+			nextInBucket[previous] = next;
+		} else if (bucketHeads[buckets[slot]] == slot) {
+			bucketHeads[buckets[slot]] = next;
+		}
+		if (next >= 0) {
+			previousInBucket[next] = previous;
+		}
+		previousInBucket[slot] = -1;
+		nextInBucket[slot] = -1;
+	}
+
+	private void grow() {
+		int oldCapacity = graphs.length;
+		int capacity = oldCapacity * 2;
+		graphs = Arrays.copyOf(graphs, capacity);
+		rows = Arrays.copyOf(rows, capacity);
+		startTimes = Arrays.copyOf(startTimes, capacity);
+		endTimes = Arrays.copyOf(endTimes, capacity);
+		sourceIps = Arrays.copyOf(sourceIps, capacity);
+		destIps = Arrays.copyOf(destIps, capacity);
+		sequences = Arrays.copyOf(sequences, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		nextInBucket = Arrays.copyOf(nextInBucket, capacity);
+		previousInBucket = Arrays.copyOf(previousInBucket, capacity);
+		buckets = Arrays.copyOf(buckets, capacity);
+		active = Arrays.copyOf(active, capacity);
+		candidates = Arrays.copyOf(candidates, capacity);
+		visited = Arrays.copyOf(visited, capacity);
+		initFreeSlots(oldCapacity);
+	}
+
+	private void initFreeSlots(int from) {
+		int capacity = graphs.length;
+		for (int slot = from; slot < capacity; slot++) {
+			nextInBucket[slot] = slot + 1 < capacity ? slot + 1 : -1;
+		}
+		freeSlot = from;
+	}
+}
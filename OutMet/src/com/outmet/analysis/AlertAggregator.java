@@ -0,0 +1,244 @@
+package com.outmet.analysis;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
+
+import com.outmet.data.Alert;
+
+/**
+ * Merges repeated alerts before correlation, so that a flood of identical
+ * alerts becomes one alert rather than thousands of nodes. Alerts with the
+ * same name, source address, destination address and destination port class
+ * (see {@link Alert#getDestPortClass(String)}) that start within
+ * {windowMillis} of the first of them are merged into that first alert: its
+ * count becomes the sum of their counts, a count of 0 counting as 1, and its
+ * end time the latest of their end times. Every alert passed on has a count
+ * of at least 1, so that the count is the number of alerts it stands for
+ * whether or not it was merged; the Correlator weighs nodes by it.
+ *
+ * Alerts are changed in place: the first alert of each aggregate is the one
+ * passed on, with its count and end time set as above, and the alerts merged
+ * into it are dropped.
+ *
+ * Open aggregates are kept in a hash table in order of their first alert.
+ * Alerts must be offered in order of start time, e.g. through a
+ * {@link ReorderBuffer}; each aggregate is then released once an alert
+ * starts more than {windowMillis} after its first alert, so aggregates are
+ * released in order of start time too, at most {windowMillis} late.
+ *
+ * Alerts are pushed with offer() and taken with poll(), or an iterator of
+ * alerts is aggregated with aggregate(). Call flush() at the end of a stream
+ * to release the open aggregates.
+ *
+ * @author riyanat
+ *
+ */
+public class AlertAggregator {
+
+	/**
+	 * The time over which repeats are merged.
+	 */
+	private long windowMillis;
+
+	/**
+	 * The open aggregates by key, in order of their first alert.
+	 */
+	private LinkedHashMap<Key, Alert> open;
+
+	/**
+	 * Aggregates released and not yet polled.
+	 */
+	private Deque<Alert> released;
+
+	private long alerts;
+	private long aggregates;
+
+	/**
+	 * The fields an alert is aggregated on.
+	 */
+	private static class Key {
+		private String name;
+		private String sourceIp;
+		private String destIp;
+		private String destPortClass;
+		private int hash;
+
+		Key(Alert alert) {
+			name = alert.getName();
+			sourceIp = alert.getSourceIP();
+			destIp = alert.getDestIP();
+			destPortClass = Alert.getDestPortClass(alert.getDestPort());
+			hash = hashCode(name);
+			hash = 31 * hash + hashCode(sourceIp);
+			hash = 31 * hash + hashCode(destIp);
+			hash = 31 * hash + hashCode(destPortClass);
+		}
+
+		private static int hashCode(String value) {
+			return value == null ? 0 : value.hashCode();
+		}
+
+		private static boolean equals(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) object;
+			return hash == key.hash && equals(name, key.name)
+					&& equals(sourceIp, key.sourceIp)
+					&& equals(destIp, key.destIp)
+					&& equals(destPortClass, key.destPortClass);
+		}
+	}
+
+	/**
+	 * @param windowMillis
+	 *            the time after the first of a set of repeated alerts within
+	 *            which repeats are merged into it.
+	 */
+	public AlertAggregator(long windowMillis) {
+		if (windowMillis < 0) {
+			throw new IllegalArgumentException("Window " + windowMillis
+					+ " out of range");
+		}
+		this.windowMillis = windowMillis;
+		open = new LinkedHashMap<Key, Alert>();
+		released = new ArrayDeque<Alert>();
+	}
+
+	/**
+	 * Merges an alert into an open aggregate, or opens one with it. The
+	 * alert that opens an aggregate is changed as it is merged into, see
+	 * {@link AlertAggregator}.
+	 */
+	public void offer(Alert alert) {
+		alerts++;
+		long startTime = alert.getStartTime().getTime();
+		release(startTime - windowMillis);
+
+		Key key = new Key(alert);
+		Alert aggregate = open.get(key);
+		if (aggregate == null) {
+			alert.setCount(Math.max(1, alert.getCount()));
+			open.put(key, alert);
+			return;
+		}
+		aggregate.setCount(aggregate.getCount()
+				+ Math.max(1, alert.getCount()));
+		if (alert.getEndTime().after(aggregate.getEndTime())) {
+			aggregate.setEndTime(new Date(alert.getEndTime().getTime()));
+		}
+	}
+
+	/**
+	 * Releases the aggregates whose first alert started before since.
+	 */
+	private void release(long since) {
+		Iterator<Alert> aggregates = open.values().iterator();
+		while (aggregates.hasNext()) {
+			Alert aggregate = aggregates.next();
+			if (aggregate.getStartTime().getTime() >= since) {
+				break;
+			}
+			aggregates.remove();
+			released.addLast(aggregate);
+			this.aggregates++;
+		}
+	}
+
+	/**
+	 * @return the next released aggregate, or null if none is ready.
+	 */
+	public Alert poll() {
+		return released.pollFirst();
+	}
+
+	/**
+	 * Releases all open aggregates, e.g. at the end of a stream.
+	 */
+	public void flush() {
+		release(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Aggregates a stream of alerts. The stream is read as the returned
+	 * iterator is, and flushed at its end.
+	 */
+	public Iterator<Alert> aggregate(final Iterator<Alert> input) {
+		return new Iterator<Alert>() {
+			private Alert next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null) {
+					next = poll();
+					if (next != null) {
+						break;
+					}
+					if (input.hasNext()) {
+						offer(input.next());
+					} else if (!open.isEmpty()) {
+						flush();
+					} else {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public Alert next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Alert alert = next;
+				next = null;
+				return alert;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	// Setters and getters.
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * The number of open aggregates.
+	 */
+	public int size() {
+		return open.size();
+	}
+
+	/**
+	 * The number of alerts offered.
+	 */
+	public long getAlertCount() {
+		return alerts;
+	}
+
+	/**
+	 * The number of aggregates released.
+	 */
+	public long getAggregateCount() {
+		return aggregates;
+	}
+}
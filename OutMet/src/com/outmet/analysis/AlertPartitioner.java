@@ -0,0 +1,21 @@
+package com.outmet.analysis;
+
+import com.outmet.data.Alert;
+
+/**
+ * Assigns alerts to the shards of a {@link ParallelCorrelator}. Alerts that
+ * are likely to correlate should be assigned to the same shard; the boundary
+ * pass of the correlator recovers those that are not. See
+ * {@link ParallelCorrelator#DESTINATION_16} and
+ * {@link ParallelCorrelator#IP_PAIR}.
+ *
+ * @author riyanat
+ *
+ */
+public interface AlertPartitioner {
+
+	/**
+	 * @return the shard of alert, from 0 to shards - 1.
+	 */
+	int partition(Alert alert, int shards);
+}
@@ -0,0 +1,242 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.outmet.data.Alert;
+import com.outmet.data.TermDictionary;
+
+/**
+ * A columnar, pre-parsed view of a list of alerts used by the correlation hot
+ * loop. Each alert is a row; every feature is held in a primitive column so
+ * that comparing two alerts never re-parses or allocates:
+ *
+ * - start and end times as epoch millis.
+ *
+ * - source and destination addresses encoded as longs, see
+ * {@link #encodeIp(String)}.
+ *
+ * - names, categories, ports and addresses as {@link TermDictionary} ids.
+ *
+ * A row does not keep its source Alert. The caller holds on to the alerts it
+ * needs, e.g. as the nodes of meta-alerts, so a table costs only its columns
+ * and the terms of its dictionary.
+ *
+ * @author riyanat
+ *
+ */
+public class AlertTable {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private TermDictionary terms;
+
+	private int size;
+
+	private int capacity;
+
+	private long[] startTimes;
+	private long[] endTimes;
+
+	private long[] sourceIps;
+	private long[] destIps;
+
+	private int[] sourceIpTerms;
+	private int[] destIpTerms;
+	private int[] sourcePortTerms;
+	private int[] destPortTerms;
+	private int[] nameTerms;
+	private int[] categoryTerms;
+
+	private int[] counts;
+
+	public AlertTable() {
+		this(new TermDictionary(), INITIAL_CAPACITY);
+	}
+
+	public AlertTable(TermDictionary terms, int capacity) {
+		this.terms = terms;
+		this.size = 0;
+		capacity = Math.max(1, capacity);
+		this.capacity = capacity;
+		startTimes = new long[capacity];
+		endTimes = new long[capacity];
+		sourceIps = new long[capacity];
+		destIps = new long[capacity];
+		sourceIpTerms = new int[capacity];
+		destIpTerms = new int[capacity];
+		sourcePortTerms = new int[capacity];
+		destPortTerms = new int[capacity];
+		nameTerms = new int[capacity];
+		categoryTerms = new int[capacity];
+		counts = new int[capacity];
+	}
+
+	/**
+	 * Ingests a list of alerts into a new table.
+	 */
+	public static AlertTable of(List<Alert> alerts) {
+		AlertTable table = new AlertTable(new TermDictionary(), alerts.size());
+		for (Alert alert : alerts) {
+			table.add(alert);
+		}
+		return table;
+	}
+
+	/**
+	 * Appends an alert.
+	 *
+	 * @return the row of the alert.
+	 */
+	public int add(Alert alert) {
+		if (size == capacity) {
+			grow();
+		}
+		int row = size++;
+		startTimes[row] = alert.getStartTime().getTime();
+		endTimes[row] = alert.getEndTime().getTime();
+		sourceIps[row] = encodeIp(alert.getSourceIP());
+		destIps[row] = encodeIp(alert.getDestIP());
+		sourceIpTerms[row] = terms.add(alert.getSourceIP());
+		destIpTerms[row] = terms.add(alert.getDestIP());
+		sourcePortTerms[row] = terms.add(alert.getSourcePort());
+		destPortTerms[row] = terms.add(alert.getDestPort());
+		nameTerms[row] = terms.add(alert.getName());
+		categoryTerms[row] = terms.add(alert.getCategory());
+		counts[row] = alert.getCount();
+		return row;
+	}
+
+	/**
+	 * Appends a row of another table without ingesting its alert again. If
+	 * the tables have different dictionaries, the terms of the row are added
+	 * to this one and its addresses encoded again.
+	 *
+	 * @return the row in this table.
+	 */
+	public int add(AlertTable table, int row) {
+		if (size == capacity) {
+			grow();
+		}
+		int copy = size++;
+		startTimes[copy] = table.startTimes[row];
+		endTimes[copy] = table.endTimes[row];
+		counts[copy] = table.counts[row];
+		if (table.terms == terms) {
+			sourceIps[copy] = table.sourceIps[row];
+			destIps[copy] = table.destIps[row];
+			sourceIpTerms[copy] = table.sourceIpTerms[row];
+			destIpTerms[copy] = table.destIpTerms[row];
+			sourcePortTerms[copy] = table.sourcePortTerms[row];
+			destPortTerms[copy] = table.destPortTerms[row];
+			nameTerms[copy] = table.nameTerms[row];
+			categoryTerms[copy] = table.categoryTerms[row];
+			return copy;
+		}
+
+		TermDictionary from = table.terms;
+		sourceIpTerms[copy] = terms.add(from.getTerm(table.sourceIpTerms[row]));
+		destIpTerms[copy] = terms.add(from.getTerm(table.destIpTerms[row]));
+		sourcePortTerms[copy] = terms.add(from
+				.getTerm(table.sourcePortTerms[row]));
+		destPortTerms[copy] = terms.add(from.getTerm(table.destPortTerms[row]));
+		nameTerms[copy] = terms.add(from.getTerm(table.nameTerms[row]));
+		categoryTerms[copy] = terms.add(from.getTerm(table.categoryTerms[row]));
+		// An address that is not IPv4 is encoded by its own term.
+		long sourceIp = table.sourceIps[row];
+		long destIp = table.destIps[row];
+		sourceIps[copy] = sourceIp >= 0 ? sourceIp
+				: -(sourceIpTerms[copy] + 1L);
+		destIps[copy] = destIp >= 0 ? destIp : -(destIpTerms[copy] + 1L);
+		return copy;
+	}
+
+	/**
+	 * Removes all rows. The dictionary is kept so that term ids stay stable.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Encodes an address for {@link Distance#calculateIpSimilarity(long, long, TermDictionary)}
+	 * . IPv4 literals are encoded as their non-negative prefix-order value
+	 * (see {@link IpSimilarity}); anything else as -(term id + 1).
+	 */
+	public long encodeIp(String ip) {
+		long ipv4 = ip == null ? IpSimilarity.NOT_IPV4 : IpSimilarity
+				.parseIpv4(ip);
+		if (ipv4 != IpSimilarity.NOT_IPV4) {
+			return ipv4;
+		}
+		return -(terms.add(ip) + 1L);
+	}
+
+	private void grow() {
+		capacity *= 2;
+		startTimes = Arrays.copyOf(startTimes, capacity);
+		endTimes = Arrays.copyOf(endTimes, capacity);
+		sourceIps = Arrays.copyOf(sourceIps, capacity);
+		destIps = Arrays.copyOf(destIps, capacity);
+		sourceIpTerms = Arrays.copyOf(sourceIpTerms, capacity);
+		destIpTerms = Arrays.copyOf(destIpTerms, capacity);
+		sourcePortTerms = Arrays.copyOf(sourcePortTerms, capacity);
+		destPortTerms = Arrays.copyOf(destPortTerms, capacity);
+		nameTerms = Arrays.copyOf(nameTerms, capacity);
+		categoryTerms = Arrays.copyOf(categoryTerms, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+	}
+
+	// Getters.
+	public int size() {
+		return size;
+	}
+
+	public TermDictionary getTerms() {
+		return terms;
+	}
+
+	public long getStartTime(int row) {
+		return startTimes[row];
+	}
+
+	public long getEndTime(int row) {
+		return endTimes[row];
+	}
+
+	public long getSourceIp(int row) {
+		return sourceIps[row];
+	}
+
+	public long getDestIp(int row) {
+		return destIps[row];
+	}
+
+	public int getSourceIpTerm(int row) {
+		return sourceIpTerms[row];
+	}
+
+	public int getDestIpTerm(int row) {
+		return destIpTerms[row];
+	}
+
+	public int getSourcePortTerm(int row) {
+		return sourcePortTerms[row];
+	}
+
+	public int getDestPortTerm(int row) {
+		return destPortTerms[row];
+	}
+
+	public int getNameTerm(int row) {
+		return nameTerms[row];
+	}
+
+	public int getCategoryTerm(int row) {
+		return categoryTerms[row];
+	}
+
+	public int getCount(int row) {
+		return counts[row];
+	}
+}
@@ -0,0 +1,43 @@
+package com.outmet.analysis;
+
+/**
+ * Adapts an n-by-n array to a {@link DistanceMatrix}, so that matrices passed
+ * to {@link Prioritiser#setDistanceMatrix(double[][])} are used as they are.
+ * The array is not copied and is not required to be symmetric: get(i, j)
+ * reads array[i][j] and set(i, j) writes both array[i][j] and array[j][i].
+ *
+ * @author riyanat
+ *
+ */
+public class ArrayDistanceMatrix extends DistanceMatrix {
+
+	private double[][] distance;
+
+	public ArrayDistanceMatrix(double[][] distance) {
+		super(distance.length);
+		this.distance = distance;
+	}
+
+	@Override
+	public double get(int i, int j) {
+		return distance[i][j];
+	}
+
+	@Override
+	public void set(int i, int j, double distance) {
+		this.distance[i][j] = this.distance[j][i] = distance;
+	}
+
+	@Override
+	public void getRow(int i, double[] row) {
+		System.arraycopy(distance[i], 0, row, 0, n);
+	}
+
+	/**
+	 * Returns the wrapped array.
+	 */
+	@Override
+	public double[][] toArray() {
+		return distance;
+	}
+}
@@ -0,0 +1,98 @@
+package com.outmet.analysis;
+
+/**
+ * A distance matrix of meta-alerts in which meta-alerts with the same
+ * structure share a row. The distances between the distinct structures are
+ * held in a smaller matrix, and every meta-alert is mapped to its structure's
+ * row. Two different meta-alerts with the same structure are at the given
+ * duplicate distance.
+ *
+ * @author riyanat
+ *
+ */
+public class CollapsedDistanceMatrix extends DistanceMatrix {
+
+	private DistanceMatrix distinct;
+	private int[] rows;
+	private int[] multiplicities;
+	private double duplicateDistance;
+
+	/**
+	 * @param distinct
+	 *            the matrix of the distinct structures.
+	 * @param rows
+	 *            the row in distinct of each meta-alert.
+	 */
+	public CollapsedDistanceMatrix(DistanceMatrix distinct, int[] rows,
+			double duplicateDistance) {
+		super(rows.length);
+		this.distinct = distinct;
+		this.rows = rows;
+		this.duplicateDistance = duplicateDistance;
+		this.multiplicities = new int[distinct.size()];
+		for (int row : rows) {
+			multiplicities[row]++;
+		}
+	}
+
+	@Override
+	public double get(int i, int j) {
+		if (i == j) {
+			return 0;
+		}
+		int a = rows[i];
+		int b = rows[j];
+		return a == b ? duplicateDistance : distinct.get(a, b);
+	}
+
+	/**
+	 * Sets the distance of the structures of i and j, and so of every pair of
+	 * meta-alerts with those structures.
+	 */
+	@Override
+	public void set(int i, int j, double distance) {
+		if (i == j) {
+			checkDiagonal(i, distance);
+			return;
+		}
+		int a = rows[i];
+		int b = rows[j];
+		if (a == b) {
+			throw new IllegalArgumentException("Meta-alerts " + i + " and "
+					+ j + " have the same structure");
+		}
+		distinct.set(a, b, distance);
+	}
+
+	@Override
+	public void getRow(int i, double[] row) {
+		int a = rows[i];
+		for (int j = 0; j < n; j++) {
+			int b = rows[j];
+			row[j] = a == b ? duplicateDistance : distinct.get(a, b);
+		}
+		row[i] = 0;
+	}
+
+	/**
+	 * The matrix of the distinct structures.
+	 */
+	public DistanceMatrix getDistinct() {
+		return distinct;
+	}
+
+	/**
+	 * The row of meta-alert i in {@link #getDistinct()}.
+	 */
+	public int getDistinctRow(int i) {
+		return rows[i];
+	}
+
+	/**
+	 * The number of meta-alerts with the structure of the given row of
+	 * {@link #getDistinct()}.
+	 */
+	public int getMultiplicity(int row) {
+		return multiplicities[row];
+	}
+}
@@ -0,0 +1,220 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+
+import com.outmet.data.TermDictionary;
+
+/**
+ * Scores a new alert against a batch of candidate alerts at once. The
+ * features of the candidates are gathered into primitive arrays with
+ * {@link #add(long, long, long, int)}, and
+ * {@link #score(long, long, long, int, TermDictionary)} computes every
+ * correlation in one loop without object access or calls to
+ * {@link Math#pow(double, double)}.
+ *
+ * The scores are exactly those of
+ * {@link Correlator#getCorr(AlertTable, int, int)}: the features are combined
+ * by the same operations in the same order. The time proximity 1/e^t is only
+ * taken at whole t, so it is read from a table of the values of
+ * 1 / Math.pow(Math.E, t), which underflow to 0 beyond it, and the sum of the
+ * weights is computed once.
+ *
+ * The main loop assumes IPv4 addresses, and the few candidates with other
+ * addresses are corrected afterwards, so that the loop has no branches the
+ * JIT cannot turn into conditional moves.
+ *
+ * @author riyanat
+ *
+ */
+public class CorrelationKernel {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final double sourceIpWeight;
+	private final double destIpWeight;
+	private final double destPortWeight;
+	private final double weightSum;
+	private final int timeThreshold;
+
+	/**
+	 * proximity[t] is 1 / Math.pow(Math.E, t), which is 0 for larger t.
+	 */
+	private final double[] proximity;
+
+	/**
+	 * Time differences from this many millis have a proximity of 0. If it
+	 * fits an int, the time units are found by int division.
+	 */
+	private final long proximityLimit;
+
+	private long[] sourceIps;
+	private long[] destIps;
+	private long[] startTimes;
+	private int[] destPortTerms;
+	private double[] scores;
+	private int size;
+
+	/**
+	 * Whether a candidate has an address that is not IPv4.
+	 */
+	private boolean mixed;
+
+	/**
+	 * @param timeThreshold
+	 *            the time threshold of the correlator in minutes.
+	 */
+	public CorrelationKernel(double sourceIpWeight, double destIpWeight,
+			double destPortWeight, double timeProximityWeight, int timeThreshold) {
+		this.sourceIpWeight = sourceIpWeight;
+		this.destIpWeight = destIpWeight;
+		this.destPortWeight = destPortWeight;
+		this.weightSum = sourceIpWeight + destIpWeight + destPortWeight
+				+ timeProximityWeight;
+		this.timeThreshold = timeThreshold;
+
+		double[] values = new double[INITIAL_CAPACITY];
+		int t = 0;
+		for (double value = 1; value != 0; value = 1 / Math.pow(Math.E, ++t)) {
+			if (t == values.length) {
+				values = Arrays.copyOf(values, 2 * t);
+			}
+			values[t] = value;
+		}
+		this.proximity = Arrays.copyOf(values, t);
+		this.proximityLimit = (long) t * timeThreshold;
+
+		this.sourceIps = new long[INITIAL_CAPACITY];
+		this.destIps = new long[INITIAL_CAPACITY];
+		this.startTimes = new long[INITIAL_CAPACITY];
+		this.destPortTerms = new int[INITIAL_CAPACITY];
+		this.scores = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Removes all candidates.
+	 */
+	public void clear() {
+		size = 0;
+		mixed = false;
+	}
+
+	/**
+	 * Adds a candidate. Addresses are encoded as by
+	 * {@link AlertTable#encodeIp(String)}.
+	 *
+	 * @return the index of the candidate.
+	 */
+	public int add(long sourceIp, long destIp, long startTime, int destPortTerm) {
+		if (size == scores.length) {
+			grow();
+		}
+		sourceIps[size] = sourceIp;
+		destIps[size] = destIp;
+		startTimes[size] = startTime;
+		destPortTerms[size] = destPortTerm;
+		mixed |= (sourceIp | destIp) < 0;
+		return size++;
+	}
+
+	private void grow() {
+		int capacity = 2 * scores.length;
+		sourceIps = Arrays.copyOf(sourceIps, capacity);
+		destIps = Arrays.copyOf(destIps, capacity);
+		startTimes = Arrays.copyOf(startTimes, capacity);
+		destPortTerms = Arrays.copyOf(destPortTerms, capacity);
+		scores = Arrays.copyOf(scores, capacity);
+	}
+
+	/**
+	 * Scores the new alert against every candidate, see
+	 * {@link Correlator#getCorr(AlertTable, int, int)}.
+	 *
+	 * @param destIpTerm
+	 *            the dictionary term of the new alert's destination address,
+	 *            which getCorr() compares with the candidates' destination
+	 *            ports.
+	 * @param terms
+	 *            decodes addresses that are not IPv4.
+	 */
+	public void score(long sourceIp, long destIp, long startTime,
+			int destIpTerm, TermDictionary terms) {
+		int source = (int) sourceIp;
+		int dest = (int) destIp;
+		for (int i = 0; i < size; i++) {
+			double sourceSimilarity = Integer
+					.numberOfLeadingZeros((int) sourceIps[i] ^ source) / 32.00;
+			double dist1 = sourceSimilarity * sourceIpWeight + sourceSimilarity
+					* destIpWeight;
+			double dist2 = Integer.numberOfLeadingZeros((int) destIps[i]
+					^ source)
+					/ 32.00
+					* destIpWeight
+					+ Integer.numberOfLeadingZeros((int) sourceIps[i] ^ dest)
+					/ 32.00 * sourceIpWeight;
+			scores[i] = score(Math.max(dist1, dist2), startTime - startTimes[i],
+					destPortTerms[i] == destIpTerm ? 1.0 : 0.0);
+		}
+		if (mixed || (sourceIp | destIp) < 0) {
+			for (int i = 0; i < size; i++) {
+				if ((sourceIps[i] | destIps[i] | sourceIp | destIp) < 0) {
+					scores[i] = score(ipSimilarity(i, sourceIp, destIp, terms),
+							startTime - startTimes[i],
+							destPortTerms[i] == destIpTerm ? 1.0 : 0.0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Combines the features as getCorr() does.
+	 */
+	private double score(double ipSimilarity, long timeDifference,
+			double portSimilarity) {
+		double corr = 0;
+		corr += ipSimilarity;
+		long difference = Math.abs(timeDifference);
+		if (difference < proximityLimit) {
+			if (proximityLimit <= Integer.MAX_VALUE) {
+				corr += proximity[(int) difference / timeThreshold];
+			} else {
+				corr += proximity[(int) (difference / timeThreshold)];
+			}
+		}
+		// The baseline compares destPort with destIP, which never matches.
+		corr += portSimilarity + destPortWeight;
+		return corr / weightSum;
+	}
+
+	/**
+	 * The weighted IP similarity of candidate i for any addresses.
+	 */
+	private double ipSimilarity(int i, long sourceIp, long destIp,
+			TermDictionary terms) {
+		double sourceSimilarity = Distance.calculateIpSimilarity(sourceIps[i],
+				sourceIp, terms);
+		double dist1 = sourceSimilarity * sourceIpWeight + sourceSimilarity
+				* destIpWeight;
+		double dist2 = Distance.calculateIpSimilarity(destIps[i], sourceIp,
+				terms)
+				* destIpWeight
+				+ Distance.calculateIpSimilarity(sourceIps[i], destIp, terms)
+				* sourceIpWeight;
+		return Math.max(dist1, dist2);
+	}
+
+	/**
+	 * Overrides the score of candidate i, e.g. for a candidate that is not in
+	 * the table.
+	 */
+	public void setScore(int i, double score) {
+		scores[i] = score;
+	}
+
+	public double getScore(int i) {
+		return scores[i];
+	}
+
+	public int size() {
+		return size;
+	}
+}
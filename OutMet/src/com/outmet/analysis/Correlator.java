@@ -1,10 +1,12 @@
 package com.outmet.analysis;
 
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,7 +14,8 @@ import com.outmet.data.Alert;
 import com.outmet.data.Edge;
 import com.outmet.data.Graph;
 import com.outmet.data.Node;
-import com.outmet.data.RecentActivityComparator;
+import com.outmet.data.TermDictionary;
+import com.outmet.metrics.CorrelatorMetrics;
 
 /**
  * ----------------------------------------------------------------------------
@@ -33,6 +36,17 @@ import com.outmet.data.RecentActivityComparator;
  * 
  * Complexity 0(n^2)
  * 
+ * Alerts can be correlated as a batch with run(), or pushed one at a time
+ * with offer(). If a {@link MetaAlertListener} is set, each meta-alert is
+ * passed to it when it falls out of the time window and is then released
+ * rather than kept in getGraphs(), so memory stays bounded by the number of
+ * active meta-alerts. Call flush() at the end of a stream to close the
+ * remaining ones.
+ * 
+ * The state of a stream can be saved with checkpoint() and applied to a new
+ * correlator with restore(), e.g. periodically in the background by a
+ * {@link CorrelatorCheckpointer}.
+ * 
  * @author riyanat
  * 
  */
@@ -42,15 +56,15 @@ public class Correlator {
 			.getName());
 
 	/**
-	 * The output of graphs created from the input alerts.
+	 * The output of graphs created from the input alerts. Not used if a
+	 * {listener} is set.
 	 */
 	private List<Graph<Alert>> graphs;
 
 	/**
-	 * A Priority queue containing all graphs with activity in the last
-	 * {timeThreshold} seconds.
+	 * All graphs with activity in the last {timeThreshold} minutes.
 	 */
-	protected PriorityQueue<Graph<Alert>> queue;
+	protected ActiveWindow queue;
 
 	/**
 	 * The minimum threshold allowed to correlate two alerts.
@@ -89,13 +103,61 @@ public class Correlator {
 
 	private int total;
 
+	/**
+	 * The alerts being correlated. Only the rows of the last alerts of active
+	 * graphs are kept, see compact().
+	 */
+	private AlertTable table;
+
+	/**
+	 * Reused to collect the graphs that expire from {queue}.
+	 */
+	private List<Graph<Alert>> expired;
+
+	/**
+	 * Scores an alert against the candidate graphs, whose slots are in
+	 * {kernelSlots}.
+	 */
+	private CorrelationKernel kernel;
+	private int[] kernelSlots;
+
+	/**
+	 * Receives closed graphs, may be null.
+	 */
+	private MetaAlertListener listener;
+
+	/**
+	 * Counts the alerts correlated and times each.
+	 */
+	private CorrelatorMetrics metrics;
+
+	/**
+	 * Takes periodic checkpoints of offered alerts, may be null.
+	 */
+	private CorrelatorCheckpointer checkpointer;
+
+	/**
+	 * The minimum number of rows in {table} before it is compacted.
+	 */
+	private static final int MIN_COMPACTION_SIZE = 1024;
+
+	/**
+	 * The number of terms a row of {table} adds to its dictionary at most.
+	 */
+	private static final int TERMS_PER_ROW = 6;
+
+	/**
+	 * Alerts that start at least this many time units apart (see getCorr())
+	 * have a time proximity of at most 1/e^RECENT_TIME_UNITS, which is
+	 * negligible, so their correlation is bounded by their IP similarity.
+	 */
+	private static final int RECENT_TIME_UNITS = 40;
+
 	/**
 	 * Default constructor with default settings.
 	 */
 	public Correlator() {
 		graphs = new ArrayList<Graph<Alert>>();
-		queue = new PriorityQueue<Graph<Alert>>(100,
-				new RecentActivityComparator());
 		sourceIpWeight = 1;
 		destIpWeight = 1;
 		destPortWeight = 1;
@@ -103,29 +165,200 @@ public class Correlator {
 		timeThreshold = 30;
 		correlationThreshold = 0.8;
 		total = 0;
+		queue = new ActiveWindow(TimeUnit.MINUTES.toMillis(timeThreshold));
+		expired = new ArrayList<Graph<Alert>>();
+		kernel = createKernel();
+		kernelSlots = new int[64];
+		metrics = new CorrelatorMetrics();
+		updateCandidateFilter();
 
 	}
 
 	/**
-	 * Runs the correlation component and logs meta-alert summaries.
+	 * Runs the correlation component and logs meta-alert summaries. Like
+	 * offer(), a run continues from the graphs still active after earlier
+	 * runs or offered alerts.
 	 * 
 	 * @param alertStream
 	 */
 	public void run(List<Alert> alertStream) {
 		for (Alert alert : alertStream) {
-			if (graphs.isEmpty() || queue.isEmpty()) {
-				createGraph(alert);
-			} else {
-				correlate(alert);
-			}
+			ingest(alert);
 		}
 		printStatistics();
 	}
 
 	/**
-	 * Creates a single-node graph where 'alert' is the only node in the graph.
+	 * Runs the correlation component over a stream of alerts, e.g. from a
+	 * {@link com.outmet.io.CsvAlertReader}, and logs meta-alert summaries.
+	 * Alerts are ingested as they are read.
+	 * 
+	 * @param alertStream
+	 */
+	public void run(Iterator<Alert> alertStream) {
+		while (alertStream.hasNext()) {
+			ingest(alertStream.next());
+		}
+		printStatistics();
+	}
+
+	/**
+	 * Correlates a single alert with the active graphs. Alerts must be offered
+	 * in order of start time.
+	 * 
+	 * @param alert
+	 */
+	public void offer(Alert alert) {
+		ingest(alert);
+		if (checkpointer != null) {
+			checkpointer.alertProcessed(this);
+		}
+	}
+
+	/**
+	 * Saves the state of the stream: the output graphs, the active window and
+	 * the number of meta-alerts derived. The active graphs are copied, so the
+	 * checkpoint can be written while more alerts are offered.
+	 */
+	public CorrelatorCheckpoint checkpoint() {
+		// The checkpoint orders the graphs by activity when it is written.
+		int size = queue.size();
+		List<Graph<Alert>> active = new ArrayList<Graph<Alert>>(size);
+		long[] endTimes = new long[size];
+		long[] sequences = new long[size];
+		Map<Graph<Alert>, Graph<Alert>> copies = null;
+		if (!graphs.isEmpty()) {
+			copies = new IdentityHashMap<Graph<Alert>, Graph<Alert>>(size);
+		}
+		for (int i = 0; i < size; i++) {
+			int slot = queue.slotAt(i);
+			Graph<Alert> copy = CorrelatorCheckpoint.copy(queue.getGraph(slot));
+			if (copies != null) {
+				copies.put(queue.getGraph(slot), copy);
+			}
+			active.add(copy);
+			endTimes[i] = queue.getEndTime(slot);
+			sequences[i] = queue.getSequence(slot);
+		}
+		List<Graph<Alert>> output = new ArrayList<Graph<Alert>>(graphs.size());
+		for (Graph<Alert> graph : graphs) {
+			Graph<Alert> copy = copies.get(graph);
+			output.add(copy == null ? graph : copy);
+		}
+		return new CorrelatorCheckpoint(timeThreshold, correlationThreshold,
+				total, queue.getCutoff(), output, active, endTimes, sequences);
+	}
+
+	/**
+	 * Replaces the state of this correlator with a checkpoint, after which
+	 * the alerts that followed it can be offered. Graphs are restored in
+	 * order of activity, so ties are broken as they would have been.
+	 */
+	public void restore(CorrelatorCheckpoint checkpoint) {
+		timeThreshold = checkpoint.getTimeThreshold();
+		correlationThreshold = checkpoint.getCorrelationThreshold();
+		total = checkpoint.getTotal();
+		graphs = new ArrayList<Graph<Alert>>(checkpoint.getGraphs());
+
+		queue = new ActiveWindow(TimeUnit.MINUTES.toMillis(timeThreshold));
+		queue.expire(checkpoint.getCutoff(), expired);
+		table = new AlertTable();
+		for (Graph<Alert> graph : checkpoint.getActiveGraphs()) {
+			int row = table.add(graph.getLastNode().getElement());
+			queue.add(graph, row, table.getStartTime(row),
+					table.getEndTime(row), table.getSourceIp(row),
+					table.getDestIp(row));
+		}
+		kernel = createKernel();
+		updateCandidateFilter();
+	}
+
+	/**
+	 * Closes all active graphs, passing them to the listener if one is set.
+	 */
+	public void flush() {
+		for (int slot : queue.slotsByActivity()) {
+			close(queue.remove(slot));
+		}
+	}
+
+	/**
+	 * Appends an alert to {table} and correlates it.
+	 */
+	private void ingest(Alert alert) {
+		if (table == null) {
+			table = new AlertTable();
+		} else if (table.size() >= Math.max(MIN_COMPACTION_SIZE,
+				4 * queue.size())) {
+			compact();
+		}
+		process(table.add(alert), alert);
+	}
+
+	/**
+	 * Drops the rows of alerts which are no longer the last alert of an active
+	 * graph. Once the dictionary holds more than twice the terms the active
+	 * rows can use, it is also rebuilt from those rows, so that the terms of
+	 * a long stream do not accumulate.
+	 */
+	private void compact() {
+		TermDictionary terms = table.getTerms();
+		boolean rebuild = terms.size() > 2 * TERMS_PER_ROW
+				* Math.max(MIN_COMPACTION_SIZE, queue.size());
+		AlertTable compacted = new AlertTable(rebuild ? new TermDictionary()
+				: terms, 2 * queue.size());
+		for (int i = 0; i < queue.size(); i++) {
+			int slot = queue.slotAt(i);
+			if (queue.getRow(slot) >= 0) {
+				int row = compacted.add(table, queue.getRow(slot));
+				queue.setRow(slot, row);
+				if (rebuild) {
+					queue.setAddresses(slot, compacted.getSourceIp(row),
+							compacted.getDestIp(row));
+				}
+			}
+		}
+		table = compacted;
+	}
+
+	/**
+	 * The number of terms in the dictionary of the alert table.
+	 */
+	int getTermCount() {
+		return table == null ? 0 : table.getTerms().size();
+	}
+
+	/**
+	 * Removes a graph that has fallen out of the time window.
+	 */
+	private void close(Graph<Alert> graph) {
+		if (listener != null) {
+			listener.metaAlertClosed(graph);
+		}
+	}
+
+	/**
+	 * Correlates an alert, ingested in 'row', with the active graphs.
+	 */
+	private void process(int row, Alert alert) {
+		long start = System.nanoTime();
+		int scanned = 0;
+		boolean correlated = false;
+		if (queue.isEmpty()) {
+			createGraph(row, alert);
+		} else {
+			correlated = correlate(row, alert);
+			scanned = kernel.size();
+		}
+		metrics.recordAlert(scanned, queue.size(), correlated,
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Creates a single-node graph where the alert, ingested in 'row', is the
+	 * only node in the graph.
 	 */
-	private void createGraph(Alert alert) {
+	private void createGraph(int row, Alert alert) {
 		Node<Alert> node = new Node<Alert>();
 		node.setElement(alert);
 		node.setKey(alert.getKey());
@@ -135,8 +368,12 @@ public class Correlator {
 		Graph<Alert> graph = new Graph<Alert>();
 		graph.setKey(String.valueOf(total));
 		graph.addNode(node);
-		graphs.add(graph);
-		updateQueue(graph);
+		if (listener == null) {
+			graphs.add(graph);
+		}
+		queue.add(graph, row, table.getStartTime(row), table.getEndTime(row),
+				table.getSourceIp(row), table.getDestIp(row));
+		expire(table.getEndTime(row));
 
 		total++;
 	}
@@ -148,97 +385,117 @@ public class Correlator {
 	 * @param graph
 	 */
 	protected void updateQueue(Graph<Alert> graph) {
-		// Add the current graph if not already in queue.
-		if (!queue.contains(graph)) {
-			queue.add(graph);
-		}
-
-		// Remove all outdated graphs.
-		Date endTime = graph.getLastNode().getElement().getEndTime();
+		Alert alert = graph.getLastNode().getElement();
+		long startTime = alert.getStartTime().getTime();
+		long endTime = alert.getEndTime().getTime();
 
-		Calendar cal = Calendar.getInstance();
-		cal.setTime(endTime);
-		cal.add(Calendar.MINUTE, -(timeThreshold));
+		long sourceIp = IpSimilarity.parseIpv4(alert.getSourceIP());
+		long destIp = IpSimilarity.parseIpv4(alert.getDestIP());
 
-		Graph<Alert> earliestGraph = queue.poll();
-		Date earliestQueueDateAllowed = cal.getTime();
-		Date earliestQueueDate = earliestGraph.getLastNode().getElement()
-				.getEndTime();
+		// Add the current graph if not already in queue.
+		int slot = queue.slotOf(graph);
+		if (slot < 0) {
+			queue.add(graph, -1, startTime, endTime, sourceIp, destIp);
+		} else {
+			queue.update(slot, -1, startTime, endTime, sourceIp, destIp);
+		}
 
-		while (!queue.isEmpty()
-				&& earliestQueueDate.before(earliestQueueDateAllowed)) {
-			earliestGraph = queue.poll();
-			earliestQueueDate = earliestGraph.getLastNode().getElement()
-					.getEndTime();
+		expire(endTime);
+	}
 
+	/**
+	 * Removes all graphs whose last alert ended more than {timeThreshold}
+	 * minutes before endTime.
+	 */
+	private void expire(long endTime) {
+		queue.expire(endTime - TimeUnit.MINUTES.toMillis(timeThreshold),
+				expired);
+		for (Graph<Alert> graph : expired) {
+			close(graph);
 		}
-
-		// Place earliest node back into queue.
-		queue.add(earliestGraph);
+		expired.clear();
 	}
 
 	/**
 	 * Compares alert_k (a newer alert) with older (yet active) alerts. If
 	 * alert_k cannot be correlated to any older alert, a new meta-alert is
-	 * formed.
+	 * formed. Of equally correlated graphs, the most recently active is
+	 * chosen.
 	 * 
-	 * @param alert_k
+	 * @param row_k
+	 *            the row of alert_k
+	 * @return true if alert_k was added to an existing graph.
 	 */
-	private void correlate(Alert alert_k) {
-		// check the queue
-		Graph<Alert> closestGraph = null;
-		Alert closestAlert = null;
-		Node<Alert> closestNode = null;
+	private boolean correlate(int row_k, Alert alert_k) {
+		int closestSlot = -1;
 
 		double maxThreshold = correlationThreshold;
 
-		Calendar cal = Calendar.getInstance();
-		cal.setTime(alert_k.getStartTime());
-		cal.add(Calendar.MINUTE, -timeThreshold);
+		long earliestTimeAllowed = table.getStartTime(row_k)
+				- TimeUnit.MINUTES.toMillis(timeThreshold);
 
-		Date earliestDateAllowed = cal.getTime();
+		// Graphs that are not candidates cannot reach the threshold.
+		int candidates = queue.candidates(table.getStartTime(row_k),
+				table.getSourceIp(row_k), table.getDestIp(row_k));
+		kernel.clear();
+		for (int i = 0; i < candidates; i++) {
+			int slot = queue.candidateAt(i);
 
-		PriorityQueue<Graph<Alert>> newestQueue = new PriorityQueue<Graph<Alert>>(
-				100, new RecentActivityComparator());
-		
-		while (!queue.isEmpty()) {
-			Graph<Alert> graph = queue.poll();
-			
 			// Uses the time threshold to determine candidate correlations.
-			Date endDate = graph.getLastNode().getElement().getStartTime();
-			if (endDate.after(earliestDateAllowed)) {
-				Node<Alert> node_i = graph.getLastNode();
-				Alert alert_i = node_i.getElement();
-
-				double corr = getCorr(alert_i, alert_k);
-
-				// Finds graph with maximum and closest correlation
-				if (corr >= maxThreshold) {
-					closestGraph = graph;
-					closestAlert = alert_i;
-					closestNode = node_i;
-					maxThreshold = corr;
-				}
-				
-				// Dequeue and queue update.
-				newestQueue.add(graph);
+			if (queue.getStartTime(slot) <= earliestTimeAllowed
+					|| queue.isExpired(slot)) {
+				close(queue.remove(slot));
+				continue;
 			}
 
+			int row_i = queue.getRow(slot);
+			kernel.add(queue.getSourceIp(slot), queue.getDestIp(slot),
+					queue.getStartTime(slot),
+					row_i < 0 ? -1 : table.getDestPortTerm(row_i));
+			if (kernel.size() > kernelSlots.length) {
+				kernelSlots = Arrays.copyOf(kernelSlots, 2 * kernel.size());
+			}
+			kernelSlots[kernel.size() - 1] = slot;
+		}
+
+		kernel.score(table.getSourceIp(row_k), table.getDestIp(row_k),
+				table.getStartTime(row_k), table.getDestIpTerm(row_k),
+				table.getTerms());
+		for (int i = 0; i < kernel.size(); i++) {
+			int slot = kernelSlots[i];
+			if (queue.getRow(slot) < 0) {
+				kernel.setScore(i, getCorr(queue.getGraph(slot).getLastNode()
+						.getElement(), alert_k));
+			}
+			double corr = kernel.getScore(i);
+
+			// Finds graph with maximum and closest correlation
+			if (corr > maxThreshold
+					|| (corr == maxThreshold && (closestSlot < 0 || queue
+							.isMoreRecent(slot, closestSlot)))) {
+				closestSlot = slot;
+				maxThreshold = corr;
+			}
 		}
-		queue = newestQueue;
 
 		// This alert cannot be correlated with any existing alerts.
-		if (closestGraph == null || closestAlert == null) {
-			createGraph(alert_k);
+		if (closestSlot < 0) {
+			createGraph(row_k, alert_k);
+			return false;
 
 		} else {
 			// This alert can be correlated with {closestGraph}.
+			Graph<Alert> closestGraph = queue.getGraph(closestSlot);
+			Node<Alert> closestNode = closestGraph.getLastNode();
 			Node<Alert> newNode = new Node<Alert>();
 			newNode.setElement(alert_k);
 			newNode.setKey(alert_k.getKey());
 			newNode.setLabel(alert_k.getName());
 			newNode.setWeight(alert_k.getCount());
 			closestGraph.addNode(newNode);
+			queue.update(closestSlot, row_k, table.getStartTime(row_k),
+					table.getEndTime(row_k), table.getSourceIp(row_k),
+					table.getDestIp(row_k));
 
 			// create an edge between new node and closestAlert
 			Edge<Alert> newEdge = new Edge<Alert>();
@@ -248,10 +505,49 @@ public class Correlator {
 			newEdge.setTarget(newNode);
 			newEdge.setWeight(maxThreshold);
 			closestGraph.addEdge(newEdge);
-
+			return true;
 		}
 	}
 
+	/**
+	 * The correlation of two alerts ingested into a table. Computes exactly
+	 * the same value as {@link #getCorr(Alert, Alert)}.
+	 */
+	protected double getCorr(AlertTable table, int row_i, int row_k) {
+		double corr = 0;
+		TermDictionary terms = table.getTerms();
+
+		// Similarity when source_ip(alert_i) is compared to source_ip(alert_k)
+		// and dest_ip(alert_i) is compared to dest_ip(alert_k)
+		double sourceSimilarity = Distance.calculateIpSimilarity(
+				table.getSourceIp(row_i), table.getSourceIp(row_k), terms);
+		double dist1 = sourceSimilarity * sourceIpWeight + sourceSimilarity
+				* destIpWeight;
+
+		// Similarity when dest_ip(alert_i) is compared to source_ip(alert_k)
+		// and dest_ip(alert_i) is compared to source_ip(alert_k)
+		double dist2 = Distance.calculateIpSimilarity(table.getDestIp(row_i),
+				table.getSourceIp(row_k), terms)
+				* destIpWeight
+				+ Distance.calculateIpSimilarity(table.getSourceIp(row_i),
+						table.getDestIp(row_k), terms) * sourceIpWeight;
+
+		corr += Math.max(dist1, dist2);
+
+		double t = (Math.abs(table.getStartTime(row_k)
+				- table.getStartTime(row_i)) / timeThreshold);
+		corr += 1 / Math.pow(Math.E, t);
+
+		corr += Distance.calculatePortSimilarity(table.getDestPortTerm(row_i),
+				table.getDestIpTerm(row_k))
+				+ destPortWeight;
+
+		double weightSum = sourceIpWeight + destIpWeight + destPortWeight
+				+ timeProximityWeight;
+
+		return corr / weightSum;
+	}
+
 	protected double getCorr(Alert alert_i, Alert alert_k) {
 		double corr = 0;
 
@@ -287,6 +583,57 @@ public class Correlator {
 		return corr / weightSum;
 	}
 
+	/**
+	 * A kernel that scores alerts as {@link #getCorr(AlertTable, int, int)}
+	 * with the current weights and time threshold.
+	 */
+	public CorrelationKernel createKernel() {
+		return new CorrelationKernel(sourceIpWeight, destIpWeight,
+				destPortWeight, timeProximityWeight, timeThreshold);
+	}
+
+	/**
+	 * Derives the candidate filter of {queue} from the weights and thresholds.
+	 * A graph that is not recent, i.e. whose last alert started at least
+	 * RECENT_TIME_UNITS time units before alert_k, and whose addresses share
+	 * fewer than b leading bits with those of alert_k, has an IP similarity of
+	 * at most (b - 1) / 32 on every comparison in getCorr(). The largest b for
+	 * which that bounds its correlation below {correlationThreshold} is the
+	 * prefix length of the index.
+	 */
+	private void updateCandidateFilter() {
+		setCandidateFilter(queue);
+	}
+
+	/**
+	 * Sets the candidate filter of a window of graphs to be correlated with
+	 * the weights and thresholds of this correlator.
+	 */
+	void setCandidateFilter(ActiveWindow window) {
+		double ipWeight = sourceIpWeight + destIpWeight;
+		double weightSum = sourceIpWeight + destIpWeight + destPortWeight
+				+ timeProximityWeight;
+		int prefixLength = 0;
+
+		if (timeThreshold > 0 && sourceIpWeight >= 0 && destIpWeight >= 0
+				&& destPortWeight >= 0 && ipWeight > 0 && weightSum > 0) {
+			// Time proximity, port similarity and port weight at their maximum.
+			double others = 1 / Math.pow(Math.E, RECENT_TIME_UNITS) + 1
+					+ destPortWeight;
+			for (int bits = 32; bits >= 1; bits--) {
+				double bound = ((bits - 1) / 32.00 * ipWeight + others)
+						/ weightSum;
+				// Leave a margin for rounding in getCorr().
+				if (bound * (1 + 1e-9) < correlationThreshold) {
+					prefixLength = bits;
+					break;
+				}
+			}
+		}
+		window.setCandidateFilter(prefixLength, (long) RECENT_TIME_UNITS
+				* timeThreshold);
+	}
+
 	// Setters and getters.
 	public int getTimeThreshold() {
 		return timeThreshold;
@@ -294,6 +641,11 @@ public class Correlator {
 
 	public void setTimeThreshold(int timeThreshold) {
 		this.timeThreshold = timeThreshold;
+		if (queue.isEmpty()) {
+			queue = new ActiveWindow(TimeUnit.MINUTES.toMillis(timeThreshold));
+		}
+		kernel = createKernel();
+		updateCandidateFilter();
 	}
 
 	public double getCorrelationThreshold() {
@@ -302,6 +654,7 @@ public class Correlator {
 
 	public void setCorrelationThreshold(double similarityThreshold) {
 		this.correlationThreshold = similarityThreshold;
+		updateCandidateFilter();
 	}
 
 	public double getDestIpWeight() {
@@ -324,8 +677,32 @@ public class Correlator {
 		return graphs;
 	}
 
+	public void setMetaAlertListener(MetaAlertListener listener) {
+		this.listener = listener;
+	}
+
+	public MetaAlertListener getMetaAlertListener() {
+		return listener;
+	}
+
+	public CorrelatorMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Takes checkpoints as alerts are offered, see
+	 * {@link CorrelatorCheckpointer}.
+	 */
+	public void setCheckpointer(CorrelatorCheckpointer checkpointer) {
+		this.checkpointer = checkpointer;
+	}
+
+	public CorrelatorCheckpointer getCheckpointer() {
+		return checkpointer;
+	}
+
 	public void printStatistics() {
-		log.log(Level.INFO, "Derived " + graphs.size() + " meta-alerts");
+		log.log(Level.INFO, "Derived " + total + " meta-alerts");
 	}
 
-}
\ No newline at end of file
+}
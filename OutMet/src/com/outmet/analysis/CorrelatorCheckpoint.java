@@ -0,0 +1,296 @@
+package com.outmet.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.io.AlertFileReader;
+import com.outmet.io.AlertFileWriter;
+
+/**
+ * The state of a {@link Correlator} at one point of a stream: its thresholds,
+ * the number of meta-alerts derived, the meta-alerts kept in getGraphs() and
+ * the active window, which holds the graphs new alerts may still join in
+ * order of activity. Created by {@link Correlator#checkpoint()} and applied
+ * with {@link Correlator#restore(CorrelatorCheckpoint)}.
+ *
+ * A checkpoint holds its own copies of the active graphs, so it can be
+ * written on another thread while the correlator goes on. Graphs that are
+ * no longer active are never changed by the correlator and are shared.
+ *
+ * On disk a checkpoint is a header followed by its graphs as an
+ * {@link com.outmet.io.AlertFile}: magic, version, the length of the rest
+ * of the header, the thresholds, total and cutoff, the number of graphs, how
+ * many of them are output graphs, and the index of each active graph. Nodes
+ * and edges are restored keyed, labelled and weighted as by the Correlator,
+ * graph keys must be distinct numbers, as the Correlator assigns them, and
+ * graph tags are not stored.
+ *
+ * @author riyanat
+ *
+ */
+public class CorrelatorCheckpoint {
+
+	private static final int MAGIC = 0x4f4d4331;
+	private static final int VERSION = 2;
+
+	private int timeThreshold;
+	private double correlationThreshold;
+	private int total;
+	private long cutoff;
+
+	/**
+	 * The output graphs, see {@link Correlator#getGraphs()}.
+	 */
+	private List<Graph<Alert>> graphs;
+
+	/**
+	 * The graphs in the active window, ordered from the earliest to the most
+	 * recent activity once {endTimes} is null.
+	 */
+	private List<Graph<Alert>> active;
+
+	// The end time of the last alert of each active graph and the sequence
+	// that orders updates at the same time, see ActiveWindow.isMoreRecent().
+	private long[] endTimes;
+	private long[] sequences;
+
+	/**
+	 * A checkpoint whose active graphs are ordered by activity.
+	 */
+	CorrelatorCheckpoint(int timeThreshold, double correlationThreshold,
+			int total, long cutoff, List<Graph<Alert>> graphs,
+			List<Graph<Alert>> active) {
+		this(timeThreshold, correlationThreshold, total, cutoff, graphs,
+				active, null, null);
+	}
+
+	/**
+	 * A checkpoint whose active graphs are ordered on first use by the end
+	 * times and sequences of their last update, so that the correlator does
+	 * not pause to sort them.
+	 */
+	CorrelatorCheckpoint(int timeThreshold, double correlationThreshold,
+			int total, long cutoff, List<Graph<Alert>> graphs,
+			List<Graph<Alert>> active, long[] endTimes, long[] sequences) {
+		this.timeThreshold = timeThreshold;
+		this.correlationThreshold = correlationThreshold;
+		this.total = total;
+		this.cutoff = cutoff;
+		this.graphs = graphs;
+		this.active = active;
+		this.endTimes = endTimes;
+		this.sequences = sequences;
+	}
+
+	public int getTimeThreshold() {
+		return timeThreshold;
+	}
+
+	public double getCorrelationThreshold() {
+		return correlationThreshold;
+	}
+
+	/**
+	 * The total number of meta-alerts derived.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Graphs whose last alert ended before this time had expired.
+	 */
+	public long getCutoff() {
+		return cutoff;
+	}
+
+	public List<Graph<Alert>> getGraphs() {
+		return Collections.unmodifiableList(graphs);
+	}
+
+	/**
+	 * The graphs in the active window from the earliest to the most recent
+	 * activity.
+	 */
+	public synchronized List<Graph<Alert>> getActiveGraphs() {
+		if (endTimes != null) {
+			Integer[] order = new Integer[active.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int byTime = Long.compare(endTimes[a], endTimes[b]);
+					return byTime != 0 ? byTime : Long.compare(sequences[a],
+							sequences[b]);
+				}
+			});
+			List<Graph<Alert>> ordered = new ArrayList<Graph<Alert>>(
+					order.length);
+			for (Integer i : order) {
+				ordered.add(active.get(i));
+			}
+			active = ordered;
+			endTimes = null;
+			sequences = null;
+		}
+		return Collections.unmodifiableList(active);
+	}
+
+	/**
+	 * Copies the nodes and edges of a graph that may still change.
+	 */
+	static Graph<Alert> copy(Graph<Alert> graph) {
+		Graph<Alert> copy = new Graph<Alert>();
+		copy.setKey(graph.getKey());
+		if (graph.getTags() != null) {
+			copy.getTags().putAll(graph.getTags());
+		}
+		// The nodes are distinct already, addNode() would check each again.
+		copy.getNodes().addAll(graph.getNodes());
+		copy.getEdges().addAll(graph.getEdges());
+		return copy;
+	}
+
+	/**
+	 * Writes the checkpoint to a temporary file next to file and then moves
+	 * it over file, so a crash while writing leaves the previous checkpoint.
+	 */
+	public void write(File file) throws IOException {
+		// Active graphs are usually in {graphs} as well, each is written once
+		// and the window refers to it by index.
+		List<Graph<Alert>> active = getActiveGraphs();
+		Map<Graph<Alert>, Integer> indexes = new IdentityHashMap<Graph<Alert>, Integer>();
+		List<Graph<Alert>> all = new ArrayList<Graph<Alert>>(graphs);
+		for (int i = 0; i < graphs.size(); i++) {
+			indexes.put(graphs.get(i), i);
+		}
+		for (Graph<Alert> graph : active) {
+			if (!indexes.containsKey(graph)) {
+				indexes.put(graph, all.size());
+				all.add(graph);
+			}
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(timeThreshold);
+		header.writeDouble(correlationThreshold);
+		header.writeInt(total);
+		header.writeLong(cutoff);
+		header.writeInt(all.size());
+		header.writeInt(graphs.size());
+		header.writeInt(active.size());
+		for (Graph<Alert> graph : active) {
+			header.writeInt(indexes.get(graph));
+		}
+		header.close();
+
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(stream);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			out.flush();
+			AlertFileWriter writer = new AlertFileWriter(stream.getChannel());
+			try {
+				for (Graph<Alert> graph : all) {
+					writer.write(graph);
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			stream.close();
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	public static CorrelatorCheckpoint read(File file) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			// Unbuffered, so the alert file starts where the header ends.
+			DataInputStream in = new DataInputStream(stream);
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a correlator checkpoint");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException(file + " has unsupported version "
+						+ version);
+			}
+			int length = in.readInt();
+			if (length < 0 || length > file.length()) {
+				throw new IOException(file + " has a corrupt header");
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			DataInputStream header = new DataInputStream(
+					new ByteArrayInputStream(bytes));
+			int timeThreshold = header.readInt();
+			double correlationThreshold = header.readDouble();
+			int total = header.readInt();
+			long cutoff = header.readLong();
+			int count = header.readInt();
+			int listed = header.readInt();
+			int[] indexes = new int[header.readInt()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = header.readInt();
+			}
+
+			AlertFileReader reader = new AlertFileReader(stream.getChannel());
+			List<Graph<Alert>> all;
+			try {
+				all = reader.readMetaAlerts();
+			} finally {
+				reader.close();
+			}
+			if (all.size() != count || listed > count) {
+				throw new IOException(file + " holds " + all.size()
+						+ " meta-alerts rather than " + count);
+			}
+			List<Graph<Alert>> active = new ArrayList<Graph<Alert>>(
+					indexes.length);
+			for (int index : indexes) {
+				if (index < 0 || index >= count) {
+					throw new IOException(file + " has a corrupt header");
+				}
+				active.add(all.get(index));
+			}
+			return new CorrelatorCheckpoint(timeThreshold,
+					correlationThreshold, total, cutoff,
+					new ArrayList<Graph<Alert>>(all.subList(0, listed)), active);
+		} finally {
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.outmet.analysis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes periodic checkpoints of a {@link Correlator} and writes them to a
+ * file on a background thread. Set on a correlator with
+ * {@link Correlator#setCheckpointer(CorrelatorCheckpointer)}, it is called
+ * after each alert offered; every {intervalMillis} the correlator's state is
+ * copied, which pauses correlation for time proportional to the size of the
+ * active window, and the copy is written out. If the previous checkpoint is
+ * still being written the copy is skipped rather than queued.
+ *
+ * After a restart, {@link #restore(Correlator)} loads the last checkpoint
+ * written, so only the alerts that arrived after it need to be offered
+ * again.
+ *
+ * @author riyanat
+ *
+ */
+public class CorrelatorCheckpointer implements Closeable {
+	private static final Logger log = Logger
+			.getLogger(CorrelatorCheckpointer.class.getName());
+
+	private File file;
+	private long intervalNanos;
+	private long lastCheckpoint;
+
+	private ExecutorService executor;
+	private Future<?> pending;
+
+	private volatile long checkpoints;
+	private volatile long lastWriteNanos;
+
+	/**
+	 * @param file
+	 *            the checkpoint file, replaced by each checkpoint.
+	 * @param intervalMillis
+	 *            the time between checkpoints.
+	 */
+	public CorrelatorCheckpointer(File file, long intervalMillis) {
+		this.file = file;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.lastCheckpoint = System.nanoTime();
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "correlator-checkpoint");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Called by the correlator after each alert, takes a checkpoint if one is
+	 * due.
+	 */
+	void alertProcessed(Correlator correlator) {
+		long now = System.nanoTime();
+		if (now - lastCheckpoint < intervalNanos
+				|| (pending != null && !pending.isDone())) {
+			return;
+		}
+		lastCheckpoint = now;
+		pending = submit(correlator.checkpoint());
+	}
+
+	/**
+	 * Takes a checkpoint now and waits until it is written.
+	 */
+	public void checkpoint(Correlator correlator) throws IOException {
+		lastCheckpoint = System.nanoTime();
+		pending = submit(correlator.checkpoint());
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted writing checkpoint", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Error in writing checkpoint", e.getCause());
+		}
+	}
+
+	private Future<?> submit(final CorrelatorCheckpoint checkpoint) {
+		return executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				try {
+					checkpoint.write(file);
+				} catch (IOException e) {
+					log.log(Level.WARNING, "Error in writing checkpoint to "
+							+ file, e);
+					throw new IllegalStateException(e);
+				}
+				lastWriteNanos = System.nanoTime() - start;
+				checkpoints++;
+			}
+		});
+	}
+
+	/**
+	 * Restores the correlator from the last checkpoint written, if there is
+	 * one.
+	 *
+	 * @return true if a checkpoint was restored.
+	 */
+	public boolean restore(Correlator correlator) throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+		CorrelatorCheckpoint checkpoint = CorrelatorCheckpoint.read(file);
+		correlator.restore(checkpoint);
+		log.log(Level.INFO, "Restored " + checkpoint.getActiveGraphs().size()
+				+ " active meta-alerts from " + file);
+		return true;
+	}
+
+	/**
+	 * The number of checkpoints written.
+	 */
+	public long getCheckpoints() {
+		return checkpoints;
+	}
+
+	/**
+	 * The time taken to write the last checkpoint in nanoseconds.
+	 */
+	public long getLastWriteNanos() {
+		return lastWriteNanos;
+	}
+
+	/**
+	 * Waits for the checkpoint being written, if any, and stops the
+	 * background thread.
+	 */
+	@Override
+	public void close() throws IOException {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
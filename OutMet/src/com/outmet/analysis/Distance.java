@@ -9,13 +9,10 @@ import ged.graph.GraphConverter;
 import ged.processor.CostContainer;
 
 import java.math.BigDecimal;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.BitSet;
-import java.util.Date;
 
 import com.outmet.data.Alert;
 import com.outmet.data.Graph;
+import com.outmet.data.TermDictionary;
 
 /**
  * Provides a range of distance metrics for computing distances/similarities
@@ -29,15 +26,48 @@ public class Distance {
 
 	public static final int ACCEPTANCE_LIMIT_COST = 100;
 
+	/**
+	 * The edit distance of two meta-alerts divided by
+	 * {@link #ACCEPTANCE_LIMIT_COST}, or 1 if it is larger than the limit. The
+	 * graphs are compared directly with the costs of the ged library, see
+	 * {@link GraphEditDistance}.
+	 */
+	public static double calculateGED(LabelGraph graph_i, LabelGraph graph_j) {
+		return normaliseGED(new GraphEditDistance().distance(graph_i, graph_j,
+				ACCEPTANCE_LIMIT_COST));
+	}
+
+	/**
+	 * Divides an edit cost by {@link #ACCEPTANCE_LIMIT_COST}, capping it at 1.
+	 */
+	public static double normaliseGED(double cost) {
+		return Math.min(cost, ACCEPTANCE_LIMIT_COST)
+				/ (double) ACCEPTANCE_LIMIT_COST;
+	}
+
+	/**
+	 * The edit distance of two meta-alerts computed by the ged library from
+	 * their DOT descriptions, normalised as
+	 * {@link #calculateGED(LabelGraph, LabelGraph)}.
+	 */
 	public static double calculateGED(Graph<Alert> graph_i, Graph<Alert> graph_j)
 			throws CostLimitExceededException, DotParseException {
+		return calculateGED(graph_i.toDotString(), graph_j.toDotString());
+	}
+
+	/**
+	 * The edit distance of two DOT descriptions computed by the ged library.
+	 * The library is not known to be thread-safe, so calls must not overlap.
+	 */
+	public static double calculateGED(String dot_i, String dot_j)
+			throws DotParseException {
 
 		CostContainer costContainer = new CostContainer();
 		costContainer.setAcceptanceLimitCost(new BigDecimal(
 				ACCEPTANCE_LIMIT_COST));
 
-		DecoratedGraph first = GraphConverter.parse(graph_i.toDotString());
-		DecoratedGraph second = GraphConverter.parse(graph_j.toDotString());
+		DecoratedGraph first = GraphConverter.parse(dot_i);
+		DecoratedGraph second = GraphConverter.parse(dot_j);
 
 		double cost = 1;
 
@@ -61,74 +91,37 @@ public class Distance {
 		}
 	}
 
-	public static double calculateIpSimilarity(String x, String y) {
-		String strThisIP = "";
-		String strOtherIP = "";
-
-		BitSet[] bitThisIP;
-		BitSet[] bitOtherIP;
-
-		try {
-			InetAddress thisIP = InetAddress.getByName(x);
-			InetAddress otherIP = InetAddress.getByName(y);
-
-			byte[] thisByte = thisIP.getAddress();
-			byte[] otherByte = otherIP.getAddress();
-
-			bitThisIP = new BitSet[thisByte.length];
-			bitOtherIP = new BitSet[otherByte.length];
-
-			int i = 0;
-			for (byte xB : thisByte) {
-				bitThisIP[i] = toBitSet(xB);
-				strThisIP += toString(bitThisIP[i]);
-				i++;
-			}
-
-			int j = 0;
-			for (byte yB : otherByte) {
-				bitOtherIP[j] = toBitSet(yB);
-				strOtherIP += toString(bitOtherIP[j]);
-				j++;
-
-			}
-
-			double countVal = 0.0d;
-			for (int n = 0; n < strThisIP.length(); n++) {
-				if (strThisIP.charAt(n) == strOtherIP.charAt(n)) {
-					countVal++;
-				} else {
-					break;
-				}
-			}
-
-			double val = countVal / 32.00;
-			return val;
-
-		} catch (UnknownHostException e) {
-			if (x.toLowerCase().equals(y.toLowerCase()))
-				return 1;
-			else
-				return 0;
-		}
-
+	/**
+	 * Port similarity of two dictionary encoded terms.
+	 */
+	public static double calculatePortSimilarity(int i, int k) {
+		return i == k ? 1.0 : 0.0;
 	}
 
-	public static String toString(BitSet bits) {
-		String out = "";
-		for (int n = 0; n < 8; n++) {
-			out += bits.get(n) ? "1" : "0";
-		}
-
-		return out;
+	/**
+	 * Similarity of two IP addresses as the fraction of their common bit
+	 * prefix. IP literals are never resolved, see {@link IpSimilarity}.
+	 */
+	public static double calculateIpSimilarity(String x, String y) {
+		return IpSimilarity.similarity(x, y);
 	}
 
-	public static BitSet toBitSet(byte b) {
-		BitSet bits = new BitSet(8);
-		for (int i = 0; i < 8; i++) {
-			bits.set(i, ((b & (1 << i)) != 0));
-
+	/**
+	 * Similarity of two addresses encoded by {@link AlertTable#encodeIp(String)}.
+	 */
+	public static double calculateIpSimilarity(long x, long y,
+			TermDictionary terms) {
+		if (x >= 0 && y >= 0) {
+			return IpSimilarity.similarity((int) x, (int) y);
+		}
+		if (x == y) {
+			return 1;
+		}
+		if (x >= 0 || y >= 0) {
+			// An IPv4 literal never matches anything that is not one.
+			return 0;
 		}
-		return bits;
+		return IpSimilarity.similarity(terms.getTerm((int) (-x - 1)),
+				terms.getTerm((int) (-y - 1)));
 	}
 }
@@ -0,0 +1,127 @@
+package com.outmet.analysis;
+
+/**
+ * A symmetric n-by-n matrix of distances between meta-alerts.
+ *
+ * The packed implementations store only the strict upper triangle, n(n-1)/2
+ * entries, row by row; the diagonal is always zero. Entry (i, j) and (j, i)
+ * are the same cell, so setting one sets both.
+ *
+ * @author riyanat
+ *
+ */
+public abstract class DistanceMatrix {
+
+	/**
+	 * Where and at which precision the entries of a packed matrix are held.
+	 */
+	public enum Storage {
+		/**
+		 * Java heap, 8 bytes per pair.
+		 */
+		DOUBLE,
+		/**
+		 * Java heap, 4 bytes per pair. Distances are rounded to float.
+		 */
+		FLOAT,
+		/**
+		 * A memory-mapped temporary file, 8 bytes per pair.
+		 */
+		MAPPED_DOUBLE,
+		/**
+		 * A memory-mapped temporary file, 4 bytes per pair. Distances are
+		 * rounded to float.
+		 */
+		MAPPED_FLOAT
+	}
+
+	protected int n;
+
+	protected DistanceMatrix(int n) {
+		this.n = n;
+	}
+
+	/**
+	 * Creates a packed matrix of n meta-alerts with all distances zero.
+	 */
+	public static DistanceMatrix create(int n, Storage storage) {
+		switch (storage) {
+		case FLOAT:
+			return new PackedDistanceMatrix(n, true);
+		case MAPPED_DOUBLE:
+			return new MappedDistanceMatrix(n, false);
+		case MAPPED_FLOAT:
+			return new MappedDistanceMatrix(n, true);
+		default:
+			return new PackedDistanceMatrix(n, false);
+		}
+	}
+
+	/**
+	 * Wraps a square array without copying it, see {@link ArrayDistanceMatrix}.
+	 */
+	public static DistanceMatrix of(double[][] distance) {
+		return new ArrayDistanceMatrix(distance);
+	}
+
+	/**
+	 * The number of meta-alerts.
+	 */
+	public int size() {
+		return n;
+	}
+
+	public abstract double get(int i, int j);
+
+	public abstract void set(int i, int j, double distance);
+
+	/**
+	 * Copies row i into row, which must have length n.
+	 */
+	public void getRow(int i, double[] row) {
+		for (int j = 0; j < n; j++) {
+			row[j] = get(i, j);
+		}
+	}
+
+	/**
+	 * Returns the matrix as an n-by-n array. Packed matrices are expanded into
+	 * a new array, which needs 8n^2 bytes.
+	 */
+	public double[][] toArray() {
+		double[][] array = new double[n][];
+		for (int i = 0; i < n; i++) {
+			array[i] = new double[n];
+			getRow(i, array[i]);
+		}
+		return array;
+	}
+
+	/**
+	 * The number of cells of a packed matrix of n meta-alerts.
+	 */
+	protected static long packedSize(int n) {
+		return (long) n * (n - 1) / 2;
+	}
+
+	/**
+	 * The cell of (i, j) in the packed upper triangle, or -1 on the diagonal.
+	 */
+	protected long packedIndex(int i, int j) {
+		if (i > j) {
+			int t = i;
+			i = j;
+			j = t;
+		} else if (i == j) {
+			return -1;
+		}
+		return (long) i * (2L * n - i - 1) / 2 + (j - i - 1);
+	}
+
+	protected void checkDiagonal(int i, double distance) {
+		if (distance != 0) {
+			throw new IllegalArgumentException("Distance of meta-alert " + i
+					+ " to itself must be 0: " + distance);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package com.outmet.analysis;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * Computes the symmetric distance matrix of a list of meta-alerts under a
+ * {@link MetaAlertMetric}. Meta-alerts with the same structure share a row of
+ * a {@link CollapsedDistanceMatrix}. Only the upper triangle of the distinct
+ * structures is computed; it is cut into square tiles of {@link #TILE} rows
+ * and columns which are spread over a {@link ForkJoinPool}. Every pair is
+ * computed exactly once, so the result does not depend on the parallelism or
+ * on the order in which tiles finish. The ged library is not known to be
+ * thread-safe, so under {@link MetaAlertMetric.EditDistance#LIBRARY} the
+ * tiles are computed on the calling thread.
+ *
+ * @author riyanat
+ *
+ */
+public class DistanceMatrixCalculator {
+
+	/**
+	 * The number of rows and columns of a tile.
+	 */
+	public static final int TILE = 32;
+
+	private int parallelism;
+	private DistanceMatrix.Storage storage;
+	private DistanceProgressListener listener;
+	private MetaAlertMetric metric;
+
+	private DistanceMatrix distance;
+	private int tiles;
+	private long done;
+	private long total;
+
+	// Pairs resolved by each tier of the metric in the last calculation.
+	private long[] counters;
+
+	public DistanceMatrixCalculator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of worker threads; 1 computes the matrix on the
+	 *            calling thread.
+	 */
+	public DistanceMatrixCalculator(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		this.storage = DistanceMatrix.Storage.DOUBLE;
+		this.metric = new MetaAlertMetric();
+		this.counters = new long[MetaAlertMetric.COUNTERS];
+	}
+
+	/**
+	 * Computes the n-by-n distance matrix of graphs.
+	 */
+	public DistanceMatrix calculate(List<Graph<Alert>> graphs) {
+		int[] rows = metric.collapse(graphs);
+		int n = metric.size();
+		this.distance = DistanceMatrix.create(n, storage);
+		this.tiles = (n + TILE - 1) / TILE;
+		this.done = 0;
+		this.total = (long) n * (n - 1) / 2;
+		this.counters = new long[MetaAlertMetric.COUNTERS];
+
+		int count = tiles * (tiles + 1) / 2;
+		MetaAlertMetric.EditDistance editDistance = metric.getEditDistance();
+		if (parallelism == 1 || count <= 1
+				|| editDistance == MetaAlertMetric.EditDistance.LIBRARY) {
+			for (int t = 0; t < count; t++) {
+				computeTile(t);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new TileTask(0, count));
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		DistanceMatrix result = distance;
+		if (n < rows.length) {
+			result = new CollapsedDistanceMatrix(distance, rows,
+					MetaAlertMetric.MIN_DISTANCE);
+		}
+		this.distance = null;
+		return result;
+	}
+
+	/**
+	 * Computes a tile, numbering the tiles of the upper triangle row by row.
+	 */
+	private void computeTile(int t) {
+		// Find the tile row r such that t falls in it.
+		int r = 0;
+		int rowTiles = tiles;
+		while (t >= rowTiles) {
+			t -= rowTiles;
+			r++;
+			rowTiles--;
+		}
+		int c = r + t;
+
+		int n = distance.size();
+		int rowEnd = Math.min(n, (r + 1) * TILE);
+		int columnEnd = Math.min(n, (c + 1) * TILE);
+		GraphEditDistance ged = new GraphEditDistance();
+		long[] tileCounters = new long[MetaAlertMetric.COUNTERS];
+		long pairs = 0;
+		for (int i = r * TILE; i < rowEnd; i++) {
+			for (int j = Math.max(i + 1, c * TILE); j < columnEnd; j++) {
+				distance.set(i, j, metric.distance(i, j, ged, tileCounters));
+				pairs++;
+			}
+		}
+		report(pairs, tileCounters);
+	}
+
+	private synchronized void report(long pairs, long[] tileCounters) {
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] += tileCounters[i];
+		}
+		done += pairs;
+		if (listener != null) {
+			listener.progress(done, total);
+		}
+	}
+
+	/**
+	 * Computes the tiles in [from, to) by halving the range.
+	 */
+	private class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+
+		TileTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				computeTile(from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new TileTask(from, middle), new TileTask(middle, to));
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public MetaAlertMetric getMetric() {
+		return metric;
+	}
+
+	/**
+	 * The number of distinct meta-alert structures of the last calculation.
+	 */
+	public int getDistinctCount() {
+		return metric.size();
+	}
+
+	/**
+	 * The number of pairs of the last calculation resolved by the size bound.
+	 */
+	public synchronized long getSizeFiltered() {
+		return counters[MetaAlertMetric.SIZE_BOUND];
+	}
+
+	/**
+	 * The number of pairs of the last calculation resolved by the label bound.
+	 */
+	public synchronized long getLabelFiltered() {
+		return counters[MetaAlertMetric.LABEL_BOUND];
+	}
+
+	/**
+	 * The number of pairs of the last calculation found in the cache.
+	 */
+	public synchronized long getCacheHits() {
+		return counters[MetaAlertMetric.CACHE_HIT];
+	}
+
+	/**
+	 * The number of pairs of the last calculation looked up in the cache and
+	 * not found.
+	 */
+	public synchronized long getCacheMisses() {
+		return counters[MetaAlertMetric.CACHE_MISS];
+	}
+
+	/**
+	 * The number of pairs of the last calculation whose exact edit distance
+	 * was computed.
+	 */
+	public synchronized long getExactComputed() {
+		return counters[MetaAlertMetric.EXACT];
+	}
+
+	/**
+	 * The counters of the last calculation, indexed as in
+	 * {@link MetaAlertMetric}.
+	 */
+	public synchronized long[] getCounters() {
+		return counters.clone();
+	}
+
+	/**
+	 * The number of pairs of the last calculation whose exact edit distance
+	 * was over the cost limit.
+	 */
+	public synchronized long getCostLimitHits() {
+		return counters[MetaAlertMetric.COST_LIMIT];
+	}
+
+	/**
+	 * See {@link MetaAlertMetric#setCacheSize(int)}.
+	 */
+	public void setCacheSize(int size) {
+		metric.setCacheSize(size);
+	}
+
+	public DistanceMatrix.Storage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * Sets how the matrix is stored, {@link DistanceMatrix.Storage#DOUBLE} by
+	 * default.
+	 */
+	public void setStorage(DistanceMatrix.Storage storage) {
+		this.storage = storage;
+	}
+
+	public DistanceProgressListener getProgressListener() {
+		return listener;
+	}
+
+	public void setProgressListener(DistanceProgressListener listener) {
+		this.listener = listener;
+	}
+}
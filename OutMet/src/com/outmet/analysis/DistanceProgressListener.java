@@ -0,0 +1,21 @@
+package com.outmet.analysis;
+
+/**
+ * Receives progress reports while a distance matrix is computed. Reports are
+ * delivered one at a time, but may come from any of the worker threads.
+ *
+ * @author riyanat
+ *
+ */
+public interface DistanceProgressListener {
+
+	/**
+	 * Called each time a tile of the matrix is finished.
+	 *
+	 * @param done
+	 *            the number of pairs computed so far.
+	 * @param total
+	 *            the number of pairs of distinct meta-alert structures.
+	 */
+	void progress(long done, long total);
+}
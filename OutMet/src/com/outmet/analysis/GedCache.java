@@ -0,0 +1,86 @@
+package com.outmet.analysis;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache of normalised edit distances between pairs of meta-alert
+ * structures, identified by small integer ids (see
+ * {@link LabelGraph#equals(Object)}). The cache is direct-mapped: each pair
+ * has one slot, and a pair whose slot is taken replaces the pair in it. Key
+ * and distance are held in one immutable entry so that threads can read and
+ * write the cache without locking and never see a distance with the wrong
+ * key. Distances are doubles, so the cache holds the ged library's distances
+ * as well as the native ones.
+ *
+ * @author riyanat
+ *
+ */
+public class GedCache {
+
+	/**
+	 * The largest structure id that can be cached.
+	 */
+	public static final int MAX_STRUCTURE = (1 << 24) - 1;
+
+	private AtomicReferenceArray<Entry> entries;
+	private int shift;
+
+	/**
+	 * @param capacity
+	 *            the number of pairs, rounded up to a power of two.
+	 */
+	public GedCache(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		entries = new AtomicReferenceArray<Entry>(size);
+		shift = 64 - Integer.numberOfTrailingZeros(size);
+	}
+
+	/**
+	 * @return the cached distance of the structures a and b, or -1.
+	 */
+	public double get(int a, int b) {
+		long key = key(a, b);
+		Entry entry = entries.get(slot(key));
+		if (entry == null || entry.key != key) {
+			return -1;
+		}
+		return entry.distance;
+	}
+
+	/**
+	 * Caches a distance of at least 0.
+	 */
+	public void put(int a, int b, double distance) {
+		long key = key(a, b);
+		entries.lazySet(slot(key), new Entry(key, distance));
+	}
+
+	public void clear() {
+		for (int i = 0; i < entries.length(); i++) {
+			entries.set(i, null);
+		}
+	}
+
+	public int capacity() {
+		return entries.length();
+	}
+
+	private static long key(int a, int b) {
+		return a < b ? (long) a << 24 | b : (long) b << 24 | a;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	private static class Entry {
+
+		private final long key;
+		private final double distance;
+
+		private Entry(long key, double distance) {
+			this.key = key;
+			this.distance = distance;
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Exact graph edit distance between two {@link LabelGraph}s by depth-first
+ * branch and bound. The costs weigh the node frequencies and edge weights of
+ * the DOT descriptions, like those of the ged library:
+ *
+ * - inserting or deleting a node costs 1 plus its frequency, and substituting
+ * a node costs the difference in frequency, plus 1 if the labels differ.
+ *
+ * - inserting or deleting an edge costs 1 plus its weight, and substituting
+ * an edge costs the difference in weight.
+ *
+ * These costs form a metric, so the edit distance is a metric on the
+ * distinct structures. Graphs whose frequencies and weights are all 0, as when
+ * no two alerts or edges share a label, are compared with unit costs.
+ *
+ * The nodes of the first graph are mapped in order of decreasing degree to a
+ * node of the second graph or deleted; the remaining nodes of the second
+ * graph are inserted. A partial mapping is abandoned as soon as its cost plus
+ * a lower bound on the cost of completing it reaches the best complete
+ * mapping, or the cost limit. The bound counts edits, each of which costs at
+ * least 1:
+ *
+ * - for the nodes, the number of unmapped nodes that cannot be matched to a
+ * node with the same label.
+ *
+ * - for the edges, the larger of the difference in the number of edges not
+ * yet accounted for and half the smallest total difference in degree over
+ * any pairing of the unmapped nodes.
+ *
+ * {@link #sizeBound(LabelGraph, LabelGraph)} and
+ * {@link #labelBound(LabelGraph, LabelGraph)} are the cheaper bounds of whole
+ * graphs, to skip the search for pairs that are certainly over the limit.
+ * Each cost is a unit cost plus a cost in frequency or weight, and the latter
+ * add up to at least the differences in total frequency and total weight, so
+ * both bounds add these to the unit edits they count.
+ *
+ * An instance is not thread-safe.
+ *
+ * @author riyanat
+ *
+ */
+public class GraphEditDistance {
+
+	private static final int DELETED = -1;
+
+	private LabelGraph first;
+	private LabelGraph second;
+
+	// The nodes of the first graph in the order they are mapped, and both
+	// graphs' nodes by decreasing degree for the bound.
+	private int[] order;
+	private int[] secondOrder;
+
+	// Nodes with the same label in the other graph, or -1.
+	private int[] partner;
+	private int[] secondPartner;
+
+	// mapping[u] is the node of the second graph that node u of the first is
+	// mapped to, or DELETED, for the first {depth} nodes of {order}.
+	private int[] mapping;
+	private boolean[] mapped;
+	private boolean[] used;
+
+	private int common;
+	private int firstEdges;
+	private int secondEdges;
+	private double best;
+
+	/**
+	 * A lower bound on the edit distance from the number, total frequency and
+	 * total weight of the nodes and edges, in constant time.
+	 */
+	public static double sizeBound(LabelGraph first, LabelGraph second) {
+		return Math.abs(first.size() - second.size())
+				+ Math.abs(first.getEdgeCount() - second.getEdgeCount())
+				+ weightBound(first, second);
+	}
+
+	/**
+	 * The bound used by the search before any node is mapped, from the labels
+	 * and degrees of the nodes, plus the difference in total frequency and
+	 * weight, in linear time. It is at least
+	 * {@link #sizeBound(LabelGraph, LabelGraph)}.
+	 */
+	public static double labelBound(LabelGraph first, LabelGraph second) {
+		int[] a = first.getSortedLabels();
+		int[] b = second.getSortedLabels();
+		int common = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length;) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				common++;
+				i++;
+				j++;
+			}
+		}
+		int nodes = Math.max(a.length, b.length) - common;
+
+		a = first.getSortedDegrees();
+		b = second.getSortedDegrees();
+		int degrees = 0;
+		for (int i = 0; i < Math.max(a.length, b.length); i++) {
+			degrees += Math.abs((i < a.length ? a[i] : 0)
+					- (i < b.length ? b[i] : 0));
+		}
+		int edges = Math.max(
+				Math.abs(first.getEdgeCount() - second.getEdgeCount()),
+				(degrees + 1) / 2);
+		return nodes + edges + weightBound(first, second);
+	}
+
+	/**
+	 * The part of the edit distance that any edit path spends on frequencies
+	 * and weights at least.
+	 */
+	private static double weightBound(LabelGraph first, LabelGraph second) {
+		return Math.abs(first.getTotalFrequency() - second.getTotalFrequency())
+				+ Math.abs(first.getTotalWeight() - second.getTotalWeight());
+	}
+
+	/**
+	 * Computes the edit distance of two graphs if it is at most limit.
+	 *
+	 * @return the distance, or limit + 1 if it is larger than limit.
+	 */
+	public double distance(LabelGraph first, LabelGraph second, int limit) {
+		this.first = first;
+		this.second = second;
+		int n1 = first.size();
+		int n2 = second.size();
+
+		order = byDegree(first);
+		secondOrder = byDegree(second);
+		partner = new int[n1];
+		secondPartner = new int[n2];
+		Arrays.fill(partner, DELETED);
+		Arrays.fill(secondPartner, DELETED);
+		common = 0;
+		for (int u = 0; u < n1; u++) {
+			for (int w = 0; w < n2; w++) {
+				if (first.getLabel(u) == second.getLabel(w)) {
+					partner[u] = w;
+					secondPartner[w] = u;
+					common++;
+					break;
+				}
+			}
+		}
+		mapping = new int[n1];
+		mapped = new boolean[n1];
+		used = new boolean[n2];
+		firstEdges = first.getEdgeCount();
+		secondEdges = second.getEdgeCount();
+
+		best = limit + 1;
+		search(0, 0);
+		return best > limit ? limit + 1 : best;
+	}
+
+	private void search(int depth, double cost) {
+		if (depth == order.length) {
+			// Insert the rest of the second graph with its edges.
+			for (int w = 0; w < used.length; w++) {
+				if (!used[w]) {
+					cost += 1 + second.getFrequency(w);
+				}
+				for (int x = 0; x < used.length; x++) {
+					if (second.hasEdge(w, x) && !(used[w] && used[x])) {
+						cost += 1 + second.getWeight(w, x);
+					}
+				}
+			}
+			if (cost < best) {
+				best = cost;
+			}
+			return;
+		}
+
+		int u = order[depth];
+		int p = partner[u];
+		// Try the node with the same label first, then the others, then
+		// deleting u.
+		if (p != DELETED && !used[p]) {
+			expand(depth, cost, u, p);
+		}
+		for (int w = 0; w < used.length; w++) {
+			if (w != p && !used[w]) {
+				expand(depth, cost, u, w);
+			}
+		}
+		expand(depth, cost, u, DELETED);
+	}
+
+	/**
+	 * Maps u to w and searches on if the bound allows it.
+	 */
+	private void expand(int depth, double cost, int u, int w) {
+		double step = nodeCost(u, w);
+
+		// Edges between u and the mapped nodes, and its self loop, are now
+		// decided on both sides.
+		int accounted = 0;
+		int secondAccounted = 0;
+		for (int d = 0; d <= depth; d++) {
+			int v = d < depth ? order[d] : u;
+			int x = d < depth ? mapping[v] : w;
+			step += edgeCost(u, v, w, x);
+			accounted += edges(first, u, v);
+			if (w != DELETED && x != DELETED) {
+				secondAccounted += edges(second, w, x);
+			}
+		}
+
+		int removed = 0;
+		if (partner[u] != DELETED && !used[partner[u]]) {
+			removed++;
+		}
+		if (w != DELETED && secondPartner[w] != DELETED
+				&& secondPartner[w] != u && !mapped[secondPartner[w]]) {
+			removed++;
+		}
+
+		mapping[u] = w;
+		mapped[u] = true;
+		if (w != DELETED) {
+			used[w] = true;
+		}
+		common -= removed;
+		firstEdges -= accounted;
+		secondEdges -= secondAccounted;
+
+		double total = cost + step;
+		if (total + bound(depth + 1) < best) {
+			search(depth + 1, total);
+		}
+
+		common += removed;
+		firstEdges += accounted;
+		secondEdges += secondAccounted;
+		mapped[u] = false;
+		if (w != DELETED) {
+			used[w] = false;
+		}
+	}
+
+	/**
+	 * The cost of substituting u by w, or of deleting it.
+	 */
+	private double nodeCost(int u, int w) {
+		if (w == DELETED) {
+			return 1 + first.getFrequency(u);
+		}
+		double cost = Math.abs(first.getFrequency(u) - second.getFrequency(w));
+		return first.getLabel(u) != second.getLabel(w) ? 1 + cost : cost;
+	}
+
+	/**
+	 * The cost of the edges between u, v and their images w, x.
+	 */
+	private double edgeCost(int u, int v, int w, int x) {
+		boolean mappedBoth = w != DELETED && x != DELETED;
+		double cost = edgeCost(first.hasEdge(u, v), first.getWeight(u, v),
+				mappedBoth && second.hasEdge(w, x),
+				mappedBoth ? second.getWeight(w, x) : 0);
+		if (u != v) {
+			cost += edgeCost(first.hasEdge(v, u), first.getWeight(v, u),
+					mappedBoth && second.hasEdge(x, w),
+					mappedBoth ? second.getWeight(x, w) : 0);
+		}
+		return cost;
+	}
+
+	/**
+	 * The cost of editing an edge that may be on either side.
+	 */
+	private static double edgeCost(boolean edge, double weight,
+			boolean secondEdge, double secondWeight) {
+		if (edge && secondEdge) {
+			return Math.abs(weight - secondWeight);
+		} else if (edge) {
+			return 1 + weight;
+		} else if (secondEdge) {
+			return 1 + secondWeight;
+		}
+		return 0;
+	}
+
+	private static int edges(LabelGraph graph, int a, int b) {
+		int count = graph.hasEdge(a, b) ? 1 : 0;
+		if (a != b && graph.hasEdge(b, a)) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * A lower bound on the cost of mapping the last nodes of {order}, starting
+	 * at depth.
+	 */
+	private int bound(int depth) {
+		int remaining = order.length - depth;
+		int unused = 0;
+		for (int w = 0; w < used.length; w++) {
+			if (!used[w]) {
+				unused++;
+			}
+		}
+		int nodes = Math.max(remaining, unused) - common;
+
+		// Pair the unmapped degrees in sorted order, padding with zeros.
+		int degrees = 0;
+		int i = 0;
+		int j = 0;
+		while (true) {
+			while (i < order.length && mapped[order[i]]) {
+				i++;
+			}
+			while (j < secondOrder.length && used[secondOrder[j]]) {
+				j++;
+			}
+			if (i == order.length && j == secondOrder.length) {
+				break;
+			}
+			int a = i < order.length ? first.getDegree(order[i++]) : 0;
+			int b = j < secondOrder.length ? second.getDegree(secondOrder[j++])
+					: 0;
+			degrees += Math.abs(a - b);
+		}
+		int edges = Math.max(Math.abs(firstEdges - secondEdges),
+				(degrees + 1) / 2);
+		return nodes + edges;
+	}
+
+	/**
+	 * The nodes of a graph by decreasing degree.
+	 */
+	private static int[] byDegree(LabelGraph graph) {
+		int n = graph.size();
+		int[] nodes = new int[n];
+		for (int i = 0; i < n; i++) {
+			nodes[i] = i;
+		}
+		// Insertion sort, graphs are small.
+		for (int i = 1; i < n; i++) {
+			int node = nodes[i];
+			int j = i - 1;
+			while (j >= 0 && graph.getDegree(nodes[j]) < graph.getDegree(node)) {
+				nodes[j + 1] = nodes[j];
+				j--;
+			}
+			nodes[j + 1] = node;
+		}
+		return nodes;
+	}
+}
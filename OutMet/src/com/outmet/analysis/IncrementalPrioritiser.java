@@ -0,0 +1,722 @@
+package com.outmet.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.metrics.PrioritiserMetrics;
+
+/**
+ * Keeps the lofs of a changing set of meta-alerts up to date, after
+ * incremental LOF (Pokrajac, Lazarevic and Latecki, 2007). Meta-alerts are
+ * added, e.g. as a {@link MetaAlertListener} of a {@link Correlator}, or
+ * removed, and {@link #run()} then applies the changes since the last call.
+ *
+ * The lofs are those {@link Prioritiser} computes for the same meta-alerts,
+ * with the same k-distance neighborhoods (see {@link Neighborhoods}), but
+ * only the affected meta-alerts are updated:
+ *
+ * - an added meta-alert is compared with every other, and joins the
+ * neighborhood of those it is within the k-distance of, which may lower
+ * their k-distance.
+ *
+ * - a removed meta-alert leaves the neighborhoods it was in. A meta-alert
+ * left with fewer than k neighbors is compared with every other again to
+ * find its new k-distance.
+ *
+ * - the lrd is then recomputed for the meta-alerts whose neighborhood
+ * changed, and for those with a neighbor whose k-distance changed; the lof
+ * for those, and for those with a neighbor whose lrd changed.
+ *
+ * The alerts of the affected meta-alerts are given their new priority, and
+ * every alert if the largest lof changes. While there are at most k
+ * meta-alerts, every meta-alert is in every neighborhood.
+ *
+ * Distances are computed with a {@link MetaAlertMetric} of its own, and the
+ * distances within each neighborhood are kept, so a meta-alert takes memory
+ * in proportion to its neighborhood rather than to the number of
+ * meta-alerts.
+ *
+ * @author riyanat
+ *
+ */
+public class IncrementalPrioritiser implements MetaAlertListener {
+
+	private static final Logger log = Logger
+			.getLogger(IncrementalPrioritiser.class.getName());
+
+	private int k;
+
+	private MetaAlertMetric metric;
+	private GraphEditDistance ged;
+	private long[] counters;
+
+	/**
+	 * Changes since the last run.
+	 */
+	private List<Graph<Alert>> added;
+	private List<Graph<Alert>> removed;
+
+	/**
+	 * The slot of each meta-alert.
+	 */
+	private Map<Graph<Alert>, Integer> slots;
+
+	/**
+	 * The cache id and number of meta-alerts of each distinct structure.
+	 */
+	private Map<LabelGraph, int[]> structureIds;
+	private int nextStructureId;
+
+	// Per slot: the meta-alert, its structure and cache id.
+	private List<Graph<Alert>> graphs;
+	private LabelGraph[] structures;
+	private int[] ids;
+
+	// Per slot: the neighborhood, including the meta-alert itself, and the
+	// distance of each neighbor.
+	private int[][] neighbors;
+	private double[][] neighborDistances;
+	private int[] neighborCounts;
+
+	// Per slot: the meta-alerts that have it in their neighborhood, other
+	// than itself.
+	private int[][] reverse;
+	private int[] reverseCounts;
+
+	private double[] kDistances;
+	private double[] lrDensities;
+	private double[] lofs;
+	private double maxLof;
+
+	// The slots in use, and the position of each in {live}.
+	private int[] live;
+	private int[] positions;
+	private int size;
+
+	private int[] free;
+	private int freeCount;
+
+	// Slots whose k-distance or neighborhood changed since the last run.
+	private SlotSet changedKDistance;
+	private SlotSet changedNeighbors;
+
+	// Reused while finding the distances of a meta-alert from every other.
+	private int[] rowSlots;
+	private double[] rowDistances;
+	private double[] ordered;
+
+	private int updated;
+
+	private PrioritiserMetrics metrics;
+
+	public IncrementalPrioritiser(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k must be at least 1: " + k);
+		}
+		this.k = k;
+		this.metric = new MetaAlertMetric();
+		this.ged = new GraphEditDistance();
+		this.counters = new long[MetaAlertMetric.COUNTERS];
+		this.metrics = new PrioritiserMetrics();
+		this.added = new ArrayList<Graph<Alert>>();
+		this.removed = new ArrayList<Graph<Alert>>();
+		this.slots = new IdentityHashMap<Graph<Alert>, Integer>();
+		this.structureIds = new HashMap<LabelGraph, int[]>();
+		this.graphs = new ArrayList<Graph<Alert>>();
+		this.changedKDistance = new SlotSet();
+		this.changedNeighbors = new SlotSet();
+		this.rowSlots = new int[0];
+		this.rowDistances = new double[0];
+		this.ordered = new double[0];
+		this.structures = new LabelGraph[0];
+		this.ids = new int[0];
+		this.neighbors = new int[0][];
+		this.neighborDistances = new double[0][];
+		this.neighborCounts = new int[0];
+		this.reverse = new int[0][];
+		this.reverseCounts = new int[0];
+		this.kDistances = new double[0];
+		this.lrDensities = new double[0];
+		this.lofs = new double[0];
+		this.live = new int[0];
+		this.positions = new int[0];
+		this.free = new int[0];
+		grow(16);
+	}
+
+	/**
+	 * Adds a meta-alert closed by the correlator.
+	 */
+	@Override
+	public void metaAlertClosed(Graph<Alert> graph) {
+		add(graph);
+	}
+
+	/**
+	 * Adds a meta-alert at the next run.
+	 */
+	public void add(Graph<Alert> graph) {
+		added.add(graph);
+	}
+
+	/**
+	 * Removes a meta-alert at the next run.
+	 *
+	 * @return false if the meta-alert was neither added nor prioritised.
+	 */
+	public boolean remove(Graph<Alert> graph) {
+		for (int i = 0; i < added.size(); i++) {
+			if (added.get(i) == graph) {
+				added.remove(i);
+				return true;
+			}
+		}
+		if (!slots.containsKey(graph)) {
+			return false;
+		}
+		removed.add(graph);
+		return true;
+	}
+
+	/**
+	 * Applies the changes since the last run, and updates the lofs and
+	 * priorities they affect.
+	 */
+	public void run() {
+		long start = System.currentTimeMillis();
+		long stageStart = System.nanoTime();
+		long distances = getDistanceCount();
+		long[] before = counters.clone();
+		int removals = removed.size();
+		int additions = added.size();
+		for (Graph<Alert> graph : removed) {
+			Integer slot = slots.remove(graph);
+			if (slot != null) {
+				removeSlot(slot);
+			}
+		}
+		removed.clear();
+		for (Graph<Alert> graph : added) {
+			if (!slots.containsKey(graph)) {
+				addSlot(graph);
+			}
+		}
+		added.clear();
+		long[] delta = new long[MetaAlertMetric.COUNTERS];
+		for (int i = 0; i < delta.length; i++) {
+			delta[i] = counters[i] - before[i];
+		}
+		Prioritiser.recordDistances(metrics, delta, System.nanoTime()
+				- stageStart);
+
+		stageStart = System.nanoTime();
+		updateOutMet();
+		metrics.recordLof(size, System.nanoTime() - stageStart);
+
+		log.log(Level.INFO, "Removed " + removals + " and added " + additions
+				+ " meta-alerts of " + size + " in "
+				+ (System.currentTimeMillis() - start) + " ms; computed "
+				+ (getDistanceCount() - distances) + " distances, updated "
+				+ updated + " lofs");
+	}
+
+	private void addSlot(Graph<Alert> graph) {
+		int c = allocate();
+		slots.put(graph, c);
+		graphs.set(c, graph);
+		LabelGraph structure = metric.convert(graph);
+		structures[c] = structure;
+		ids[c] = structureId(structure);
+
+		int n = size + 1;
+		int count = row(c);
+		double kDistance = kDistance(rowDistances, count, true, n);
+
+		// The neighborhood of c.
+		neighborCounts[c] = 0;
+		addNeighbor(c, c, 0);
+		for (int r = 0; r < count; r++) {
+			if (rowDistances[r] <= kDistance) {
+				addNeighbor(c, rowSlots[r], rowDistances[r]);
+			}
+		}
+		kDistances[c] = kDistance;
+
+		// c joins the neighborhoods it falls within.
+		for (int r = 0; r < count; r++) {
+			int s = rowSlots[r];
+			double d = rowDistances[r];
+			if (size < k || d <= kDistances[s]) {
+				addNeighbor(s, c, d);
+				changedNeighbors.add(s);
+				double sKDistance = kDistance(neighborDistances[s],
+						neighborCounts[s], false, n);
+				if (sKDistance != kDistances[s]) {
+					kDistances[s] = sKDistance;
+					changedKDistance.add(s);
+					retainNeighbors(s, sKDistance);
+				}
+			}
+		}
+
+		positions[c] = size;
+		live[size++] = c;
+		changedNeighbors.add(c);
+		changedKDistance.add(c);
+	}
+
+	private void removeSlot(int c) {
+		int[] cNeighbors = neighbors[c];
+		for (int p = 0; p < neighborCounts[c]; p++) {
+			if (cNeighbors[p] != c) {
+				removeReverse(cNeighbors[p], c);
+			}
+		}
+		neighborCounts[c] = 0;
+
+		int last = live[--size];
+		live[positions[c]] = last;
+		positions[last] = positions[c];
+
+		// c leaves the neighborhoods it is in.
+		int[] cReverse = Arrays.copyOf(reverse[c], reverseCounts[c]);
+		reverseCounts[c] = 0;
+		for (int q : cReverse) {
+			removeNeighbor(q, c);
+			changedNeighbors.add(q);
+			double kDistance;
+			if (neighborCounts[q] >= k) {
+				// Other neighbors are at the k-distance.
+				continue;
+			} else if (neighborCounts[q] == size) {
+				// Every meta-alert is a neighbor, and there are fewer than k.
+				kDistance = kDistance(neighborDistances[q], neighborCounts[q],
+						false, size);
+			} else {
+				kDistance = requery(q);
+			}
+			if (kDistance != kDistances[q]) {
+				kDistances[q] = kDistance;
+				changedKDistance.add(q);
+			}
+		}
+
+		int[] count = structureIds.get(structures[c]);
+		if (--count[1] == 0) {
+			structureIds.remove(structures[c]);
+		}
+		graphs.set(c, null);
+		structures[c] = null;
+		free[freeCount++] = c;
+	}
+
+	/**
+	 * Finds the neighborhood of q from its distance to every other meta-alert.
+	 *
+	 * @return the k-distance of q.
+	 */
+	private double requery(int q) {
+		int[] qNeighbors = neighbors[q];
+		for (int p = 0; p < neighborCounts[q]; p++) {
+			if (qNeighbors[p] != q) {
+				removeReverse(qNeighbors[p], q);
+			}
+		}
+		neighborCounts[q] = 0;
+
+		// q is live, so the row holds the other size - 1.
+		int count = row(q);
+		double kDistance = kDistance(rowDistances, count, true, size);
+		addNeighbor(q, q, 0);
+		for (int r = 0; r < count; r++) {
+			if (rowDistances[r] <= kDistance) {
+				addNeighbor(q, rowSlots[r], rowDistances[r]);
+			}
+		}
+		return kDistance;
+	}
+
+	/**
+	 * Recomputes the lrds and lofs affected by the changes, and the
+	 * priorities of the alerts whose lof changed.
+	 */
+	private void updateOutMet() {
+		// The lrd depends on the neighborhood and the neighbors' k-distances.
+		SlotSet lrdSlots = new SlotSet();
+		for (int i = 0; i < changedNeighbors.size; i++) {
+			lrdSlots.add(changedNeighbors.items[i]);
+		}
+		for (int i = 0; i < changedKDistance.size; i++) {
+			int s = changedKDistance.items[i];
+			lrdSlots.add(s);
+			for (int r = 0; r < reverseCounts[s]; r++) {
+				lrdSlots.add(reverse[s][r]);
+			}
+		}
+		changedNeighbors.clear();
+		changedKDistance.clear();
+
+		// The lof depends on the neighbors' lrds.
+		SlotSet lofSlots = new SlotSet();
+		for (int i = 0; i < lrdSlots.size; i++) {
+			int s = lrdSlots.items[i];
+			if (isLive(s)) {
+				lrDensities[s] = lrd(s);
+				lofSlots.add(s);
+				for (int r = 0; r < reverseCounts[s]; r++) {
+					lofSlots.add(reverse[s][r]);
+				}
+			}
+		}
+		updated = 0;
+		for (int i = 0; i < lofSlots.size; i++) {
+			int s = lofSlots.items[i];
+			if (isLive(s)) {
+				lofs[s] = lof(s);
+				updated++;
+			}
+		}
+
+		double previous = maxLof;
+		maxLof = 0.0;
+		for (int i = 0; i < size; i++) {
+			if (lofs[live[i]] > maxLof) {
+				maxLof = lofs[live[i]];
+			}
+		}
+		if (maxLof != previous) {
+			for (int i = 0; i < size; i++) {
+				updateAlerts(live[i]);
+			}
+		} else {
+			for (int i = 0; i < lofSlots.size; i++) {
+				if (isLive(lofSlots.items[i])) {
+					updateAlerts(lofSlots.items[i]);
+				}
+			}
+		}
+	}
+
+	private double lrd(int s) {
+		double sum = 0;
+		for (int p = 0; p < neighborCounts[s]; p++) {
+			sum += Math.max(kDistances[neighbors[s][p]],
+					neighborDistances[s][p]);
+		}
+		return 1 / (sum / neighborCounts[s]);
+	}
+
+	private double lof(int s) {
+		double lrdP = lrDensities[s];
+		double sum = 0;
+		for (int p = 0; p < neighborCounts[s]; p++) {
+			sum += lrDensities[neighbors[s][p]] / lrdP;
+		}
+		return sum / neighborCounts[s];
+	}
+
+	private void updateAlerts(int s) {
+		int priority = Prioritiser.priority(lofs[s], maxLof);
+		for (Node<Alert> alert : graphs.get(s).getNodes()) {
+			alert.getElement().setOutMetPriority(priority);
+		}
+	}
+
+	/**
+	 * Computes the distance of s from every other meta-alert into {rowSlots}
+	 * and {rowDistances}.
+	 *
+	 * @return the number of distances.
+	 */
+	private int row(int s) {
+		if (rowSlots.length < size) {
+			rowSlots = new int[Math.max(size, 2 * rowSlots.length)];
+			rowDistances = new double[rowSlots.length];
+		}
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			int t = live[i];
+			if (t == s) {
+				continue;
+			}
+			double d;
+			if (ids[t] == ids[s]) {
+				d = MetaAlertMetric.MIN_DISTANCE;
+			} else {
+				d = metric.distance(structures[s], ids[s], structures[t],
+						ids[t], ged, counters);
+			}
+			rowSlots[count] = t;
+			rowDistances[count] = d;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * The k-distance of a meta-alert out of n, given its distances from
+	 * others, or from its neighbors.
+	 *
+	 * @param self
+	 *            whether to add the distance 0 of the meta-alert itself.
+	 */
+	private double kDistance(double[] distances, int count, boolean self, int n) {
+		if (ordered.length < count + 1) {
+			ordered = new double[Math.max(count + 1, 2 * ordered.length)];
+		}
+		System.arraycopy(distances, 0, ordered, 0, count);
+		if (self) {
+			ordered[count++] = 0;
+		}
+		return Neighborhoods.select(ordered, count, Math.min(k, n) - 1);
+	}
+
+	/**
+	 * Drops the neighbors of s beyond its k-distance.
+	 */
+	private void retainNeighbors(int s, double kDistance) {
+		int[] sNeighbors = neighbors[s];
+		double[] sDistances = neighborDistances[s];
+		int count = 0;
+		for (int p = 0; p < neighborCounts[s]; p++) {
+			if (sDistances[p] <= kDistance) {
+				sNeighbors[count] = sNeighbors[p];
+				sDistances[count] = sDistances[p];
+				count++;
+			} else {
+				removeReverse(sNeighbors[p], s);
+			}
+		}
+		neighborCounts[s] = count;
+	}
+
+	private void addNeighbor(int s, int neighbor, double d) {
+		int count = neighborCounts[s];
+		if (count == neighbors[s].length) {
+			neighbors[s] = Arrays.copyOf(neighbors[s], 2 * count + 4);
+			neighborDistances[s] = Arrays.copyOf(neighborDistances[s],
+					neighbors[s].length);
+		}
+		neighbors[s][count] = neighbor;
+		neighborDistances[s][count] = d;
+		neighborCounts[s]++;
+		if (neighbor != s) {
+			count = reverseCounts[neighbor];
+			if (count == reverse[neighbor].length) {
+				reverse[neighbor] = Arrays.copyOf(reverse[neighbor],
+						2 * count + 4);
+			}
+			reverse[neighbor][count] = s;
+			reverseCounts[neighbor]++;
+		}
+	}
+
+	private void removeNeighbor(int s, int neighbor) {
+		int last = neighborCounts[s] - 1;
+		for (int p = 0; p <= last; p++) {
+			if (neighbors[s][p] == neighbor) {
+				neighbors[s][p] = neighbors[s][last];
+				neighborDistances[s][p] = neighborDistances[s][last];
+				neighborCounts[s] = last;
+				return;
+			}
+		}
+	}
+
+	private void removeReverse(int s, int q) {
+		int last = reverseCounts[s] - 1;
+		for (int r = 0; r <= last; r++) {
+			if (reverse[s][r] == q) {
+				reverse[s][r] = reverse[s][last];
+				reverseCounts[s] = last;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The cache id of a structure. Ids are not reused while the cache holds
+	 * distances for them, so when they run out the cache is cleared and the
+	 * structures in use are numbered again.
+	 */
+	private int structureId(LabelGraph structure) {
+		int[] entry = structureIds.get(structure);
+		if (entry == null) {
+			if (nextStructureId > GedCache.MAX_STRUCTURE) {
+				metric.clearCache();
+				nextStructureId = 0;
+				for (int[] used : structureIds.values()) {
+					used[0] = nextStructureId++;
+				}
+				for (int i = 0; i < size; i++) {
+					ids[live[i]] = structureIds.get(structures[live[i]])[0];
+				}
+			}
+			entry = new int[] { nextStructureId++, 0 };
+			structureIds.put(structure, entry);
+		}
+		entry[1]++;
+		return entry[0];
+	}
+
+	private int allocate() {
+		if (freeCount > 0) {
+			return free[--freeCount];
+		}
+		int slot = graphs.size();
+		if (slot == kDistances.length) {
+			grow(2 * slot);
+		}
+		graphs.add(null);
+		neighbors[slot] = new int[Math.min(k, 16) + 1];
+		neighborDistances[slot] = new double[neighbors[slot].length];
+		reverse[slot] = new int[4];
+		return slot;
+	}
+
+	private void grow(int capacity) {
+		structures = Arrays.copyOf(structures, capacity);
+		ids = Arrays.copyOf(ids, capacity);
+		neighbors = Arrays.copyOf(neighbors, capacity);
+		neighborDistances = Arrays.copyOf(neighborDistances, capacity);
+		neighborCounts = Arrays.copyOf(neighborCounts, capacity);
+		reverse = Arrays.copyOf(reverse, capacity);
+		reverseCounts = Arrays.copyOf(reverseCounts, capacity);
+		kDistances = Arrays.copyOf(kDistances, capacity);
+		lrDensities = Arrays.copyOf(lrDensities, capacity);
+		lofs = Arrays.copyOf(lofs, capacity);
+		live = Arrays.copyOf(live, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		free = Arrays.copyOf(free, capacity);
+	}
+
+	private boolean isLive(int s) {
+		return s < graphs.size() && graphs.get(s) != null;
+	}
+
+	private int slot(Graph<Alert> graph) {
+		Integer slot = slots.get(graph);
+		if (slot == null) {
+			throw new IllegalArgumentException("Not prioritised: "
+					+ graph.getKey());
+		}
+		return slot;
+	}
+
+	public double getLof(Graph<Alert> graph) {
+		return lofs[slot(graph)];
+	}
+
+	public double getKDistance(Graph<Alert> graph) {
+		return kDistances[slot(graph)];
+	}
+
+	public double getMaxLof() {
+		return maxLof;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public MetaAlertMetric.EditDistance getEditDistance() {
+		return metric.getEditDistance();
+	}
+
+	/**
+	 * Selects how edit distances are computed, see {@link MetaAlertMetric}.
+	 * It can only be changed before the first meta-alert is added.
+	 */
+	public void setEditDistance(MetaAlertMetric.EditDistance editDistance) {
+		if (!slots.isEmpty() || !added.isEmpty()) {
+			throw new IllegalStateException(
+					"Edit distance changed after meta-alerts were added");
+		}
+		metric.setEditDistance(editDistance);
+		structureIds.clear();
+	}
+
+	/**
+	 * The number of prioritised meta-alerts.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The meta-alerts, in no particular order.
+	 */
+	public List<Graph<Alert>> getGraphs() {
+		List<Graph<Alert>> result = new ArrayList<Graph<Alert>>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(graphs.get(live[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * The number of distances computed so far, including those resolved by a
+	 * bound or the cache.
+	 */
+	public long getDistanceCount() {
+		return counters[MetaAlertMetric.SIZE_BOUND]
+				+ counters[MetaAlertMetric.LABEL_BOUND]
+				+ counters[MetaAlertMetric.CACHE_HIT]
+				+ counters[MetaAlertMetric.EXACT];
+	}
+
+	public PrioritiserMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * The number of lofs recomputed by the last run.
+	 */
+	public int getUpdatedCount() {
+		return updated;
+	}
+
+	/**
+	 * A set of slots that can be listed and cleared in the time of its size.
+	 */
+	private static class SlotSet {
+		private int[] items = new int[16];
+		private int size;
+		private boolean[] members = new boolean[16];
+
+		void add(int slot) {
+			if (slot >= members.length) {
+				grow(2 * slot);
+			}
+			if (!members[slot]) {
+				members[slot] = true;
+				if (size == items.length) {
+					items = Arrays.copyOf(items, 2 * size);
+				}
+				items[size++] = slot;
+			}
+		}
+
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				members[items[i]] = false;
+			}
+			size = 0;
+		}
+
+		void grow(int capacity) {
+			if (capacity > members.length) {
+				members = Arrays.copyOf(members, capacity);
+			}
+		}
+	}
+}
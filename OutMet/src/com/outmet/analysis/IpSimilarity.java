@@ -0,0 +1,319 @@
+package com.outmet.analysis;
+
+/**
+ * Computes the similarity of two IP addresses as the length of their common
+ * bit prefix. Addresses are parsed once into primitives (an int for IPv4, two
+ * longs for IPv6) so that comparisons are a single xor and
+ * numberOfLeadingZeros, without allocating and without ever asking the
+ * resolver to look up a host name.
+ *
+ * Addresses are held in "prefix order": octets stay in network order but the
+ * bits of every octet are read from the least significant bit. This is the
+ * order the original BitSet implementation compared bits in, and is kept so
+ * that correlation scores (and therefore meta-alerts) do not change.
+ *
+ * Values that are not IP literals (e.g. host names) are compared by
+ * case-insensitive equality.
+ *
+ * @author riyanat
+ *
+ */
+public class IpSimilarity {
+
+	/**
+	 * Returned by {@link #parseIpv4(CharSequence)} for anything that is not a
+	 * dotted-quad IPv4 literal.
+	 */
+	public static final long NOT_IPV4 = -1L;
+
+	/**
+	 * Scratch space for IPv6 comparisons made through the String API.
+	 */
+	private static final ThreadLocal<long[]> SCRATCH = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[4];
+		}
+	};
+
+	/**
+	 * Similarity of two IPv4 addresses in prefix order, see
+	 * {@link #parseIpv4(CharSequence)}.
+	 */
+	public static double similarity(int x, int y) {
+		return Integer.numberOfLeadingZeros(x ^ y) / 32.00;
+	}
+
+	/**
+	 * Similarity of two IPv6 addresses in prefix order, see
+	 * {@link #parseIpv6(CharSequence, long[], int)}.
+	 */
+	public static double similarity(long xHigh, long xLow, long yHigh,
+			long yLow) {
+		return commonPrefix(xHigh, xLow, yHigh, yLow) / 128.00;
+	}
+
+	/**
+	 * Similarity of two addresses given as strings. Surrounding whitespace is
+	 * ignored. Addresses of different families have a similarity of 0.
+	 */
+	public static double similarity(String x, String y) {
+		if (x == null || y == null) {
+			return x == y ? 1 : 0;
+		}
+
+		long thisIP = parseIpv4(x);
+		long otherIP = parseIpv4(y);
+		if (thisIP != NOT_IPV4 && otherIP != NOT_IPV4) {
+			return similarity((int) thisIP, (int) otherIP);
+		}
+
+		long[] v6 = SCRATCH.get();
+		boolean thisV6 = thisIP == NOT_IPV4 && parseIpv6(x, v6, 0);
+		boolean otherV6 = otherIP == NOT_IPV4 && parseIpv6(y, v6, 2);
+		if (thisV6 && otherV6) {
+			return similarity(v6[0], v6[1], v6[2], v6[3]);
+		}
+		if ((thisIP != NOT_IPV4 || thisV6) && (otherIP != NOT_IPV4 || otherV6)) {
+			return 0;
+		}
+
+		return equalsIgnoreCaseTrimmed(x, y) ? 1 : 0;
+	}
+
+	/**
+	 * Length of the common prefix of two IPv4 addresses in prefix order.
+	 */
+	public static int commonPrefix(int x, int y) {
+		return Integer.numberOfLeadingZeros(x ^ y);
+	}
+
+	/**
+	 * Length of the common prefix of two IPv6 addresses in prefix order.
+	 */
+	public static int commonPrefix(long xHigh, long xLow, long yHigh, long yLow) {
+		long high = xHigh ^ yHigh;
+		if (high != 0) {
+			return Long.numberOfLeadingZeros(high);
+		}
+		return 64 + Long.numberOfLeadingZeros(xLow ^ yLow);
+	}
+
+	/**
+	 * Parses a dotted-quad IPv4 literal, ignoring surrounding whitespace.
+	 *
+	 * @return the address in prefix order in the low 32 bits, or
+	 *         {@link #NOT_IPV4}.
+	 */
+	public static long parseIpv4(CharSequence ip) {
+		int start = 0;
+		int end = ip.length();
+		while (start < end && ip.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && ip.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		int address = 0;
+		int octets = 0;
+		int i = start;
+		while (octets < 4) {
+			int value = 0;
+			int digits = 0;
+			while (i < end && digits < 4) {
+				char c = ip.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				value = value * 10 + (c - '0');
+				digits++;
+				i++;
+			}
+			if (digits == 0 || digits > 3 || value > 255) {
+				return NOT_IPV4;
+			}
+			address = (address << 8) | value;
+			octets++;
+
+			if (octets < 4) {
+				if (i >= end || ip.charAt(i) != '.') {
+					return NOT_IPV4;
+				}
+				i++;
+			}
+		}
+		if (i != end) {
+			return NOT_IPV4;
+		}
+		return toPrefixOrder(address) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Parses an IPv6 literal (with optional brackets, zone id, "::"
+	 * compression and trailing dotted quad), ignoring surrounding whitespace.
+	 * On success the high and low 64 bits of the address, in prefix order, are
+	 * written to address[offset] and address[offset + 1].
+	 *
+	 * @return true if ip is an IPv6 literal.
+	 */
+	public static boolean parseIpv6(CharSequence ip, long[] address, int offset) {
+		int start = 0;
+		int end = ip.length();
+		while (start < end && ip.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && ip.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		if (end - start >= 2 && ip.charAt(start) == '['
+				&& ip.charAt(end - 1) == ']') {
+			start++;
+			end--;
+		}
+		for (int z = start; z < end; z++) {
+			if (ip.charAt(z) == '%') {
+				end = z;
+				break;
+			}
+		}
+		if (end - start < 2) {
+			return false;
+		}
+
+		// Groups before "::" are accumulated in head, groups after it in tail.
+		long headHigh = 0, headLow = 0, tailHigh = 0, tailLow = 0;
+		int headGroups = 0, tailGroups = 0;
+		boolean compressed = false;
+
+		int i = start;
+		if (ip.charAt(i) == ':') {
+			if (ip.charAt(i + 1) != ':') {
+				return false;
+			}
+			compressed = true;
+			i += 2;
+		}
+
+		while (i < end) {
+			int groupStart = i;
+			int value = 0;
+			while (i < end && i - groupStart < 5) {
+				int digit = Character.digit(ip.charAt(i), 16);
+				if (digit < 0) {
+					break;
+				}
+				value = (value << 4) | digit;
+				i++;
+			}
+
+			if (i < end && ip.charAt(i) == '.') {
+				// Trailing dotted quad occupies the last two groups.
+				long v4 = parseIpv4(ip.subSequence(groupStart, end));
+				if (v4 == NOT_IPV4) {
+					return false;
+				}
+				int quad = toPrefixOrder((int) v4);
+				for (int g = 0; g < 2; g++) {
+					int group = g == 0 ? quad >>> 16 : quad & 0xFFFF;
+					if (compressed) {
+						tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+						tailLow = (tailLow << 16) | group;
+						tailGroups++;
+					} else {
+						headHigh = (headHigh << 16) | (headLow >>> 48);
+						headLow = (headLow << 16) | group;
+						headGroups++;
+					}
+				}
+				i = end;
+				break;
+			}
+
+			int length = i - groupStart;
+			if (length == 0 || length > 4) {
+				return false;
+			}
+			if (compressed) {
+				tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+				tailLow = (tailLow << 16) | value;
+				tailGroups++;
+			} else {
+				headHigh = (headHigh << 16) | (headLow >>> 48);
+				headLow = (headLow << 16) | value;
+				headGroups++;
+			}
+
+			if (i == end) {
+				break;
+			}
+			if (ip.charAt(i) != ':') {
+				return false;
+			}
+			i++;
+			if (i < end && ip.charAt(i) == ':') {
+				if (compressed) {
+					return false;
+				}
+				compressed = true;
+				i++;
+			} else if (i == end) {
+				return false;
+			}
+		}
+
+		int groups = headGroups + tailGroups;
+		if (compressed ? groups > 7 : groups != 8) {
+			return false;
+		}
+
+		// Move the head groups to the top of the address.
+		int shift = 16 * (8 - headGroups);
+		if (headGroups == 0) {
+			headHigh = headLow = 0;
+		} else if (shift >= 64) {
+			headHigh = headLow << (shift - 64);
+			headLow = 0;
+		} else if (shift > 0) {
+			headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+			headLow = headLow << shift;
+		}
+
+		address[offset] = toPrefixOrder(headHigh | tailHigh);
+		address[offset + 1] = toPrefixOrder(headLow | tailLow);
+		return true;
+	}
+
+	/**
+	 * Reverses the bits within each octet of an address in network order.
+	 */
+	public static int toPrefixOrder(int address) {
+		return Integer.reverse(Integer.reverseBytes(address));
+	}
+
+	/**
+	 * Reverses the bits within each octet of an address in network order.
+	 */
+	public static long toPrefixOrder(long address) {
+		return Long.reverse(Long.reverseBytes(address));
+	}
+
+	private static boolean equalsIgnoreCaseTrimmed(String x, String y) {
+		int xStart = 0, xEnd = x.length();
+		while (xStart < xEnd && x.charAt(xStart) <= ' ') {
+			xStart++;
+		}
+		while (xEnd > xStart && x.charAt(xEnd - 1) <= ' ') {
+			xEnd--;
+		}
+		int yStart = 0, yEnd = y.length();
+		while (yStart < yEnd && y.charAt(yStart) <= ' ') {
+			yStart++;
+		}
+		while (yEnd > yStart && y.charAt(yEnd - 1) <= ' ') {
+			yEnd--;
+		}
+		return xEnd - xStart == yEnd - yStart
+				&& x.regionMatches(true, xStart, y, yStart, xEnd - xStart);
+	}
+}
@@ -0,0 +1,276 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.data.TermDictionary;
+
+/**
+ * A compact, immutable view of a meta-alert for computing edit distances. It
+ * is the graph that {@link Graph#toDotString()} describes: nodes with the same
+ * label are merged into one, and edges with the same label are merged into
+ * one between the merged nodes of the first such edge. As in the DOT
+ * description, the frequency of a merged node is the sum of the weights of
+ * all but the first of its nodes, and the weight of a merged edge the sum of
+ * the weights of all but the first of its edges. Edges with different labels
+ * between the same merged nodes are one edge with the sum of their weights.
+ * Labels are held as {@link TermDictionary} ids and edges as an adjacency
+ * matrix, so a meta-alert is converted once and then compared with any
+ * number of others.
+ *
+ * Two label graphs are equal if they have the same structure: the same labels
+ * and frequencies and the same edges and weights between them. As labels are
+ * unique within a graph, this is a canonical fingerprint, and equal graphs
+ * are at edit distance 0. Only graphs converted with the same dictionary can
+ * be compared.
+ *
+ * A graph converted with {@link #describe(Graph, TermDictionary)} also keeps
+ * its DOT description for the ged library; such graphs are equal only if
+ * their descriptions are too.
+ *
+ * @author riyanat
+ *
+ */
+public class LabelGraph {
+
+	private int[] labels;
+	private double[] frequencies;
+	private boolean[][] edges;
+	private double[][] weights;
+	private int[] degrees;
+	private int edgeCount;
+	private double totalFrequency;
+	private double totalWeight;
+
+	// Labels in increasing and degrees in decreasing order, for the bounds
+	// of GraphEditDistance.
+	private int[] sortedLabels;
+	private int[] sortedDegrees;
+
+	// The edges as source * n + target over the ranks of the labels in
+	// {sortedLabels}, in increasing order, and the frequencies and weights in
+	// the same orders.
+	private int[] canonicalEdges;
+	private double[] canonicalFrequencies;
+	private double[] canonicalWeights;
+	private int hash;
+
+	// The DOT description, or null.
+	private String description;
+
+	private LabelGraph(int[] labels, double[] frequencies, boolean[][] edges,
+			double[][] weights) {
+		this.labels = labels;
+		this.frequencies = frequencies;
+		this.edges = edges;
+		this.weights = weights;
+		this.degrees = new int[labels.length];
+		for (int s = 0; s < labels.length; s++) {
+			totalFrequency += frequencies[s];
+			for (int t = 0; t < labels.length; t++) {
+				if (edges[s][t]) {
+					totalWeight += weights[s][t];
+					edgeCount++;
+					degrees[s]++;
+					if (s != t) {
+						degrees[t]++;
+					}
+				}
+			}
+		}
+
+		sortedLabels = labels.clone();
+		Arrays.sort(sortedLabels);
+		sortedDegrees = degrees.clone();
+		Arrays.sort(sortedDegrees);
+		for (int i = 0, j = sortedDegrees.length - 1; i < j; i++, j--) {
+			int degree = sortedDegrees[i];
+			sortedDegrees[i] = sortedDegrees[j];
+			sortedDegrees[j] = degree;
+		}
+
+		int n = labels.length;
+		int[] rank = new int[n];
+		int[] byRank = new int[n];
+		canonicalFrequencies = new double[n];
+		for (int node = 0; node < n; node++) {
+			rank[node] = Arrays.binarySearch(sortedLabels, labels[node]);
+			byRank[rank[node]] = node;
+			canonicalFrequencies[rank[node]] = frequencies[node];
+		}
+		canonicalEdges = new int[edgeCount];
+		int e = 0;
+		for (int s = 0; s < n; s++) {
+			for (int t = 0; t < n; t++) {
+				if (edges[s][t]) {
+					canonicalEdges[e++] = rank[s] * n + rank[t];
+				}
+			}
+		}
+		Arrays.sort(canonicalEdges);
+		canonicalWeights = new double[edgeCount];
+		for (e = 0; e < edgeCount; e++) {
+			int code = canonicalEdges[e];
+			canonicalWeights[e] = weights[byRank[code / n]][byRank[code % n]];
+		}
+		hash = 31 * Arrays.hashCode(sortedLabels)
+				+ Arrays.hashCode(canonicalEdges);
+		hash = 31 * hash + Arrays.hashCode(canonicalFrequencies);
+		hash = 31 * hash + Arrays.hashCode(canonicalWeights);
+	}
+
+	/**
+	 * Converts a graph, adding its node labels to terms.
+	 */
+	public static <E> LabelGraph of(Graph<E> graph, TermDictionary terms) {
+		List<Node<E>> nodes = graph.getNodes();
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		int[] labels = new int[nodes.size()];
+		double[] frequencies = new double[nodes.size()];
+		for (Node<E> node : nodes) {
+			Integer merged = index.get(node.getLabel());
+			if (merged == null) {
+				labels[index.size()] = terms.add(node.getLabel());
+				index.put(node.getLabel(), index.size());
+			} else {
+				frequencies[merged] += node.getWeight();
+			}
+		}
+
+		int n = index.size();
+		boolean[][] edges = new boolean[n][n];
+		double[][] weights = new double[n][n];
+		Map<String, int[]> edgeLabels = new HashMap<String, int[]>();
+		for (Edge<E> edge : graph.getEdges()) {
+			int[] merged = edgeLabels.get(edge.getLabel());
+			if (merged == null) {
+				merged = new int[] { index.get(edge.getSource().getLabel()),
+						index.get(edge.getTarget().getLabel()) };
+				edgeLabels.put(edge.getLabel(), merged);
+				edges[merged[0]][merged[1]] = true;
+			} else {
+				weights[merged[0]][merged[1]] += edge.getWeight();
+			}
+		}
+		return new LabelGraph(Arrays.copyOf(labels, n), Arrays.copyOf(
+				frequencies, n), edges, weights);
+	}
+
+	/**
+	 * Converts a graph as {@link #of(Graph, TermDictionary)}, keeping its DOT
+	 * description.
+	 */
+	public static <E> LabelGraph describe(Graph<E> graph, TermDictionary terms) {
+		LabelGraph labelGraph = of(graph, terms);
+		labelGraph.description = graph.toDotString();
+		labelGraph.hash = 31 * labelGraph.hash
+				+ labelGraph.description.hashCode();
+		return labelGraph;
+	}
+
+	/**
+	 * The number of (merged) nodes.
+	 */
+	public int size() {
+		return labels.length;
+	}
+
+	public int getLabel(int node) {
+		return labels[node];
+	}
+
+	/**
+	 * The frequency of a merged node, as in the DOT description.
+	 */
+	public double getFrequency(int node) {
+		return frequencies[node];
+	}
+
+	public boolean hasEdge(int source, int target) {
+		return edges[source][target];
+	}
+
+	/**
+	 * The weight of a merged edge as in the DOT description, or 0 if there is
+	 * no edge.
+	 */
+	public double getWeight(int source, int target) {
+		return weights[source][target];
+	}
+
+	/**
+	 * The number of edges into or out of node, counting a self loop once.
+	 */
+	public int getDegree(int node) {
+		return degrees[node];
+	}
+
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * The sum of the node frequencies.
+	 */
+	public double getTotalFrequency() {
+		return totalFrequency;
+	}
+
+	/**
+	 * The sum of the edge weights.
+	 */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * The DOT description, or null if the graph was not converted with
+	 * {@link #describe(Graph, TermDictionary)}.
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof LabelGraph)) {
+			return false;
+		}
+		LabelGraph graph = (LabelGraph) other;
+		return hash == graph.hash
+				&& Arrays.equals(sortedLabels, graph.sortedLabels)
+				&& Arrays.equals(canonicalEdges, graph.canonicalEdges)
+				&& Arrays.equals(canonicalFrequencies,
+						graph.canonicalFrequencies)
+				&& Arrays.equals(canonicalWeights, graph.canonicalWeights)
+				&& (description == null ? graph.description == null
+						: description.equals(graph.description));
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * The node labels in increasing order. Do not modify.
+	 */
+	public int[] getSortedLabels() {
+		return sortedLabels;
+	}
+
+	/**
+	 * The node degrees in decreasing order. Do not modify.
+	 */
+	public int[] getSortedDegrees() {
+		return sortedDegrees;
+	}
+}
@@ -0,0 +1,22 @@
+package com.outmet.analysis;
+
+import com.outmet.data.Alert;
+
+/**
+ * Receives the alerts a {@link ReorderBuffer} could not put in order, i.e.
+ * those that arrived after alerts that started later than them had already
+ * been released.
+ *
+ * @author riyanat
+ *
+ */
+public interface LateAlertListener {
+
+	/**
+	 * Called for every late alert instead of releasing it.
+	 *
+	 * @param watermark
+	 *            the start time of the alerts released so far.
+	 */
+	void lateAlert(Alert alert, long watermark);
+}
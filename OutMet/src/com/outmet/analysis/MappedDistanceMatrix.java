@@ -0,0 +1,110 @@
+package com.outmet.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A packed {@link DistanceMatrix} held outside the Java heap in a
+ * memory-mapped temporary file, for matrices larger than the heap. The
+ * operating system pages the triangle in and out as it is used. The file is
+ * deleted as soon as it is mapped where the platform allows it, and otherwise
+ * on exit; the mapping is released when the matrix is garbage collected.
+ *
+ * @author riyanat
+ *
+ */
+public class MappedDistanceMatrix extends DistanceMatrix {
+
+	private static final int PAGE_BITS = 24;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private MappedByteBuffer[] pages;
+	private boolean floatPrecision;
+
+	public MappedDistanceMatrix(int n, boolean floatPrecision) {
+		this(n, floatPrecision, null);
+	}
+
+	/**
+	 * @param directory
+	 *            where to create the file, or null for the default temporary
+	 *            directory.
+	 */
+	public MappedDistanceMatrix(int n, boolean floatPrecision, File directory) {
+		super(n);
+		this.floatPrecision = floatPrecision;
+		int width = floatPrecision ? 4 : 8;
+		long cells = packedSize(n);
+		pages = new MappedByteBuffer[(int) ((cells + PAGE_SIZE - 1) >>> PAGE_BITS)];
+
+		File file = null;
+		RandomAccessFile output = null;
+		try {
+			file = File.createTempFile("outmet-distance", ".bin", directory);
+			output = new RandomAccessFile(file, "rw");
+			output.setLength(cells * width);
+			FileChannel channel = output.getChannel();
+			for (int p = 0; p < pages.length; p++) {
+				long start = (long) p << PAGE_BITS;
+				long length = Math.min(PAGE_SIZE, cells - start);
+				pages[p] = channel.map(FileChannel.MapMode.READ_WRITE, start
+						* width, length * width);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to map a distance matrix of "
+					+ n + " meta-alerts in " + file, e);
+		} finally {
+			try {
+				if (output != null) {
+					output.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (file != null && !file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	@Override
+	public double get(int i, int j) {
+		long cell = packedIndex(i, j);
+		if (cell < 0) {
+			return 0;
+		}
+		MappedByteBuffer page = pages[(int) (cell >>> PAGE_BITS)];
+		int offset = (int) cell & PAGE_MASK;
+		if (floatPrecision) {
+			return page.getFloat(offset << 2);
+		}
+		return page.getDouble(offset << 3);
+	}
+
+	/**
+	 * Sets a distance. Different cells may be set from different threads.
+	 */
+	@Override
+	public void set(int i, int j, double distance) {
+		long cell = packedIndex(i, j);
+		if (cell < 0) {
+			checkDiagonal(i, distance);
+			return;
+		}
+		MappedByteBuffer page = pages[(int) (cell >>> PAGE_BITS)];
+		int offset = (int) cell & PAGE_MASK;
+		if (floatPrecision) {
+			page.putFloat(offset << 2, (float) distance);
+		} else {
+			page.putDouble(offset << 3, distance);
+		}
+	}
+
+	public boolean isFloatPrecision() {
+		return floatPrecision;
+	}
+}
@@ -0,0 +1,20 @@
+package com.outmet.analysis;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * Receives meta-alerts from a {@link Correlator} once they are closed, i.e.
+ * once no newer alert can be correlated with them.
+ * 
+ * @author riyanat
+ * 
+ */
+public interface MetaAlertListener {
+
+	/**
+	 * Called once for every meta-alert that has fallen out of the correlator's
+	 * time window. No further alerts will be added to the graph.
+	 */
+	void metaAlertClosed(Graph<Alert> graph);
+}
@@ -0,0 +1,284 @@
+package com.outmet.analysis;
+
+import ged.graph.DotParseException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.TermDictionary;
+
+/**
+ * The distance between meta-alerts used for prioritisation: the normalised
+ * edit distance of their structures, at least {@link #MIN_DISTANCE}.
+ *
+ * The edit distance is selected with {@link #setEditDistance(EditDistance)}.
+ * By default it is the native edit distance of {@link GraphEditDistance},
+ * which has the costs of the ged library: it weighs the node frequencies and
+ * edge weights of the DOT descriptions. It is a metric on the distinct
+ * structures and much faster than the library, which parses both DOT
+ * descriptions for every pair and is kept to check the native distances.
+ *
+ * A list of meta-alerts is first collapsed into its distinct structures (see
+ * {@link LabelGraph#equals(Object)}), and distances are then computed between
+ * structures. Each distance is resolved by the first of these tiers that can
+ * decide it, the bounds only with the native edit distance:
+ *
+ * - the size bound, {@link GraphEditDistance#sizeBound(LabelGraph, LabelGraph)}.
+ *
+ * - the label bound, {@link GraphEditDistance#labelBound(LabelGraph, LabelGraph)}.
+ *
+ * - the {@link GedCache} of the distances computed before.
+ *
+ * - the exact edit distance, which is then cached.
+ *
+ * A pair whose bound is over {@link Distance#ACCEPTANCE_LIMIT_COST} gets the
+ * distance 1, as it would from the exact edit distance. Structures keep their
+ * cache ids from one list to the next until more than
+ * {@link #STRUCTURES_PER_ENTRY} times the cache capacity have been seen, when
+ * the cache starts over.
+ *
+ * Once collapsed, distances may be computed from several threads, each with
+ * its own {@link GraphEditDistance} and counters.
+ *
+ * @author riyanat
+ *
+ */
+public class MetaAlertMetric {
+
+	/**
+	 * How edit distances are computed.
+	 */
+	public enum EditDistance {
+		/**
+		 * By the ged library, with {@link Distance#calculateGED(String, String)}.
+		 */
+		LIBRARY,
+		/**
+		 * By {@link GraphEditDistance}, with the costs of the library.
+		 */
+		NATIVE
+	}
+
+	/**
+	 * The smallest distance between two meta-alerts, including two with the
+	 * same structure.
+	 */
+	public static final double MIN_DISTANCE = 0.1;
+
+	public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+	public static final int STRUCTURES_PER_ENTRY = 4;
+
+	// Indexes of the counters passed to distance(), one per tier.
+	public static final int SIZE_BOUND = 0;
+	public static final int LABEL_BOUND = 1;
+	public static final int CACHE_HIT = 2;
+	public static final int CACHE_MISS = 3;
+	public static final int EXACT = 4;
+	// Exact distances over the cost limit, also counted at EXACT.
+	public static final int COST_LIMIT = 5;
+	public static final int COUNTERS = 6;
+
+	private EditDistance editDistance;
+
+	// Node labels and structure ids, kept across lists for the cache.
+	private TermDictionary labels;
+	private Map<LabelGraph, Integer> structures;
+	private GedCache cache;
+
+	// The distinct structures of the current list and their cache ids.
+	private LabelGraph[] graphs;
+	private int[] structureIds;
+
+	public MetaAlertMetric() {
+		this.editDistance = EditDistance.NATIVE;
+		this.labels = new TermDictionary();
+		this.structures = new HashMap<LabelGraph, Integer>();
+		this.cache = new GedCache(DEFAULT_CACHE_SIZE);
+		this.graphs = new LabelGraph[0];
+		this.structureIds = new int[0];
+	}
+
+	/**
+	 * Converts each meta-alert and collects the distinct structures in order
+	 * of first appearance.
+	 *
+	 * @return the structure of each meta-alert.
+	 */
+	public int[] collapse(List<Graph<Alert>> metaAlerts) {
+		if (cache != null
+				&& structures.size() > STRUCTURES_PER_ENTRY * cache.capacity()) {
+			structures.clear();
+			cache.clear();
+		}
+
+		Map<LabelGraph, Integer> distinct = new HashMap<LabelGraph, Integer>();
+		int[] rows = new int[metaAlerts.size()];
+		for (int i = 0; i < rows.length; i++) {
+			LabelGraph graph = convert(metaAlerts.get(i));
+			Integer row = distinct.get(graph);
+			if (row == null) {
+				row = distinct.size();
+				distinct.put(graph, row);
+			}
+			rows[i] = row;
+		}
+
+		graphs = new LabelGraph[distinct.size()];
+		structureIds = new int[distinct.size()];
+		for (Map.Entry<LabelGraph, Integer> entry : distinct.entrySet()) {
+			LabelGraph graph = entry.getKey();
+			Integer id = structures.get(graph);
+			if (id == null && structures.size() <= GedCache.MAX_STRUCTURE) {
+				id = structures.size();
+				structures.put(graph, id);
+			}
+			graphs[entry.getValue()] = graph;
+			structureIds[entry.getValue()] = id == null ? -1 : id;
+		}
+		return rows;
+	}
+
+	/**
+	 * The number of distinct structures of the last collapsed list.
+	 */
+	public int size() {
+		return graphs.length;
+	}
+
+	public LabelGraph getStructure(int structure) {
+		return graphs[structure];
+	}
+
+	/**
+	 * The distance between two different structures of the last collapsed
+	 * list.
+	 *
+	 * @param counters
+	 *            incremented at the index of the tier that resolved the
+	 *            distance, at {@link #CACHE_MISS} for a cache miss, and at
+	 *            {@link #COST_LIMIT} for an exact distance over the limit.
+	 */
+	public double distance(int a, int b, GraphEditDistance ged, long[] counters) {
+		return distance(graphs[a], structureIds[a], graphs[b], structureIds[b],
+				ged, counters);
+	}
+
+	/**
+	 * The distance between two structures with the given cache ids, or -1 for
+	 * structures that are not cached. The caller keeps the ids; see
+	 * {@link #clearCache()}.
+	 */
+	public double distance(LabelGraph graph_a, int id_a, LabelGraph graph_b,
+			int id_b, GraphEditDistance ged, long[] counters) {
+		int limit = Distance.ACCEPTANCE_LIMIT_COST;
+		double d;
+		if (editDistance == EditDistance.NATIVE
+				&& GraphEditDistance.sizeBound(graph_a, graph_b) > limit) {
+			d = 1;
+			counters[SIZE_BOUND]++;
+		} else if (editDistance == EditDistance.NATIVE
+				&& GraphEditDistance.labelBound(graph_a, graph_b) > limit) {
+			d = 1;
+			counters[LABEL_BOUND]++;
+		} else {
+			boolean cached = cache != null && id_a >= 0 && id_b >= 0;
+			d = cached ? cache.get(id_a, id_b) : -1;
+			if (d >= 0) {
+				counters[CACHE_HIT]++;
+			} else {
+				d = editDistance == EditDistance.LIBRARY ? libraryDistance(
+						graph_a, graph_b) : nativeDistance(graph_a, graph_b,
+						ged, counters);
+				counters[EXACT]++;
+				if (cached) {
+					cache.put(id_a, id_b, d);
+					counters[CACHE_MISS]++;
+				}
+			}
+		}
+		return Math.max(MIN_DISTANCE, d);
+	}
+
+	/**
+	 * The normalised native distance of two structures, counting it at
+	 * {@link #COST_LIMIT} if it is over the limit.
+	 */
+	private static double nativeDistance(LabelGraph graph_a,
+			LabelGraph graph_b, GraphEditDistance ged, long[] counters) {
+		int limit = Distance.ACCEPTANCE_LIMIT_COST;
+		double cost = ged.distance(graph_a, graph_b, limit);
+		if (cost > limit) {
+			counters[COST_LIMIT]++;
+		}
+		return Distance.normaliseGED(cost);
+	}
+
+	/**
+	 * The library distance of two described structures. The library does not
+	 * tell a cost over the limit from one at it, so none is counted at
+	 * {@link #COST_LIMIT}.
+	 */
+	private static double libraryDistance(LabelGraph graph_a,
+			LabelGraph graph_b) {
+		try {
+			return Distance.calculateGED(graph_a.getDescription(),
+					graph_b.getDescription());
+		} catch (DotParseException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Converts a meta-alert with the labels of this metric, keeping its DOT
+	 * description if the library computes the edit distances.
+	 */
+	public LabelGraph convert(Graph<Alert> metaAlert) {
+		return editDistance == EditDistance.LIBRARY ? LabelGraph.describe(
+				metaAlert, labels) : LabelGraph.of(metaAlert, labels);
+	}
+
+	/**
+	 * Forgets the cached distances and the structure ids of
+	 * {@link #collapse(List)}, so that cache ids can be assigned again from 0.
+	 */
+	public void clearCache() {
+		structures.clear();
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * The distance between two meta-alerts under the native edit distance: the
+	 * normalised edit distance, at least {@link #MIN_DISTANCE}.
+	 */
+	public static double distance(LabelGraph graph_i, LabelGraph graph_j) {
+		return Math.max(MIN_DISTANCE, Distance.calculateGED(graph_i, graph_j));
+	}
+
+	public EditDistance getEditDistance() {
+		return editDistance;
+	}
+
+	/**
+	 * Selects how edit distances are computed. Structures converted before
+	 * must be converted again, so this also clears the cache.
+	 */
+	public void setEditDistance(EditDistance editDistance) {
+		this.editDistance = editDistance;
+		clearCache();
+	}
+
+	/**
+	 * Sets the number of cached pairs, rounded up to a power of two, or
+	 * disables the cache if size is 0.
+	 */
+	public void setCacheSize(int size) {
+		cache = size > 0 ? new GedCache(size) : null;
+		structures.clear();
+	}
+}
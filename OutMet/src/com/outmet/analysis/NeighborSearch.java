@@ -0,0 +1,28 @@
+package com.outmet.analysis;
+
+import java.util.List;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * Finds the k-distance neighborhoods of a list of meta-alerts for LOF, see
+ * {@link Prioritiser#setNeighborSearch(NeighborSearch)}.
+ *
+ * @author riyanat
+ *
+ */
+public interface NeighborSearch {
+
+	/**
+	 * @return the neighborhood of each meta-alert, in the order of graphs.
+	 */
+	Neighborhoods search(List<Graph<Alert>> graphs, int k);
+
+	/**
+	 * @return the counters of the last search, indexed as in
+	 *         {@link MetaAlertMetric}; all 0 for a search that computes no
+	 *         distances.
+	 */
+	long[] getCounters();
+}
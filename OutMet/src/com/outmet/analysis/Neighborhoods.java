@@ -0,0 +1,238 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+
+/**
+ * The k-distance and k-distance neighborhood of each of n meta-alerts, as
+ * defined for LOF: the k-distance of p is the distance of its k-th closest
+ * meta-alert counting p itself, and its neighborhood holds every meta-alert,
+ * p included, no further than that.
+ *
+ * The neighborhoods are held in compressed rows: the neighbors of p, in
+ * increasing order, and their distances from p are at positions
+ * {@link #start(int)} to {@link #end(int)} of one pair of arrays.
+ *
+ * @author riyanat
+ *
+ */
+public class Neighborhoods {
+
+	/**
+	 * Rows per parallel range in {@link #of(DistanceMatrix, int, int)}.
+	 */
+	private static final int GRAIN = 64;
+
+	private int n;
+	private double[] kDistances;
+	private int[] offsets;
+	private int[] neighbors;
+	private double[] distances;
+
+	/**
+	 * Creates empty neighborhoods to be filled in order with
+	 * {@link #add(double, int[], double[], int)}.
+	 */
+	public Neighborhoods(int n) {
+		this.kDistances = new double[n];
+		this.offsets = new int[n + 1];
+		this.neighbors = new int[Math.max(16, n)];
+		this.distances = new double[neighbors.length];
+	}
+
+	private Neighborhoods(double[] kDistances, int[] offsets, int[] neighbors,
+			double[] distances) {
+		this.n = kDistances.length;
+		this.kDistances = kDistances;
+		this.offsets = offsets;
+		this.neighbors = neighbors;
+		this.distances = distances;
+	}
+
+	/**
+	 * Finds the neighborhoods from a full distance matrix.
+	 */
+	public static Neighborhoods of(DistanceMatrix distance, int k) {
+		return of(distance, k, 1);
+	}
+
+	/**
+	 * Finds the neighborhoods from a full distance matrix, with rows spread
+	 * over parallelism threads. Each k-distance is selected in linear time,
+	 * and the result does not depend on the parallelism.
+	 */
+	public static Neighborhoods of(final DistanceMatrix distance, final int k,
+			int parallelism) {
+		final int n = distance.size();
+		checkK(k, n);
+		final double[] kDistances = new double[n];
+		final int[] offsets = new int[n + 1];
+		// The neighbors and distances of each range of rows.
+		int ranges = (n + GRAIN - 1) / GRAIN;
+		final int[][] rangeNeighbors = new int[ranges][];
+		final double[][] rangeDistances = new double[ranges][];
+
+		ParallelRows.run(n, GRAIN, parallelism, new ParallelRows.Body() {
+			@Override
+			public void compute(int from, int to) {
+				double[] row = new double[n];
+				double[] ordered = new double[n];
+				int[] ids = new int[Math.max(16, k * (to - from))];
+				double[] ds = new double[ids.length];
+				int count = 0;
+				for (int i = from; i < to; i++) {
+					distance.getRow(i, row);
+					System.arraycopy(row, 0, ordered, 0, n);
+					double kDistance = select(ordered, n, k - 1);
+					kDistances[i] = kDistance;
+
+					int start = count;
+					for (int j = 0; j < n; j++) {
+						if (row[j] <= kDistance) {
+							if (count == ids.length) {
+								ids = Arrays.copyOf(ids, 2 * count);
+								ds = Arrays.copyOf(ds, 2 * count);
+							}
+							ids[count] = j;
+							ds[count] = row[j];
+							count++;
+						}
+					}
+					offsets[i + 1] = count - start;
+				}
+				rangeNeighbors[from / GRAIN] = Arrays.copyOf(ids, count);
+				rangeDistances[from / GRAIN] = Arrays.copyOf(ds, count);
+			}
+		});
+
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			total += offsets[i + 1];
+			if (total > Integer.MAX_VALUE) {
+				throw new IllegalStateException("The neighborhoods of " + n
+						+ " meta-alerts with k " + k + " are too large");
+			}
+			offsets[i + 1] = (int) total;
+		}
+		int[] neighbors = new int[(int) total];
+		double[] distances = new double[(int) total];
+		for (int r = 0; r < ranges; r++) {
+			int start = offsets[r * GRAIN];
+			System.arraycopy(rangeNeighbors[r], 0, neighbors, start,
+					rangeNeighbors[r].length);
+			System.arraycopy(rangeDistances[r], 0, distances, start,
+					rangeDistances[r].length);
+			rangeNeighbors[r] = null;
+			rangeDistances[r] = null;
+		}
+		return new Neighborhoods(kDistances, offsets, neighbors, distances);
+	}
+
+	/**
+	 * Finds the (k + 1)-th smallest of values[0, count) by quickselect,
+	 * reordering the values.
+	 */
+	static double select(double[] values, int count, int k) {
+		int from = 0;
+		int to = count - 1;
+		while (to - from > 16) {
+			// Median of three as the pivot.
+			int middle = (from + to) >>> 1;
+			if (values[middle] < values[from]) {
+				swap(values, middle, from);
+			}
+			if (values[to] < values[from]) {
+				swap(values, to, from);
+			}
+			if (values[to] < values[middle]) {
+				swap(values, to, middle);
+			}
+			double pivot = values[middle];
+
+			int i = from;
+			int j = to;
+			while (i <= j) {
+				while (values[i] < pivot) {
+					i++;
+				}
+				while (values[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(values, i++, j--);
+				}
+			}
+			// Now [from, j] <= pivot <= [i, to], and (j, i) == pivot.
+			if (k <= j) {
+				to = j;
+			} else if (k >= i) {
+				from = i;
+			} else {
+				return values[k];
+			}
+		}
+		for (int i = from + 1; i <= to; i++) {
+			double value = values[i];
+			int j = i - 1;
+			while (j >= from && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+		return values[k];
+	}
+
+	private static void swap(double[] values, int i, int j) {
+		double value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+
+	static void checkK(int k, int n) {
+		if (k < 1 || k > n) {
+			throw new IllegalArgumentException("k must be between 1 and the "
+					+ "number of meta-alerts " + n + ": " + k);
+		}
+	}
+
+	/**
+	 * Appends the neighborhood of the next meta-alert.
+	 */
+	public void add(double kDistance, int[] ids, double[] ds, int count) {
+		int end = offsets[n];
+		if (end + count > neighbors.length) {
+			int capacity = Math.max(end + count, 2 * neighbors.length);
+			neighbors = Arrays.copyOf(neighbors, capacity);
+			distances = Arrays.copyOf(distances, capacity);
+		}
+		System.arraycopy(ids, 0, neighbors, end, count);
+		System.arraycopy(ds, 0, distances, end, count);
+		kDistances[n] = kDistance;
+		n++;
+		offsets[n] = end + count;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public double getKDistance(int p) {
+		return kDistances[p];
+	}
+
+	public int start(int p) {
+		return offsets[p];
+	}
+
+	public int end(int p) {
+		return offsets[p + 1];
+	}
+
+	public int getNeighbor(int position) {
+		return neighbors[position];
+	}
+
+	public double getDistance(int position) {
+		return distances[position];
+	}
+}
@@ -0,0 +1,72 @@
+package com.outmet.analysis;
+
+/**
+ * A packed {@link DistanceMatrix} on the Java heap at double or float
+ * precision. The triangle is split into pages so that matrices with more than
+ * 2^31 pairs can be held.
+ *
+ * @author riyanat
+ *
+ */
+public class PackedDistanceMatrix extends DistanceMatrix {
+
+	private static final int PAGE_BITS = 24;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private double[][] doublePages;
+	private float[][] floatPages;
+
+	public PackedDistanceMatrix(int n, boolean floatPrecision) {
+		super(n);
+		long cells = packedSize(n);
+		int pages = (int) ((cells + PAGE_SIZE - 1) >>> PAGE_BITS);
+		if (floatPrecision) {
+			floatPages = new float[pages][];
+		} else {
+			doublePages = new double[pages][];
+		}
+		for (int p = 0; p < pages; p++) {
+			int length = (int) Math.min(PAGE_SIZE, cells - ((long) p << PAGE_BITS));
+			if (floatPrecision) {
+				floatPages[p] = new float[length];
+			} else {
+				doublePages[p] = new double[length];
+			}
+		}
+	}
+
+	@Override
+	public double get(int i, int j) {
+		long cell = packedIndex(i, j);
+		if (cell < 0) {
+			return 0;
+		}
+		int page = (int) (cell >>> PAGE_BITS);
+		int offset = (int) cell & PAGE_MASK;
+		if (floatPages != null) {
+			return floatPages[page][offset];
+		}
+		return doublePages[page][offset];
+	}
+
+	@Override
+	public void set(int i, int j, double distance) {
+		long cell = packedIndex(i, j);
+		if (cell < 0) {
+			checkDiagonal(i, distance);
+			return;
+		}
+		int page = (int) (cell >>> PAGE_BITS);
+		int offset = (int) cell & PAGE_MASK;
+		if (floatPages != null) {
+			floatPages[page][offset] = (float) distance;
+		} else {
+			doublePages[page][offset] = distance;
+		}
+	}
+
+	public boolean isFloatPrecision() {
+		return floatPages != null;
+	}
+}
@@ -0,0 +1,405 @@
+package com.outmet.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+/**
+ * Correlates a batch of alerts on several threads by splitting them into
+ * shards with an {@link AlertPartitioner} and running an independent
+ * {@link Correlator} per shard.
+ *
+ * The meta-alerts of the shards are merged in order of their first alert and
+ * keyed 0, 1, ... in that order, as a single correlator keys them. A boundary
+ * pass then recovers correlations across shards: a meta-alert whose first
+ * alert correlates with an active meta-alert of another shard, which a single
+ * correlator would have compared it with, is joined to the best such
+ * meta-alert, after its own nodes. Only the alerts that start a meta-alert in
+ * their shard are reconsidered, so the result approximates a single
+ * correlator; with one shard it is the same.
+ *
+ * The result does not depend on the number of threads.
+ *
+ * @author riyanat
+ *
+ */
+public class ParallelCorrelator {
+
+	private static final Logger log = Logger.getLogger(ParallelCorrelator.class
+			.getName());
+
+	/**
+	 * Shards by the /16 network of the destination address.
+	 */
+	public static final AlertPartitioner DESTINATION_16 = new AlertPartitioner() {
+		@Override
+		public int partition(Alert alert, int shards) {
+			long ip = IpSimilarity.parseIpv4(alert.getDestIP());
+			int key = ip == IpSimilarity.NOT_IPV4 ? alert.getDestIP()
+					.hashCode() : (int) (ip >>> 16);
+			return spread(key, shards);
+		}
+	};
+
+	/**
+	 * Shards by the unordered pair of addresses, so that both directions of a
+	 * conversation share a shard.
+	 */
+	public static final AlertPartitioner IP_PAIR = new AlertPartitioner() {
+		@Override
+		public int partition(Alert alert, int shards) {
+			int source = alert.getSourceIP().hashCode();
+			int dest = alert.getDestIP().hashCode();
+			return spread(Math.min(source, dest) * 31 + Math.max(source, dest),
+					shards);
+		}
+	};
+
+	private int shards;
+	private int parallelism;
+	private AlertPartitioner partitioner;
+
+	private int timeThreshold;
+	private double correlationThreshold;
+
+	private List<Graph<Alert>> graphs;
+	private int boundaryJoins;
+
+	/**
+	 * Uses a shard and a thread per processor, sharding by destination /16.
+	 */
+	public ParallelCorrelator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelCorrelator(int shards) {
+		this.shards = Math.max(1, shards);
+		this.parallelism = this.shards;
+		this.partitioner = DESTINATION_16;
+		Correlator defaults = new Correlator();
+		this.timeThreshold = defaults.getTimeThreshold();
+		this.correlationThreshold = defaults.getCorrelationThreshold();
+		this.graphs = new ArrayList<Graph<Alert>>();
+	}
+
+	/**
+	 * Correlates alerts sorted by start time.
+	 */
+	public void run(List<Alert> alerts) {
+		long start = System.currentTimeMillis();
+
+		// Split the alerts, remembering the position of each.
+		Map<Alert, Integer> positions = new IdentityHashMap<Alert, Integer>(
+				alerts.size());
+		final List<List<Alert>> shardAlerts = new ArrayList<List<Alert>>();
+		for (int s = 0; s < shards; s++) {
+			shardAlerts.add(new ArrayList<Alert>());
+		}
+		for (int i = 0; i < alerts.size(); i++) {
+			Alert alert = alerts.get(i);
+			positions.put(alert, i);
+			shardAlerts.get(partitioner.partition(alert, shards)).add(alert);
+		}
+
+		List<List<Graph<Alert>>> shardGraphs = correlateShards(shardAlerts);
+
+		// The meta-alerts of all shards, in order of their first alert.
+		List<ShardGraph> merged = new ArrayList<ShardGraph>();
+		for (int s = 0; s < shards; s++) {
+			for (Graph<Alert> graph : shardGraphs.get(s)) {
+				merged.add(new ShardGraph(graph, s, positions));
+			}
+		}
+		ShardGraph[] ordered = merged.toArray(new ShardGraph[merged.size()]);
+		Arrays.sort(ordered);
+
+		joinBoundaries(alerts, ordered);
+
+		graphs = new ArrayList<Graph<Alert>>();
+		for (ShardGraph graph : ordered) {
+			if (graph.parent == null) {
+				graph.graph.setKey(String.valueOf(graphs.size()));
+				graphs.add(graph.graph);
+			}
+		}
+		log.log(Level.INFO, "Derived " + graphs.size() + " meta-alerts from "
+				+ alerts.size() + " alerts in " + shards + " shards on "
+				+ parallelism + " threads in "
+				+ (System.currentTimeMillis() - start) + " ms; joined "
+				+ boundaryJoins + " across shards");
+	}
+
+	private List<List<Graph<Alert>>> correlateShards(
+			List<List<Alert>> shardAlerts) {
+		List<Callable<List<Graph<Alert>>>> tasks = new ArrayList<Callable<List<Graph<Alert>>>>();
+		for (final List<Alert> alerts : shardAlerts) {
+			tasks.add(new Callable<List<Graph<Alert>>>() {
+				@Override
+				public List<Graph<Alert>> call() {
+					Correlator correlator = createCorrelator();
+					correlator.run(alerts);
+					return correlator.getGraphs();
+				}
+			});
+		}
+
+		List<List<Graph<Alert>>> results = new ArrayList<List<Graph<Alert>>>();
+		if (parallelism == 1) {
+			for (Callable<List<Graph<Alert>>> task : tasks) {
+				try {
+					results.add(task.call());
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return results;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			for (Future<List<Graph<Alert>>> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		return results;
+	}
+
+	private Correlator createCorrelator() {
+		Correlator correlator = new Correlator();
+		correlator.setTimeThreshold(timeThreshold);
+		correlator.setCorrelationThreshold(correlationThreshold);
+		return correlator;
+	}
+
+	/**
+	 * Joins each meta-alert to the meta-alert of another shard that its first
+	 * alert correlates best with, if any. The alerts are replayed in order
+	 * through an {@link ActiveWindow} of the meta-alerts of every shard, so
+	 * the candidates are those a single {@link Correlator} would compare.
+	 */
+	private void joinBoundaries(List<Alert> alerts, ShardGraph[] ordered) {
+		boundaryJoins = 0;
+		if (shards == 1) {
+			return;
+		}
+		ShardGraph[] graphOf = new ShardGraph[alerts.size()];
+		Map<Graph<Alert>, ShardGraph> shardGraphs = new IdentityHashMap<Graph<Alert>, ShardGraph>();
+		for (ShardGraph graph : ordered) {
+			for (int position : graph.positions) {
+				graphOf[position] = graph;
+			}
+			shardGraphs.put(graph.graph, graph);
+		}
+
+		Correlator scorer = createCorrelator();
+		long window = TimeUnit.MINUTES.toMillis(timeThreshold);
+		ActiveWindow queue = new ActiveWindow(window);
+		scorer.setCandidateFilter(queue);
+		AlertTable encoder = new AlertTable();
+		List<Graph<Alert>> expired = new ArrayList<Graph<Alert>>();
+		for (int position = 0; position < alerts.size(); position++) {
+			Alert alert = alerts.get(position);
+			ShardGraph graph = graphOf[position];
+			long startTime = alert.getStartTime().getTime();
+			long endTime = alert.getEndTime().getTime();
+			long sourceIp = encoder.encodeIp(alert.getSourceIP());
+			long destIp = encoder.encodeIp(alert.getDestIP());
+
+			if (graph.positions[0] == position) {
+				long earliestTimeAllowed = startTime - window;
+				int closestSlot = -1;
+				double maxThreshold = correlationThreshold;
+				int candidates = queue.candidates(startTime, sourceIp, destIp);
+				for (int i = 0; i < candidates; i++) {
+					int slot = queue.candidateAt(i);
+					if (queue.getStartTime(slot) <= earliestTimeAllowed
+							|| queue.isExpired(slot)) {
+						queue.remove(slot);
+						continue;
+					}
+					if (shardGraphs.get(queue.getGraph(slot)).shard == graph.shard) {
+						continue;
+					}
+					double corr = scorer.getCorr(
+							alerts.get(queue.getRow(slot)), alert);
+					// Of equally correlated meta-alerts, the most recently
+					// active is chosen.
+					if (corr > maxThreshold
+							|| (corr == maxThreshold && (closestSlot < 0 || queue
+									.isMoreRecent(slot, closestSlot)))) {
+						closestSlot = slot;
+						maxThreshold = corr;
+					}
+				}
+				if (closestSlot >= 0) {
+					ShardGraph closest = shardGraphs.get(queue
+							.getGraph(closestSlot));
+					join(closest.root(), graph,
+							closest.nodeAt(queue.getRow(closestSlot)),
+							maxThreshold);
+					boundaryJoins++;
+				}
+			}
+
+			int slot = queue.slotOf(graph.graph);
+			if (slot < 0) {
+				queue.add(graph.graph, position, startTime, endTime, sourceIp,
+						destIp);
+			} else {
+				queue.update(slot, position, startTime, endTime, sourceIp,
+						destIp);
+			}
+			queue.expire(endTime - window, expired);
+			expired.clear();
+		}
+	}
+
+	/**
+	 * Adds the nodes and edges of graph to root, with an edge from node.
+	 */
+	private void join(ShardGraph root, ShardGraph graph, Node<Alert> node,
+			double corr) {
+		graph.parent = root;
+		Graph<Alert> target = root.graph;
+		Node<Alert> first = graph.graph.getFirstNode();
+		for (Node<Alert> added : graph.graph.getNodes()) {
+			target.addNode(added);
+		}
+		for (Edge<Alert> edge : graph.graph.getEdges()) {
+			target.addEdge(edge);
+		}
+		Edge<Alert> edge = new Edge<Alert>();
+		edge.setKey(first.getKey() + "->" + node.getKey());
+		edge.setLabel(first.getLabel() + "->" + node.getLabel());
+		edge.setSource(node);
+		edge.setTarget(first);
+		edge.setWeight(corr);
+		target.addEdge(edge);
+	}
+
+	/**
+	 * Spreads a key over the shards.
+	 */
+	private static int spread(int key, int shards) {
+		key *= 0x9E3779B9;
+		return (int) (((key ^ (key >>> 16)) & 0xFFFFFFFFL) % shards);
+	}
+
+	public List<Graph<Alert>> getGraphs() {
+		return graphs;
+	}
+
+	/**
+	 * The number of meta-alerts joined across shards by the last run.
+	 */
+	public int getBoundaryJoins() {
+		return boundaryJoins;
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	public void setShards(int shards) {
+		this.shards = Math.max(1, shards);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads. The meta-alerts are the same for any value.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public AlertPartitioner getPartitioner() {
+		return partitioner;
+	}
+
+	public void setPartitioner(AlertPartitioner partitioner) {
+		this.partitioner = partitioner;
+	}
+
+	public int getTimeThreshold() {
+		return timeThreshold;
+	}
+
+	public void setTimeThreshold(int timeThreshold) {
+		this.timeThreshold = timeThreshold;
+	}
+
+	public double getCorrelationThreshold() {
+		return correlationThreshold;
+	}
+
+	public void setCorrelationThreshold(double correlationThreshold) {
+		this.correlationThreshold = correlationThreshold;
+	}
+
+	/**
+	 * A meta-alert of a shard, with the input positions of its alerts as
+	 * correlated in the shard.
+	 */
+	private static class ShardGraph implements Comparable<ShardGraph> {
+		private Graph<Alert> graph;
+		private int shard;
+		private List<Node<Alert>> nodes;
+		private int[] positions;
+		private ShardGraph parent;
+
+		ShardGraph(Graph<Alert> graph, int shard, Map<Alert, Integer> inputs) {
+			this.graph = graph;
+			this.shard = shard;
+			this.nodes = new ArrayList<Node<Alert>>(graph.getNodes());
+			this.positions = new int[nodes.size()];
+			for (int n = 0; n < nodes.size(); n++) {
+				positions[n] = inputs.get(nodes.get(n).getElement());
+			}
+		}
+
+		/**
+		 * The node of the alert at position.
+		 */
+		Node<Alert> nodeAt(int position) {
+			return nodes.get(Arrays.binarySearch(positions, position));
+		}
+
+		ShardGraph root() {
+			ShardGraph root = this;
+			while (root.parent != null) {
+				root = root.parent;
+			}
+			return root;
+		}
+
+		@Override
+		public int compareTo(ShardGraph other) {
+			return positions[0] < other.positions[0] ? -1
+					: positions[0] == other.positions[0] ? 0 : 1;
+		}
+	}
+}
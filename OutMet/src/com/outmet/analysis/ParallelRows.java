@@ -0,0 +1,72 @@
+package com.outmet.analysis;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a computation over the rows 0 to n - 1 in ranges of a fixed grain,
+ * spread over a {@link ForkJoinPool}. Every range but the last holds exactly
+ * grain rows and starts at a multiple of grain, so a range can be identified
+ * by from / grain.
+ *
+ * @author riyanat
+ *
+ */
+class ParallelRows {
+
+	/**
+	 * The computation of a range of rows.
+	 */
+	interface Body {
+		void compute(int from, int to);
+	}
+
+	private ParallelRows() {
+	}
+
+	public static void run(int n, int grain, int parallelism, Body body) {
+		if (parallelism <= 1 || n <= grain) {
+			for (int from = 0; from < n; from += grain) {
+				body.compute(from, Math.min(n, from + grain));
+			}
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new RangeTask(body, grain, 0, n));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Computes the rows in [from, to) by halving the ranges.
+	 */
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private Body body;
+		private int grain;
+		private int from;
+		private int to;
+
+		RangeTask(Body body, int grain, int from, int to) {
+			this.body = body;
+			this.grain = grain;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				body.compute(from, to);
+				return;
+			}
+			int ranges = (to - from + grain - 1) / grain;
+			int middle = from + ranges / 2 * grain;
+			invokeAll(new RangeTask(body, grain, from, middle), new RangeTask(
+					body, grain, middle, to));
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+
+/**
+ * An inverted index from IPv4 address prefixes to the slots of an
+ * {@link ActiveWindow}. Every slot is listed under the prefix of its source
+ * address and the prefix of its destination address, so that the slots
+ * sharing a prefix with an address can be enumerated without looking at the
+ * rest. Slots with an address that is not IPv4 are kept in a separate list,
+ * since they cannot be looked up by prefix.
+ *
+ * Addresses are the encoded values of {@link AlertTable#encodeIp(String)} and
+ * prefixes are their leading bits in prefix order (see {@link IpSimilarity}).
+ *
+ * @author riyanat
+ *
+ */
+public class PrefixIndex {
+
+	public static final int SOURCE = 0;
+	public static final int DEST = 1;
+	public static final int UNINDEXED = 2;
+
+	private static final int EMPTY = -1;
+
+	/**
+	 * The length of the indexed prefixes in bits, 1 to 32.
+	 */
+	private int bits;
+
+	// Open addressing table from (role, prefix) to the first slot of a list.
+	private long[] keys;
+	private int[] heads;
+	private int cells;
+
+	private int unindexedHead;
+
+	// Per role and slot, the doubly linked list links and the table cell.
+	private int[][] next;
+	private int[][] previous;
+	private int[][] cellOf;
+
+	public PrefixIndex(int bits, int capacity) {
+		this.bits = bits;
+		keys = new long[64];
+		heads = new int[64];
+		Arrays.fill(heads, EMPTY);
+		unindexedHead = EMPTY;
+		next = new int[3][];
+		previous = new int[3][];
+		cellOf = new int[3][];
+		for (int role = 0; role < 3; role++) {
+			next[role] = new int[0];
+			previous[role] = new int[0];
+			cellOf[role] = new int[0];
+		}
+		ensureCapacity(capacity);
+	}
+
+	/**
+	 * Indexes a slot under the prefixes of its addresses.
+	 */
+	public void add(int slot, long sourceIp, long destIp) {
+		ensureCapacity(slot + 1);
+		if (sourceIp < 0 || destIp < 0) {
+			cellOf[UNINDEXED][slot] = 0;
+			link(UNINDEXED, slot, -1);
+			unindexedHead = slot;
+			return;
+		}
+		cellOf[UNINDEXED][slot] = EMPTY;
+		linkPrefix(SOURCE, slot, sourceIp);
+		linkPrefix(DEST, slot, destIp);
+	}
+
+	/**
+	 * Removes a slot added with {@link #add(int, long, long)}.
+	 */
+	public void remove(int slot) {
+		if (cellOf[UNINDEXED][slot] != EMPTY) {
+			unlink(UNINDEXED, slot);
+			cellOf[UNINDEXED][slot] = EMPTY;
+			return;
+		}
+		unlink(SOURCE, slot);
+		unlink(DEST, slot);
+	}
+
+	/**
+	 * Returns the first slot whose address in {role} shares the indexed prefix
+	 * with ip, or -1. Continue with {@link #next(int, int)}.
+	 */
+	public int first(int role, long ip) {
+		if (role == UNINDEXED) {
+			return unindexedHead;
+		}
+		if (ip < 0) {
+			return EMPTY;
+		}
+		long key = key(role, ip);
+		int cell = find(key);
+		return keys[cell] == key ? heads[cell] : EMPTY;
+	}
+
+	public int next(int role, int slot) {
+		return next[role][slot];
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	private long key(int role, long ip) {
+		// Role in the high bits keeps source and destination prefixes apart.
+		return ((long) role << 32) | (ip >>> (32 - bits)) | (1L << 40);
+	}
+
+	/**
+	 * Finds the cell of key, or the empty cell where it belongs.
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		long hash = key * 0x9E3779B97F4A7C15L;
+		int cell = (int) (hash >>> 40) & mask;
+		while (keys[cell] != 0 && keys[cell] != key) {
+			cell = (cell + 1) & mask;
+		}
+		return cell;
+	}
+
+	private void linkPrefix(int role, int slot, long ip) {
+		long key = key(role, ip);
+		int cell = find(key);
+		if (keys[cell] == 0) {
+			if (2 * (cells + 1) > keys.length) {
+				rehash();
+				cell = find(key);
+			}
+			keys[cell] = key;
+			heads[cell] = EMPTY;
+			cells++;
+		}
+		link(role, slot, cell);
+		heads[cell] = slot;
+	}
+
+	private void link(int role, int slot, int cell) {
+		int head = cell < 0 ? unindexedHead : heads[cell];
+		previous[role][slot] = EMPTY;
+		next[role][slot] = head;
+		if (head != EMPTY) {
+			previous[role][head] = slot;
+		}
+		if (cell >= 0) {
+			cellOf[role][slot] = cell;
+		}
+	}
+
+	private void unlink(int role, int slot) {
+		int before = previous[role][slot];
+		int after = next[role][slot];
+		if (before != EMPTY) {
+			next[role][before] = after;
+		} else if (role == UNINDEXED) {
+			unindexedHead = after;
+		} else {
+			heads[cellOf[role][slot]] = after;
+		}
+		if (after != EMPTY) {
+			previous[role][after] = before;
+		}
+	}
+
+	/**
+	 * Rebuilds the table, dropping prefixes whose lists are empty and growing
+	 * it if needed.
+	 */
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+
+		int live = 0;
+		for (int cell = 0; cell < oldKeys.length; cell++) {
+			if (oldKeys[cell] != 0 && oldHeads[cell] != EMPTY) {
+				live++;
+			}
+		}
+		int capacity = 64;
+		while (capacity < 4 * (live + 1)) {
+			capacity *= 2;
+		}
+
+		keys = new long[capacity];
+		heads = new int[capacity];
+		Arrays.fill(heads, EMPTY);
+		cells = 0;
+		for (int cell = 0; cell < oldKeys.length; cell++) {
+			if (oldKeys[cell] == 0 || oldHeads[cell] == EMPTY) {
+				continue;
+			}
+			int newCell = find(oldKeys[cell]);
+			keys[newCell] = oldKeys[cell];
+			heads[newCell] = oldHeads[cell];
+			cells++;
+
+			int role = (int) ((oldKeys[cell] >>> 32) & 0xFF);
+			for (int slot = heads[newCell]; slot != EMPTY; slot = next[role][slot]) {
+				cellOf[role][slot] = newCell;
+			}
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= next[0].length) {
+			return;
+		}
+		capacity = Math.max(capacity, 2 * next[0].length);
+		for (int role = 0; role < 3; role++) {
+			int oldLength = next[role].length;
+			next[role] = Arrays.copyOf(next[role], capacity);
+			previous[role] = Arrays.copyOf(previous[role], capacity);
+			cellOf[role] = Arrays.copyOf(cellOf[role], capacity);
+			Arrays.fill(cellOf[role], oldLength, capacity, EMPTY);
+		}
+	}
+}
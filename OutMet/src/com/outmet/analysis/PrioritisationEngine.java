@@ -0,0 +1,225 @@
+package com.outmet.analysis;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+/**
+ * A long-running pipeline that correlates a stream of alerts and keeps the
+ * priorities of a sliding window of recent meta-alerts up to date.
+ *
+ * Alerts are offered in order of start time to a {@link Correlator}. The
+ * meta-alerts it closes enter the window and an
+ * {@link IncrementalPrioritiser}. Once per rescore interval of stream time
+ * (the start time of the latest alert), the meta-alerts that have fallen out
+ * of the window are evicted, and the priorities of the alerts in the window
+ * are updated. Memory is bounded by the window rather than by everything
+ * seen.
+ *
+ * The window may be bounded by time, the age of a meta-alert's last alert,
+ * by count, or both. Meta-alerts that are still open in the correlator are
+ * not prioritised until they close.
+ *
+ * The methods are synchronized, so {@link #rescore()} may be called from a
+ * timer while another thread offers alerts.
+ *
+ * @author riyanat
+ *
+ */
+public class PrioritisationEngine implements MetaAlertListener {
+
+	private static final Logger log = Logger
+			.getLogger(PrioritisationEngine.class.getName());
+
+	private Correlator correlator;
+	private IncrementalPrioritiser prioritiser;
+
+	/**
+	 * The meta-alerts in the window, in order of closing, and the time of the
+	 * last alert of each.
+	 */
+	private Deque<Graph<Alert>> window;
+	private Deque<Long> closeTimes;
+
+	/**
+	 * The longest time a meta-alert is kept after its last alert, or 0.
+	 */
+	private long windowMillis;
+
+	/**
+	 * The most meta-alerts kept, or 0.
+	 */
+	private int windowSize;
+
+	/**
+	 * The stream time between rescoring, or 0 to rescore only on request.
+	 */
+	private long rescoreMillis;
+
+	private long time;
+	private long lastRescore;
+	private long evicted;
+
+	/**
+	 * Receives evicted meta-alerts, may be null.
+	 */
+	private MetaAlertListener listener;
+
+	public PrioritisationEngine(int k) {
+		this(new Correlator(), k);
+	}
+
+	/**
+	 * Takes over the correlator's meta-alert listener.
+	 */
+	public PrioritisationEngine(Correlator correlator, int k) {
+		this.correlator = correlator;
+		this.prioritiser = new IncrementalPrioritiser(k);
+		this.window = new ArrayDeque<Graph<Alert>>();
+		this.closeTimes = new ArrayDeque<Long>();
+		this.windowMillis = 0;
+		this.windowSize = 0;
+		this.rescoreMillis = 60000;
+		this.time = Long.MIN_VALUE;
+		this.lastRescore = Long.MIN_VALUE;
+		correlator.setMetaAlertListener(this);
+	}
+
+	/**
+	 * Correlates an alert, and rescores the window if the rescore interval
+	 * has passed.
+	 */
+	public synchronized void offer(Alert alert) {
+		time = Math.max(time, alert.getStartTime().getTime());
+		correlator.offer(alert);
+		if (lastRescore == Long.MIN_VALUE) {
+			lastRescore = time;
+		} else if (rescoreMillis > 0 && time - lastRescore >= rescoreMillis) {
+			rescore();
+		}
+	}
+
+	/**
+	 * Closes the open meta-alerts and rescores the window.
+	 */
+	public synchronized void flush() {
+		correlator.flush();
+		rescore();
+	}
+
+	/**
+	 * Evicts the meta-alerts that have fallen out of the window, and updates
+	 * the priorities of the alerts in it.
+	 */
+	public synchronized void rescore() {
+		long start = System.currentTimeMillis();
+		int before = window.size();
+		while (!window.isEmpty() && isOldestOutside()) {
+			Graph<Alert> graph = window.pollFirst();
+			closeTimes.pollFirst();
+			prioritiser.remove(graph);
+			evicted++;
+			if (listener != null) {
+				listener.metaAlertClosed(graph);
+			}
+		}
+		prioritiser.run();
+		lastRescore = time;
+		log.log(Level.INFO, "Rescored " + window.size()
+				+ " meta-alerts after evicting " + (before - window.size())
+				+ " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private boolean isOldestOutside() {
+		if (windowSize > 0 && window.size() > windowSize) {
+			return true;
+		}
+		return windowMillis > 0 && closeTimes.peekFirst() < time - windowMillis;
+	}
+
+	/**
+	 * Adds a meta-alert closed by the correlator to the window.
+	 */
+	@Override
+	public synchronized void metaAlertClosed(Graph<Alert> graph) {
+		long closeTime = Long.MIN_VALUE;
+		for (Node<Alert> node : graph.getNodes()) {
+			closeTime = Math.max(closeTime, node.getElement().getStartTime()
+					.getTime());
+		}
+		window.addLast(graph);
+		closeTimes.addLast(closeTime);
+		prioritiser.add(graph);
+	}
+
+	public Correlator getCorrelator() {
+		return correlator;
+	}
+
+	public IncrementalPrioritiser getPrioritiser() {
+		return prioritiser;
+	}
+
+	/**
+	 * The number of meta-alerts in the window, including those closed since
+	 * the last rescore.
+	 */
+	public synchronized int size() {
+		return window.size();
+	}
+
+	/**
+	 * The number of meta-alerts evicted so far.
+	 */
+	public synchronized long getEvictedCount() {
+		return evicted;
+	}
+
+	public synchronized long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * Keeps meta-alerts for at most windowMillis of stream time after their
+	 * last alert, or without a time limit if 0.
+	 */
+	public synchronized void setWindowMillis(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	public synchronized int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Keeps at most windowSize meta-alerts, or any number if 0.
+	 */
+	public synchronized void setWindowSize(int windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	public synchronized long getRescoreMillis() {
+		return rescoreMillis;
+	}
+
+	/**
+	 * Rescores the window every rescoreMillis of stream time, or only when
+	 * {@link #rescore()} is called if 0.
+	 */
+	public synchronized void setRescoreMillis(long rescoreMillis) {
+		this.rescoreMillis = rescoreMillis;
+	}
+
+	/**
+	 * Sets a listener for meta-alerts evicted from the window, which carry
+	 * their final priorities.
+	 */
+	public synchronized void setMetaAlertListener(MetaAlertListener listener) {
+		this.listener = listener;
+	}
+}
@@ -1,19 +1,14 @@
 package com.outmet.analysis;
 
-import ged.editpath.CostLimitExceededException;
-import ged.graph.DotParseException;
-
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.outmet.data.Alert;
 import com.outmet.data.Graph;
 import com.outmet.data.Node;
+import com.outmet.metrics.PrioritiserMetrics;
 
 /**
  * ---------------------------------------------------------------------------
@@ -32,11 +27,16 @@ import com.outmet.data.Node;
 public class Prioritiser {
 	private static final Logger log = Logger.getLogger(Prioritiser.class
 			.getName());
+
+	/**
+	 * Rows per parallel range in the lof steps.
+	 */
+	private static final int LOF_GRAIN = 1024;
 	
 	/**
 	 * An n-by-n distance matrix where n is the number of meta-alerts.
 	 */
-	protected double[][] distance;
+	protected DistanceMatrix distance;
 
 	/**
 	 * The local outlier factor values of each meta-alert where lof[i] belongs
@@ -59,136 +59,170 @@ public class Prioritiser {
 	 */
 	protected List<Graph<Alert>> graphs;
 
+	/**
+	 * Computes the distance matrix, in parallel by default.
+	 */
+	protected DistanceMatrixCalculator calculator;
+
+	/**
+	 * Finds the neighborhoods without a distance matrix, or null to use the
+	 * matrix.
+	 */
+	protected NeighborSearch neighborSearch;
+
+	/**
+	 * Counts the distances and times the stages of each run.
+	 */
+	protected PrioritiserMetrics metrics;
+
 	public Prioritiser() {
 		this.k = 0;
 		this.graphs = new ArrayList<Graph<Alert>>();
+		this.calculator = new DistanceMatrixCalculator();
+		this.metrics = new PrioritiserMetrics();
 	}
 
 	public Prioritiser(int k, List<Graph<Alert>> graphs) {
 		this.k = k;
 		this.graphs = graphs;
+		this.calculator = new DistanceMatrixCalculator();
+		this.metrics = new PrioritiserMetrics();
 	}
 
 	public void run() {
-		calculateDistanceMatrix();
-		calculateOutMet();
+		long stageStart = System.nanoTime();
+		if (neighborSearch == null) {
+			calculateDistanceMatrix();
+			recordDistances(metrics, calculator.getCounters(),
+					System.nanoTime() - stageStart);
+			stageStart = System.nanoTime();
+			calculateOutMet();
+		} else if (k > 0) {
+			long start = System.currentTimeMillis();
+			Neighborhoods neighborhoods = neighborSearch.search(graphs, k);
+			log.log(Level.INFO, "Found the neighborhoods of " + graphs.size()
+					+ " meta-alerts in " + (System.currentTimeMillis() - start)
+					+ " ms");
+			recordDistances(metrics, neighborSearch.getCounters(),
+					System.nanoTime() - stageStart);
+			stageStart = System.nanoTime();
+			calculateOutMet(neighborhoods);
+		}
+		metrics.recordLof(graphs.size(), System.nanoTime() - stageStart);
 		updateAlerts();
 		printStatistics();
 	}
 
+	/**
+	 * Records the distances of a run from counters indexed as in
+	 * {@link MetaAlertMetric}.
+	 */
+	static void recordDistances(PrioritiserMetrics metrics, long[] counters,
+			long nanos) {
+		long distances = counters[MetaAlertMetric.SIZE_BOUND]
+				+ counters[MetaAlertMetric.LABEL_BOUND]
+				+ counters[MetaAlertMetric.CACHE_HIT]
+				+ counters[MetaAlertMetric.EXACT];
+		metrics.recordDistances(distances, counters[MetaAlertMetric.EXACT],
+				counters[MetaAlertMetric.COST_LIMIT],
+				counters[MetaAlertMetric.CACHE_HIT], nanos);
+	}
+
 	/**
 	 * Computes the distance matrix.
 	 */
 	protected void calculateDistanceMatrix() {
-		int n = graphs.size();
-		distance = new double[n][n];
-
-		for (int i = 0; i < n; i++) {
-			distance[i] = new double[n];
-		}
-
-		for (int i = 0; i < n; i++) {
-			for (int j = i; j < n; j++) {
-				if (i == j)
-					continue;
-				try {
-					double dist = Distance.calculateGED(graphs.get(i),
-							graphs.get(j));
-					distance[i][j] = distance[j][i] = Math.max(0.1, dist);
-				} catch (DotParseException e) {
-					distance[i][j] = distance[j][i] = 1;
-				} catch (CostLimitExceededException c) {
-					distance[i][j] = distance[j][i] = 1;
-				}
-			}
-
+		long start = System.currentTimeMillis();
+		distance = calculator.calculate(graphs);
+		String bounds = "";
+		if (getEditDistance() == MetaAlertMetric.EditDistance.NATIVE) {
+			// The bounds only apply to the native edit distance.
+			bounds = "size bound: " + calculator.getSizeFiltered()
+					+ ", by label bound: " + calculator.getLabelFiltered()
+					+ ", by ";
 		}
+		log.log(Level.INFO, "Computed the distances of " + graphs.size()
+				+ " meta-alerts (" + calculator.getDistinctCount()
+				+ " distinct) on " + calculator.getParallelism()
+				+ " threads in " + (System.currentTimeMillis() - start)
+				+ " ms; pairs resolved by " + bounds + "cache: "
+				+ calculator.getCacheHits() + ", by exact distance: "
+				+ calculator.getExactComputed());
 	}
 
 	/**
-	 * 
+	 * Computes the lofs from the distance matrix.
 	 */
 	protected void calculateOutMet() {
 		if (k <= 0) {
 			return;
 		}
 
-		int n = distance.length;
+		// Step 1: Derive the k-distances and neighborhoods.
+		calculateOutMet(Neighborhoods.of(distance, k, getParallelism()));
+	}
+
+	/**
+	 * Computes the lofs from the k-distance neighborhoods. Rows are spread
+	 * over the threads of {@link #getParallelism()}; each row is summed in
+	 * order on one thread, so the lofs do not depend on the parallelism.
+	 */
+	protected void calculateOutMet(final Neighborhoods neighborhoods) {
+		int n = neighborhoods.size();
 		lofs = new double[n];
 		maxLof = 0.0;
 
-		double[][] reachabilityMatrix = new double[n][n];
-		double[] lrDensities = new double[n];
-		double[] kDistances = new double[n];
-
-		Map<Integer, Map<Integer, Double>> neighborReachabilityMatrix = new HashMap<Integer, Map<Integer, Double>>();
-
-		// Step 1: Derive the k-distances.
-		for (int i = 0; i < n; i++) {
-			double[] distances = distance[i];
-			double[] orderedDistances = Arrays.copyOf(distances, n);
-
-			Arrays.sort(orderedDistances);
-			double kDistance = orderedDistances[k - 1];
-			kDistances[i] = kDistance;
-		}
-
-		// Step 2: Derive the reachability distances
-		for (int i = 0; i < n; i++) {
-
-			double[] reachDistances = new double[n];
-			double kDistance = kDistances[i];
-			Map<Integer, Double> neighborReachabilityDistance = new HashMap<Integer, Double>();
-
-			for (int j = 0; j < n; j++) {
-				double d = distance[i][j];
-				double max = Math.max(kDistances[j], d);
-				reachDistances[j] = max;
-				if (d <= kDistance) {
-					neighborReachabilityDistance.put(j, max);
+		final double[] lrDensities = new double[n];
+
+		// Step 2 and 3: Derive the reachability distances and calculate local
+		// reachability densities.
+		ParallelRows.run(n, LOF_GRAIN, getParallelism(), new ParallelRows.Body() {
+			@Override
+			public void compute(int from, int to) {
+				for (int i = from; i < to; i++) {
+					double sum = 0;
+
+					int start = neighborhoods.start(i);
+					int end = neighborhoods.end(i);
+					for (int p = start; p < end; p++) {
+						int j = neighborhoods.getNeighbor(p);
+						sum += Math.max(neighborhoods.getKDistance(j),
+								neighborhoods.getDistance(p));
+					}
+
+					lrDensities[i] = 1 / (sum / (end - start));
 				}
 			}
-
-			neighborReachabilityMatrix.put(i, neighborReachabilityDistance);
-			reachabilityMatrix[i] = reachDistances;
-
-		}
-
-		// Step 3: Calculate local reachability densities.
-		double lrd = 0.0;
-		for (int i = 0; i < n; i++) {
-			double sum = 0;
-
-			for (double d : neighborReachabilityMatrix.get(i).values()) {
-				sum += d;
-			}
-
-			lrd = 1 / (sum / (neighborReachabilityMatrix.get(i).size()));
-			lrDensities[i] = lrd;
-		}
+		});
 
 		// Step 4: Compute Local Outlier Factor.
-		for (int i = 0; i < lrDensities.length; i++) {
-			double lrdP = lrDensities[i];
-			double sum = 0;
-
-			// get lrd of NNs
-			List<Integer> NNs = new ArrayList<Integer>(
-					neighborReachabilityMatrix.get(i).keySet());
-
-			for (Integer j : NNs) {
-
-				double lrdo = lrDensities[j];
-
-				sum += lrdo / lrdP;
+		final double[] lofs = this.lofs;
+		ParallelRows.run(n, LOF_GRAIN, getParallelism(), new ParallelRows.Body() {
+			@Override
+			public void compute(int from, int to) {
+				for (int i = from; i < to; i++) {
+					double lrdP = lrDensities[i];
+					double sum = 0;
+
+					// get lrd of NNs
+					int start = neighborhoods.start(i);
+					int end = neighborhoods.end(i);
+					for (int p = start; p < end; p++) {
+						double lrdo = lrDensities[neighborhoods.getNeighbor(p)];
+
+						sum += lrdo / lrdP;
+					}
+
+					lofs[i] = sum / (end - start);
+				}
 			}
+		});
 
-			lofs[i] = sum / NNs.size();
+		for (int i = 0; i < n; i++) {
 			if (lofs[i] > maxLof) {
 				maxLof = lofs[i];
 			}
 		}
-
 	}
 
 	/**
@@ -199,26 +233,29 @@ public class Prioritiser {
 		int i = 0;
 		for (Graph<Alert> graph : graphs) {
 			for (Node<Alert> alert : graph.getNodes()) {
-				double l = lofs[i] / maxLof;
-				int priority;
-
-				// Maps the scaled lof to discrete priority value where 1 ==
-				// high priority, 4 == low priority
-				if (l >= 0.75) {
-					priority = 4;
-				} else if (l >= 0.5) {
-					priority = 3;
-				} else if (l >= 0.25) {
-					priority = 2;
-				} else {
-					priority = 1;
-				}
-				alert.getElement().setOutMetPriority(priority);
+				alert.getElement().setOutMetPriority(priority(lofs[i], maxLof));
 			}
 			i++;
 		}
 	}
 
+	/**
+	 * Maps the lof scaled by the largest lof to discrete priority value where
+	 * 1 == high priority, 4 == low priority.
+	 */
+	static int priority(double lof, double maxLof) {
+		double l = lof / maxLof;
+		if (l >= 0.75) {
+			return 4;
+		} else if (l >= 0.5) {
+			return 3;
+		} else if (l >= 0.25) {
+			return 2;
+		} else {
+			return 1;
+		}
+	}
+
 	public int getK() {
 		return k;
 	}
@@ -235,14 +272,88 @@ public class Prioritiser {
 		return maxLof;
 	}
 
+	public PrioritiserMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Uses the given n-by-n array as the distance matrix. The array is
+	 * wrapped, not copied.
+	 */
 	public void setDistanceMatrix(double[][] distanceMatrix) {
-		this.distance = distanceMatrix;
+		this.distance = distanceMatrix == null ? null : DistanceMatrix
+				.of(distanceMatrix);
 	}
 
+	/**
+	 * Returns the distance matrix as an n-by-n array. A computed matrix is
+	 * packed, so this expands it into a new array; use
+	 * {@link #getDistances()} to read it in place.
+	 */
 	public double[][] getDistanceMatrix() {
+		return distance == null ? null : distance.toArray();
+	}
+
+	public DistanceMatrix getDistances() {
 		return distance;
 	}
 
+	public void setDistances(DistanceMatrix distance) {
+		this.distance = distance;
+	}
+
+	public NeighborSearch getNeighborSearch() {
+		return neighborSearch;
+	}
+
+	/**
+	 * Sets how the neighborhoods are found. By default, or if null, the full
+	 * distance matrix is computed; a {@link VpTreeNeighborSearch} finds the
+	 * same neighborhoods from a fraction of the distances, and leaves the
+	 * distance matrix unset.
+	 */
+	public void setNeighborSearch(NeighborSearch neighborSearch) {
+		this.neighborSearch = neighborSearch;
+	}
+
+	/**
+	 * Sets how computed distance matrices are stored. Float storage halves the
+	 * memory at the cost of rounding the distances, and mapped storage keeps
+	 * the matrix out of the heap.
+	 */
+	public void setDistanceStorage(DistanceMatrix.Storage storage) {
+		calculator.setStorage(storage);
+	}
+
+	public MetaAlertMetric.EditDistance getEditDistance() {
+		return calculator.getMetric().getEditDistance();
+	}
+
+	/**
+	 * Selects how the distance matrix is computed, see
+	 * {@link MetaAlertMetric}. A {@link NeighborSearch} has a metric of its
+	 * own.
+	 */
+	public void setEditDistance(MetaAlertMetric.EditDistance editDistance) {
+		calculator.getMetric().setEditDistance(editDistance);
+	}
+
+	public int getParallelism() {
+		return calculator.getParallelism();
+	}
+
+	/**
+	 * Sets the number of threads used to compute the distance matrix and the
+	 * lofs. The results are the same for any value.
+	 */
+	public void setParallelism(int parallelism) {
+		calculator.setParallelism(parallelism);
+	}
+
+	public void setDistanceProgressListener(DistanceProgressListener listener) {
+		calculator.setProgressListener(listener);
+	}
+
 	public void setGraphs(List<Graph<Alert>> graphs) {
 		this.graphs = graphs;
 	}
@@ -0,0 +1,310 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.outmet.data.Alert;
+
+/**
+ * Puts alerts that arrive out of order back in order of start time, so they
+ * can be offered to a {@link Correlator}, within a lateness bound.
+ *
+ * Alerts are held in a min-heap keyed by start time. The watermark is the
+ * latest start time offered less the lateness bound; alerts that start at or
+ * before it are released in order of start time, and alerts with equal
+ * start times in the order they were offered. So a stream in which no alert
+ * starts more than the bound before an alert offered ahead of it comes out
+ * sorted. The buffer holds at most the alerts of one bound of stream time,
+ * and never more than its capacity: beyond that the earliest alert is
+ * released early.
+ *
+ * An alert that starts before the last alert released is late. By default
+ * its start time is corrected to that of the last alert released, with its
+ * end time moved by as much, and it is released at once. The correction is
+ * made on the offered alert itself, not on a copy. If a
+ * {@link LateAlertListener} is set, late alerts go to it instead, unchanged.
+ *
+ * Alerts are pushed with offer() and taken with poll(), or an iterator of
+ * alerts is reordered with reorder(). Call flush() at the end of a stream to
+ * release the alerts still held.
+ *
+ * @author riyanat
+ *
+ */
+public class ReorderBuffer {
+
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The greatest lateness in millis that is put in order.
+	 */
+	private long maxLateness;
+
+	/**
+	 * The most alerts held.
+	 */
+	private int capacity;
+
+	// The heap, ordered by start time and then by arrival.
+	private long[] startTimes;
+	private long[] sequences;
+	private Alert[] alerts;
+	private int size;
+	private long sequence;
+
+	/**
+	 * The latest start time offered.
+	 */
+	private long latest;
+
+	/**
+	 * The start time of the last alert released.
+	 */
+	private long released;
+
+	private boolean flushing;
+
+	/**
+	 * Receives late alerts, may be null.
+	 */
+	private LateAlertListener listener;
+
+	private long lateAlerts;
+	private int maxSize;
+
+	/**
+	 * @param maxLateness
+	 *            the greatest lateness in millis that is put in order.
+	 */
+	public ReorderBuffer(long maxLateness) {
+		this(maxLateness, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity
+	 *            the most alerts held at once.
+	 */
+	public ReorderBuffer(long maxLateness, int capacity) {
+		if (maxLateness < 0 || capacity < 1) {
+			throw new IllegalArgumentException("Lateness " + maxLateness
+					+ " or capacity " + capacity + " out of range");
+		}
+		this.maxLateness = maxLateness;
+		this.capacity = capacity;
+		startTimes = new long[INITIAL_CAPACITY];
+		sequences = new long[INITIAL_CAPACITY];
+		alerts = new Alert[INITIAL_CAPACITY];
+		latest = Long.MIN_VALUE;
+		released = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Adds an alert, which is released by poll() once the watermark passes
+	 * it. A late alert is corrected in place unless a listener is set: its
+	 * start and end times are replaced, so the caller sees the corrected
+	 * times too.
+	 */
+	public void offer(Alert alert) {
+		long startTime = alert.getStartTime().getTime();
+		if (startTime < released) {
+			lateAlerts++;
+			if (listener != null) {
+				listener.lateAlert(alert, released);
+				return;
+			}
+			// No held alert starts before {released}, so the corrected alert
+			// is released next or after alerts that start at the same time.
+			long shift = released - startTime;
+			alert.setStartTime(new Date(released));
+			alert.setEndTime(new Date(alert.getEndTime().getTime() + shift));
+			startTime = released;
+		}
+		flushing = false;
+		latest = Math.max(latest, startTime);
+
+		if (size == startTimes.length) {
+			int length = 2 * size;
+			startTimes = Arrays.copyOf(startTimes, length);
+			sequences = Arrays.copyOf(sequences, length);
+			alerts = Arrays.copyOf(alerts, length);
+		}
+		int i = size++;
+		startTimes[i] = startTime;
+		sequences[i] = sequence++;
+		alerts[i] = alert;
+		siftUp(i);
+		maxSize = Math.max(maxSize, size);
+	}
+
+	/**
+	 * Removes the earliest alert if the watermark has passed it, the buffer
+	 * is over capacity or it is being flushed.
+	 *
+	 * @return the alert, or null if none is ready.
+	 */
+	public Alert poll() {
+		if (size == 0) {
+			return null;
+		}
+		if (!flushing && size <= capacity && startTimes[0] > getWatermark()) {
+			return null;
+		}
+		Alert alert = alerts[0];
+		released = Math.max(released, startTimes[0]);
+		size--;
+		if (size > 0) {
+			startTimes[0] = startTimes[size];
+			sequences[0] = sequences[size];
+			alerts[0] = alerts[size];
+			siftDown(0);
+		}
+		alerts[size] = null;
+		return alert;
+	}
+
+	/**
+	 * Lets poll() release all alerts held, e.g. at the end of a stream.
+	 */
+	public void flush() {
+		flushing = true;
+	}
+
+	/**
+	 * Reorders a stream of alerts, e.g. from a
+	 * {@link com.outmet.io.CsvAlertReader}. The stream is read as the
+	 * returned iterator is, and flushed at its end.
+	 */
+	public Iterator<Alert> reorder(final Iterator<Alert> input) {
+		return new Iterator<Alert>() {
+			private Alert next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null) {
+					next = poll();
+					if (next != null) {
+						break;
+					}
+					if (input.hasNext()) {
+						offer(input.next());
+					} else if (size > 0) {
+						flush();
+					} else {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public Alert next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Alert alert = next;
+				next = null;
+				return alert;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Alerts that start at or before this time are released.
+	 */
+	public long getWatermark() {
+		return latest < Long.MIN_VALUE + maxLateness ? Long.MIN_VALUE : latest
+				- maxLateness;
+	}
+
+	private boolean before(int a, int b) {
+		return startTimes[a] < startTimes[b]
+				|| (startTimes[a] == startTimes[b] && sequences[a] < sequences[b]);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(i, parent)) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && before(child + 1, child)) {
+				child++;
+			}
+			if (!before(child, i)) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		long startTime = startTimes[a];
+		startTimes[a] = startTimes[b];
+		startTimes[b] = startTime;
+		long sequenceNumber = sequences[a];
+		sequences[a] = sequences[b];
+		sequences[b] = sequenceNumber;
+		Alert alert = alerts[a];
+		alerts[a] = alerts[b];
+		alerts[b] = alert;
+	}
+
+	// Setters and getters.
+	public long getMaxLateness() {
+		return maxLateness;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * The number of alerts held.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The most alerts held at once.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * The number of late alerts, corrected or passed to the listener.
+	 */
+	public long getLateAlertCount() {
+		return lateAlerts;
+	}
+
+	public void setLateAlertListener(LateAlertListener listener) {
+		this.listener = listener;
+	}
+
+	public LateAlertListener getLateAlertListener() {
+		return listener;
+	}
+}
@@ -0,0 +1,389 @@
+package com.outmet.analysis;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * Finds exact k-distance neighborhoods with a vantage-point tree over the
+ * {@link MetaAlertMetric}, without computing the distance of every pair.
+ *
+ * The tree holds the distinct structures of the meta-alerts, each weighted by
+ * the number of meta-alerts that share it. Every node picks a vantage point
+ * and splits the other structures at the median of their distance to it. A
+ * search for the k nearest meta-alerts keeps the best candidates found so far
+ * and skips every subtree that the triangle inequality places further away
+ * than the current k-distance. The structures visited within the final
+ * k-distance form the neighborhood, so ties are included as in
+ * {@link Neighborhoods#of(DistanceMatrix, int)}, and the result is the same.
+ *
+ * The result is exact only if the metric satisfies the triangle inequality,
+ * as the native edit distance does; the library edit distance is not known
+ * to, so select {@link MetaAlertMetric.EditDistance#NATIVE} for exact
+ * neighborhoods.
+ *
+ * @author riyanat
+ *
+ */
+public class VpTreeNeighborSearch implements NeighborSearch {
+
+	/**
+	 * Subtrees of at most this many structures are scanned.
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	/**
+	 * Slack for rounding in the triangle inequality, so that meta-alerts at
+	 * exactly the k-distance are never skipped.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	private MetaAlertMetric metric;
+	private GraphEditDistance ged;
+	private long[] counters;
+
+	// The tree: structures in node order, and per node its range of points
+	// (the vantage point first), children and radii.
+	private int[] points;
+	private int[] starts;
+	private int[] ends;
+	private int[] inner;
+	private int[] outer;
+	private double[] innerRadius;
+	private double[] outerRadius;
+	private int nodes;
+
+	private int[] multiplicities;
+
+	// The current query and its candidates, by increasing distance.
+	private int query;
+	private int k;
+	private double[] candidateDistances;
+	private int[] candidateWeights;
+	private int candidates;
+	private double kDistance;
+
+	// Structures visited by the current query within the k-distance.
+	private int[] visited;
+	private double[] visitedDistances;
+	private int visits;
+
+	public VpTreeNeighborSearch() {
+		this(new MetaAlertMetric());
+	}
+
+	public VpTreeNeighborSearch(MetaAlertMetric metric) {
+		this.metric = metric;
+		this.ged = new GraphEditDistance();
+		this.counters = new long[MetaAlertMetric.COUNTERS];
+	}
+
+	@Override
+	public Neighborhoods search(List<Graph<Alert>> graphs, int k) {
+		int[] rows = metric.collapse(graphs);
+		int n = rows.length;
+		int u = metric.size();
+		Neighborhoods.checkK(k, n);
+		this.k = k;
+		this.counters = new long[MetaAlertMetric.COUNTERS];
+
+		// The meta-alerts of each structure, in increasing order.
+		multiplicities = new int[u];
+		for (int row : rows) {
+			multiplicities[row]++;
+		}
+		int[] memberStarts = new int[u + 1];
+		for (int s = 0; s < u; s++) {
+			memberStarts[s + 1] = memberStarts[s] + multiplicities[s];
+		}
+		int[] members = new int[n];
+		int[] fill = Arrays.copyOf(memberStarts, u);
+		for (int i = 0; i < n; i++) {
+			members[fill[rows[i]]++] = i;
+		}
+
+		build(u);
+
+		// The neighborhood of each structure, as structures.
+		Neighborhoods structures = new Neighborhoods(u);
+		candidateDistances = new double[k + 2];
+		candidateWeights = new int[k + 2];
+		visited = new int[16];
+		visitedDistances = new double[16];
+		int[] ids = new int[16];
+		double[] ds = new double[16];
+		for (int q = 0; q < u; q++) {
+			query(q);
+			if (visits > ids.length) {
+				ids = new int[visits];
+				ds = new double[visits];
+			}
+			int count = 0;
+			for (int v = 0; v < visits; v++) {
+				if (visitedDistances[v] <= kDistance) {
+					ids[count] = visited[v];
+					ds[count] = visitedDistances[v];
+					count++;
+				}
+			}
+			structures.add(kDistance, ids, ds, count);
+		}
+
+		// Expand to meta-alerts.
+		Neighborhoods neighborhoods = new Neighborhoods(n);
+		double[] structureDistances = new double[u];
+		for (int i = 0; i < n; i++) {
+			int q = rows[i];
+			double kDistance = structures.getKDistance(q);
+			int count = 0;
+			if (MetaAlertMetric.MIN_DISTANCE <= kDistance) {
+				count += multiplicities[q];
+			} else {
+				count++;
+			}
+			for (int p = structures.start(q); p < structures.end(q); p++) {
+				int s = structures.getNeighbor(p);
+				structureDistances[s] = structures.getDistance(p);
+				count += multiplicities[s];
+			}
+			if (count > ids.length) {
+				ids = new int[Math.max(count, 2 * ids.length)];
+				ds = new double[ids.length];
+			}
+
+			count = 0;
+			if (MetaAlertMetric.MIN_DISTANCE <= kDistance) {
+				for (int m = memberStarts[q]; m < memberStarts[q + 1]; m++) {
+					ids[count++] = members[m];
+				}
+			} else {
+				ids[count++] = i;
+			}
+			for (int p = structures.start(q); p < structures.end(q); p++) {
+				int s = structures.getNeighbor(p);
+				for (int m = memberStarts[s]; m < memberStarts[s + 1]; m++) {
+					ids[count++] = members[m];
+				}
+			}
+			Arrays.sort(ids, 0, count);
+			for (int c = 0; c < count; c++) {
+				int j = ids[c];
+				if (j == i) {
+					ds[c] = 0;
+				} else if (rows[j] == q) {
+					ds[c] = MetaAlertMetric.MIN_DISTANCE;
+				} else {
+					ds[c] = structureDistances[rows[j]];
+				}
+			}
+			neighborhoods.add(kDistance, ids, ds, count);
+		}
+		return neighborhoods;
+	}
+
+	/**
+	 * Builds the tree over structures 0 to u - 1.
+	 */
+	private void build(int u) {
+		points = new int[u];
+		for (int s = 0; s < u; s++) {
+			points[s] = s;
+		}
+		starts = new int[u];
+		ends = new int[u];
+		inner = new int[u];
+		outer = new int[u];
+		innerRadius = new double[u];
+		outerRadius = new double[u];
+		nodes = 0;
+		if (u > 0) {
+			build(0, u, new double[u]);
+		}
+	}
+
+	private int build(int start, int end, double[] distances) {
+		int node = nodes++;
+		starts[node] = start;
+		ends[node] = end;
+		inner[node] = -1;
+		outer[node] = -1;
+		if (end - start <= LEAF_SIZE) {
+			return node;
+		}
+
+		int vantage = points[start];
+		for (int p = start + 1; p < end; p++) {
+			distances[p] = metric.distance(vantage, points[p], ged, counters);
+		}
+		sort(distances, points, start + 1, end);
+		int middle = (start + 1 + end) >>> 1;
+		innerRadius[node] = distances[middle - 1];
+		outerRadius[node] = distances[middle];
+		inner[node] = build(start + 1, middle, distances);
+		outer[node] = build(middle, end, distances);
+		return node;
+	}
+
+	/**
+	 * Finds the k-distance of structure q and visits every structure within
+	 * it.
+	 */
+	private void query(int q) {
+		query = q;
+		candidates = 0;
+		visits = 0;
+		kDistance = Double.POSITIVE_INFINITY;
+		// The meta-alert itself, and the others with its structure.
+		offer(0, 1);
+		if (multiplicities[q] > 1) {
+			offer(MetaAlertMetric.MIN_DISTANCE, multiplicities[q] - 1);
+		}
+		if (nodes > 0) {
+			search(0);
+		}
+	}
+
+	private void search(int node) {
+		if (inner[node] < 0) {
+			for (int p = starts[node]; p < ends[node]; p++) {
+				visit(points[p]);
+			}
+			return;
+		}
+
+		int vantage = points[starts[node]];
+		double d = vantage == query ? 0 : visit(vantage);
+		if (d <= innerRadius[node]) {
+			if (d - kDistance <= innerRadius[node] + EPSILON) {
+				search(inner[node]);
+			}
+			if (d + kDistance >= outerRadius[node] - EPSILON) {
+				search(outer[node]);
+			}
+		} else {
+			if (d + kDistance >= outerRadius[node] - EPSILON) {
+				search(outer[node]);
+			}
+			if (d - kDistance <= innerRadius[node] + EPSILON) {
+				search(inner[node]);
+			}
+		}
+	}
+
+	/**
+	 * Computes the distance of a structure from the query and offers it as a
+	 * candidate.
+	 */
+	private double visit(int structure) {
+		if (structure == query) {
+			return 0;
+		}
+		double d = metric.distance(query, structure, ged, counters);
+		if (d <= kDistance) {
+			if (visits == visited.length) {
+				visited = Arrays.copyOf(visited, 2 * visits);
+				visitedDistances = Arrays.copyOf(visitedDistances, 2 * visits);
+			}
+			visited[visits] = structure;
+			visitedDistances[visits] = d;
+			visits++;
+			offer(d, multiplicities[structure]);
+		}
+		return d;
+	}
+
+	/**
+	 * Adds weight meta-alerts at distance d to the candidates, and drops the
+	 * candidates beyond the k-th meta-alert.
+	 */
+	private void offer(double d, int weight) {
+		int position = candidates;
+		while (position > 0 && candidateDistances[position - 1] > d) {
+			candidateDistances[position] = candidateDistances[position - 1];
+			candidateWeights[position] = candidateWeights[position - 1];
+			position--;
+		}
+		candidateDistances[position] = d;
+		candidateWeights[position] = weight;
+		candidates++;
+
+		int total = 0;
+		for (int c = 0; c < candidates; c++) {
+			total += candidateWeights[c];
+			if (total >= k) {
+				candidates = c + 1;
+				kDistance = candidateDistances[c];
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sorts keys[start, end) in increasing order, moving values with them.
+	 */
+	private static void sort(double[] keys, int[] values, int start, int end) {
+		while (end - start > 16) {
+			double pivot = keys[(start + end) >>> 1];
+			int i = start;
+			int j = end - 1;
+			while (i <= j) {
+				while (keys[i] < pivot) {
+					i++;
+				}
+				while (keys[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(keys, values, i++, j--);
+				}
+			}
+			// Recurse into the smaller part.
+			if (j + 1 - start < end - i) {
+				sort(keys, values, start, j + 1);
+				start = i;
+			} else {
+				sort(keys, values, i, end);
+				end = j + 1;
+			}
+		}
+		for (int i = start + 1; i < end; i++) {
+			for (int j = i; j > start && keys[j - 1] > keys[j]; j--) {
+				swap(keys, values, j - 1, j);
+			}
+		}
+	}
+
+	private static void swap(double[] keys, int[] values, int i, int j) {
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		int value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+
+	public MetaAlertMetric getMetric() {
+		return metric;
+	}
+
+	/**
+	 * The counters of the last search, indexed as in {@link MetaAlertMetric}.
+	 */
+	@Override
+	public long[] getCounters() {
+		return counters.clone();
+	}
+
+	/**
+	 * The number of distances computed by the last search, including those
+	 * resolved by a bound or the cache.
+	 */
+	public long getDistanceCount() {
+		return counters[MetaAlertMetric.SIZE_BOUND]
+				+ counters[MetaAlertMetric.LABEL_BOUND]
+				+ counters[MetaAlertMetric.CACHE_HIT]
+				+ counters[MetaAlertMetric.EXACT];
+	}
+}
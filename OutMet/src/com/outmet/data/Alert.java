@@ -141,16 +141,24 @@ public class Alert {
 	}
 
 	public void setDestPort(String destPort) {
+		this.destPort = getDestPortClass(destPort);
+	}
+
+	/**
+	 * Returns "private" for a destination port from 1024 to 65535, and the
+	 * port itself otherwise.
+	 */
+	public static String getDestPortClass(String destPort) {
 		try {
 			int test = Integer.parseInt(destPort);
 			if (test >= 1024 && test <= 65535) {
-				this.destPort = "private";
+				return "private";
 			}
 
 			else
-				this.destPort = destPort;
+				return destPort;
 		} catch (NumberFormatException e) {
-			this.destPort = destPort;
+			return destPort;
 		}
 	}
 
@@ -0,0 +1,60 @@
+package com.outmet.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encodes strings (alert names, categories, ports, addresses) as
+ * dense integer ids. Equal strings always receive the same id, so string
+ * equality becomes an int comparison. null is a valid term.
+ * 
+ * Terms are never removed, so a dictionary grows with the number of distinct
+ * terms added to it. A long-running user should bound it by starting a new
+ * dictionary once this is too large, as the Correlator does when it compacts
+ * its table. The labels of a MetaAlertMetric are alert names, which are
+ * bounded by the rules of the IDS.
+ * 
+ * @author riyanat
+ * 
+ */
+public class TermDictionary {
+
+	private Map<String, Integer> ids;
+	private List<String> terms;
+
+	public TermDictionary() {
+		ids = new HashMap<String, Integer>();
+		terms = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the id of term, adding it to the dictionary if necessary.
+	 */
+	public int add(String term) {
+		Integer id = ids.get(term);
+		if (id == null) {
+			id = terms.size();
+			ids.put(term, id);
+			terms.add(term);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of term, or -1 if it is not in the dictionary.
+	 */
+	public int getId(String term) {
+		Integer id = ids.get(term);
+		return id == null ? -1 : id;
+	}
+
+	public String getTerm(int id) {
+		return terms.get(id);
+	}
+
+	public int size() {
+		return terms.size();
+	}
+}
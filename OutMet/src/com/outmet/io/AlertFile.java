@@ -0,0 +1,200 @@
+package com.outmet.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.outmet.data.Alert;
+
+/**
+ * A compact binary columnar file of alerts and the meta-alerts they were
+ * correlated into, written by {@link AlertFileWriter} and read by
+ * {@link AlertFileReader}. The file is a header followed by blocks of up to
+ * a few thousand alerts:
+ *
+ * header: magic, version
+ *
+ * block: byte length, rows, the terms added to the dictionary by the block,
+ * then each field of the alerts as a column: start times as deltas from the
+ * previous alert, end times as deltas from the start times, keys (numbers or
+ * terms), name, category, address and port terms, IPv4 addresses packed
+ * into ints with a bitmap of the rows that hold a term instead, counts,
+ * priorities, OutMet priorities and meta-alert ids. Last come the edges of
+ * the meta-alerts of the block as rows within it, with their weights.
+ *
+ * Names, categories, ports and addresses that are not IPv4 share one
+ * dictionary that grows from block to block. Most columns are variable
+ * length integers, so a typical alert takes 15 to 25 bytes. A meta-alert is
+ * never split across blocks.
+ *
+ * CSV remains the import and export format, see
+ * {@link #importCsv(String, String)} and {@link #exportCsv(String, String)}.
+ * Correlator checkpoints store their meta-alerts in this format too.
+ *
+ * @author riyanat
+ *
+ */
+public class AlertFile {
+
+	static final int MAGIC = 0x4f4d4131;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 8;
+
+	/**
+	 * The number of alerts after which a block is written.
+	 */
+	static final int BLOCK_ROWS = 8192;
+
+	private AlertFile() {
+	}
+
+	/**
+	 * Converts a CSV of alerts in the 9 columns of {@link CsvAlertReader}.
+	 *
+	 * @return the number of alerts.
+	 */
+	public static long importCsv(String csv, String file) throws IOException {
+		CsvAlertReader reader = new CsvAlertReader(csv, ',');
+		try {
+			AlertFileWriter writer = new AlertFileWriter(file);
+			try {
+				while (reader.hasNext()) {
+					writer.write(reader.next());
+				}
+			} finally {
+				writer.close();
+			}
+			return writer.getAlertCount();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Converts a file of alerts to a CSV with the OutMet priority of each
+	 * alert as a 10th column.
+	 *
+	 * @return the number of alerts.
+	 */
+	public static long exportCsv(String file, String csv) throws IOException {
+		AlertFileReader reader = new AlertFileReader(file);
+		try {
+			CsvAlertWriter writer = new CsvAlertWriter(new File(csv), ',', true);
+			try {
+				while (reader.hasNext()) {
+					writer.write(reader.next());
+				}
+			} finally {
+				writer.close();
+			}
+			return writer.getAlertCount();
+		} finally {
+			reader.close();
+		}
+	}
+
+	// Encoding shared by the reader and writer.
+
+	static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static long getVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * @return the address as an int in network order, or -1 if ip is not a
+	 *         canonical dotted IPv4 literal.
+	 */
+	static long packIpv4(String ip) {
+		if (ip == null) {
+			return -1;
+		}
+		int length = ip.length();
+		long address = 0;
+		int octets = 0;
+		int i = 0;
+		while (i < length) {
+			int start = i;
+			int octet = 0;
+			while (i < length && i - start < 4) {
+				char c = ip.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				octet = octet * 10 + c - '0';
+				i++;
+			}
+			int digits = i - start;
+			if (digits == 0 || digits > 3 || octet > 255
+					|| (digits > 1 && ip.charAt(start) == '0')) {
+				return -1;
+			}
+			address = address << 8 | octet;
+			octets++;
+			if (i == length) {
+				break;
+			}
+			if (ip.charAt(i) != '.' || octets == 4) {
+				return -1;
+			}
+			i++;
+		}
+		return octets == 4 && ip.charAt(length - 1) != '.' ? address : -1;
+	}
+
+	static String unpackIpv4(int address) {
+		return (address >>> 24) + "." + (address >>> 16 & 255) + "."
+				+ (address >>> 8 & 255) + "." + (address & 255);
+	}
+
+	/**
+	 * @return the key as a non-negative number, or -1 if it is not the
+	 *         canonical decimal form of one.
+	 */
+	static long numericKey(String key) {
+		if (key == null || key.isEmpty() || key.length() > 18
+				|| (key.length() > 1 && key.charAt(0) == '0')) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+
+	/**
+	 * Whether the alert's fields can be written, i.e. it has times.
+	 */
+	static void check(Alert alert) {
+		if (alert.getStartTime() == null || alert.getEndTime() == null) {
+			throw new IllegalArgumentException("Alert " + alert.getKey()
+					+ " has no start or end time");
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package com.outmet.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+/**
+ * Streams alerts out of a file written by {@link AlertFileWriter}. Each block
+ * is read with a single channel read into a direct buffer and decoded a
+ * column at a time; alerts are only created as they are returned.
+ *
+ * @author riyanat
+ *
+ */
+public class AlertFileReader implements Iterator<Alert>, Iterable<Alert>,
+		Closeable {
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private ByteBuffer lengthBuffer;
+
+	private List<String> terms;
+
+	// The decoded columns of the current block.
+	private int rows;
+	private long[] startTimes;
+	private long[] endTimes;
+	private long[] keys;
+	private int[] names;
+	private int[] categories;
+	private long[] sourceIps;
+	private int[] sourcePorts;
+	private long[] destIps;
+	private int[] destPorts;
+	private int[] counts;
+	private int[] priorities;
+	private int[] outMetPriorities;
+	private long[] metaAlertIds;
+
+	private int edges;
+	private int[] edgeSources;
+	private int[] edgeTargets;
+	private double[] edgeWeights;
+
+	/**
+	 * The row of the next alert in the current block.
+	 */
+	private int row;
+	private boolean end;
+
+	public AlertFileReader(String filename) throws IOException {
+		this(new File(filename));
+	}
+
+	public AlertFileReader(File file) throws IOException {
+		this(new FileInputStream(file).getChannel(), file.getPath());
+	}
+
+	/**
+	 * Reads from the current position of a channel, e.g. after a header of
+	 * the caller's. The channel is closed with the reader.
+	 */
+	public AlertFileReader(FileChannel channel) throws IOException {
+		this(channel, channel.toString());
+	}
+
+	private AlertFileReader(FileChannel channel, String name)
+			throws IOException {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(AlertFile.BLOCK_ROWS * 32);
+		lengthBuffer = ByteBuffer.allocateDirect(AlertFile.HEADER_BYTES);
+		terms = new ArrayList<String>();
+		allocate(AlertFile.BLOCK_ROWS);
+		edgeSources = new int[0];
+		edgeTargets = new int[0];
+		edgeWeights = new double[0];
+
+		if (!readFully(lengthBuffer)
+				|| lengthBuffer.getInt() != AlertFile.MAGIC) {
+			channel.close();
+			throw new IOException(name + " is not an alert file");
+		}
+		int version = lengthBuffer.getInt();
+		if (version != AlertFile.VERSION) {
+			channel.close();
+			throw new IOException(name + " has unsupported version "
+					+ version);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (row == rows) {
+			if (end) {
+				return false;
+			}
+			try {
+				readBlock();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Alert next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return getAlert(row++);
+	}
+
+	/**
+	 * The meta-alert id of the alert last returned by {@link #next()}, or -1
+	 * if it is not part of one.
+	 */
+	public long getMetaAlertId() {
+		return metaAlertIds[row - 1];
+	}
+
+	/**
+	 * Reads the rest of the file and groups its alerts into meta-alerts in
+	 * the order they first appear, keyed by their id. Nodes and edges are
+	 * keyed and labelled as by the Correlator. Alerts that are not part of a
+	 * meta-alert are skipped.
+	 */
+	public List<Graph<Alert>> readMetaAlerts() throws IOException {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		Map<Long, Graph<Alert>> ids = new HashMap<Long, Graph<Alert>>();
+		List<Node<Alert>> nodes = new ArrayList<Node<Alert>>();
+		while (hasNext()) {
+			nodes.clear();
+			for (; row < rows; row++) {
+				long id = metaAlertIds[row];
+				if (id < 0) {
+					nodes.add(null);
+					continue;
+				}
+				Graph<Alert> graph = ids.get(id);
+				if (graph == null) {
+					graph = new Graph<Alert>();
+					graph.setKey(String.valueOf(id));
+					ids.put(id, graph);
+					graphs.add(graph);
+				}
+				Alert alert = getAlert(row);
+				Node<Alert> node = new Node<Alert>();
+				node.setElement(alert);
+				node.setKey(alert.getKey());
+				node.setLabel(alert.getName());
+				node.setWeight(alert.getCount());
+				graph.addNode(node);
+				nodes.add(node);
+			}
+			int first = rows - nodes.size();
+			for (int i = 0; i < edges; i++) {
+				if (edgeSources[i] < first || edgeTargets[i] < first) {
+					continue;
+				}
+				Node<Alert> source = nodes.get(edgeSources[i] - first);
+				Node<Alert> target = nodes.get(edgeTargets[i] - first);
+				if (source == null || target == null) {
+					continue;
+				}
+				Edge<Alert> edge = new Edge<Alert>();
+				edge.setKey(target.getKey() + "->" + source.getKey());
+				edge.setLabel(target.getLabel() + "->" + source.getLabel());
+				edge.setSource(source);
+				edge.setTarget(target);
+				edge.setWeight(edgeWeights[i]);
+				ids.get(metaAlertIds[edgeTargets[i]]).addEdge(edge);
+			}
+		}
+		return graphs;
+	}
+
+	private Alert getAlert(int i) {
+		long key = keys[i];
+		Alert alert = new Alert(new Date(startTimes[i]), new Date(endTimes[i]),
+				(key & 1) == 0 ? Long.toString(key >>> 1)
+						: terms.get((int) (key >>> 1)), terms.get(names[i]),
+				terms.get(categories[i]), getIp(sourceIps[i]),
+				terms.get(sourcePorts[i]), getIp(destIps[i]),
+				terms.get(destPorts[i]));
+		alert.setCount(counts[i]);
+		alert.setPriority(priorities[i]);
+		alert.setOutMetPriority(outMetPriorities[i]);
+		return alert;
+	}
+
+	private String getIp(long ip) {
+		return ip >= 0 ? AlertFile.unpackIpv4((int) ip) : terms
+				.get((int) (-ip - 1));
+	}
+
+	private void readBlock() throws IOException {
+		lengthBuffer.clear().limit(4);
+		if (!readFully(lengthBuffer)) {
+			end = true;
+			rows = 0;
+			row = 0;
+			return;
+		}
+		int length = lengthBuffer.getInt();
+		if (length > buffer.capacity()) {
+			buffer = ByteBuffer.allocateDirect(Math.max(length,
+					buffer.capacity() * 2));
+		}
+		buffer.clear().limit(length);
+		if (!readFully(buffer)) {
+			throw new EOFException("Truncated block");
+		}
+
+		rows = buffer.getInt();
+		row = 0;
+		if (rows > startTimes.length) {
+			allocate(rows);
+		}
+
+		int newTerms = buffer.getInt();
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < newTerms; i++) {
+			int termLength = buffer.getInt();
+			if (termLength < 0) {
+				terms.add(null);
+				continue;
+			}
+			if (termLength > bytes.length) {
+				bytes = new byte[termLength];
+			}
+			buffer.get(bytes, 0, termLength);
+			terms.add(new String(bytes, 0, termLength, StandardCharsets.UTF_8));
+		}
+
+		long previous = buffer.getLong();
+		for (int i = 0; i < rows; i++) {
+			previous += AlertFile.unZigZag(AlertFile.getVarLong(buffer));
+			startTimes[i] = previous;
+		}
+		for (int i = 0; i < rows; i++) {
+			endTimes[i] = startTimes[i]
+					+ AlertFile.unZigZag(AlertFile.getVarLong(buffer));
+		}
+		getColumn(keys);
+		getColumn(names);
+		getColumn(categories);
+		getIps(sourceIps);
+		getColumn(sourcePorts);
+		getIps(destIps);
+		getColumn(destPorts);
+		for (int i = 0; i < rows; i++) {
+			counts[i] = (int) AlertFile.unZigZag(AlertFile.getVarLong(buffer));
+		}
+		for (int i = 0; i < rows; i++) {
+			priorities[i] = (int) AlertFile.unZigZag(AlertFile
+					.getVarLong(buffer));
+		}
+		for (int i = 0; i < rows; i++) {
+			outMetPriorities[i] = (int) AlertFile.unZigZag(AlertFile
+					.getVarLong(buffer));
+		}
+		for (int i = 0; i < rows; i++) {
+			metaAlertIds[i] = AlertFile.getVarLong(buffer) - 1;
+		}
+
+		edges = buffer.getInt();
+		if (edges > edgeSources.length) {
+			edgeSources = new int[edges];
+			edgeTargets = new int[edges];
+			edgeWeights = new double[edges];
+		}
+		for (int i = 0; i < edges; i++) {
+			edgeSources[i] = (int) AlertFile.getVarLong(buffer);
+		}
+		for (int i = 0; i < edges; i++) {
+			edgeTargets[i] = (int) AlertFile.getVarLong(buffer);
+		}
+		for (int i = 0; i < edges; i++) {
+			edgeWeights[i] = buffer.getDouble();
+		}
+	}
+
+	private void getColumn(long[] column) {
+		for (int i = 0; i < rows; i++) {
+			column[i] = AlertFile.getVarLong(buffer);
+		}
+	}
+
+	private void getColumn(int[] column) {
+		for (int i = 0; i < rows; i++) {
+			column[i] = (int) AlertFile.getVarLong(buffer);
+		}
+	}
+
+	private void getIps(long[] column) {
+		int bitmap = buffer.position();
+		buffer.position(bitmap + ((rows + 7) >>> 3));
+		boolean anyTerms = false;
+		for (int i = 0; i < rows; i++) {
+			if ((buffer.get(bitmap + (i >>> 3)) & 1 << (i & 7)) != 0) {
+				column[i] = -1;
+				anyTerms = true;
+			} else {
+				column[i] = buffer.getInt() & 0xFFFFFFFFL;
+			}
+		}
+		if (anyTerms) {
+			for (int i = 0; i < rows; i++) {
+				if (column[i] < 0) {
+					column[i] = -AlertFile.getVarLong(buffer) - 1;
+				}
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		startTimes = new long[capacity];
+		endTimes = new long[capacity];
+		keys = new long[capacity];
+		names = new int[capacity];
+		categories = new int[capacity];
+		sourceIps = new long[capacity];
+		sourcePorts = new int[capacity];
+		destIps = new long[capacity];
+		destPorts = new int[capacity];
+		counts = new int[capacity];
+		priorities = new int[capacity];
+		outMetPriorities = new int[capacity];
+		metaAlertIds = new long[capacity];
+	}
+
+	/**
+	 * Fills the buffer up to its limit and flips it.
+	 *
+	 * @return false if the file ends before any byte is read.
+	 */
+	private boolean readFully(ByteBuffer target) throws IOException {
+		while (target.hasRemaining()) {
+			if (channel.read(target) < 0) {
+				if (target.position() == 0) {
+					return false;
+				}
+				throw new EOFException("Truncated file");
+			}
+		}
+		target.flip();
+		return true;
+	}
+
+	@Override
+	public Iterator<Alert> iterator() {
+		return this;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
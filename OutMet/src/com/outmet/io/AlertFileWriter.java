@@ -0,0 +1,373 @@
+package com.outmet.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.data.TermDictionary;
+
+/**
+ * Writes alerts and meta-alerts in the binary columnar format described in
+ * {@link AlertFile}. Alerts are buffered as columns and each full block is
+ * encoded into a direct buffer and written with a single channel write.
+ *
+ * @author riyanat
+ *
+ */
+public class AlertFileWriter implements Closeable {
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private int blockRows;
+
+	private TermDictionary dictionary;
+	private int writtenTerms;
+
+	// The columns of the current block.
+	private int rows;
+	private long[] startTimes;
+	private long[] endTimes;
+	private long[] keys;
+	private int[] names;
+	private int[] categories;
+	private long[] sourceIps;
+	private int[] sourcePorts;
+	private long[] destIps;
+	private int[] destPorts;
+	private int[] counts;
+	private int[] priorities;
+	private int[] outMetPriorities;
+	private long[] metaAlertIds;
+
+	// The edges of the current block, as rows.
+	private int edges;
+	private int[] edgeSources;
+	private int[] edgeTargets;
+	private double[] edgeWeights;
+
+	private long alerts;
+	private long metaAlerts;
+
+	public AlertFileWriter(String filename) throws IOException {
+		this(new File(filename));
+	}
+
+	public AlertFileWriter(File file) throws IOException {
+		this(file, AlertFile.BLOCK_ROWS);
+	}
+
+	/**
+	 * Writes from the current position of a channel, e.g. after a header of
+	 * the caller's. The channel is closed with the writer.
+	 */
+	public AlertFileWriter(FileChannel channel) throws IOException {
+		this(channel, AlertFile.BLOCK_ROWS);
+	}
+
+	AlertFileWriter(File file, int blockRows) throws IOException {
+		this(new FileOutputStream(file).getChannel(), blockRows);
+	}
+
+	AlertFileWriter(FileChannel channel, int blockRows) throws IOException {
+		this.blockRows = blockRows;
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(blockRows * 64);
+		dictionary = new TermDictionary();
+		allocate(blockRows);
+		edgeSources = new int[blockRows];
+		edgeTargets = new int[blockRows];
+		edgeWeights = new double[blockRows];
+
+		buffer.putInt(AlertFile.MAGIC);
+		buffer.putInt(AlertFile.VERSION);
+		buffer.flip();
+		writeBuffer();
+	}
+
+	/**
+	 * Writes an alert that is not part of a meta-alert.
+	 */
+	public void write(Alert alert) throws IOException {
+		write(alert, -1);
+	}
+
+	/**
+	 * Writes an alert as part of the meta-alert with the given id, or of none
+	 * if the id is negative. Edges are only written with
+	 * {@link #write(Graph)}.
+	 */
+	public void write(Alert alert, long metaAlertId) throws IOException {
+		AlertFile.check(alert);
+		if (rows == blockRows) {
+			writeBlock();
+		}
+		add(alert, metaAlertId);
+	}
+
+	/**
+	 * Writes all the alerts and edges of a meta-alert. Its id is its key if
+	 * that is a number, and otherwise the number of meta-alerts written
+	 * before it.
+	 */
+	public void write(Graph<Alert> graph) throws IOException {
+		List<Node<Alert>> nodes = graph.getNodes();
+		for (Node<Alert> node : nodes) {
+			AlertFile.check(node.getElement());
+		}
+		if (rows > 0 && rows + nodes.size() > blockRows) {
+			writeBlock();
+		}
+		long id = AlertFile.numericKey(graph.getKey());
+		if (id < 0) {
+			id = metaAlerts;
+		}
+		Map<Node<Alert>, Integer> positions = new HashMap<Node<Alert>, Integer>();
+		for (Node<Alert> node : nodes) {
+			positions.put(node, rows);
+			add(node.getElement(), id);
+		}
+		for (Edge<Alert> edge : graph.getEdges()) {
+			Integer source = positions.get(edge.getSource());
+			Integer target = positions.get(edge.getTarget());
+			if (source == null || target == null) {
+				continue;
+			}
+			if (edges == edgeSources.length) {
+				int capacity = edges * 2;
+				edgeSources = Arrays.copyOf(edgeSources, capacity);
+				edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+				edgeWeights = Arrays.copyOf(edgeWeights, capacity);
+			}
+			edgeSources[edges] = source;
+			edgeTargets[edges] = target;
+			edgeWeights[edges] = edge.getWeight();
+			edges++;
+		}
+		metaAlerts++;
+	}
+
+	private void add(Alert alert, long metaAlertId) {
+		if (rows == startTimes.length) {
+			allocate(rows * 2);
+		}
+		int row = rows++;
+		startTimes[row] = alert.getStartTime().getTime();
+		endTimes[row] = alert.getEndTime().getTime();
+		long key = AlertFile.numericKey(alert.getKey());
+		keys[row] = key >= 0 ? key << 1
+				: (long) dictionary.add(alert.getKey()) << 1 | 1;
+		names[row] = dictionary.add(alert.getName());
+		categories[row] = dictionary.add(alert.getCategory());
+		sourceIps[row] = encodeIp(alert.getSourceIP());
+		sourcePorts[row] = dictionary.add(alert.getSourcePort());
+		destIps[row] = encodeIp(alert.getDestIP());
+		destPorts[row] = dictionary.add(alert.getDestPort());
+		counts[row] = alert.getCount();
+		priorities[row] = alert.getPriority();
+		outMetPriorities[row] = alert.getOutMetPriority();
+		metaAlertIds[row] = metaAlertId < 0 ? -1 : metaAlertId;
+		alerts++;
+	}
+
+	/**
+	 * @return the IPv4 address in the low 32 bits, or the negated term id + 1
+	 *         of any other address.
+	 */
+	private long encodeIp(String ip) {
+		long address = AlertFile.packIpv4(ip);
+		return address >= 0 ? address : -(dictionary.add(ip) + 1L);
+	}
+
+	private void allocate(int capacity) {
+		startTimes = grow(startTimes, capacity);
+		endTimes = grow(endTimes, capacity);
+		keys = grow(keys, capacity);
+		names = grow(names, capacity);
+		categories = grow(categories, capacity);
+		sourceIps = grow(sourceIps, capacity);
+		sourcePorts = grow(sourcePorts, capacity);
+		destIps = grow(destIps, capacity);
+		destPorts = grow(destPorts, capacity);
+		counts = grow(counts, capacity);
+		priorities = grow(priorities, capacity);
+		outMetPriorities = grow(outMetPriorities, capacity);
+		metaAlertIds = grow(metaAlertIds, capacity);
+	}
+
+	private static long[] grow(long[] column, int capacity) {
+		return column == null ? new long[capacity] : Arrays.copyOf(column,
+				capacity);
+	}
+
+	private static int[] grow(int[] column, int capacity) {
+		return column == null ? new int[capacity] : Arrays.copyOf(column,
+				capacity);
+	}
+
+	private void writeBlock() throws IOException {
+		if (rows == 0) {
+			return;
+		}
+		byte[][] terms = new byte[dictionary.size() - writtenTerms][];
+		int termBytes = 0;
+		for (int i = 0; i < terms.length; i++) {
+			String term = dictionary.getTerm(writtenTerms + i);
+			if (term != null) {
+				terms[i] = term.getBytes(StandardCharsets.UTF_8);
+				termBytes += terms[i].length;
+			}
+		}
+		// Columns take at most 10 bytes per value, bitmaps aside.
+		long bound = 16L + 5L * terms.length + termBytes + 8 + rows * 130L
+				+ edges * 28L;
+		if (bound > buffer.capacity()) {
+			buffer = ByteBuffer.allocateDirect((int) Math.min(
+					Integer.MAX_VALUE, Math.max(bound, buffer.capacity() * 2L)));
+		}
+		buffer.clear();
+		buffer.putInt(0);
+		buffer.putInt(rows);
+
+		buffer.putInt(terms.length);
+		for (byte[] term : terms) {
+			if (term == null) {
+				buffer.putInt(-1);
+			} else {
+				buffer.putInt(term.length);
+				buffer.put(term);
+			}
+		}
+		writtenTerms = dictionary.size();
+
+		buffer.putLong(startTimes[0]);
+		long previous = startTimes[0];
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer,
+					AlertFile.zigZag(startTimes[i] - previous));
+			previous = startTimes[i];
+		}
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer,
+					AlertFile.zigZag(endTimes[i] - startTimes[i]));
+		}
+		putColumn(keys);
+		putColumn(names);
+		putColumn(categories);
+		putIps(sourceIps);
+		putColumn(sourcePorts);
+		putIps(destIps);
+		putColumn(destPorts);
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer, AlertFile.zigZag(counts[i]));
+		}
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer, AlertFile.zigZag(priorities[i]));
+		}
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer, AlertFile.zigZag(outMetPriorities[i]));
+		}
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer, metaAlertIds[i] + 1);
+		}
+
+		buffer.putInt(edges);
+		for (int i = 0; i < edges; i++) {
+			AlertFile.putVarLong(buffer, edgeSources[i]);
+		}
+		for (int i = 0; i < edges; i++) {
+			AlertFile.putVarLong(buffer, edgeTargets[i]);
+		}
+		for (int i = 0; i < edges; i++) {
+			buffer.putDouble(edgeWeights[i]);
+		}
+
+		buffer.putInt(0, buffer.position() - 4);
+		buffer.flip();
+		writeBuffer();
+		rows = 0;
+		edges = 0;
+	}
+
+	private void putColumn(long[] column) {
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer, column[i]);
+		}
+	}
+
+	private void putColumn(int[] column) {
+		for (int i = 0; i < rows; i++) {
+			AlertFile.putVarLong(buffer, column[i]);
+		}
+	}
+
+	/**
+	 * Writes a bitmap of the rows that hold a term rather than an IPv4
+	 * address, then the addresses as ints and the term ids as variable
+	 * length integers.
+	 */
+	private void putIps(long[] column) {
+		int start = buffer.position();
+		int bitmapBytes = (rows + 7) >>> 3;
+		for (int i = 0; i < bitmapBytes; i++) {
+			buffer.put((byte) 0);
+		}
+		int terms = 0;
+		for (int i = 0; i < rows; i++) {
+			if (column[i] < 0) {
+				int index = start + (i >>> 3);
+				buffer.put(index, (byte) (buffer.get(index) | 1 << (i & 7)));
+				terms++;
+			} else {
+				buffer.putInt((int) column[i]);
+			}
+		}
+		if (terms > 0) {
+			for (int i = 0; i < rows; i++) {
+				if (column[i] < 0) {
+					AlertFile.putVarLong(buffer, -column[i] - 1);
+				}
+			}
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * The number of alerts written.
+	 */
+	public long getAlertCount() {
+		return alerts;
+	}
+
+	/**
+	 * Writes the alerts buffered so far as a block.
+	 */
+	public void flush() throws IOException {
+		writeBlock();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBlock();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,600 @@
+package com.outmet.io;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import com.outmet.data.Alert;
+
+/**
+ * Generates a stream of Snort-style alerts for load testing, in the form
+ * read by {@link CsvAlertReader}. The stream mixes:
+ *
+ * - background alerts between hosts of the internal networks 10.n.0.0/16
+ * and some external hosts, at {rate} alerts per second on average. With
+ * probability {locality}, an alert repeats one of the recent conversations,
+ * otherwise it picks new hosts, favouring the low numbered networks.
+ *
+ * - bursts: port scans of a /24 network by one external host, and floods of
+ * one internal host by many, at {burstSpeedup} times the background rate.
+ *
+ * - attack chains: reconnaissance, exploitation and a command and control
+ * callback against one host, then lateral movement from it to further hosts
+ * of its network. The steps share addresses and are {stepMillis} apart, close
+ * enough for the time proximity of the correlator, so that each chain
+ * correlates into one large meta-alert.
+ *
+ * Alerts are generated in order of start time. With probability {disorder}
+ * an alert is delayed: its times are moved back by up to {maxLateness}
+ * millis, so that it arrives after newer alerts.
+ *
+ * The generator only keeps the bursts and chains in progress, so any number
+ * of alerts can be streamed to a {@link CsvAlertWriter} or straight into a
+ * {@link com.outmet.analysis.Correlator}. The same seed and settings give the
+ * same alerts. Settings must be changed before the first alert.
+ *
+ * @author riyanat
+ *
+ */
+public class AlertGenerator implements Iterator<Alert>, Iterable<Alert> {
+
+	/**
+	 * The first start time of the sample data, 2012-03-04.
+	 */
+	public static final long DEFAULT_START_TIME = 1330732800000L;
+
+	private static final String MISC = "Classification: Misc activity";
+	private static final String RECON = "Classification: Attempted Information Leak";
+	private static final String ADMIN = "Classification: Attempted Administrator Privilege Gain";
+	private static final String USER = "Classification: Attempted User Privilege Gain";
+	private static final String DOS = "Classification: Attempted Denial of Service";
+	private static final String TROJAN = "Classification: A Network Trojan was detected";
+	private static final String POLICY = "Classification: Potential Corporate Privacy Violation";
+
+	/**
+	 * Background signatures as name, category and destination port, the
+	 * first three as often as in the sample data.
+	 */
+	private static final String[][] BACKGROUND = {
+			{ "ICMP PING", MISC, "2093" },
+			{ "ICMP Echo Reply", MISC, "2093" },
+			{ "ICMP Destination Unreachable Host Unreachable", MISC, "2093" },
+			{ "ICMP PING", MISC, "2093" },
+			{ "ICMP Echo Reply", MISC, "2093" },
+			{ "ET POLICY Outbound SSH Connection", POLICY, "22" },
+			{ "ET POLICY DNS Query to .onion Domain", POLICY, "53" },
+			{ "WEB-MISC robots.txt access", RECON, "80" } };
+
+	private static final String[][] SCAN = {
+			{ "SCAN nmap TCP", RECON, null },
+			{ "ET SCAN Potential SSH Scan", RECON, "22" },
+			{ "ET SCAN Suspicious inbound to MSSQL port 1433", RECON, "1433" } };
+
+	private static final String[][] FLOOD = {
+			{ "DOS ICMP Flood", DOS, "2093" },
+			{ "ET DOS Possible SYN Flood", DOS, "80" } };
+
+	/**
+	 * The steps of an attack chain. The first four are from the attacker to
+	 * the victim, the fifth from the victim to the attacker, and the
+	 * remaining ones from the victim to the next host.
+	 */
+	private static final String[][] CHAIN = {
+			{ "ICMP PING", MISC, "2093" },
+			{ "SCAN nmap XMAS", RECON, "80" },
+			{ "WEB-ATTACKS /bin/sh command attempt", ADMIN, "80" },
+			{ "SHELLCODE x86 NOOP", USER, "80" },
+			{ "ET TROJAN Generic C2 Beacon", TROJAN, "443" },
+			{ "ET EXPLOIT SMB Remote Code Execution Attempt", ADMIN, "445" },
+			{ "ET POLICY SMB Executable File Transfer", POLICY, "445" } };
+
+	private static final int[] EXTERNAL_NETWORKS = { 4, 23, 45, 61, 77, 91,
+			103, 185, 193, 203 };
+
+	private static final int RECENT_CONVERSATIONS = 256;
+
+	// Settings.
+	private long seed;
+	private long count;
+	private long startTime;
+	private double rate;
+	private int networks;
+	private int hostsPerNetwork;
+	private double externalFraction;
+	private double locality;
+	private double burstProbability;
+	private int burstSize;
+	private double burstSpeedup;
+	private double chainProbability;
+	private int chainHops;
+	private long stepMillis;
+	private double disorder;
+	private long maxLateness;
+
+	// State.
+	private Random random;
+	private long generated;
+	private double backgroundTime;
+	private List<Activity> activities;
+	private String[] recentSources;
+	private String[] recentDests;
+	private int recentCount;
+	private int recentNext;
+
+	public AlertGenerator() {
+		this.seed = 42;
+		this.count = 1000000;
+		this.startTime = DEFAULT_START_TIME;
+		this.rate = 100;
+		this.networks = 16;
+		this.hostsPerNetwork = 1024;
+		this.externalFraction = 0.1;
+		this.locality = 0.7;
+		this.burstProbability = 0.0005;
+		this.burstSize = 500;
+		this.burstSpeedup = 20;
+		this.chainProbability = 0.0002;
+		this.chainHops = 4;
+		this.stepMillis = 5;
+		this.disorder = 0;
+		this.maxLateness = 60000;
+	}
+
+	@Override
+	public Iterator<Alert> iterator() {
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return generated < count;
+	}
+
+	@Override
+	public Alert next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		if (random == null) {
+			start();
+		}
+
+		// The activity with the earliest next alert, or the background.
+		Activity activity = null;
+		for (Activity candidate : activities) {
+			if (activity == null || candidate.time < activity.time) {
+				activity = candidate;
+			}
+		}
+
+		long time;
+		String[] signature;
+		String source;
+		String dest;
+		if (activity != null && activity.time <= backgroundTime) {
+			time = (long) activity.time;
+			signature = activity.signature();
+			source = activity.source();
+			dest = activity.dest();
+			if (!activity.advance()) {
+				activities.remove(activity);
+			}
+		} else {
+			time = (long) backgroundTime;
+			backgroundTime += exponential(1000 / rate);
+			signature = BACKGROUND[random.nextInt(BACKGROUND.length)];
+			if (recentCount > 0 && random.nextDouble() < locality) {
+				int c = random.nextInt(recentCount);
+				source = recentSources[c];
+				dest = recentDests[c];
+				// Replies go the other way.
+				if (random.nextBoolean()) {
+					String swap = source;
+					source = dest;
+					dest = swap;
+				}
+			} else {
+				source = randomHost();
+				dest = random.nextDouble() < externalFraction ? randomExternal()
+						: randomHost();
+				recentSources[recentNext] = source;
+				recentDests[recentNext] = dest;
+				recentNext = (recentNext + 1) % RECENT_CONVERSATIONS;
+				recentCount = Math.min(recentCount + 1, RECENT_CONVERSATIONS);
+			}
+
+			double p = random.nextDouble();
+			if (p < burstProbability) {
+				activities.add(random.nextBoolean() ? new Scan(time)
+						: new Flood(time));
+			} else if (p < burstProbability + chainProbability) {
+				activities.add(new Chain(time));
+			}
+		}
+
+		if (disorder > 0 && random.nextDouble() < disorder) {
+			time -= (long) (random.nextDouble() * maxLateness);
+		}
+		generated++;
+		String port = signature[2] != null ? signature[2] : String
+				.valueOf(1 + random.nextInt(1024));
+		Date date = new Date(time);
+		return new Alert(date, date, String.valueOf(generated), signature[0],
+				signature[1], source, String.valueOf(1024 + random
+						.nextInt(64512)), dest, port);
+	}
+
+	private void start() {
+		random = new Random(seed);
+		backgroundTime = startTime;
+		activities = new ArrayList<Activity>();
+		recentSources = new String[RECENT_CONVERSATIONS];
+		recentDests = new String[RECENT_CONVERSATIONS];
+	}
+
+	private double exponential(double mean) {
+		return -Math.log(1 - random.nextDouble()) * mean;
+	}
+
+	/**
+	 * An internal network, favouring the low numbered ones.
+	 */
+	private int randomNetwork() {
+		double r = random.nextDouble();
+		return (int) (r * r * networks);
+	}
+
+	private String randomHost() {
+		return host(randomNetwork(), random.nextInt(hostsPerNetwork));
+	}
+
+	private static String host(int network, int host) {
+		return "10." + network + "." + (host >>> 8) + "." + (host & 255);
+	}
+
+	private String randomExternal() {
+		return EXTERNAL_NETWORKS[random.nextInt(EXTERNAL_NETWORKS.length)]
+				+ "." + random.nextInt(256) + "." + random.nextInt(256) + "."
+				+ (1 + random.nextInt(254));
+	}
+
+	/**
+	 * A burst or chain in progress.
+	 */
+	private abstract class Activity {
+		double time;
+
+		Activity(long time) {
+			this.time = time;
+		}
+
+		abstract String[] signature();
+
+		abstract String source();
+
+		abstract String dest();
+
+		/**
+		 * Moves to the next alert.
+		 *
+		 * @return false if there is none.
+		 */
+		abstract boolean advance();
+	}
+
+	/**
+	 * One external host probing every host of a /24 network.
+	 */
+	private class Scan extends Activity {
+		private String[] signature;
+		private String attacker;
+		private int network;
+		private int subnet;
+		private int alerts;
+
+		Scan(long time) {
+			super(time);
+			signature = SCAN[random.nextInt(SCAN.length)];
+			attacker = randomExternal();
+			network = randomNetwork();
+			subnet = random.nextInt(Math.max(1, hostsPerNetwork >>> 8));
+		}
+
+		@Override
+		String[] signature() {
+			return signature;
+		}
+
+		@Override
+		String source() {
+			return attacker;
+		}
+
+		@Override
+		String dest() {
+			return host(network, (subnet << 8) + alerts % 256);
+		}
+
+		@Override
+		boolean advance() {
+			time += exponential(1000 / (rate * burstSpeedup));
+			return ++alerts < burstSize;
+		}
+	}
+
+	/**
+	 * Many external hosts flooding one internal host.
+	 */
+	private class Flood extends Activity {
+		private String[] signature;
+		private String victim;
+		private int alerts;
+
+		Flood(long time) {
+			super(time);
+			signature = FLOOD[random.nextInt(FLOOD.length)];
+			victim = randomHost();
+		}
+
+		@Override
+		String[] signature() {
+			return signature;
+		}
+
+		@Override
+		String source() {
+			return randomExternal();
+		}
+
+		@Override
+		String dest() {
+			return victim;
+		}
+
+		@Override
+		boolean advance() {
+			time += exponential(1000 / (rate * burstSpeedup));
+			return ++alerts < burstSize;
+		}
+	}
+
+	/**
+	 * An attack on one host followed by lateral movement through its
+	 * network.
+	 */
+	private class Chain extends Activity {
+		private String attacker;
+		private int network;
+		private String victim;
+		private String next;
+		private int step;
+		private int hop;
+
+		Chain(long time) {
+			super(time);
+			attacker = randomExternal();
+			network = randomNetwork();
+			victim = host(network, random.nextInt(hostsPerNetwork));
+			next = nextHost();
+		}
+
+		private String nextHost() {
+			return host(network, random.nextInt(hostsPerNetwork));
+		}
+
+		@Override
+		String[] signature() {
+			return CHAIN[step];
+		}
+
+		@Override
+		String source() {
+			if (step < 4) {
+				return attacker;
+			}
+			return victim;
+		}
+
+		@Override
+		String dest() {
+			if (step < 4) {
+				return victim;
+			}
+			return step == 4 ? attacker : next;
+		}
+
+		@Override
+		boolean advance() {
+			time += stepMillis / 2 + random.nextDouble() * stepMillis;
+			step++;
+			if (step == CHAIN.length) {
+				if (++hop >= chainHops) {
+					return false;
+				}
+				// The next host is compromised and attacks another one.
+				victim = next;
+				next = nextHost();
+				step = 5;
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	// Setters and getters.
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Sets the number of alerts to generate.
+	 */
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * Sets the mean number of background alerts per second.
+	 */
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public int getNetworks() {
+		return networks;
+	}
+
+	/**
+	 * Sets the number of internal /16 networks, at most 256.
+	 */
+	public void setNetworks(int networks) {
+		this.networks = Math.max(1, Math.min(256, networks));
+	}
+
+	public int getHostsPerNetwork() {
+		return hostsPerNetwork;
+	}
+
+	/**
+	 * Sets the number of hosts of each internal network, at most 65536.
+	 */
+	public void setHostsPerNetwork(int hostsPerNetwork) {
+		this.hostsPerNetwork = Math.max(1, Math.min(65536, hostsPerNetwork));
+	}
+
+	public double getExternalFraction() {
+		return externalFraction;
+	}
+
+	/**
+	 * Sets the fraction of new background conversations with an external
+	 * host.
+	 */
+	public void setExternalFraction(double externalFraction) {
+		this.externalFraction = externalFraction;
+	}
+
+	public double getLocality() {
+		return locality;
+	}
+
+	/**
+	 * Sets the probability that a background alert repeats a recent
+	 * conversation.
+	 */
+	public void setLocality(double locality) {
+		this.locality = locality;
+	}
+
+	public double getBurstProbability() {
+		return burstProbability;
+	}
+
+	/**
+	 * Sets the probability that a background alert starts a scan or flood.
+	 */
+	public void setBurstProbability(double burstProbability) {
+		this.burstProbability = burstProbability;
+	}
+
+	public int getBurstSize() {
+		return burstSize;
+	}
+
+	public void setBurstSize(int burstSize) {
+		this.burstSize = Math.max(1, burstSize);
+	}
+
+	public double getBurstSpeedup() {
+		return burstSpeedup;
+	}
+
+	/**
+	 * Sets the rate of a burst as a multiple of the background rate.
+	 */
+	public void setBurstSpeedup(double burstSpeedup) {
+		this.burstSpeedup = burstSpeedup;
+	}
+
+	public double getChainProbability() {
+		return chainProbability;
+	}
+
+	/**
+	 * Sets the probability that a background alert starts an attack chain.
+	 */
+	public void setChainProbability(double chainProbability) {
+		this.chainProbability = chainProbability;
+	}
+
+	public int getChainHops() {
+		return chainHops;
+	}
+
+	/**
+	 * Sets the number of hosts an attack chain compromises.
+	 */
+	public void setChainHops(int chainHops) {
+		this.chainHops = Math.max(1, chainHops);
+	}
+
+	public long getStepMillis() {
+		return stepMillis;
+	}
+
+	/**
+	 * Sets the mean time between the steps of an attack chain.
+	 */
+	public void setStepMillis(long stepMillis) {
+		this.stepMillis = stepMillis;
+	}
+
+	public double getDisorder() {
+		return disorder;
+	}
+
+	/**
+	 * Sets the fraction of alerts that arrive late.
+	 */
+	public void setDisorder(double disorder) {
+		this.disorder = disorder;
+	}
+
+	public long getMaxLateness() {
+		return maxLateness;
+	}
+
+	/**
+	 * Sets the most millis an alert can arrive late by.
+	 */
+	public void setMaxLateness(long maxLateness) {
+		this.maxLateness = maxLateness;
+	}
+}
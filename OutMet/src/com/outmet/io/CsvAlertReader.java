@@ -0,0 +1,322 @@
+package com.outmet.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.outmet.data.Alert;
+
+/**
+ * Streams alerts out of a delimited file with one alert per line and 9
+ * columns:
+ *
+ * startTime, endTime, key, name, category, sourceIP, sourcePort, destIP,
+ * destPort
+ *
+ * where times are epoch millis. The file is memory-mapped a window at a time
+ * and each line is parsed in place, so memory use is independent of the file
+ * size. Whitespace around each field is trimmed. Lines without 9 columns or
+ * with non-numeric times are skipped.
+ *
+ * @author riyanat
+ *
+ */
+public class CsvAlertReader implements Iterator<Alert>, Iterable<Alert>,
+		Closeable {
+	private static final Logger log = Logger.getLogger(CsvAlertReader.class
+			.getName());
+
+	public static final int COLUMNS = 9;
+
+	/**
+	 * The maximum number of bytes mapped at once.
+	 */
+	private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The number of cached field values, must be a power of two.
+	 */
+	private static final int CACHE_SIZE = 4096;
+
+	private File file;
+	private RandomAccessFile input;
+	private FileChannel channel;
+	private long fileSize;
+	private byte delimiter;
+	private int windowSize;
+
+	/**
+	 * The mapped part of the file, starting at file offset {windowStart}.
+	 */
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	/**
+	 * The file offset of the next line to parse.
+	 */
+	private long position;
+
+	private Alert next;
+
+	// Field boundaries of the current line, relative to the window.
+	private int[] fieldStarts;
+	private int[] fieldEnds;
+
+	private byte[] buffer;
+
+	// Recently decoded field values, so that repeated names, categories and
+	// addresses share a single String.
+	private byte[][] cachedBytes;
+	private String[] cachedStrings;
+
+	private long alerts;
+	private long skipped;
+
+	public CsvAlertReader(String filename, char delimiter) throws IOException {
+		this(new File(filename), delimiter);
+	}
+
+	public CsvAlertReader(File file, char delimiter) throws IOException {
+		this(file, delimiter, DEFAULT_WINDOW_SIZE);
+	}
+
+	CsvAlertReader(File file, char delimiter, int windowSize)
+			throws IOException {
+		this.file = file;
+		this.windowSize = windowSize;
+		this.delimiter = (byte) delimiter;
+		this.input = new RandomAccessFile(file, "r");
+		this.channel = input.getChannel();
+		this.fileSize = channel.size();
+		this.position = 0;
+		this.windowStart = 0;
+		this.fieldStarts = new int[COLUMNS];
+		this.fieldEnds = new int[COLUMNS];
+		this.buffer = new byte[256];
+		this.cachedBytes = new byte[CACHE_SIZE][];
+		this.cachedStrings = new String[CACHE_SIZE];
+	}
+
+	@Override
+	public Iterator<Alert> iterator() {
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = readAlert();
+		}
+		return next != null;
+	}
+
+	@Override
+	public Alert next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Alert alert = next;
+		next = null;
+		return alert;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+		input.close();
+		log.log(Level.INFO, "Read " + alerts + " alerts from: " + file
+				+ (skipped > 0 ? " (skipped " + skipped + " lines)" : ""));
+	}
+
+	/**
+	 * Parses lines until an alert is found.
+	 *
+	 * @return the next alert, or null at the end of the file.
+	 */
+	private Alert readAlert() {
+		while (position < fileSize) {
+			int start = (int) (position - windowStart);
+			int end = findLineEnd(start);
+			if (end < 0) {
+				// The line runs past the window.
+				map(position);
+				continue;
+			}
+
+			position = windowStart + end + 1;
+			int lineEnd = end;
+			if (lineEnd > start && window.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+
+			Alert alert = parseLine(start, lineEnd);
+			if (alert != null) {
+				alerts++;
+				return alert;
+			}
+			if (lineEnd > start) {
+				skipped++;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the end of the line starting at {start} in the window.
+	 *
+	 * @return the index of the newline, the end of the file, or -1 if the line
+	 *         continues past the mapped window.
+	 */
+	private int findLineEnd(int start) {
+		if (window == null) {
+			return -1;
+		}
+		int limit = window.limit();
+		for (int i = start; i < limit; i++) {
+			if (window.get(i) == '\n') {
+				return i;
+			}
+		}
+		if (windowStart + limit == fileSize && start < limit) {
+			return limit;
+		}
+		return -1;
+	}
+
+	private void map(long offset) {
+		long length = Math.min(windowSize, fileSize - offset);
+		if (window != null && offset == windowStart
+				&& length == window.limit()) {
+			throw new IllegalStateException("Line at offset " + offset
+					+ " of " + file + " is longer than " + windowSize
+					+ " bytes");
+		}
+		try {
+			window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+			windowStart = offset;
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to map " + file, e);
+		}
+	}
+
+	private Alert parseLine(int start, int end) {
+		int fields = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || window.get(i) == delimiter) {
+				if (fields == COLUMNS) {
+					return null;
+				}
+				fieldStarts[fields] = fieldStart;
+				fieldEnds[fields] = i;
+				fields++;
+				fieldStart = i + 1;
+			}
+		}
+		if (fields != COLUMNS) {
+			return null;
+		}
+
+		for (int f = 0; f < COLUMNS; f++) {
+			int s = fieldStarts[f];
+			int e = fieldEnds[f];
+			while (s < e && window.get(s) <= ' ') {
+				s++;
+			}
+			while (e > s && window.get(e - 1) <= ' ') {
+				e--;
+			}
+			fieldStarts[f] = s;
+			fieldEnds[f] = e;
+		}
+
+		long startTime = parseLong(fieldStarts[0], fieldEnds[0]);
+		long endTime = parseLong(fieldStarts[1], fieldEnds[1]);
+		if (startTime < 0 || endTime < 0) {
+			return null;
+		}
+
+		return new Alert(new Date(startTime), new Date(endTime), decode(2,
+				false), decode(3, true), decode(4, true), decode(5, true),
+				decode(6, true), decode(7, true), decode(8, true));
+	}
+
+	/**
+	 * Parses a non-negative decimal.
+	 *
+	 * @return the value, or -1 if the field is not a number.
+	 */
+	private long parseLong(int start, int end) {
+		if (start == end || end - start > 18) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = window.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private String decode(int field, boolean cached) {
+		int start = fieldStarts[field];
+		int length = fieldEnds[field] - start;
+		if (length > buffer.length) {
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		}
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			byte b = window.get(start + i);
+			buffer[i] = b;
+			hash = 31 * hash + b;
+		}
+		if (!cached) {
+			return new String(buffer, 0, length, StandardCharsets.UTF_8);
+		}
+
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+		byte[] bytes = cachedBytes[slot];
+		if (bytes != null && bytes.length == length) {
+			boolean equal = true;
+			for (int i = 0; i < length && equal; i++) {
+				equal = bytes[i] == buffer[i];
+			}
+			if (equal) {
+				return cachedStrings[slot];
+			}
+		}
+
+		String value = new String(buffer, 0, length, StandardCharsets.UTF_8);
+		byte[] copy = new byte[length];
+		System.arraycopy(buffer, 0, copy, 0, length);
+		cachedBytes[slot] = copy;
+		cachedStrings[slot] = value;
+		return value;
+	}
+
+	public long getAlertCount() {
+		return alerts;
+	}
+
+	public long getSkippedCount() {
+		return skipped;
+	}
+}
@@ -0,0 +1,92 @@
+package com.outmet.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.outmet.data.Alert;
+
+/**
+ * Writes alerts as delimited lines in the 9 columns read by
+ * {@link CsvAlertReader}, optionally followed by the OutMet priority as a
+ * 10th column. Output is buffered.
+ *
+ * @author riyanat
+ *
+ */
+public class CsvAlertWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private Writer writer;
+	private char delimiter;
+	private boolean priority;
+	private long alerts;
+
+	public CsvAlertWriter(String filename, char delimiter) throws IOException {
+		this(new File(filename), delimiter, false);
+	}
+
+	/**
+	 * @param priority
+	 *            whether to write the OutMet priority of each alert.
+	 */
+	public CsvAlertWriter(File file, char delimiter, boolean priority)
+			throws IOException {
+		this(new OutputStreamWriter(new FileOutputStream(file),
+				StandardCharsets.UTF_8), delimiter, priority);
+	}
+
+	public CsvAlertWriter(Writer writer, char delimiter, boolean priority) {
+		this.writer = new BufferedWriter(writer, BUFFER_SIZE);
+		this.delimiter = delimiter;
+		this.priority = priority;
+	}
+
+	public void write(Alert alert) throws IOException {
+		writer.write(Long.toString(alert.getStartTime().getTime()));
+		writer.write(delimiter);
+		writer.write(Long.toString(alert.getEndTime().getTime()));
+		writer.write(delimiter);
+		writer.write(alert.getKey());
+		writer.write(delimiter);
+		writer.write(alert.getName());
+		writer.write(delimiter);
+		writer.write(alert.getCategory());
+		writer.write(delimiter);
+		writer.write(alert.getSourceIP());
+		writer.write(delimiter);
+		writer.write(alert.getSourcePort());
+		writer.write(delimiter);
+		writer.write(alert.getDestIP());
+		writer.write(delimiter);
+		writer.write(alert.getDestPort());
+		if (priority) {
+			writer.write(delimiter);
+			writer.write(Double.toString(alert.getOutMetPriority()));
+		}
+		writer.write('\n');
+		alerts++;
+	}
+
+	/**
+	 * The number of alerts written.
+	 */
+	public long getAlertCount() {
+		return alerts;
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,86 @@
+package com.outmet.io;
+
+/**
+ * Selects meta-alerts from a {@link MetaAlertStore}. A meta-alert matches if
+ * its alerts span some time in [from, to], one of them has the address as
+ * its source or destination and one has the alert name, and it has the
+ * priority. Criteria that are not set match every meta-alert.
+ *
+ * @author riyanat
+ *
+ */
+public class MetaAlertQuery {
+
+	/**
+	 * The priority that matches every meta-alert.
+	 */
+	public static final int ANY_PRIORITY = -1;
+
+	private long from;
+	private long to;
+	private String ip;
+	private String name;
+	private int priority;
+
+	public MetaAlertQuery() {
+		from = Long.MIN_VALUE;
+		to = Long.MAX_VALUE;
+		priority = ANY_PRIORITY;
+	}
+
+	/**
+	 * @param from
+	 *            the earliest time in epoch millis, inclusive.
+	 * @param to
+	 *            the latest time in epoch millis, inclusive.
+	 */
+	public void setTimeRange(long from, long to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	public long getTo() {
+		return to;
+	}
+
+	/**
+	 * @param ip
+	 *            a source or destination address, or null for any.
+	 */
+	public void setIp(String ip) {
+		this.ip = ip;
+	}
+
+	public String getIp() {
+		return ip;
+	}
+
+	/**
+	 * @param name
+	 *            an alert name, or null for any.
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param priority
+	 *            an OutMet priority, 1 being the highest, 0 for meta-alerts
+	 *            that were not prioritised, or {@link #ANY_PRIORITY}.
+	 */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+}
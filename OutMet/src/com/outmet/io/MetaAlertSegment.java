@@ -0,0 +1,655 @@
+package com.outmet.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+/**
+ * One file of a {@link MetaAlertStore}. The file is created at its full
+ * capacity and mapped, and meta-alerts are appended to the mapping as
+ * records: a length followed by the encoded graph. The length is written
+ * last, so a record is either complete or reads as the end of the segment.
+ *
+ * Each segment keeps an index of its records: their time ranges and
+ * priorities as arrays, and the records that hold each address and alert
+ * name as ascending lists. The index of a full segment is written next to
+ * it when it is sealed, the index of the segment being written is rebuilt
+ * from its records when the store is opened, and so is the index of a
+ * sealed segment if its index file is missing, truncated or inconsistent.
+ *
+ * @author riyanat
+ *
+ */
+class MetaAlertSegment {
+
+	private static final int MAGIC = 0x4f4d5331;
+	private static final int INDEX_MAGIC = 0x4f4d4931;
+	private static final int VERSION = 1;
+	static final int HEADER_BYTES = 8;
+
+	private File file;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	/**
+	 * The offset at which the next record is appended.
+	 */
+	private int end;
+	private boolean sealed;
+
+	// The index.
+	private int records;
+	private int[] offsets;
+	private long[] startTimes;
+	private long[] endTimes;
+	private int[] priorities;
+	private long minStartTime;
+	private long maxEndTime;
+	private Map<String, Postings> ips;
+	private Map<String, Postings> names;
+
+	/**
+	 * The records that hold a term, in ascending order.
+	 */
+	static class Postings {
+		int[] records = new int[2];
+		int size;
+
+		void add(int record) {
+			if (size > 0 && records[size - 1] == record) {
+				return;
+			}
+			if (size == records.length) {
+				records = Arrays.copyOf(records, 2 * size);
+			}
+			records[size++] = record;
+		}
+	}
+
+	private MetaAlertSegment(File file) {
+		this.file = file;
+		clearIndex();
+	}
+
+	private void clearIndex() {
+		records = 0;
+		offsets = new int[64];
+		startTimes = new long[64];
+		endTimes = new long[64];
+		priorities = new int[64];
+		minStartTime = Long.MAX_VALUE;
+		maxEndTime = Long.MIN_VALUE;
+		ips = new HashMap<String, Postings>();
+		names = new HashMap<String, Postings>();
+	}
+
+	/**
+	 * Creates an empty segment of the given capacity in bytes.
+	 */
+	static MetaAlertSegment create(File file, int capacity) throws IOException {
+		MetaAlertSegment segment = new MetaAlertSegment(file);
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			output.setLength(capacity);
+			segment.channel = output.getChannel();
+			segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE,
+					0, capacity);
+		} catch (IOException e) {
+			output.close();
+			throw e;
+		}
+		segment.buffer.putInt(0, MAGIC);
+		segment.buffer.putInt(4, VERSION);
+		segment.end = HEADER_BYTES;
+		return segment;
+	}
+
+	/**
+	 * Opens an existing segment. A sealed segment is mapped read-only and its
+	 * index is read if it has one, otherwise the records are scanned.
+	 */
+	static MetaAlertSegment open(File file, boolean sealed) throws IOException {
+		MetaAlertSegment segment = new MetaAlertSegment(file);
+		RandomAccessFile input = new RandomAccessFile(file, sealed ? "r"
+				: "rw");
+		try {
+			segment.channel = input.getChannel();
+			long length = segment.channel.size();
+			if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+				throw new IOException(file + " is not a meta-alert segment");
+			}
+			segment.buffer = segment.channel.map(
+					sealed ? FileChannel.MapMode.READ_ONLY
+							: FileChannel.MapMode.READ_WRITE, 0, length);
+			if (segment.buffer.getInt(0) != MAGIC
+					|| segment.buffer.getInt(4) != VERSION) {
+				throw new IOException(file + " is not a meta-alert segment");
+			}
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+		segment.sealed = sealed;
+		if (!sealed || !segment.readIndex()) {
+			segment.scan();
+		}
+		return segment;
+	}
+
+	/**
+	 * Rebuilds the index from the records.
+	 */
+	private void scan() {
+		end = HEADER_BYTES;
+		while (end + 4 <= buffer.limit()) {
+			int length = buffer.getInt(end);
+			if (length <= 0 || length > buffer.limit() - end - 4) {
+				break;
+			}
+			Graph<Alert> graph;
+			try {
+				graph = decode(record(end));
+			} catch (RuntimeException e) {
+				// A record torn by a crash, the segment ends before it.
+				break;
+			}
+			index(end, graph);
+			end += 4 + length;
+		}
+	}
+
+	/**
+	 * Appends an encoded meta-alert.
+	 *
+	 * @return false if the segment has no room for it.
+	 */
+	boolean append(ByteBuffer record, Graph<Alert> graph) {
+		int length = record.remaining();
+		if (sealed || (long) end + 4 + length > buffer.capacity()) {
+			return false;
+		}
+		ByteBuffer target = buffer.duplicate();
+		target.position(end + 4);
+		target.put(record);
+		buffer.putInt(end, length);
+		index(end, graph);
+		end += 4 + length;
+		return true;
+	}
+
+	private void index(int offset, Graph<Alert> graph) {
+		if (records == offsets.length) {
+			int capacity = 2 * records;
+			offsets = Arrays.copyOf(offsets, capacity);
+			startTimes = Arrays.copyOf(startTimes, capacity);
+			endTimes = Arrays.copyOf(endTimes, capacity);
+			priorities = Arrays.copyOf(priorities, capacity);
+		}
+		int record = records++;
+		offsets[record] = offset;
+		startTimes[record] = getStartTime(graph);
+		endTimes[record] = getEndTime(graph);
+		priorities[record] = getPriority(graph);
+		minStartTime = Math.min(minStartTime, startTimes[record]);
+		maxEndTime = Math.max(maxEndTime, endTimes[record]);
+		for (Node<Alert> node : graph.getNodes()) {
+			Alert alert = node.getElement();
+			post(ips, alert.getSourceIP(), record);
+			post(ips, alert.getDestIP(), record);
+			post(names, alert.getName(), record);
+		}
+	}
+
+	private static void post(Map<String, Postings> terms, String term,
+			int record) {
+		if (term == null) {
+			return;
+		}
+		Postings postings = terms.get(term);
+		if (postings == null) {
+			postings = new Postings();
+			terms.put(term, postings);
+		}
+		postings.add(record);
+	}
+
+	/**
+	 * Writes the index and stops appending to the segment.
+	 */
+	void seal() throws IOException {
+		buffer.force();
+		// Written aside and moved, so an index is never partly written.
+		File index = indexFile(file);
+		File temp = new File(index.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(end);
+			out.writeInt(records);
+			for (int i = 0; i < records; i++) {
+				out.writeInt(offsets[i]);
+				out.writeLong(startTimes[i]);
+				out.writeLong(endTimes[i]);
+				out.writeInt(priorities[i]);
+			}
+			writePostings(out, ips);
+			writePostings(out, names);
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(temp.toPath(), index.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), index.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		sealed = true;
+	}
+
+	private static void writePostings(DataOutputStream out,
+			Map<String, Postings> terms) throws IOException {
+		out.writeInt(terms.size());
+		for (Map.Entry<String, Postings> term : terms.entrySet()) {
+			out.writeUTF(term.getKey());
+			Postings postings = term.getValue();
+			out.writeInt(postings.size);
+			for (int i = 0; i < postings.size; i++) {
+				out.writeInt(postings.records[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads the index written when the segment was sealed.
+	 *
+	 * @return false if there is no valid index, which leaves the index empty.
+	 */
+	private boolean readIndex() {
+		File index = indexFile(file);
+		if (!index.exists()) {
+			return false;
+		}
+		try {
+			if (readIndex(index)) {
+				return true;
+			}
+		} catch (IOException e) {
+			// Truncated or unreadable, the records are scanned instead.
+		}
+		clearIndex();
+		return false;
+	}
+
+	/**
+	 * @return false if the index does not match its own sizes or the
+	 *         segment.
+	 */
+	private boolean readIndex(File index) throws IOException {
+		// Magic, version, end and the number of records, then 24 bytes per
+		// record.
+		long length = index.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(index)));
+		try {
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION) {
+				return false;
+			}
+			end = in.readInt();
+			if (end < HEADER_BYTES || end > buffer.limit()) {
+				return false;
+			}
+			records = in.readInt();
+			if (records < 0 || records > (length - 16) / 24) {
+				return false;
+			}
+			offsets = new int[Math.max(1, records)];
+			startTimes = new long[offsets.length];
+			endTimes = new long[offsets.length];
+			priorities = new int[offsets.length];
+			for (int i = 0; i < records; i++) {
+				offsets[i] = in.readInt();
+				startTimes[i] = in.readLong();
+				endTimes[i] = in.readLong();
+				priorities[i] = in.readInt();
+				if (offsets[i] < (i == 0 ? HEADER_BYTES : offsets[i - 1] + 4)
+						|| offsets[i] + 4 > end) {
+					return false;
+				}
+				minStartTime = Math.min(minStartTime, startTimes[i]);
+				maxEndTime = Math.max(maxEndTime, endTimes[i]);
+			}
+			return readPostings(in, ips, records)
+					&& readPostings(in, names, records) && in.read() < 0;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return false if a posting is not a record of the index.
+	 */
+	private static boolean readPostings(DataInputStream in,
+			Map<String, Postings> terms, int records) throws IOException {
+		int size = in.readInt();
+		if (size < 0) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			String term = in.readUTF();
+			Postings postings = new Postings();
+			postings.size = in.readInt();
+			if (postings.size < 0 || postings.size > records) {
+				return false;
+			}
+			postings.records = new int[Math.max(1, postings.size)];
+			for (int j = 0; j < postings.size; j++) {
+				postings.records[j] = in.readInt();
+				if (postings.records[j] < 0 || postings.records[j] >= records) {
+					return false;
+				}
+			}
+			terms.put(term, postings);
+		}
+		return true;
+	}
+
+	static File indexFile(File segment) {
+		String name = segment.getName();
+		int dot = name.lastIndexOf('.');
+		return new File(segment.getParentFile(), (dot < 0 ? name
+				: name.substring(0, dot)) + ".idx");
+	}
+
+	/**
+	 * Adds the records that match the query to graphs.
+	 */
+	void find(MetaAlertQuery query, List<Graph<Alert>> graphs) {
+		if (records == 0 || minStartTime > query.getTo()
+				|| maxEndTime < query.getFrom()) {
+			return;
+		}
+		Postings candidates = null;
+		if (query.getIp() != null) {
+			candidates = ips.get(query.getIp());
+			if (candidates == null) {
+				return;
+			}
+		}
+		if (query.getName() != null) {
+			Postings named = names.get(query.getName());
+			if (named == null) {
+				return;
+			}
+			candidates = candidates == null ? named : intersect(candidates,
+					named);
+		}
+		int size = candidates == null ? records : candidates.size;
+		for (int i = 0; i < size; i++) {
+			int record = candidates == null ? i : candidates.records[i];
+			if (startTimes[record] <= query.getTo()
+					&& endTimes[record] >= query.getFrom()
+					&& (query.getPriority() < 0 || priorities[record] == query
+							.getPriority())) {
+				graphs.add(decode(record(offsets[record])));
+			}
+		}
+	}
+
+	private static Postings intersect(Postings a, Postings b) {
+		Postings both = new Postings();
+		int i = 0;
+		int j = 0;
+		while (i < a.size && j < b.size) {
+			if (a.records[i] < b.records[j]) {
+				i++;
+			} else if (a.records[i] > b.records[j]) {
+				j++;
+			} else {
+				both.add(a.records[i]);
+				i++;
+				j++;
+			}
+		}
+		return both;
+	}
+
+	/**
+	 * The encoded graph of the record at offset.
+	 */
+	private ByteBuffer record(int offset) {
+		ByteBuffer record = buffer.duplicate();
+		record.position(offset + 4);
+		record.limit(offset + 4 + buffer.getInt(offset));
+		return record;
+	}
+
+	int getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * The bytes used, including the header.
+	 */
+	int getEnd() {
+		return end;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	void flush() {
+		if (!sealed) {
+			buffer.force();
+		}
+	}
+
+	void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	// The record codec.
+
+	static long getStartTime(Graph<Alert> graph) {
+		long start = Long.MAX_VALUE;
+		for (Node<Alert> node : graph.getNodes()) {
+			start = Math.min(start, node.getElement().getStartTime().getTime());
+		}
+		return start;
+	}
+
+	static long getEndTime(Graph<Alert> graph) {
+		long end = Long.MIN_VALUE;
+		for (Node<Alert> node : graph.getNodes()) {
+			end = Math.max(end, node.getElement().getEndTime().getTime());
+		}
+		return end;
+	}
+
+	/**
+	 * The OutMet priority of the meta-alert, which all its alerts share, or 0
+	 * if it has not been prioritised.
+	 */
+	static int getPriority(Graph<Alert> graph) {
+		Node<Alert> node = graph.getFirstNode();
+		return node == null ? 0 : node.getElement().getOutMetPriority();
+	}
+
+	/**
+	 * Encodes a graph into buffer, flipped for reading.
+	 *
+	 * @return buffer, or a larger one if it did not fit.
+	 */
+	static ByteBuffer encode(Graph<Alert> graph, ByteBuffer buffer) {
+		for (Node<Alert> node : graph.getNodes()) {
+			AlertFile.check(node.getElement());
+		}
+		while (true) {
+			buffer.clear();
+			try {
+				encodeTo(graph, buffer);
+				buffer.flip();
+				return buffer;
+			} catch (BufferOverflowException e) {
+				buffer = ByteBuffer.allocate(2 * buffer.capacity());
+			}
+		}
+	}
+
+	private static void encodeTo(Graph<Alert> graph, ByteBuffer buffer) {
+		long start = graph.getNodes().isEmpty() ? 0 : getStartTime(graph);
+		AlertFile.putVarLong(buffer, AlertFile.zigZag(start));
+		putString(buffer, graph.getKey());
+		Map<String, String> tags = graph.getTags();
+		AlertFile.putVarLong(buffer, tags == null ? 0 : tags.size());
+		if (tags != null) {
+			for (Map.Entry<String, String> tag : tags.entrySet()) {
+				putString(buffer, tag.getKey());
+				putString(buffer, tag.getValue());
+			}
+		}
+
+		List<Node<Alert>> nodes = graph.getNodes();
+		Map<Node<Alert>, Integer> indexes = new IdentityHashMap<Node<Alert>, Integer>();
+		AlertFile.putVarLong(buffer, nodes.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			Node<Alert> node = nodes.get(i);
+			indexes.put(node, i);
+			putString(buffer, node.getKey());
+			putString(buffer, node.getLabel());
+			buffer.putDouble(node.getWeight());
+
+			Alert alert = node.getElement();
+			long alertStart = alert.getStartTime().getTime();
+			AlertFile.putVarLong(buffer, AlertFile.zigZag(alertStart - start));
+			AlertFile.putVarLong(buffer, AlertFile.zigZag(alert.getEndTime()
+					.getTime() - alertStart));
+			putString(buffer, alert.getKey());
+			putString(buffer, alert.getName());
+			putString(buffer, alert.getCategory());
+			putString(buffer, alert.getSourceIP());
+			putString(buffer, alert.getSourcePort());
+			putString(buffer, alert.getDestIP());
+			putString(buffer, alert.getDestPort());
+			AlertFile.putVarLong(buffer, AlertFile.zigZag(alert.getCount()));
+			AlertFile.putVarLong(buffer, AlertFile.zigZag(alert.getPriority()));
+			AlertFile.putVarLong(buffer,
+					AlertFile.zigZag(alert.getOutMetPriority()));
+		}
+
+		List<Edge<Alert>> edges = graph.getEdges();
+		AlertFile.putVarLong(buffer, edges.size());
+		for (Edge<Alert> edge : edges) {
+			Integer source = indexes.get(edge.getSource());
+			Integer target = indexes.get(edge.getTarget());
+			AlertFile.putVarLong(buffer, source == null ? 0 : source + 1);
+			AlertFile.putVarLong(buffer, target == null ? 0 : target + 1);
+			putString(buffer, edge.getKey());
+			putString(buffer, edge.getLabel());
+			buffer.putDouble(edge.getWeight());
+		}
+	}
+
+	static Graph<Alert> decode(ByteBuffer buffer) {
+		long start = AlertFile.unZigZag(AlertFile.getVarLong(buffer));
+		Graph<Alert> graph = new Graph<Alert>();
+		graph.setKey(getString(buffer));
+		long tags = AlertFile.getVarLong(buffer);
+		for (long i = 0; i < tags; i++) {
+			graph.addTag(getString(buffer), getString(buffer));
+		}
+
+		int size = (int) AlertFile.getVarLong(buffer);
+		List<Node<Alert>> nodes = new ArrayList<Node<Alert>>(size);
+		for (int i = 0; i < size; i++) {
+			Node<Alert> node = new Node<Alert>();
+			node.setKey(getString(buffer));
+			node.setLabel(getString(buffer));
+			node.setWeight(buffer.getDouble());
+
+			long alertStart = start
+					+ AlertFile.unZigZag(AlertFile.getVarLong(buffer));
+			long alertEnd = alertStart
+					+ AlertFile.unZigZag(AlertFile.getVarLong(buffer));
+			Alert alert = new Alert(new Date(alertStart), new Date(alertEnd),
+					getString(buffer), getString(buffer), getString(buffer),
+					getString(buffer), getString(buffer), getString(buffer),
+					getString(buffer));
+			alert.setCount((int) AlertFile.unZigZag(AlertFile
+					.getVarLong(buffer)));
+			alert.setPriority((int) AlertFile.unZigZag(AlertFile
+					.getVarLong(buffer)));
+			alert.setOutMetPriority((int) AlertFile.unZigZag(AlertFile
+					.getVarLong(buffer)));
+			node.setElement(alert);
+			nodes.add(node);
+		}
+		// The nodes are distinct, addNode() would check each again.
+		graph.getNodes().addAll(nodes);
+
+		int edges = (int) AlertFile.getVarLong(buffer);
+		for (int i = 0; i < edges; i++) {
+			int source = (int) AlertFile.getVarLong(buffer);
+			int target = (int) AlertFile.getVarLong(buffer);
+			Edge<Alert> edge = new Edge<Alert>();
+			edge.setSource(source == 0 ? null : nodes.get(source - 1));
+			edge.setTarget(target == 0 ? null : nodes.get(target - 1));
+			edge.setKey(getString(buffer));
+			edge.setLabel(getString(buffer));
+			edge.setWeight(buffer.getDouble());
+			graph.addEdge(edge);
+		}
+		return graph;
+	}
+
+	private static void putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			AlertFile.putVarLong(buffer, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		AlertFile.putVarLong(buffer, bytes.length + 1);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = (int) AlertFile.getVarLong(buffer) - 1;
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
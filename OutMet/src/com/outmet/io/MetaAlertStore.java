@@ -0,0 +1,191 @@
+package com.outmet.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.outmet.analysis.MetaAlertListener;
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+/**
+ * An append-only store of meta-alerts in a directory, so that they can be
+ * queried long after they have left memory. Meta-alerts are written with
+ * their alerts, edges, tags and priorities into memory-mapped segment files
+ * of a fixed size, and found with a {@link MetaAlertQuery} on their time
+ * range, addresses, alert names and priority.
+ *
+ * Set as the {@link MetaAlertListener} of a Correlator, each meta-alert is
+ * stored as it closes, before it is prioritised. Set on a
+ * {@link com.outmet.analysis.PrioritisationEngine}, each is stored with its
+ * final priority when it leaves the engine's window.
+ *
+ * Appended meta-alerts are in the page cache at once and reach the disk
+ * when a segment fills, on {@link #flush()} and on {@link #close()}. A
+ * meta-alert that was being written during a crash is dropped when the
+ * store is opened again.
+ *
+ * @author riyanat
+ *
+ */
+public class MetaAlertStore implements MetaAlertListener, Closeable {
+	private static final Logger log = Logger.getLogger(MetaAlertStore.class
+			.getName());
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final String PREFIX = "segment-";
+	private static final String SUFFIX = ".dat";
+
+	private File directory;
+	private int segmentSize;
+
+	/**
+	 * All segments in order, the last is written to.
+	 */
+	private List<MetaAlertSegment> segments;
+	private int nextSegment;
+
+	/**
+	 * Reused to encode meta-alerts.
+	 */
+	private ByteBuffer record;
+
+	private long size;
+
+	public MetaAlertStore(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens the store in directory, creating it if necessary.
+	 *
+	 * @param segmentSize
+	 *            the size of a segment file in bytes. A meta-alert larger
+	 *            than this gets a segment of its own.
+	 */
+	public MetaAlertStore(File directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.segments = new ArrayList<MetaAlertSegment>();
+		this.record = ByteBuffer.allocate(4096);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+
+		String[] names = directory.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+			}
+		});
+		Arrays.sort(names);
+		for (int i = 0; i < names.length; i++) {
+			MetaAlertSegment segment = MetaAlertSegment.open(new File(
+					directory, names[i]), i < names.length - 1);
+			segments.add(segment);
+			size += segment.getRecordCount();
+			nextSegment = Integer.parseInt(names[i].substring(PREFIX.length(),
+					names[i].length() - SUFFIX.length())) + 1;
+		}
+		if (segments.isEmpty()) {
+			segments.add(MetaAlertSegment.create(segmentFile(nextSegment++),
+					segmentSize));
+		}
+		log.log(Level.INFO, "Opened " + size + " meta-alerts in "
+				+ segments.size() + " segments from " + directory);
+	}
+
+	private File segmentFile(int number) {
+		return new File(directory, String.format("%s%08d%s", PREFIX, number,
+				SUFFIX));
+	}
+
+	/**
+	 * Appends a meta-alert.
+	 */
+	public synchronized void add(Graph<Alert> graph) throws IOException {
+		record = MetaAlertSegment.encode(graph, record);
+		MetaAlertSegment last = segments.get(segments.size() - 1);
+		if (!last.append(record, graph)) {
+			last.seal();
+			int capacity = Math.max(segmentSize, MetaAlertSegment.HEADER_BYTES
+					+ 4 + record.remaining());
+			last = MetaAlertSegment.create(segmentFile(nextSegment++),
+					capacity);
+			segments.add(last);
+			last.append(record, graph);
+		}
+		size++;
+	}
+
+	/**
+	 * Stores a closed meta-alert, see {@link #add(Graph)}.
+	 */
+	@Override
+	public void metaAlertClosed(Graph<Alert> graph) {
+		try {
+			add(graph);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Error in storing meta-alert "
+					+ graph.getKey(), e);
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the meta-alerts that match a query, in the order they were
+	 * added.
+	 */
+	public synchronized List<Graph<Alert>> find(MetaAlertQuery query) {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		for (MetaAlertSegment segment : segments) {
+			segment.find(query, graphs);
+		}
+		return graphs;
+	}
+
+	/**
+	 * The number of meta-alerts stored.
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * The number of segment files.
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Forces the meta-alerts added so far to disk.
+	 */
+	public synchronized void flush() {
+		segments.get(segments.size() - 1).flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		IOException error = null;
+		for (MetaAlertSegment segment : segments) {
+			try {
+				segment.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		segments.clear();
+		if (error != null) {
+			throw error;
+		}
+	}
+}
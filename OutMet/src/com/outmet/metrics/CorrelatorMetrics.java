@@ -0,0 +1,120 @@
+package com.outmet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the work of a {@link com.outmet.analysis.Correlator}. The correlator
+ * records each alert with {@link #recordAlert(int, int, boolean, long)};
+ * the counters are atomic, so they may be read from any thread, e.g. over
+ * JMX with {@link Metrics#register(Object, String, String)}.
+ *
+ * @author riyanat
+ *
+ */
+public class CorrelatorMetrics implements CorrelatorMetricsMXBean {
+
+	private final AtomicLong alerts;
+	private final AtomicLong candidates;
+	private final AtomicLong hits;
+	private final AtomicLong metaAlerts;
+	private final AtomicLong firstNanos;
+	private final LatencyHistogram latency;
+	private volatile int active;
+
+	public CorrelatorMetrics() {
+		this.alerts = new AtomicLong();
+		this.candidates = new AtomicLong();
+		this.hits = new AtomicLong();
+		this.metaAlerts = new AtomicLong();
+		this.firstNanos = new AtomicLong();
+		this.latency = new LatencyHistogram();
+	}
+
+	/**
+	 * Records a correlated alert.
+	 *
+	 * @param scanned
+	 *            the number of meta-alerts it was scored against.
+	 * @param active
+	 *            the number of meta-alerts in the window after it.
+	 * @param hit
+	 *            whether it was joined to an existing meta-alert.
+	 * @param nanos
+	 *            the time it took.
+	 */
+	public void recordAlert(int scanned, int active, boolean hit, long nanos) {
+		if (alerts.getAndIncrement() == 0) {
+			firstNanos.set(System.nanoTime() - nanos);
+		}
+		candidates.addAndGet(scanned);
+		if (hit) {
+			hits.incrementAndGet();
+		} else {
+			metaAlerts.incrementAndGet();
+		}
+		this.active = active;
+		latency.record(nanos);
+	}
+
+	@Override
+	public long getAlerts() {
+		return alerts.get();
+	}
+
+	@Override
+	public double getAlertsPerSecond() {
+		long n = alerts.get();
+		long elapsed = System.nanoTime() - firstNanos.get();
+		return n == 0 || elapsed <= 0 ? 0 : n * 1e9 / elapsed;
+	}
+
+	@Override
+	public int getActiveMetaAlerts() {
+		return active;
+	}
+
+	@Override
+	public long getMetaAlerts() {
+		return metaAlerts.get();
+	}
+
+	@Override
+	public double getCandidatesPerAlert() {
+		long n = alerts.get();
+		return n == 0 ? 0 : candidates.get() / (double) n;
+	}
+
+	@Override
+	public double getHitRate() {
+		long n = alerts.get();
+		return n == 0 ? 0 : hits.get() / (double) n;
+	}
+
+	@Override
+	public LatencySnapshot getLatency() {
+		return latency.snapshot();
+	}
+
+	public LatencyHistogram getLatencyHistogram() {
+		return latency;
+	}
+
+	@Override
+	public void reset() {
+		alerts.set(0);
+		candidates.set(0);
+		hits.set(0);
+		metaAlerts.set(0);
+		latency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "alerts=" + getAlerts() + " alerts/s="
+				+ String.format("%.0f", getAlertsPerSecond()) + " active="
+				+ getActiveMetaAlerts() + " candidates/alert="
+				+ String.format("%.1f", getCandidatesPerAlert())
+				+ " hit rate=" + String.format("%.3f", getHitRate())
+				+ " latency: " + getLatency();
+	}
+}
@@ -0,0 +1,47 @@
+package com.outmet.metrics;
+
+/**
+ * The metrics of a {@link com.outmet.analysis.Correlator} as shown over JMX.
+ *
+ * @author riyanat
+ *
+ */
+public interface CorrelatorMetricsMXBean {
+
+	/**
+	 * The number of alerts correlated.
+	 */
+	long getAlerts();
+
+	/**
+	 * The alerts correlated per second of wall time since the first one.
+	 */
+	double getAlertsPerSecond();
+
+	/**
+	 * The number of meta-alerts in the time window after the last alert.
+	 */
+	int getActiveMetaAlerts();
+
+	/**
+	 * The number of meta-alerts created.
+	 */
+	long getMetaAlerts();
+
+	/**
+	 * The mean number of active meta-alerts an alert was scored against.
+	 */
+	double getCandidatesPerAlert();
+
+	/**
+	 * The fraction of alerts joined to an existing meta-alert.
+	 */
+	double getHitRate();
+
+	/**
+	 * The time to correlate an alert.
+	 */
+	LatencySnapshot getLatency();
+
+	void reset();
+}
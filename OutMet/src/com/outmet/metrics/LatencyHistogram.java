@@ -0,0 +1,129 @@
+package com.outmet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds. Values below 16 have a
+ * bucket each; above that, each power of two is split into 8 buckets, so a
+ * percentile is within 12.5% of the true value. Recording is a few atomic
+ * increments, and any thread may record or read at any time. A snapshot
+ * read while values are recorded may be off by those values.
+ *
+ * @author riyanat
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong total;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Records a latency; negative values are recorded as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	private static int bucket(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * The largest value of a bucket.
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+		int sub = (bucket - LINEAR) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (SUB_BUCKETS + sub) * width + width - 1;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return total.get();
+	}
+
+	public long getMaxNanos() {
+		return max.get();
+	}
+
+	/**
+	 * @return the smallest bucket bound that at least the fraction q of the
+	 *         recorded values do not exceed, at most the maximum, or 0 if
+	 *         nothing was recorded.
+	 */
+	public long getPercentile(double q) {
+		long[] counts = new long[BUCKETS];
+		long recorded = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			counts[b] = buckets.get(b);
+			recorded += counts[b];
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(q * recorded));
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += counts[b];
+			if (seen >= rank) {
+				return Math.min(upperBound(b), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public LatencySnapshot snapshot() {
+		long n = count.get();
+		return new LatencySnapshot(n, n == 0 ? 0 : total.get() / (double) n,
+				getPercentile(0.5), getPercentile(0.9), getPercentile(0.99),
+				max.get());
+	}
+
+	/**
+	 * Forgets the recorded values. Values recorded concurrently may be kept
+	 * in part.
+	 */
+	public void reset() {
+		for (int b = 0; b < BUCKETS; b++) {
+			buckets.set(b, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,62 @@
+package com.outmet.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The state of a {@link LatencyHistogram} at one time, in nanoseconds. Over
+ * JMX it is shown as composite data with an item per getter.
+ *
+ * @author riyanat
+ *
+ */
+public class LatencySnapshot {
+
+	private final long count;
+	private final double mean;
+	private final long p50;
+	private final long p90;
+	private final long p99;
+	private final long max;
+
+	@ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "max" })
+	public LatencySnapshot(long count, double mean, long p50, long p90,
+			long p99, long max) {
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.max = max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP90() {
+		return p90;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + " mean=" + String.format("%.0f", mean)
+				+ "ns p50=" + p50 + "ns p90=" + p90 + "ns p99=" + p99
+				+ "ns max=" + max + "ns";
+	}
+}
@@ -0,0 +1,65 @@
+package com.outmet.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes metrics over JMX, under the domain "com.outmet". Any other
+ * registry can read the same beans through their getters.
+ *
+ * @author riyanat
+ *
+ */
+public class Metrics {
+
+	public static final String DOMAIN = "com.outmet";
+
+	private Metrics() {
+	}
+
+	/**
+	 * Registers metrics with the platform MBean server, replacing any
+	 * registered under the same type and name.
+	 *
+	 * @return the name of the registered bean.
+	 */
+	public static ObjectName register(Object metrics, String type, String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName(type, name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(metrics, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalArgumentException("Cannot register " + type
+					+ " metrics " + name, e);
+		}
+	}
+
+	/**
+	 * Unregisters metrics, if registered.
+	 */
+	public static void unregister(String type, String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName(type, name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			throw new IllegalArgumentException("Cannot unregister " + type
+					+ " metrics " + name, e);
+		}
+	}
+
+	public static ObjectName objectName(String type, String name)
+			throws JMException {
+		return new ObjectName(DOMAIN + ":type=" + type + ",name="
+				+ ObjectName.quote(name));
+	}
+}
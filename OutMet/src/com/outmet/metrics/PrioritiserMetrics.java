@@ -0,0 +1,116 @@
+package com.outmet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the work of a prioritiser. Distances are recorded once per run from
+ * the counters the prioritiser keeps anyway, so the distance computation
+ * itself is not slowed down. The counters are atomic and may be read from
+ * any thread, e.g. over JMX with {@link Metrics#register(Object, String, String)}.
+ *
+ * @author riyanat
+ *
+ */
+public class PrioritiserMetrics implements PrioritiserMetricsMXBean {
+
+	private final AtomicLong runs;
+	private final AtomicLong distances;
+	private final AtomicLong gedCalls;
+	private final AtomicLong costLimitHits;
+	private final AtomicLong cacheHits;
+	private final LatencyHistogram distanceLatency;
+	private final LatencyHistogram lofLatency;
+	private volatile int metaAlerts;
+
+	public PrioritiserMetrics() {
+		this.runs = new AtomicLong();
+		this.distances = new AtomicLong();
+		this.gedCalls = new AtomicLong();
+		this.costLimitHits = new AtomicLong();
+		this.cacheHits = new AtomicLong();
+		this.distanceLatency = new LatencyHistogram();
+		this.lofLatency = new LatencyHistogram();
+	}
+
+	/**
+	 * Records the distances of a run, see
+	 * {@link com.outmet.analysis.MetaAlertMetric} for the counters.
+	 */
+	public void recordDistances(long distances, long gedCalls,
+			long costLimitHits, long cacheHits, long nanos) {
+		this.distances.addAndGet(distances);
+		this.gedCalls.addAndGet(gedCalls);
+		this.costLimitHits.addAndGet(costLimitHits);
+		this.cacheHits.addAndGet(cacheHits);
+		distanceLatency.record(nanos);
+	}
+
+	/**
+	 * Records the lofs of a run, which ends it.
+	 */
+	public void recordLof(int metaAlerts, long nanos) {
+		this.metaAlerts = metaAlerts;
+		lofLatency.record(nanos);
+		runs.incrementAndGet();
+	}
+
+	@Override
+	public long getRuns() {
+		return runs.get();
+	}
+
+	@Override
+	public int getMetaAlerts() {
+		return metaAlerts;
+	}
+
+	@Override
+	public long getDistances() {
+		return distances.get();
+	}
+
+	@Override
+	public long getGedCalls() {
+		return gedCalls.get();
+	}
+
+	@Override
+	public long getCostLimitHits() {
+		return costLimitHits.get();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	@Override
+	public LatencySnapshot getDistanceLatency() {
+		return distanceLatency.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getLofLatency() {
+		return lofLatency.snapshot();
+	}
+
+	@Override
+	public void reset() {
+		runs.set(0);
+		distances.set(0);
+		gedCalls.set(0);
+		costLimitHits.set(0);
+		cacheHits.set(0);
+		distanceLatency.reset();
+		lofLatency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "runs=" + getRuns() + " meta-alerts=" + getMetaAlerts()
+				+ " distances=" + getDistances() + " ged calls="
+				+ getGedCalls() + " cost limit hits=" + getCostLimitHits()
+				+ " cache hits=" + getCacheHits() + " distance latency: "
+				+ getDistanceLatency() + " lof latency: " + getLofLatency();
+	}
+}
@@ -0,0 +1,55 @@
+package com.outmet.metrics;
+
+/**
+ * The metrics of a {@link com.outmet.analysis.Prioritiser} or
+ * {@link com.outmet.analysis.IncrementalPrioritiser} as shown over JMX.
+ *
+ * @author riyanat
+ *
+ */
+public interface PrioritiserMetricsMXBean {
+
+	/**
+	 * The number of runs.
+	 */
+	long getRuns();
+
+	/**
+	 * The number of meta-alerts prioritised by the last run.
+	 */
+	int getMetaAlerts();
+
+	/**
+	 * The number of distances between meta-alerts resolved, by a bound, the
+	 * cache or an exact edit distance.
+	 */
+	long getDistances();
+
+	/**
+	 * The number of exact edit distances computed.
+	 */
+	long getGedCalls();
+
+	/**
+	 * The number of exact edit distances over the cost limit.
+	 */
+	long getCostLimitHits();
+
+	/**
+	 * The number of distances found in the cache.
+	 */
+	long getCacheHits();
+
+	/**
+	 * The time of each run to compute distances: the distance matrix, the
+	 * neighbor search, or the neighbor updates of an incremental run.
+	 */
+	LatencySnapshot getDistanceLatency();
+
+	/**
+	 * The time of each run to compute the lofs.
+	 */
+	LatencySnapshot getLofLatency();
+
+	void reset();
+}
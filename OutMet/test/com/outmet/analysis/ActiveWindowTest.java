@@ -0,0 +1,87 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+public class ActiveWindowTest {
+
+	// Test that moving the cutoff removes exactly the graphs that ended
+	// before it, whether they are dropped with their bucket or lazily.
+	@Test
+	public void testExpire() {
+		ActiveWindow window = new ActiveWindow(800);
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		for (int i = 0; i < 100; i++) {
+			Graph<Alert> graph = new Graph<Alert>();
+			graphs.add(graph);
+			window.add(graph, i, i * 10, i * 10, -1, -1);
+		}
+
+		List<Graph<Alert>> expired = new ArrayList<Graph<Alert>>();
+		window.expire(405, expired);
+
+		// Whole buckets before the cutoff are removed.
+		assertEquals(400, expired.size() * 10);
+		assertEquals(100 - expired.size(), window.size());
+		for (Graph<Alert> graph : expired) {
+			assertTrue(graphs.indexOf(graph) < 41);
+		}
+
+		// The rest of the cutoff bucket is expired lazily.
+		assertFalse(window.contains(graphs.get(40)));
+		assertTrue(window.contains(graphs.get(41)));
+		assertSame(graphs.get(41), window.peek());
+
+		// Updating a graph moves it forward in time.
+		int slot = window.slotOf(graphs.get(41));
+		window.update(slot, 100, 2000, 2000, -1, -1);
+		expired.clear();
+		window.expire(1500, expired);
+		assertEquals(1, window.size());
+		assertSame(graphs.get(41), window.getGraph(window.slotAt(0)));
+		assertEquals(100, window.getRow(window.slotAt(0)));
+	}
+
+	// Test that with a candidate filter only recent graphs, graphs sharing an
+	// address prefix and graphs without IPv4 addresses are candidates.
+	@Test
+	public void testCandidates() {
+		ActiveWindow window = new ActiveWindow(1800000);
+		window.setCandidateFilter(16, 1000);
+
+		long a = IpSimilarity.parseIpv4("10.1.0.2");
+		long b = IpSimilarity.parseIpv4("10.1.7.9");
+		long c = IpSimilarity.parseIpv4("192.168.0.1");
+		long d = IpSimilarity.parseIpv4("172.16.0.1");
+		long e = IpSimilarity.parseIpv4("8.8.8.8");
+
+		int shared = window.add(new Graph<Alert>(), 0, 0, 0, c, b);
+		int other = window.add(new Graph<Alert>(), 1, 0, 0, c, d);
+		int unindexed = window.add(new Graph<Alert>(), 2, 0, 0, -1, d);
+		int recent = window.add(new Graph<Alert>(), 3, 4500, 4500, c, d);
+
+		int count = window.candidates(5000, a, e);
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			candidates.add(window.candidateAt(i));
+		}
+		assertEquals(3, candidates.size());
+		assertTrue(candidates.contains(shared));
+		assertTrue(candidates.contains(unindexed));
+		assertTrue(candidates.contains(recent));
+		assertFalse(candidates.contains(other));
+
+		// Once no longer recent, the last graph is only found by prefix.
+		window.remove(shared);
+		count = window.candidates(6000, a, e);
+		assertEquals(1, count);
+		assertEquals(unindexed, window.candidateAt(0));
+	}
+}
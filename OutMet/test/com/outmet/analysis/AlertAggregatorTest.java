@@ -0,0 +1,88 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.io.AlertGenerator;
+
+public class AlertAggregatorTest {
+
+	private static Alert alert(long start, String name, String destPort) {
+		return new Alert(new Date(start), new Date(start + 10), "A" + start,
+				name, "attempted-recon", "10.0.0.1", "40000", "10.0.0.2",
+				destPort);
+	}
+
+	private List<Alert> drain(Iterator<Alert> alerts) {
+		List<Alert> drained = new ArrayList<Alert>();
+		while (alerts.hasNext()) {
+			drained.add(alerts.next());
+		}
+		return drained;
+	}
+
+	// Test that repeats within the window are merged into the first alert,
+	// that other port classes or later repeats are not, and that every alert
+	// passed on counts at least itself.
+	@Test
+	public void testMerge() {
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (int i = 0; i < 100; i++) {
+			alerts.add(alert(i * 10, "ICMP PING", "0"));
+		}
+		alerts.add(alert(500, "SCAN", "2000"));
+		alerts.add(alert(510, "SCAN", "3000"));
+		alerts.add(alert(520, "SCAN", "80"));
+		alerts.add(alert(2000, "ICMP PING", "0"));
+
+		AlertAggregator aggregator = new AlertAggregator(1000);
+		List<Alert> aggregated = drain(aggregator.aggregate(alerts.iterator()));
+		assertEquals(4, aggregated.size());
+		assertEquals(alerts.size(), aggregator.getAlertCount());
+		assertEquals(4, aggregator.getAggregateCount());
+		assertEquals(0, aggregator.size());
+
+		Alert ping = aggregated.get(0);
+		assertSame(alerts.get(0), ping);
+		assertEquals(100, ping.getCount());
+		assertEquals(1000, ping.getEndTime().getTime());
+		Alert scan = aggregated.get(1);
+		assertEquals("SCAN", scan.getName());
+		assertEquals(2, scan.getCount());
+		assertEquals(520, scan.getEndTime().getTime());
+		assertEquals("80", aggregated.get(2).getDestPort());
+		assertEquals(1, aggregated.get(2).getCount());
+		assertEquals(2000, aggregated.get(3).getStartTime().getTime());
+		assertEquals(1, aggregated.get(3).getCount());
+	}
+
+	// Test that a sorted stream comes out sorted, with no alert lost.
+	@Test
+	public void testSorted() {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(20000);
+		generator.setBurstProbability(0.05);
+		AlertAggregator aggregator = new AlertAggregator(60000);
+		List<Alert> aggregated = drain(aggregator.aggregate(generator
+				.iterator()));
+		assertTrue(aggregated.size() < 20000);
+
+		long alerts = 0;
+		for (int i = 0; i < aggregated.size(); i++) {
+			assertTrue(aggregated.get(i).getCount() >= 1);
+			alerts += aggregated.get(i).getCount();
+			if (i > 0) {
+				assertTrue(aggregated.get(i - 1).getStartTime().getTime() <= aggregated
+						.get(i).getStartTime().getTime());
+			}
+		}
+		assertEquals(20000, alerts);
+	}
+}
@@ -0,0 +1,106 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.io.AlertGenerator;
+
+public class CorrelatorCheckpointTest {
+
+	private List<Alert> generate(int count) {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(count);
+		generator.setChainProbability(0.01);
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (Alert alert : generator) {
+			alerts.add(alert);
+		}
+		return alerts;
+	}
+
+	private static String toString(List<Graph<Alert>> graphs) {
+		StringBuilder builder = new StringBuilder();
+		for (Graph<Alert> graph : graphs) {
+			builder.append(graph.getKey()).append(':');
+			for (Node<Alert> node : graph.getNodes()) {
+				builder.append(node.getElement()).append(' ');
+			}
+			for (Edge<Alert> edge : graph.getEdges()) {
+				builder.append(edge.getKey()).append('=')
+						.append(edge.getWeight()).append(' ');
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	// Test that a correlator restored half way through a stream derives the
+	// same meta-alerts as one that saw all of it.
+	@Test
+	public void testRestoreMatchesUninterrupted() throws IOException {
+		List<Alert> alerts = generate(4000);
+		Correlator uninterrupted = new Correlator();
+		for (Alert alert : alerts) {
+			uninterrupted.offer(alert);
+		}
+
+		Correlator first = new Correlator();
+		for (Alert alert : alerts.subList(0, 2000)) {
+			first.offer(alert);
+		}
+		File file = File.createTempFile("correlator", ".checkpoint");
+		file.deleteOnExit();
+		first.checkpoint().write(file);
+
+		// The checkpoint is not changed by the alerts that follow it.
+		for (Alert alert : alerts.subList(2000, 2500)) {
+			first.offer(alert);
+		}
+
+		Correlator restored = new Correlator();
+		restored.restore(CorrelatorCheckpoint.read(file));
+		for (Alert alert : alerts.subList(2000, alerts.size())) {
+			restored.offer(alert);
+		}
+		assertTrue(uninterrupted.getGraphs().size() > 100);
+		assertEquals(toString(uninterrupted.getGraphs()),
+				toString(restored.getGraphs()));
+	}
+
+	// Test that checkpoints are written in the background as alerts are
+	// offered and can be restored.
+	@Test
+	public void testCheckpointer() throws IOException {
+		List<Alert> alerts = generate(3000);
+		File file = File.createTempFile("correlator", ".checkpoint");
+		file.delete();
+		file.deleteOnExit();
+
+		CorrelatorCheckpointer checkpointer = new CorrelatorCheckpointer(file,
+				0);
+		Correlator correlator = new Correlator();
+		assertFalse(checkpointer.restore(correlator));
+		correlator.setCheckpointer(checkpointer);
+		for (Alert alert : alerts) {
+			correlator.offer(alert);
+		}
+		checkpointer.checkpoint(correlator);
+		checkpointer.close();
+		assertTrue(checkpointer.getCheckpoints() > 1);
+
+		Correlator restored = new Correlator();
+		assertTrue(checkpointer.restore(restored));
+		assertEquals(toString(correlator.getGraphs()),
+				toString(restored.getGraphs()));
+	}
+}
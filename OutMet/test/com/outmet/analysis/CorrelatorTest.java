@@ -2,14 +2,19 @@ package com.outmet.analysis;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import com.outmet.data.Alert;
+import com.outmet.data.Edge;
 import com.outmet.data.Graph;
 import com.outmet.data.Node;
+import com.outmet.io.AlertGenerator;
 
 public class CorrelatorTest {
 
@@ -29,6 +34,33 @@ public class CorrelatorTest {
 		return graph;
 	}
 
+	private static List<Alert> generate() {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(6000);
+		generator.setChainProbability(0.05);
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (Alert alert : generator) {
+			alerts.add(alert);
+		}
+		return alerts;
+	}
+
+	private static List<String> describe(List<Graph<Alert>> graphs) {
+		List<String> described = new ArrayList<String>();
+		for (Graph<Alert> graph : graphs) {
+			StringBuilder builder = new StringBuilder(graph.getKey());
+			for (Node<Alert> node : graph.getNodes()) {
+				builder.append(' ').append(node.getKey());
+			}
+			for (Edge<Alert> edge : graph.getEdges()) {
+				builder.append(' ').append(edge.getKey()).append('=')
+						.append(edge.getWeight());
+			}
+			described.add(builder.toString());
+		}
+		return described;
+	}
+
 	// Test that updateQueue maintains only graphs with activity in the last
 	// {threshold} minutes.
 	@Test
@@ -88,4 +120,155 @@ public class CorrelatorTest {
 		assertTrue(correlator.queue.contains(secondGraph));
 		assertTrue(correlator.queue.contains(thirdGraph));
 	}
+
+	// Test that scoring ingested alerts gives exactly the same correlation as
+	// scoring the alerts themselves.
+	@Test
+	public void testTableCorrelation() {
+		Correlator correlator = new Correlator();
+		List<Alert> alerts = new ArrayList<Alert>();
+		alerts.add(new Alert(new Date(0), new Date(0), "1", " ICMP PING ",
+				"misc", " 10.0.2.92 ", "53", " 10.1.0.2", "2093"));
+		alerts.add(new Alert(new Date(3), new Date(3), "2", " ICMP PING ",
+				"misc", " 10.1.0.2 ", "53", " 10.0.2.92", " 10.1.0.2"));
+		alerts.add(new Alert(new Date(5), new Date(5), "3", " ICMP PING ",
+				"misc", "sensor-1", "53", "2001:db8::1", "2093"));
+		alerts.add(new Alert(new Date(9), new Date(9), "4", " ICMP PING ",
+				"misc", "SENSOR-1", "53", "2001:db8::3", "2093"));
+
+		AlertTable table = AlertTable.of(alerts);
+		for (int i = 0; i < alerts.size(); i++) {
+			for (int k = 0; k < alerts.size(); k++) {
+				assertEquals(correlator.getCorr(alerts.get(i), alerts.get(k)),
+						correlator.getCorr(table, i, k), 0);
+			}
+		}
+	}
+
+	// Test that the batch kernel gives bit for bit the scores of getCorr(),
+	// for any addresses and for time differences past the underflow of the
+	// time proximity.
+	@Test
+	public void testKernelMatchesGetCorr() {
+		Random random = new Random(5);
+		String[] hosts = { "sensor-1", "SENSOR-1", "2001:db8::1",
+				"2001:db8::3", "10.0.2.92", "10.1.0.2" };
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (int i = 0; i < 300; i++) {
+			Date date = new Date(random.nextBoolean() ? random.nextInt(20000)
+					: (long) random.nextInt(1 << 30) * (1 + random.nextInt(3)));
+			String source = random.nextInt(4) == 0 ? hosts[random
+					.nextInt(hosts.length)] : "10." + random.nextInt(4) + "."
+					+ random.nextInt(256) + "." + random.nextInt(256);
+			String dest = random.nextInt(4) == 0 ? hosts[random
+					.nextInt(hosts.length)] : "10." + random.nextInt(4) + "."
+					+ random.nextInt(256) + "." + random.nextInt(256);
+			String port = random.nextBoolean() ? "53" : dest;
+			alerts.add(new Alert(date, date, String.valueOf(i), "ICMP PING",
+					"misc", source, "53", dest, port));
+		}
+		AlertTable table = AlertTable.of(alerts);
+
+		for (int threshold : new int[] { 1, 30 }) {
+			Correlator correlator = new Correlator();
+			correlator.setTimeThreshold(threshold);
+			CorrelationKernel kernel = correlator.createKernel();
+			for (int k = 0; k < table.size(); k++) {
+				kernel.clear();
+				for (int i = 0; i < table.size(); i++) {
+					kernel.add(table.getSourceIp(i), table.getDestIp(i),
+							table.getStartTime(i), table.getDestPortTerm(i));
+				}
+				kernel.score(table.getSourceIp(k), table.getDestIp(k),
+						table.getStartTime(k), table.getDestIpTerm(k),
+						table.getTerms());
+				for (int i = 0; i < table.size(); i++) {
+					assertEquals(correlator.getCorr(table, i, k),
+							kernel.getScore(i), 0);
+				}
+			}
+		}
+	}
+
+	// Test that offered alerts are correlated and that graphs are passed to
+	// the listener, and released, once they fall out of the time window.
+	@Test
+	public void testOffer() {
+		final List<Graph<Alert>> closed = new ArrayList<Graph<Alert>>();
+		Correlator correlator = new Correlator();
+		correlator.setTimeThreshold(30);
+		correlator.setMetaAlertListener(new MetaAlertListener() {
+			@Override
+			public void metaAlertClosed(Graph<Alert> graph) {
+				closed.add(graph);
+			}
+		});
+
+		correlator.offer(new Alert(new Date(0), new Date(0), "1", "PING",
+				"misc", "10.0.0.1", "53", "10.1.0.2", "2093"));
+		correlator.offer(new Alert(new Date(1), new Date(1), "2", "PING",
+				"misc", "10.0.0.1", "53", "10.1.0.2", "2093"));
+		assertTrue(closed.isEmpty());
+
+		// An hour later the first graph can no longer be correlated.
+		correlator.offer(new Alert(new Date(3600000), new Date(3600000), "3",
+				"PING", "misc", "10.0.0.1", "53", "10.1.0.2", "2093"));
+		assertEquals(1, closed.size());
+		assertEquals(2, closed.get(0).getNodes().size());
+		assertEquals(1, closed.get(0).getEdges().size());
+
+		correlator.flush();
+		assertEquals(2, closed.size());
+		assertEquals("3", closed.get(1).getFirstNode().getKey());
+		assertTrue(correlator.getGraphs().isEmpty());
+	}
+
+	// Test that a second run, or alerts offered after a run, continue the
+	// stream as a fresh correlator given all the alerts at once would.
+	@Test
+	public void testRunTwice() {
+		List<Alert> alerts = generate();
+		int split = 2 * alerts.size() / 3;
+		Correlator fresh = new Correlator();
+		fresh.run(alerts);
+		List<String> expected = describe(fresh.getGraphs());
+		assertTrue(expected.size() < alerts.size());
+
+		Correlator twice = new Correlator();
+		twice.run(alerts.subList(0, split));
+		twice.run(alerts.subList(split, alerts.size()));
+		assertEquals(expected, describe(twice.getGraphs()));
+
+		Correlator mixed = new Correlator();
+		mixed.run(alerts.subList(0, split).iterator());
+		for (Alert alert : alerts.subList(split, alerts.size())) {
+			mixed.offer(alert);
+		}
+		assertEquals(expected, describe(mixed.getGraphs()));
+	}
+
+	// Test that a stream of hosts that are never seen again does not grow the
+	// dictionary without bound, and that hosts still correlate by name once
+	// it has been rebuilt.
+	@Test
+	public void testTermsBounded() {
+		Correlator correlator = new Correlator();
+		int pairs = 20000;
+		for (int i = 0; i < pairs; i++) {
+			Date date = new Date(i * 60000L);
+			String source = "sensor-" + i;
+			String dest = "server-" + i;
+			correlator.offer(new Alert(date, date, i + "a", "PING", "misc",
+					source, "53", dest, "2093"));
+			correlator.offer(new Alert(date, date, i + "b", "PING", "misc",
+					source.toUpperCase(), "53", dest, "2093"));
+		}
+		assertTrue(correlator.getTermCount() < pairs);
+
+		List<Graph<Alert>> graphs = correlator.getGraphs();
+		assertEquals(pairs, graphs.size());
+		for (Graph<Alert> graph : graphs) {
+			assertEquals(2, graph.getNodes().size());
+		}
+	}
 }
@@ -0,0 +1,154 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.data.TermDictionary;
+
+public class DistanceMatrixCalculatorTest {
+
+	// Creates a chain of {size} alerts with names drawn from {names}.
+	private Graph<Alert> createGraph(int id, int size, int names) {
+		Graph<Alert> graph = new Graph<Alert>();
+		graph.setKey(String.valueOf(id));
+		Node<Alert> previous = null;
+		for (int i = 0; i < size; i++) {
+			Alert alert = new Alert(new Date(i), new Date(i), id + "-" + i,
+					"name" + ((id + i) % names), "misc", "10.0.0.1", "53",
+					"10.1.0.2", "2093");
+			Node<Alert> node = new Node<Alert>();
+			node.setElement(alert);
+			node.setKey(alert.getKey());
+			node.setLabel(alert.getName());
+			node.setWeight(1);
+			graph.addNode(node);
+			if (previous != null) {
+				Edge<Alert> edge = new Edge<Alert>();
+				edge.setSource(previous);
+				edge.setTarget(node);
+				edge.setLabel(previous.getLabel() + node.getLabel());
+				edge.setWeight(1);
+				graph.addEdge(edge);
+			}
+			previous = node;
+		}
+		return graph;
+	}
+
+	// A calculator with the native edit distance, whose tiers are tested.
+	private DistanceMatrixCalculator nativeCalculator(int parallelism) {
+		DistanceMatrixCalculator calculator = new DistanceMatrixCalculator(
+				parallelism);
+		calculator.getMetric().setEditDistance(
+				MetaAlertMetric.EditDistance.NATIVE);
+		return calculator;
+	}
+
+	// Test that the parallel matrix is symmetric and identical to the one
+	// computed on a single thread, that meta-alerts with the same structure
+	// share a row, and that progress reaches every pair.
+	@Test
+	public void testParallelMatchesSerial() {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		// 100 distinct structures, half of them twice.
+		int n = 150;
+		for (int i = 0; i < n; i++) {
+			graphs.add(createGraph(i, 1 + i % 4, 50));
+		}
+
+		DistanceMatrix serial = nativeCalculator(1).calculate(graphs);
+
+		final long[] progress = new long[2];
+		DistanceMatrixCalculator calculator = nativeCalculator(4);
+		calculator.setProgressListener(new DistanceProgressListener() {
+			@Override
+			public void progress(long done, long total) {
+				assertTrue(done > progress[0]);
+				progress[0] = done;
+				progress[1] = total;
+			}
+		});
+		DistanceMatrix parallel = calculator.calculate(graphs);
+
+		assertEquals(100, calculator.getDistinctCount());
+		assertEquals(100 * 99 / 2, progress[1]);
+		assertEquals(progress[1], progress[0]);
+		CollapsedDistanceMatrix collapsed = (CollapsedDistanceMatrix) parallel;
+		assertEquals(collapsed.getDistinctRow(0), collapsed.getDistinctRow(100));
+		assertEquals(2, collapsed.getMultiplicity(collapsed.getDistinctRow(0)));
+		assertEquals(1, collapsed.getMultiplicity(collapsed.getDistinctRow(99)));
+		TermDictionary labels = new TermDictionary();
+		for (int i = 0; i < n; i++) {
+			assertEquals(0, serial.get(i, i), 0);
+			for (int j = 0; j < n; j++) {
+				assertEquals(serial.get(j, i), serial.get(i, j), 0);
+				assertEquals(serial.get(i, j), parallel.get(i, j), 0);
+				if (i != j) {
+					assertEquals(MetaAlertMetric.distance(
+							LabelGraph.of(graphs.get(i), labels),
+							LabelGraph.of(graphs.get(j), labels)),
+							serial.get(i, j), 0);
+				}
+			}
+		}
+	}
+
+	// Test that pairs that are certainly over the limit skip the exact edit
+	// distance, and are counted by the tier that resolved them.
+	@Test
+	public void testTiers() {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		graphs.add(createGraph(0, 1, 5));
+		graphs.add(createGraph(1, 2, 5));
+		// Two long chains with no label in common.
+		graphs.add(createGraph(0, 110, 1000));
+		graphs.add(createGraph(500, 110, 1000));
+
+		DistanceMatrixCalculator calculator = nativeCalculator(1);
+		DistanceMatrix matrix = calculator.calculate(graphs);
+		assertEquals(4, calculator.getSizeFiltered());
+		assertEquals(1, calculator.getLabelFiltered());
+		assertEquals(1, calculator.getExactComputed());
+		assertEquals(1, matrix.get(0, 3), 0);
+		assertEquals(1, matrix.get(2, 3), 0);
+		assertEquals(0.1, matrix.get(0, 1), 0);
+	}
+
+	// Test that a second calculation over the same structures is answered by
+	// the cache.
+	@Test
+	public void testCache() {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		for (int i = 0; i < 20; i++) {
+			graphs.add(createGraph(i, 1 + i % 3, 20));
+		}
+		DistanceMatrixCalculator calculator = nativeCalculator(1);
+		DistanceMatrix first = calculator.calculate(graphs);
+		assertEquals(0, calculator.getCacheHits());
+		assertEquals(190, calculator.getCacheMisses());
+		assertEquals(190, calculator.getExactComputed());
+
+		DistanceMatrix second = calculator.calculate(graphs.subList(5, 20));
+		assertEquals(105, calculator.getCacheHits());
+		assertEquals(0, calculator.getExactComputed());
+		for (int i = 0; i < 15; i++) {
+			for (int j = 0; j < 15; j++) {
+				assertEquals(first.get(i + 5, j + 5), second.get(i, j), 0);
+			}
+		}
+
+		calculator.setCacheSize(0);
+		calculator.calculate(graphs);
+		assertEquals(0, calculator.getCacheMisses());
+		assertEquals(190, calculator.getExactComputed());
+	}
+}
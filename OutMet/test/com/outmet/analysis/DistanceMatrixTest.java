@@ -0,0 +1,83 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DistanceMatrixTest {
+
+	private double[][] createArray(int n) {
+		Random random = new Random(7);
+		double[][] array = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				array[i][j] = array[j][i] = 0.1 + random.nextInt(90) / 100.0;
+			}
+		}
+		return array;
+	}
+
+	// Test that every storage holds each pair in its own cell, for both
+	// orders of the indexes.
+	@Test
+	public void testPackedStorage() {
+		int n = 23;
+		double[][] array = createArray(n);
+		for (DistanceMatrix.Storage storage : DistanceMatrix.Storage.values()) {
+			DistanceMatrix matrix = DistanceMatrix.create(n, storage);
+			assertEquals(n, matrix.size());
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < i; j++) {
+					matrix.set(i, j, array[i][j]);
+				}
+				matrix.set(i, i, 0);
+			}
+
+			boolean exact = storage == DistanceMatrix.Storage.DOUBLE
+					|| storage == DistanceMatrix.Storage.MAPPED_DOUBLE;
+			double[][] expanded = matrix.toArray();
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					double expected = exact ? array[i][j]
+							: (float) array[i][j];
+					assertEquals(expected, matrix.get(i, j), 0);
+					assertEquals(expected, expanded[i][j], 0);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDiagonal() {
+		DistanceMatrix.create(3, DistanceMatrix.Storage.DOUBLE).set(1, 1, 0.5);
+	}
+
+	// Test that a packed matrix gives the same outlier factors as the array
+	// it was filled from, and that arrays are used without copying.
+	@Test
+	public void testPrioritiserAdapter() {
+		int n = 40;
+		double[][] array = createArray(n);
+		DistanceMatrix packed = DistanceMatrix.create(n,
+				DistanceMatrix.Storage.DOUBLE);
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				packed.set(i, j, array[i][j]);
+			}
+		}
+
+		Prioritiser prioritiser = new Prioritiser();
+		prioritiser.setK(5);
+		prioritiser.setDistanceMatrix(array);
+		assertSame(array, prioritiser.getDistanceMatrix());
+		prioritiser.calculateOutMet();
+		double[] expected = prioritiser.getLofs();
+
+		prioritiser.setDistances(packed);
+		prioritiser.calculateOutMet();
+		assertArrayEquals(expected, prioritiser.getLofs(), 0);
+		assertEquals(array[3][17], prioritiser.getDistanceMatrix()[17][3], 0);
+	}
+}
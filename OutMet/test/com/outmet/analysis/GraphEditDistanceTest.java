@@ -0,0 +1,232 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.data.TermDictionary;
+
+public class GraphEditDistanceTest {
+
+	private TermDictionary labels = new TermDictionary();
+
+	// Creates a graph with a node per label and an edge per pair of indexes
+	// into the labels.
+	private LabelGraph createGraph(String[] names, int[][] edges) {
+		Graph<Alert> graph = new Graph<Alert>();
+		Node<Alert>[] nodes = createNodes(names.length);
+		for (int i = 0; i < names.length; i++) {
+			nodes[i] = new Node<Alert>(null, String.valueOf(i), names[i], 1);
+			graph.addNode(nodes[i]);
+		}
+		for (int[] pair : edges) {
+			Edge<Alert> edge = new Edge<Alert>();
+			edge.setSource(nodes[pair[0]]);
+			edge.setTarget(nodes[pair[1]]);
+			edge.setLabel(names[pair[1]] + "->" + names[pair[0]]);
+			graph.addEdge(edge);
+		}
+		return LabelGraph.of(graph, labels);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Node<Alert>[] createNodes(int n) {
+		return new Node[n];
+	}
+
+	// Creates a graph of weighted nodes and edges, whose nodes and edges with
+	// the same label are merged.
+	private LabelGraph createGraph(String[] names, double[] frequencies,
+			int[][] edges, double[] weights) {
+		Graph<Alert> graph = new Graph<Alert>();
+		Node<Alert>[] nodes = createNodes(names.length);
+		for (int i = 0; i < names.length; i++) {
+			nodes[i] = new Node<Alert>(null, String.valueOf(i), names[i],
+					frequencies[i]);
+			graph.addNode(nodes[i]);
+		}
+		for (int e = 0; e < edges.length; e++) {
+			Edge<Alert> edge = new Edge<Alert>();
+			edge.setSource(nodes[edges[e][0]]);
+			edge.setTarget(nodes[edges[e][1]]);
+			edge.setLabel(names[edges[e][1]] + "->" + names[edges[e][0]]);
+			edge.setWeight(weights[e]);
+			graph.addEdge(edge);
+		}
+		return LabelGraph.of(graph, labels);
+	}
+
+	// The cheapest edit path found by trying every mapping.
+	private double bruteForce(LabelGraph a, LabelGraph b, int[] mapping,
+			int u, boolean[] used) {
+		if (u == a.size()) {
+			double cost = 0;
+			for (int x = 0; x < a.size(); x++) {
+				int w = mapping[x];
+				if (w < 0) {
+					cost += 1 + a.getFrequency(x);
+				} else {
+					cost += (a.getLabel(x) != b.getLabel(w) ? 1 : 0)
+							+ Math.abs(a.getFrequency(x) - b.getFrequency(w));
+				}
+				for (int y = 0; y < a.size(); y++) {
+					boolean mapped = w >= 0 && mapping[y] >= 0
+							&& b.hasEdge(w, mapping[y]);
+					if (a.hasEdge(x, y) && mapped) {
+						cost += Math.abs(a.getWeight(x, y)
+								- b.getWeight(w, mapping[y]));
+					} else if (a.hasEdge(x, y)) {
+						cost += 1 + a.getWeight(x, y);
+					} else if (mapped) {
+						cost += 1 + b.getWeight(w, mapping[y]);
+					}
+				}
+			}
+			for (int w = 0; w < b.size(); w++) {
+				cost += used[w] ? 0 : 1 + b.getFrequency(w);
+				for (int z = 0; z < b.size(); z++) {
+					if (b.hasEdge(w, z) && !(used[w] && used[z])) {
+						cost += 1 + b.getWeight(w, z);
+					}
+				}
+			}
+			return cost;
+		}
+		mapping[u] = -1;
+		double best = bruteForce(a, b, mapping, u + 1, used);
+		for (int w = 0; w < b.size(); w++) {
+			if (!used[w]) {
+				used[w] = true;
+				mapping[u] = w;
+				best = Math.min(best, bruteForce(a, b, mapping, u + 1, used));
+				used[w] = false;
+			}
+		}
+		return best;
+	}
+
+	@Test
+	public void testDistance() {
+		GraphEditDistance ged = new GraphEditDistance();
+		LabelGraph scan = createGraph(new String[] { "SCAN", "PING" },
+				new int[][] { { 0, 1 } });
+		LabelGraph exploit = createGraph(new String[] { "SCAN", "PING",
+				"EXPLOIT" }, new int[][] { { 0, 1 }, { 1, 2 }, { 2, 2 } });
+		LabelGraph reversed = createGraph(new String[] { "PING", "SCAN" },
+				new int[][] { { 0, 1 } });
+		LabelGraph empty = createGraph(new String[0], new int[0][]);
+
+		assertEquals(0, ged.distance(scan, scan, 100), 0);
+		// Insert EXPLOIT, the edge to it and its self loop.
+		assertEquals(3, ged.distance(scan, exploit, 100), 0);
+		assertEquals(3, ged.distance(exploit, scan, 100), 0);
+		// Relabel both nodes, or reverse the edge.
+		assertEquals(2, ged.distance(scan, reversed, 100), 0);
+		assertEquals(6, ged.distance(exploit, empty, 100), 0);
+		// Over the limit.
+		assertEquals(3, ged.distance(exploit, empty, 2), 0);
+		assertEquals(5, ged.distance(exploit, empty, 4), 0);
+
+		assertEquals(0.03, Distance.calculateGED(scan, exploit), 0);
+		assertEquals(0.06, Distance.calculateGED(exploit, empty), 0);
+	}
+
+	// Test that the search finds the cheapest edit path on random graphs, and
+	// that the bounds are below it.
+	@Test
+	public void testBruteForce() {
+		Random random = new Random(11);
+		String[] alphabet = { "A", "B", "C", "D", "E" };
+		GraphEditDistance ged = new GraphEditDistance();
+		for (int trial = 0; trial < 200; trial++) {
+			LabelGraph[] pair = new LabelGraph[2];
+			for (int g = 0; g < 2; g++) {
+				int n = random.nextInt(5);
+				String[] names = new String[n];
+				for (int i = 0; i < n; i++) {
+					// Labels are unique within a graph, as nodes are merged.
+					names[i] = alphabet[(i + g + trial) % alphabet.length];
+				}
+				int[][] edges = new int[n == 0 ? 0 : random.nextInt(2 * n)][];
+				for (int e = 0; e < edges.length; e++) {
+					edges[e] = new int[] { random.nextInt(n), random.nextInt(n) };
+				}
+				pair[g] = createGraph(names, edges);
+			}
+			double expected = bruteForce(pair[0], pair[1],
+					new int[pair[0].size()], 0, new boolean[pair[1].size()]);
+			assertEquals(expected, ged.distance(pair[0], pair[1], 100), 0);
+			double size = GraphEditDistance.sizeBound(pair[0], pair[1]);
+			double label = GraphEditDistance.labelBound(pair[0], pair[1]);
+			assertTrue(size <= label && label <= expected);
+			assertEquals(expected, ged.distance(pair[1], pair[0], 100), 0);
+		}
+	}
+
+	@Test
+	public void testWeights() {
+		GraphEditDistance ged = new GraphEditDistance();
+		// The weights of all but the first SCAN and PING->SCAN edge add up to
+		// the frequency and weight, so the distance is 3 + 0.75.
+		LabelGraph scan = createGraph(new String[] { "SCAN", "PING" },
+				new double[] { 1, 1 }, new int[][] { { 0, 1 } },
+				new double[] { 0.5 });
+		LabelGraph scans = createGraph(new String[] { "SCAN", "PING", "SCAN",
+				"SCAN" }, new double[] { 1, 1, 2, 1 }, new int[][] { { 0, 1 },
+				{ 2, 1 } }, new double[] { 0.5, 0.75 });
+		assertEquals(3, scans.getFrequency(0), 0);
+		assertEquals(0.75, scans.getWeight(0, 1), 0);
+		assertFalse(scan.equals(scans));
+		assertEquals(3.75, ged.distance(scan, scans, 100), 0);
+		assertEquals(3.75, ged.distance(scans, scan, 100), 0);
+		// Delete both nodes and the edge.
+		LabelGraph empty = createGraph(new String[0], new double[0],
+				new int[0][], new double[0]);
+		assertEquals(6.75, ged.distance(scans, empty, 100), 0);
+		assertEquals(6.75, GraphEditDistance.sizeBound(scans, empty), 0);
+		assertEquals(3.75, GraphEditDistance.labelBound(scan, scans), 0);
+		assertEquals(6, ged.distance(scans, empty, 5), 0);
+		assertEquals(0.0675, Distance.calculateGED(scans, empty), 0);
+	}
+
+	// Test that the search finds the cheapest edit path on random graphs with
+	// frequencies and weights, and that the bounds are below it.
+	@Test
+	public void testWeightedBruteForce() {
+		Random random = new Random(17);
+		String[] alphabet = { "A", "B", "C", "D" };
+		GraphEditDistance ged = new GraphEditDistance();
+		for (int trial = 0; trial < 200; trial++) {
+			LabelGraph[] pair = new LabelGraph[2];
+			for (int g = 0; g < 2; g++) {
+				int n = random.nextInt(7);
+				String[] names = new String[n];
+				double[] frequencies = new double[n];
+				for (int i = 0; i < n; i++) {
+					names[i] = alphabet[random.nextInt(alphabet.length)];
+					frequencies[i] = 1 + random.nextInt(3);
+				}
+				int[][] edges = new int[n == 0 ? 0 : random.nextInt(2 * n)][];
+				double[] weights = new double[edges.length];
+				for (int e = 0; e < edges.length; e++) {
+					edges[e] = new int[] { random.nextInt(n), random.nextInt(n) };
+					weights[e] = random.nextInt(4) * 0.25;
+				}
+				pair[g] = createGraph(names, frequencies, edges, weights);
+			}
+			double expected = bruteForce(pair[0], pair[1],
+					new int[pair[0].size()], 0, new boolean[pair[1].size()]);
+			assertEquals(expected, ged.distance(pair[0], pair[1], 100), 0);
+			assertEquals(expected, ged.distance(pair[1], pair[0], 100), 0);
+			double size = GraphEditDistance.sizeBound(pair[0], pair[1]);
+			double label = GraphEditDistance.labelBound(pair[0], pair[1]);
+			assertTrue(size <= label && label <= expected);
+		}
+	}
+}
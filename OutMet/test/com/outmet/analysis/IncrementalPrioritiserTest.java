@@ -0,0 +1,96 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+public class IncrementalPrioritiserTest {
+
+	private int key;
+
+	// Creates a meta-alert of up to 4 alerts with names drawn from 6.
+	private Graph<Alert> createGraph(Random random) {
+		return RandomMetaAlerts.create(key++, random, 4, 6);
+	}
+
+	// Test that after every batch of additions and removals the lofs and
+	// priorities are those of prioritising the remaining meta-alerts again.
+	@Test
+	public void testMatchesPrioritiser() {
+		Random random = new Random(13);
+		for (int k : new int[] { 1, 3, 8 }) {
+			IncrementalPrioritiser incremental = new IncrementalPrioritiser(k);
+			List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+			for (int batch = 0; batch < 30; batch++) {
+				for (int i = random.nextInt(8); i > 0; i--) {
+					Graph<Alert> graph = createGraph(random);
+					graphs.add(graph);
+					incremental.metaAlertClosed(graph);
+				}
+				for (int i = random.nextInt(5); i > 0 && !graphs.isEmpty(); i--) {
+					assertTrue(incremental.remove(graphs.remove(random
+							.nextInt(graphs.size()))));
+				}
+				incremental.run();
+				assertEquals(graphs.size(), incremental.size());
+				if (graphs.size() < k) {
+					continue;
+				}
+
+				Prioritiser prioritiser = new Prioritiser(k, graphs);
+				prioritiser.setDistances(new DistanceMatrixCalculator(1)
+						.calculate(graphs));
+				prioritiser.calculateOutMet();
+				double[] lofs = prioritiser.getLofs();
+				Neighborhoods neighborhoods = Neighborhoods.of(
+						prioritiser.getDistances(), k);
+				for (int i = 0; i < graphs.size(); i++) {
+					Graph<Alert> graph = graphs.get(i);
+					assertEquals(neighborhoods.getKDistance(i),
+							incremental.getKDistance(graph), 0);
+					assertEquals(lofs[i], incremental.getLof(graph), 1e-9);
+					int priority = Prioritiser.priority(
+							incremental.getLof(graph), incremental.getMaxLof());
+					for (Node<Alert> alert : graph.getNodes()) {
+						assertEquals(priority, alert.getElement()
+								.getOutMetPriority());
+					}
+				}
+			}
+		}
+	}
+
+	// Test that adding one meta-alert to many computes only its distances.
+	@Test
+	public void testAddComputesOneRow() {
+		Random random = new Random(17);
+		IncrementalPrioritiser incremental = new IncrementalPrioritiser(5);
+		for (int i = 0; i < 200; i++) {
+			incremental.add(createGraph(random));
+		}
+		incremental.run();
+		long distances = incremental.getDistanceCount();
+		incremental.add(createGraph(random));
+		incremental.run();
+		assertTrue(incremental.getDistanceCount() - distances <= 200);
+	}
+
+	@Test
+	public void testRemoveUnknown() {
+		IncrementalPrioritiser incremental = new IncrementalPrioritiser(2);
+		Graph<Alert> graph = createGraph(new Random(1));
+		assertFalse(incremental.remove(graph));
+		incremental.add(graph);
+		assertTrue(incremental.remove(graph));
+		incremental.run();
+		assertEquals(0, incremental.size());
+	}
+}
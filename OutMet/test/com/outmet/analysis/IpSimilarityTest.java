@@ -0,0 +1,64 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IpSimilarityTest {
+
+	// Test that bits are compared octet by octet from the least significant
+	// bit, as the original BitSet implementation did.
+	@Test
+	public void testIpv4Similarity() {
+		assertEquals(1.0, IpSimilarity.similarity("10.1.0.2", "10.1.0.2"), 0);
+
+		// 1 and 0 differ in the least significant bit of the second octet.
+		assertEquals(8 / 32.0,
+				IpSimilarity.similarity("10.0.2.92", "10.1.0.2"), 0);
+
+		// 2 and 6 share the two least significant bits of the third octet.
+		assertEquals(18 / 32.0,
+				IpSimilarity.similarity("10.0.2.92", "10.0.6.92"), 0);
+
+		// Surrounding whitespace is ignored.
+		assertEquals(1.0,
+				IpSimilarity.similarity(" 10.0.2.92 ", "10.0.2.92"), 0);
+	}
+
+	@Test
+	public void testParseIpv4() {
+		assertEquals(IpSimilarity.toPrefixOrder(0x0A010002) & 0xFFFFFFFFL,
+				IpSimilarity.parseIpv4("10.1.0.2"));
+		assertEquals(IpSimilarity.NOT_IPV4, IpSimilarity.parseIpv4("10.1.0"));
+		assertEquals(IpSimilarity.NOT_IPV4,
+				IpSimilarity.parseIpv4("10.1.0.256"));
+		assertEquals(IpSimilarity.NOT_IPV4,
+				IpSimilarity.parseIpv4("10.1.0.2.3"));
+		assertEquals(IpSimilarity.NOT_IPV4,
+				IpSimilarity.parseIpv4("localhost"));
+	}
+
+	@Test
+	public void testIpv6Similarity() {
+		assertEquals(1.0,
+				IpSimilarity.similarity("2001:db8::1", "2001:0db8:0:0:0:0:0:1"),
+				0);
+		assertEquals(1.0,
+				IpSimilarity.similarity("::ffff:10.1.0.2", "::ffff:a01:2"), 0);
+		// 1 and 3 share the least significant bit of the last octet.
+		assertEquals(121 / 128.0,
+				IpSimilarity.similarity("2001:db8::1", "2001:db8::3"), 0);
+
+		// Different address families have nothing in common.
+		assertEquals(0.0, IpSimilarity.similarity("2001:db8::1", "10.1.0.2"),
+				0);
+	}
+
+	// Test that host names are compared by equality and never resolved.
+	@Test
+	public void testHostNameSimilarity() {
+		assertEquals(1.0, IpSimilarity.similarity("Sensor-1", "sensor-1 "), 0);
+		assertEquals(0.0, IpSimilarity.similarity("sensor-1", "sensor-2"), 0);
+		assertEquals(0.0, IpSimilarity.similarity("sensor-1", "10.1.0.2"), 0);
+	}
+}
@@ -0,0 +1,160 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import ged.editpath.CostLimitExceededException;
+import ged.graph.DotParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+import com.outmet.io.CsvAlertReader;
+
+public class MetaAlertMetricTest {
+
+	// Creates {scans} scans followed by an exploit.
+	private Graph<Alert> createGraph(String key, int scans) {
+		Graph<Alert> graph = new Graph<Alert>();
+		graph.setKey(key);
+		Node<Alert> scan = new Node<Alert>(null, key + "-0", "SCAN", 1);
+		graph.addNode(scan);
+		for (int i = 1; i < scans; i++) {
+			graph.addNode(new Node<Alert>(null, key + "-" + i, "SCAN", 1));
+		}
+		Node<Alert> exploit = new Node<Alert>(null, key + "-e", "EXPLOIT", 1);
+		graph.addNode(exploit);
+		Edge<Alert> edge = new Edge<Alert>();
+		edge.setSource(scan);
+		edge.setTarget(exploit);
+		edge.setLabel("SCAN->EXPLOIT");
+		edge.setWeight(1);
+		graph.addEdge(edge);
+		return graph;
+	}
+
+	// The distance computed pair by pair with the ged library, as the
+	// prioritisation did before the native edit distance.
+	private double libraryDistance(Graph<Alert> graph_i, Graph<Alert> graph_j) {
+		try {
+			return Math.max(0.1, Distance.calculateGED(graph_i, graph_j));
+		} catch (DotParseException e) {
+			return 1;
+		} catch (CostLimitExceededException e) {
+			return 1;
+		}
+	}
+
+	// Test that the native edit distance is the default, and that it tells
+	// apart structures that differ only in node frequency, as the library
+	// does.
+	@Test
+	public void testEditDistance() {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		graphs.add(createGraph("a", 1));
+		graphs.add(createGraph("b", 50));
+
+		MetaAlertMetric metric = new MetaAlertMetric();
+		assertEquals(MetaAlertMetric.EditDistance.NATIVE,
+				metric.getEditDistance());
+		metric.collapse(graphs);
+		assertEquals(2, metric.size());
+		assertNull(metric.getStructure(0).getDescription());
+		// 49 more SCANs.
+		assertEquals(0.49, metric.distance(0, 1, new GraphEditDistance(),
+				new long[MetaAlertMetric.COUNTERS]), 0);
+
+		metric.setEditDistance(MetaAlertMetric.EditDistance.LIBRARY);
+		metric.collapse(graphs);
+		assertEquals(2, metric.size());
+		assertNotNull(metric.getStructure(0).getDescription());
+	}
+
+	// Test that by default the bounds tell apart structures that differ only
+	// in node frequency.
+	@Test
+	public void testFrequencyBound() {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		graphs.add(createGraph("a", 1));
+		graphs.add(createGraph("b", 150));
+
+		MetaAlertMetric metric = new MetaAlertMetric();
+		metric.collapse(graphs);
+		long[] counters = new long[MetaAlertMetric.COUNTERS];
+		assertEquals(1, metric.distance(0, 1, new GraphEditDistance(),
+				counters), 0);
+		assertEquals(1, counters[MetaAlertMetric.SIZE_BOUND]);
+		assertEquals(0, counters[MetaAlertMetric.EXACT]);
+	}
+
+	// Test that library distances are cached like the native ones.
+	@Test
+	public void testLibraryCache() {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		graphs.add(createGraph("a", 1));
+		graphs.add(createGraph("b", 50));
+
+		MetaAlertMetric metric = new MetaAlertMetric();
+		metric.setEditDistance(MetaAlertMetric.EditDistance.LIBRARY);
+		metric.collapse(graphs);
+		long[] counters = new long[MetaAlertMetric.COUNTERS];
+		double d = metric.distance(0, 1, new GraphEditDistance(), counters);
+		assertEquals(1, counters[MetaAlertMetric.EXACT]);
+		assertEquals(1, counters[MetaAlertMetric.CACHE_MISS]);
+		assertEquals(d, metric.distance(1, 0, new GraphEditDistance(),
+				counters), 0);
+		assertEquals(1, counters[MetaAlertMetric.EXACT]);
+		assertEquals(1, counters[MetaAlertMetric.CACHE_HIT]);
+	}
+
+	// Test that by default the distances and priorities of the sample data are
+	// those computed pair by pair with the ged library. Costs are summed in a
+	// different order, so distances may differ by rounding.
+	@Test
+	public void testSampleParity() throws IOException {
+		Correlator correlator = new Correlator();
+		CsvAlertReader reader = new CsvAlertReader("data/sample_alerts.csv",
+				',');
+		try {
+			correlator.run(reader);
+		} finally {
+			reader.close();
+		}
+		List<Graph<Alert>> graphs = correlator.getGraphs();
+		int n = graphs.size();
+		int k = Math.round(n * 0.1f);
+		assertTrue(k > 0);
+
+		double[][] expected = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				expected[i][j] = expected[j][i] = libraryDistance(
+						graphs.get(i), graphs.get(j));
+			}
+		}
+		Prioritiser library = new Prioritiser(k, graphs);
+		library.setDistanceMatrix(expected);
+		library.calculateOutMet();
+
+		Prioritiser prioritiser = new Prioritiser(k, graphs);
+		prioritiser.run();
+		DistanceMatrix distance = prioritiser.getDistances();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				assertEquals(expected[i][j], distance.get(i, j), 1e-9);
+			}
+		}
+		assertArrayEquals(library.getLofs(), prioritiser.getLofs(), 1e-9);
+		for (int i = 0; i < n; i++) {
+			assertEquals(Prioritiser.priority(library.getLofs()[i],
+					library.getMaxLof()), Prioritiser.priority(
+					prioritiser.getLofs()[i], prioritiser.getMaxLof()));
+		}
+	}
+}
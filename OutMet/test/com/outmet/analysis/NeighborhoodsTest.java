@@ -0,0 +1,85 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NeighborhoodsTest {
+
+	// A random symmetric matrix with few distinct distances, so that there
+	// are ties at the k-distance.
+	private DistanceMatrix createMatrix(int n, Random random) {
+		DistanceMatrix distance = DistanceMatrix.create(n,
+				DistanceMatrix.Storage.DOUBLE);
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				distance.set(i, j, 0.1 + random.nextInt(20) / 20.0);
+			}
+		}
+		return distance;
+	}
+
+	@Test
+	public void testSelect() {
+		Random random = new Random(3);
+		for (int trial = 0; trial < 500; trial++) {
+			int count = 1 + random.nextInt(200);
+			double[] values = new double[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = random.nextInt(1 + trial % 50);
+			}
+			double[] sorted = values.clone();
+			Arrays.sort(sorted);
+			int k = random.nextInt(count);
+			assertEquals(sorted[k], Neighborhoods.select(values, count, k), 0);
+		}
+	}
+
+	// Test that the neighborhoods hold every meta-alert within the k-distance
+	// in increasing order, and do not depend on the parallelism.
+	@Test
+	public void testParallelMatchesSerial() {
+		int n = 300;
+		DistanceMatrix distance = createMatrix(n, new Random(9));
+		for (int k : new int[] { 1, 4, 50 }) {
+			Neighborhoods serial = Neighborhoods.of(distance, k);
+			Neighborhoods parallel = Neighborhoods.of(distance, k, 4);
+
+			double[] row = new double[n];
+			for (int i = 0; i < n; i++) {
+				distance.getRow(i, row);
+				Arrays.sort(row);
+				assertEquals(row[k - 1], serial.getKDistance(i), 0);
+
+				int p = serial.start(i);
+				for (int j = 0; j < n; j++) {
+					if (distance.get(i, j) <= serial.getKDistance(i)) {
+						assertEquals(j, serial.getNeighbor(p));
+						assertEquals(distance.get(i, j), serial.getDistance(p),
+								0);
+						p++;
+					}
+				}
+				assertEquals(serial.end(i), p);
+				assertEquals(serial.getKDistance(i), parallel.getKDistance(i),
+						0);
+				assertEquals(serial.start(i), parallel.start(i));
+			}
+			for (int p = 0; p < serial.end(n - 1); p++) {
+				assertEquals(serial.getNeighbor(p), parallel.getNeighbor(p));
+			}
+
+			Prioritiser prioritiser = new Prioritiser();
+			prioritiser.setK(k);
+			prioritiser.setParallelism(1);
+			prioritiser.calculateOutMet(serial);
+			double[] lofs = prioritiser.getLofs();
+			prioritiser.setParallelism(4);
+			prioritiser.calculateOutMet(parallel);
+			assertArrayEquals(lofs, prioritiser.getLofs(), 0);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+public class ParallelCorrelatorTest {
+
+	private List<Alert> createAlerts(int n, Random random) {
+		List<Alert> alerts = new ArrayList<Alert>();
+		long time = 0;
+		for (int i = 0; i < n; i++) {
+			time += random.nextInt(20000);
+			Date date = new Date(time);
+			alerts.add(new Alert(date, date, String.valueOf(i), "name"
+					+ random.nextInt(5), "misc", "10." + random.nextInt(3)
+					+ ".0." + random.nextInt(4), "53", "10." + random.nextInt(3)
+					+ "." + random.nextInt(2) + "." + random.nextInt(4),
+					"2093"));
+		}
+		return alerts;
+	}
+
+	// The alert keys of each meta-alert, by meta-alert key.
+	private List<String> describe(List<Graph<Alert>> graphs) {
+		List<String> description = new ArrayList<String>();
+		for (Graph<Alert> graph : graphs) {
+			StringBuilder keys = new StringBuilder(graph.getKey() + ":");
+			for (Node<Alert> node : graph.getNodes()) {
+				keys.append(' ').append(node.getKey());
+			}
+			description.add(keys.toString());
+		}
+		return description;
+	}
+
+	// The priority of each alert, in the order of the meta-alerts.
+	private List<Integer> prioritise(List<Graph<Alert>> graphs) {
+		Prioritiser prioritiser = new Prioritiser(5, graphs);
+		prioritiser.run();
+		List<Integer> priorities = new ArrayList<Integer>();
+		for (Graph<Alert> graph : graphs) {
+			for (Node<Alert> node : graph.getNodes()) {
+				priorities.add(node.getElement().getOutMetPriority());
+			}
+		}
+		return priorities;
+	}
+
+	@Test
+	public void testOneShardMatchesCorrelator() {
+		List<Alert> alerts = createAlerts(2000, new Random(3));
+		Correlator correlator = new Correlator();
+		correlator.run(alerts);
+		ParallelCorrelator parallel = new ParallelCorrelator(1);
+		parallel.run(alerts);
+		assertEquals(describe(correlator.getGraphs()),
+				describe(parallel.getGraphs()));
+	}
+
+	// Test that the meta-alerts and their priorities do not depend on the
+	// number of threads, and that every alert is in exactly one of them.
+	@Test
+	public void testDeterministic() {
+		List<Alert> alerts = createAlerts(2000, new Random(5));
+		ParallelCorrelator serial = new ParallelCorrelator(4);
+		serial.setPartitioner(ParallelCorrelator.IP_PAIR);
+		serial.setParallelism(1);
+		serial.run(alerts);
+		List<String> expected = describe(serial.getGraphs());
+		List<Integer> priorities = prioritise(serial.getGraphs());
+		for (int parallelism : new int[] { 2, 3, 4 }) {
+			ParallelCorrelator parallel = new ParallelCorrelator(4);
+			parallel.setPartitioner(ParallelCorrelator.IP_PAIR);
+			parallel.setParallelism(parallelism);
+			parallel.run(alerts);
+			assertEquals(expected, describe(parallel.getGraphs()));
+			assertEquals(priorities, prioritise(parallel.getGraphs()));
+		}
+
+		int nodes = 0;
+		for (Graph<Alert> graph : serial.getGraphs()) {
+			nodes += graph.getNodes().size();
+		}
+		assertEquals(alerts.size(), nodes);
+	}
+
+	// Test that an attack step from the victim to another network, which a
+	// single correlator joins to the first, is joined across shards.
+	@Test
+	public void testBoundary() {
+		Date date = new Date(0);
+		List<Alert> alerts = new ArrayList<Alert>();
+		alerts.add(new Alert(date, date, "1", "EXPLOIT", "misc", "10.0.0.1",
+				"53", "10.1.0.2", "2093"));
+		alerts.add(new Alert(date, date, "2", "EXPLOIT", "misc", "10.1.0.2",
+				"53", "10.2.0.5", "2093"));
+		Correlator correlator = new Correlator();
+		correlator.run(alerts);
+		assertEquals(1, correlator.getGraphs().size());
+
+		ParallelCorrelator parallel = new ParallelCorrelator(64);
+		assertTrue(ParallelCorrelator.DESTINATION_16.partition(alerts.get(0),
+				64) != ParallelCorrelator.DESTINATION_16.partition(
+				alerts.get(1), 64));
+		parallel.run(alerts);
+		assertEquals(1, parallel.getBoundaryJoins());
+		assertEquals(describe(correlator.getGraphs()),
+				describe(parallel.getGraphs()));
+		assertEquals(1, parallel.getGraphs().get(0).getEdges().size());
+	}
+}
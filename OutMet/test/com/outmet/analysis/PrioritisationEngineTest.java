@@ -0,0 +1,81 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+public class PrioritisationEngineTest {
+
+	// One alert a minute, each to its own address so that it forms its own
+	// meta-alert.
+	private Alert createAlert(int minute) {
+		Date date = new Date(minute * 60000L);
+		return new Alert(date, date, String.valueOf(minute), "name"
+				+ minute % 3, "misc", "10.0." + minute / 250 + "."
+				+ minute % 250, "53", "192.168." + minute / 250 + "."
+				+ minute % 250, "2093");
+	}
+
+	// Test that meta-alerts are evicted once older than the window, and that
+	// the alerts in the window are prioritised.
+	@Test
+	public void testTimeWindow() {
+		PrioritisationEngine engine = new PrioritisationEngine(2);
+		engine.getCorrelator().setTimeThreshold(5);
+		engine.setWindowMillis(60 * 60000L);
+		engine.setRescoreMillis(10 * 60000L);
+		final List<Graph<Alert>> evicted = new ArrayList<Graph<Alert>>();
+		engine.setMetaAlertListener(new MetaAlertListener() {
+			@Override
+			public void metaAlertClosed(Graph<Alert> graph) {
+				evicted.add(graph);
+			}
+		});
+
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (int minute = 0; minute < 300; minute++) {
+			Alert alert = createAlert(minute);
+			alerts.add(alert);
+			engine.offer(alert);
+			// Meta-alerts close 5 minutes after their last alert, and are
+			// evicted at most 10 minutes after leaving the window.
+			assertTrue(engine.size() <= 60 + 10);
+		}
+		engine.flush();
+
+		assertEquals(engine.getEvictedCount(), evicted.size());
+		assertEquals(300, evicted.size() + engine.size());
+		assertEquals(engine.size(), engine.getPrioritiser().size());
+		for (Graph<Alert> graph : evicted) {
+			long time = graph.getFirstNode().getElement().getStartTime()
+					.getTime();
+			assertTrue(time < 300 * 60000L - 60 * 60000L);
+		}
+		for (Alert alert : alerts.subList(alerts.size() - 10, alerts.size())) {
+			assertTrue(alert.getOutMetPriority() >= 1);
+		}
+	}
+
+	@Test
+	public void testCountWindow() {
+		PrioritisationEngine engine = new PrioritisationEngine(3);
+		engine.getCorrelator().setTimeThreshold(5);
+		engine.setWindowSize(20);
+		engine.setRescoreMillis(0);
+		for (int minute = 0; minute < 100; minute++) {
+			engine.offer(createAlert(minute));
+		}
+		engine.rescore();
+		assertEquals(20, engine.size());
+		assertEquals(20, engine.getPrioritiser().size());
+		engine.flush();
+		assertEquals(20, engine.size());
+	}
+}
@@ -0,0 +1,53 @@
+package com.outmet.analysis;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+/**
+ * Random meta-alerts for the prioritisation tests.
+ * 
+ * @author riyanat
+ */
+class RandomMetaAlerts {
+
+	private RandomMetaAlerts() {
+	}
+
+	// Creates a meta-alert of up to {maxSize} alerts with names drawn from
+	// {names}, and random edges between them.
+	static Graph<Alert> create(int id, Random random, int maxSize, int names) {
+		Graph<Alert> graph = new Graph<Alert>();
+		graph.setKey(String.valueOf(id));
+		List<Node<Alert>> nodes = new ArrayList<Node<Alert>>();
+		int size = 1 + random.nextInt(maxSize);
+		for (int i = 0; i < size; i++) {
+			Alert alert = new Alert(new Date(i), new Date(i), id + "-" + i,
+					"name" + random.nextInt(names), "misc", "10.0.0.1", "53",
+					"10.1.0.2", "2093");
+			Node<Alert> node = new Node<Alert>();
+			node.setElement(alert);
+			node.setKey(alert.getKey());
+			node.setLabel(alert.getName());
+			node.setWeight(1);
+			graph.addNode(node);
+			nodes.add(node);
+		}
+		for (int e = random.nextInt(2 * size); e > 0; e--) {
+			Edge<Alert> edge = new Edge<Alert>();
+			edge.setSource(nodes.get(random.nextInt(size)));
+			edge.setTarget(nodes.get(random.nextInt(size)));
+			edge.setLabel(edge.getSource().getLabel()
+					+ edge.getTarget().getLabel());
+			edge.setWeight(1);
+			graph.addEdge(edge);
+		}
+		return graph;
+	}
+}
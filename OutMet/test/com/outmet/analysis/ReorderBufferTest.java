@@ -0,0 +1,103 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.io.AlertGenerator;
+
+public class ReorderBufferTest {
+
+	private List<Alert> generate(long maxLateness) {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(20000);
+		generator.setDisorder(0.2);
+		generator.setMaxLateness(maxLateness);
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (Alert alert : generator) {
+			alerts.add(alert);
+		}
+		return alerts;
+	}
+
+	private List<Alert> drain(Iterator<Alert> alerts) {
+		List<Alert> drained = new ArrayList<Alert>();
+		while (alerts.hasNext()) {
+			drained.add(alerts.next());
+		}
+		return drained;
+	}
+
+	private void assertSorted(List<Alert> alerts) {
+		for (int i = 1; i < alerts.size(); i++) {
+			assertTrue(alerts.get(i - 1).getStartTime().getTime() <= alerts
+					.get(i).getStartTime().getTime());
+		}
+	}
+
+	// Test that alerts within the lateness bound come out as a stable sort
+	// would order them.
+	@Test
+	public void testWithinBound() {
+		List<Alert> alerts = generate(5000);
+		List<Alert> sorted = new ArrayList<Alert>(alerts);
+		Collections.sort(sorted, new Comparator<Alert>() {
+			@Override
+			public int compare(Alert a, Alert b) {
+				return a.getStartTime().compareTo(b.getStartTime());
+			}
+		});
+		assertFalse(sorted.equals(alerts));
+
+		ReorderBuffer buffer = new ReorderBuffer(5000);
+		List<Alert> reordered = drain(buffer.reorder(alerts.iterator()));
+		assertEquals(sorted, reordered);
+		assertEquals(0, buffer.getLateAlertCount());
+		assertEquals(0, buffer.size());
+		assertTrue(buffer.getMaxSize() < alerts.size() / 10);
+	}
+
+	// Test that alerts beyond the bound are corrected into order, or passed to
+	// the listener.
+	@Test
+	public void testLateAlerts() {
+		List<Alert> alerts = generate(60000);
+		ReorderBuffer buffer = new ReorderBuffer(1000);
+		List<Alert> corrected = drain(buffer.reorder(generate(60000)
+				.iterator()));
+		assertEquals(alerts.size(), corrected.size());
+		assertSorted(corrected);
+		assertTrue(buffer.getLateAlertCount() > 0);
+
+		final List<Alert> late = new ArrayList<Alert>();
+		buffer = new ReorderBuffer(1000);
+		buffer.setLateAlertListener(new LateAlertListener() {
+			@Override
+			public void lateAlert(Alert alert, long watermark) {
+				assertTrue(alert.getStartTime().getTime() < watermark);
+				late.add(alert);
+			}
+		});
+		List<Alert> released = drain(buffer.reorder(alerts.iterator()));
+		assertSorted(released);
+		assertEquals(buffer.getLateAlertCount(), late.size());
+		assertEquals(alerts.size(), released.size() + late.size());
+	}
+
+	// Test that the buffer releases early rather than exceed its capacity.
+	@Test
+	public void testCapacity() {
+		ReorderBuffer buffer = new ReorderBuffer(Long.MAX_VALUE / 2, 100);
+		List<Alert> released = drain(buffer.reorder(generate(5000).iterator()));
+		assertEquals(20000, released.size());
+		assertSorted(released);
+		assertTrue(buffer.getMaxSize() <= 101);
+	}
+}
@@ -0,0 +1,73 @@
+package com.outmet.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+public class VpTreeNeighborSearchTest {
+
+	// Creates a meta-alert of up to 6 alerts with names drawn from 8.
+	private Graph<Alert> createGraph(int id, Random random) {
+		return RandomMetaAlerts.create(id, random, 6, 8);
+	}
+
+	// Test that the tree finds the same neighborhoods and lofs as the full
+	// distance matrix, for meta-alerts with shared structures and ties.
+	@Test
+	public void testMatchesDistanceMatrix() {
+		Random random = new Random(5);
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		for (int i = 0; i < 300; i++) {
+			graphs.add(createGraph(i, random));
+		}
+		// The tree is exact for the native edit distance, a metric.
+		DistanceMatrixCalculator calculator = new DistanceMatrixCalculator(1);
+		calculator.getMetric().setEditDistance(
+				MetaAlertMetric.EditDistance.NATIVE);
+		DistanceMatrix distance = calculator.calculate(graphs);
+
+		for (int k : new int[] { 1, 2, 5, 20, 300 }) {
+			Neighborhoods expected = Neighborhoods.of(distance, k);
+			MetaAlertMetric metric = new MetaAlertMetric();
+			metric.setEditDistance(MetaAlertMetric.EditDistance.NATIVE);
+			VpTreeNeighborSearch search = new VpTreeNeighborSearch(metric);
+			Neighborhoods actual = search.search(graphs, k);
+
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.getKDistance(i), actual.getKDistance(i), 0);
+				assertEquals(expected.end(i) - expected.start(i), actual.end(i)
+						- actual.start(i));
+				for (int p = expected.start(i), q = actual.start(i); p < expected
+						.end(i); p++, q++) {
+					assertEquals(expected.getNeighbor(p), actual.getNeighbor(q));
+					assertEquals(expected.getDistance(p), actual.getDistance(q),
+							0);
+				}
+			}
+
+			Prioritiser dense = new Prioritiser(k, graphs);
+			dense.setDistances(distance);
+			dense.calculateOutMet();
+			Prioritiser tree = new Prioritiser(k, graphs);
+			tree.setNeighborSearch(search);
+			tree.run();
+			assertArrayEquals(dense.getLofs(), tree.getLofs(), 0);
+			assertEquals(dense.getMaxLof(), tree.getMaxLof(), 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidK() {
+		List<Graph<Alert>> graphs = new ArrayList<Graph<Alert>>();
+		graphs.add(createGraph(0, new Random(1)));
+		new VpTreeNeighborSearch().search(graphs, 2);
+	}
+}
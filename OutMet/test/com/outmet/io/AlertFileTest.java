@@ -0,0 +1,131 @@
+package com.outmet.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+
+public class AlertFileTest {
+
+	private static String toString(Alert alert) {
+		return alert.getStartTime().getTime() + "," + alert.getEndTime().getTime()
+				+ "," + alert.getKey() + "," + alert.getName() + ","
+				+ alert.getCategory() + "," + alert.getSourceIP() + ","
+				+ alert.getSourcePort() + "," + alert.getDestIP() + ","
+				+ alert.getDestPort() + "," + alert.getCount() + ","
+				+ alert.getPriority() + "," + alert.getOutMetPriority();
+	}
+
+	private static Alert alert(long start, long end, String key,
+			String sourceIp, String destIp) {
+		return new Alert(new Date(start), new Date(end), key, "scan", "recon",
+				sourceIp, "80", destIp, "private");
+	}
+
+	// Test that every field survives, including keys, addresses and times
+	// that do not take the compact encodings.
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<Alert> alerts = new ArrayList<Alert>();
+		alerts.add(alert(1000, 2000, "1", "10.0.0.1", "255.255.255.255"));
+		alerts.add(alert(500, 400, "007", " 10.0.0.2 ", "fe80::1"));
+		alerts.add(alert(-5, Long.MAX_VALUE / 2, "a key", "10.00.0.1",
+				"0.0.0.0"));
+		alerts.add(alert(1000, 1000, null, null, "1.2.3"));
+		Alert alert = alert(1001, 1001, "123456789012", "192.168.1.1",
+				"10.0.0.1.");
+		alert.setCount(7);
+		alert.setPriority(-3);
+		alert.setOutMetPriority(42);
+		alerts.add(alert);
+		alerts.add(new Alert(new Date(0), new Date(0), "x", "\u00e9t\u00e9",
+				null, "", "", "", ""));
+
+		File file = File.createTempFile("alerts", ".bin");
+		file.deleteOnExit();
+		AlertFileWriter writer = new AlertFileWriter(file, 4);
+		for (int i = 0; i < alerts.size(); i++) {
+			writer.write(alerts.get(i), i % 2 == 0 ? i : -1);
+		}
+		writer.close();
+		assertEquals(alerts.size(), writer.getAlertCount());
+
+		AlertFileReader reader = new AlertFileReader(file);
+		int i = 0;
+		for (Alert read : reader) {
+			assertEquals(toString(alerts.get(i)), toString(read));
+			assertEquals(i % 2 == 0 ? i : -1, reader.getMetaAlertId());
+			i++;
+		}
+		reader.close();
+		assertEquals(alerts.size(), i);
+	}
+
+	// Test that correlated meta-alerts read back with the same alerts and
+	// edges, across several blocks.
+	@Test
+	public void testMetaAlerts() throws IOException {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(3000);
+		generator.setChainProbability(0.01);
+		Correlator correlator = new Correlator();
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (Alert alert : generator) {
+			alerts.add(alert);
+		}
+		correlator.run(alerts);
+		List<Graph<Alert>> graphs = correlator.getGraphs();
+
+		File file = File.createTempFile("meta-alerts", ".bin");
+		file.deleteOnExit();
+		AlertFileWriter writer = new AlertFileWriter(file, 256);
+		for (Graph<Alert> graph : graphs) {
+			writer.write(graph);
+		}
+		writer.close();
+
+		AlertFileReader reader = new AlertFileReader(file);
+		List<Graph<Alert>> read = reader.readMetaAlerts();
+		reader.close();
+		assertEquals(graphs.size(), read.size());
+		for (int g = 0; g < graphs.size(); g++) {
+			Graph<Alert> expected = graphs.get(g);
+			Graph<Alert> actual = read.get(g);
+			assertEquals(expected.getKey(), actual.getKey());
+			assertEquals(expected.getNodes().size(), actual.getNodes().size());
+			for (int n = 0; n < expected.getNodes().size(); n++) {
+				assertEquals(toString(expected.getNodes().get(n).getElement()),
+						toString(actual.getNodes().get(n).getElement()));
+			}
+			assertEquals(expected.getEdges().size(), actual.getEdges().size());
+			for (int e = 0; e < expected.getEdges().size(); e++) {
+				Edge<Alert> edge = expected.getEdges().get(e);
+				Edge<Alert> other = actual.getEdges().get(e);
+				assertEquals(edge.getKey(), other.getKey());
+				assertEquals(edge.getLabel(), other.getLabel());
+				assertEquals(edge.getWeight(), other.getWeight(), 0);
+			}
+		}
+	}
+
+	// Test that a file that is not an alert file is rejected.
+	@Test(expected = IOException.class)
+	public void testNotAnAlertFile() throws IOException {
+		File file = File.createTempFile("alerts", ".csv");
+		file.deleteOnExit();
+		CsvAlertWriter writer = new CsvAlertWriter(file.getPath(), ',');
+		writer.write(alert(1000, 2000, "1", "10.0.0.1", "10.0.0.2"));
+		writer.close();
+		new AlertFileReader(file);
+	}
+}
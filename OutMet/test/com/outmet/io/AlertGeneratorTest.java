@@ -0,0 +1,85 @@
+package com.outmet.io;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.data.Alert;
+import com.outmet.data.Graph;
+
+public class AlertGeneratorTest {
+
+	private List<Alert> generate(AlertGenerator generator) {
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (Alert alert : generator) {
+			alerts.add(alert);
+		}
+		return alerts;
+	}
+
+	// Test that the same seed gives the same alerts, in order of start time.
+	@Test
+	public void testDeterministicAndSorted() {
+		AlertGenerator first = new AlertGenerator();
+		first.setCount(20000);
+		first.setBurstProbability(0.005);
+		AlertGenerator second = new AlertGenerator();
+		second.setCount(20000);
+		second.setBurstProbability(0.005);
+
+		List<Alert> alerts = generate(first);
+		List<Alert> again = generate(second);
+		assertEquals(20000, alerts.size());
+		for (int i = 0; i < alerts.size(); i++) {
+			assertEquals(alerts.get(i).toString(), again.get(i).toString());
+			if (i > 0) {
+				assertTrue(alerts.get(i - 1).getStartTime().getTime() <= alerts
+						.get(i).getStartTime().getTime());
+			}
+		}
+	}
+
+	// Test that late alerts are late by at most the lateness bound.
+	@Test
+	public void testDisorder() {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(20000);
+		generator.setDisorder(0.1);
+		generator.setMaxLateness(5000);
+
+		long latest = Long.MIN_VALUE;
+		int late = 0;
+		for (Alert alert : generator) {
+			long time = alert.getStartTime().getTime();
+			if (time < latest) {
+				late++;
+				assertTrue(latest - time <= 5000);
+			}
+			latest = Math.max(latest, time);
+		}
+		assertTrue(late > 0);
+	}
+
+	// Test that attack chains correlate into meta-alerts of all their steps.
+	@Test
+	public void testChainsCorrelate() {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(5000);
+		generator.setBurstProbability(0);
+		generator.setChainProbability(0.01);
+		generator.setChainHops(3);
+
+		Correlator correlator = new Correlator();
+		correlator.run(generate(generator));
+		int largest = 0;
+		for (Graph<Alert> graph : correlator.getGraphs()) {
+			largest = Math.max(largest, graph.getNodes().size());
+		}
+		// Five steps against the first host and two per hop.
+		assertTrue(largest >= 5 + 2 * 3);
+	}
+}
@@ -0,0 +1,76 @@
+package com.outmet.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.outmet.data.Alert;
+
+public class CsvAlertReaderTest {
+
+	private File createFile(String contents) throws IOException {
+		File file = File.createTempFile("alerts", ".csv");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write(contents);
+		writer.close();
+		return file;
+	}
+
+	// Test that padded fields are trimmed and malformed lines are skipped.
+	@Test
+	public void testReadAlerts() throws IOException {
+		File file = createFile("1330732800000,1330732800005,1, ICMP PING ,"
+				+ " Classification: Misc activity, 10.0.2.92 ,53, 10.1.0.2,2093\r\n"
+				+ "not,an,alert\n"
+				+ "\n"
+				+ "x,1,2,a,b,c,d,e,f\n"
+				+ "1330733100000,1330733100000,2,ICMP Echo Reply,,10.1.0.2,53,"
+				+ "10.0.2.92,2093");
+
+		CsvAlertReader reader = new CsvAlertReader(file, ',');
+		assertTrue(reader.hasNext());
+		Alert first = reader.next();
+		assertEquals(1330732800000L, first.getStartTime().getTime());
+		assertEquals(1330732800005L, first.getEndTime().getTime());
+		assertEquals("1", first.getKey());
+		assertEquals("ICMP PING", first.getName());
+		assertEquals("Classification: Misc activity", first.getCategory());
+		assertEquals("10.0.2.92", first.getSourceIP());
+		assertEquals("10.1.0.2", first.getDestIP());
+		assertEquals("2093", first.getDestPort());
+
+		Alert second = reader.next();
+		assertEquals("2", second.getKey());
+		assertEquals("ICMP Echo Reply", second.getName());
+		assertFalse(reader.hasNext());
+		assertEquals(2, reader.getAlertCount());
+		assertEquals(2, reader.getSkippedCount());
+		reader.close();
+	}
+
+	// Test that lines spanning mapped windows are read whole.
+	@Test
+	public void testSmallWindow() throws IOException {
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			contents.append(i).append(',').append(i).append(',').append(i)
+					.append(",ICMP PING,misc,10.0.0.").append(i)
+					.append(",53,10.1.0.2,2093\n");
+		}
+		CsvAlertReader reader = new CsvAlertReader(
+				createFile(contents.toString()), ',', 64);
+		int i = 0;
+		for (Alert alert : reader) {
+			assertEquals(String.valueOf(i), alert.getKey());
+			assertEquals("10.0.0." + i, alert.getSourceIP());
+			i++;
+		}
+		assertEquals(100, i);
+		reader.close();
+	}
+}
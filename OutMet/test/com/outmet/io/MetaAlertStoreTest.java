@@ -0,0 +1,192 @@
+package com.outmet.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.data.Alert;
+import com.outmet.data.Edge;
+import com.outmet.data.Graph;
+import com.outmet.data.Node;
+
+public class MetaAlertStoreTest {
+
+	private static File createDirectory() throws IOException {
+		File directory = File.createTempFile("meta-alerts", "");
+		directory.delete();
+		directory.mkdirs();
+		directory.deleteOnExit();
+		return directory;
+	}
+
+	private static void delete(File directory) {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static List<Graph<Alert>> correlate() {
+		AlertGenerator generator = new AlertGenerator();
+		generator.setCount(4000);
+		generator.setChainProbability(0.01);
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (Alert alert : generator) {
+			alerts.add(alert);
+		}
+		Correlator correlator = new Correlator();
+		correlator.run(alerts);
+		List<Graph<Alert>> graphs = correlator.getGraphs();
+		for (int i = 0; i < graphs.size(); i++) {
+			for (Node<Alert> node : graphs.get(i).getNodes()) {
+				node.getElement().setOutMetPriority(i % 4 + 1);
+			}
+		}
+		graphs.get(0).addTag("analyst", "seen");
+		return graphs;
+	}
+
+	private static boolean matches(Graph<Alert> graph, MetaAlertQuery query) {
+		boolean ip = query.getIp() == null;
+		boolean name = query.getName() == null;
+		long start = Long.MAX_VALUE;
+		long end = Long.MIN_VALUE;
+		for (Node<Alert> node : graph.getNodes()) {
+			Alert alert = node.getElement();
+			ip |= query.getIp() != null
+					&& (query.getIp().equals(alert.getSourceIP()) || query
+							.getIp().equals(alert.getDestIP()));
+			name |= query.getName() != null
+					&& query.getName().equals(alert.getName());
+			start = Math.min(start, alert.getStartTime().getTime());
+			end = Math.max(end, alert.getEndTime().getTime());
+		}
+		int priority = graph.getFirstNode().getElement().getOutMetPriority();
+		return ip && name && start <= query.getTo() && end >= query.getFrom()
+				&& (query.getPriority() < 0 || query.getPriority() == priority);
+	}
+
+	private static String toString(Graph<Alert> graph) {
+		StringBuilder builder = new StringBuilder(graph.getKey());
+		builder.append(graph.getTags());
+		for (Node<Alert> node : graph.getNodes()) {
+			Alert alert = node.getElement();
+			builder.append(' ').append(node.getKey()).append(node.getLabel())
+					.append(node.getWeight()).append(alert)
+					.append(alert.getCount()).append(alert.getOutMetPriority());
+		}
+		for (Edge<Alert> edge : graph.getEdges()) {
+			builder.append(' ').append(edge.getKey()).append(edge.getLabel())
+					.append(edge.getWeight())
+					.append(edge.getSource().getKey())
+					.append(edge.getTarget().getKey());
+		}
+		return builder.toString();
+	}
+
+	private static List<String> expected(List<Graph<Alert>> graphs,
+			MetaAlertQuery query) {
+		List<String> matching = new ArrayList<String>();
+		for (Graph<Alert> graph : graphs) {
+			if (matches(graph, query)) {
+				matching.add(toString(graph));
+			}
+		}
+		return matching;
+	}
+
+	private static List<String> found(MetaAlertStore store,
+			MetaAlertQuery query) {
+		List<String> found = new ArrayList<String>();
+		for (Graph<Alert> graph : store.find(query)) {
+			found.add(toString(graph));
+		}
+		return found;
+	}
+
+	private static List<MetaAlertQuery> queries(List<Graph<Alert>> graphs) {
+		Alert alert = graphs.get(graphs.size() / 2).getLastNode().getElement();
+		long time = alert.getStartTime().getTime();
+		List<MetaAlertQuery> queries = new ArrayList<MetaAlertQuery>();
+
+		queries.add(new MetaAlertQuery());
+		MetaAlertQuery query = new MetaAlertQuery();
+		query.setIp(alert.getDestIP());
+		queries.add(query);
+		query = new MetaAlertQuery();
+		query.setName(alert.getName());
+		query.setPriority(2);
+		queries.add(query);
+		query = new MetaAlertQuery();
+		query.setIp(alert.getSourceIP());
+		query.setName(alert.getName());
+		query.setTimeRange(time - 60000, time + 60000);
+		queries.add(query);
+		query = new MetaAlertQuery();
+		query.setIp("192.0.2.1");
+		queries.add(query);
+		return queries;
+	}
+
+	// Test that queries find the same meta-alerts as a scan of the graphs,
+	// across segments and after the store is opened again.
+	@Test
+	public void testFind() throws IOException {
+		List<Graph<Alert>> graphs = correlate();
+		File directory = createDirectory();
+		try {
+			MetaAlertStore store = new MetaAlertStore(directory, 64 * 1024);
+			for (Graph<Alert> graph : graphs) {
+				store.metaAlertClosed(graph);
+			}
+			assertEquals(graphs.size(), store.size());
+			assertTrue(store.getSegmentCount() > 2);
+			List<MetaAlertQuery> queries = queries(graphs);
+			for (MetaAlertQuery query : queries) {
+				assertEquals(expected(graphs, query), found(store, query));
+			}
+			assertFalse(found(store, queries.get(1)).isEmpty());
+			store.close();
+
+			// Without an index a sealed segment is scanned.
+			assertTrue(new File(directory, "segment-00000000.idx").delete());
+			store = new MetaAlertStore(directory, 64 * 1024);
+			assertEquals(graphs.size(), store.size());
+			for (MetaAlertQuery query : queries) {
+				assertEquals(expected(graphs, query), found(store, query));
+			}
+
+			// A truncated index is not trusted, the segment is scanned.
+			File index = new File(directory, "segment-00000001.idx");
+			store.close();
+			RandomAccessFile truncated = new RandomAccessFile(index, "rw");
+			try {
+				truncated.setLength(index.length() / 2);
+			} finally {
+				truncated.close();
+			}
+			store = new MetaAlertStore(directory, 64 * 1024);
+			assertEquals(graphs.size(), store.size());
+			for (MetaAlertQuery query : queries) {
+				assertEquals(expected(graphs, query), found(store, query));
+			}
+
+			// Appends continue in the last segment.
+			store.add(graphs.get(0));
+			MetaAlertQuery query = new MetaAlertQuery();
+			query.setName(graphs.get(0).getFirstNode().getElement().getName());
+			List<String> found = found(store, query);
+			assertEquals(toString(graphs.get(0)), found.get(found.size() - 1));
+			store.close();
+		} finally {
+			delete(directory);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.outmet.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+import com.outmet.analysis.Correlator;
+import com.outmet.data.Alert;
+
+public class MetricsTest {
+
+	// Test that percentiles are within the bucket precision of the true
+	// values.
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(10000, histogram.getCount());
+		assertEquals(10000000, histogram.getMaxNanos());
+		for (double q : new double[] { 0.5, 0.9, 0.99 }) {
+			double expected = q * 10000000;
+			long actual = histogram.getPercentile(q);
+			assertTrue(actual >= expected);
+			assertTrue(actual <= expected * 1.125);
+		}
+		assertEquals(10000000, histogram.getPercentile(1));
+
+		histogram.reset();
+		assertEquals(0, histogram.getPercentile(0.5));
+		histogram.record(7);
+		assertEquals(7, histogram.getPercentile(0.5));
+	}
+
+	// Test that values recorded from several threads are all counted.
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						histogram.record(i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(400000, histogram.getCount());
+		assertEquals(4L * 99999 * 100000 / 2, histogram.getTotalNanos());
+		assertEquals(99999, histogram.getMaxNanos());
+	}
+
+	// Test that the correlator counts its alerts and that the counts can be
+	// read over JMX.
+	@Test
+	public void testCorrelatorMetrics() throws Exception {
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (int i = 0; i < 10; i++) {
+			Date date = new Date(i * 1000L);
+			alerts.add(new Alert(date, date, String.valueOf(i), "ICMP PING",
+					"misc", "10.0.0." + (i % 2), "53", "10.1.0.2", "2093"));
+		}
+		Correlator correlator = new Correlator();
+		correlator.run(alerts);
+		CorrelatorMetrics metrics = correlator.getMetrics();
+		assertEquals(10, metrics.getAlerts());
+		assertEquals(correlator.getGraphs().size(), metrics.getMetaAlerts());
+		assertEquals(1 - correlator.getGraphs().size() / 10.0,
+				metrics.getHitRate(), 1e-9);
+		assertEquals(10, metrics.getLatency().getCount());
+
+		ObjectName name = Metrics.register(metrics, "Correlator", "test");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(10L, server.getAttribute(name, "Alerts"));
+			CompositeData latency = (CompositeData) server.getAttribute(name,
+					"Latency");
+			assertEquals(10L, latency.get("count"));
+		} finally {
+			Metrics.unregister("Correlator", "test");
+		}
+	}
+}